@@ -40,10 +40,9 @@ import com.tyron.code.ui.editor.log.AppLogFragment;
 import com.tyron.code.util.ProjectUtils;
 import com.tyron.common.logging.IdeLog;
 import com.tyron.common.util.DebouncerStore;
-import com.tyron.completion.java.compiler.Parser;
 import com.tyron.completion.java.parse.CompilationInfo;
+import com.tyron.completion.java.parse.SkeletonIndex;
 import com.tyron.completion.java.provider.CompletionEngine;
-import com.tyron.completion.java.provider.PruneMethodBodies;
 import com.tyron.completion.progress.ProgressManager;
 import com.tyron.completion.xml.task.InjectResourcesTask;
 import com.tyron.completion.xml.v2.events.XmlReparsedEvent;
@@ -71,9 +70,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
 
-import javax.tools.JavaFileObject;
-import javax.tools.SimpleJavaFileObject;
-
 public class ProjectManager {
 
     public interface TaskListener {
@@ -164,6 +160,14 @@ public class ProjectManager {
         mCurrentProject.getEventManager().subscribeEvent(FileDeletedEvent.class, (event, u) -> {
             modifiedEventConsumer.accept(event.getDeletedFile());
 
+            // the module of a deleted file can no longer be resolved from its path
+            for (Module module : mCurrentProject.getModules()) {
+                CompilationInfo info = module.getUserData(CompilationInfo.COMPILATION_INFO_KEY);
+                if (info != null) {
+                    info.getReferenceIndex().remove(event.getDeletedFile().toURI());
+                }
+            }
+
             mCurrentProject.getEventManager().dispatchEvent(new XmlReparsedEvent(event.getDeletedFile()));
         });
         // listen for newly created files and notify the resources repository
@@ -354,28 +358,25 @@ public class ProjectManager {
      * <p>
      * In-order to keep indexing as fast as possible, method bodies of each classes are removed.
      * When the file is opened in the editor, its contents will be re-parsed with method bodies
-     * included.
+     * included. The pruned files are kept in a {@link SkeletonIndex} so only new or modified
+     * files are parsed again the next time the project is opened.
      */
     private void indexModule(Module module) throws IOException {
         module.open();
         module.index();
 
         JavaModule javaModule = (JavaModule) module;
-        for (File value : javaModule.getJavaFiles().values()) {
+        Map<File, SkeletonIndex.Skeleton> skeletons = SkeletonIndex.forModule(module)
+                .index(module.getProject(), javaModule.getJavaFiles().values());
+        for (Map.Entry<File, SkeletonIndex.Skeleton> entry : skeletons.entrySet()) {
+            File value = entry.getKey();
+            SkeletonIndex.Skeleton skeleton = entry.getValue();
             CompilationInfo info = CompilationInfo.get(module.getProject(), value);
             if (info == null) {
                 continue;
             }
-            info.updateImmediately(new SimpleJavaFileObject(value.toURI(),
-                    JavaFileObject.Kind.SOURCE) {
-                @Override
-                public CharSequence getCharContent(boolean ignoreEncodingErrors) {
-                    Parser parser = Parser.parseFile(module.getProject(), value.toPath());
-                    // During indexing, statements inside methods are not needed so
-                    // it is stripped to speed up the index process
-                    return new PruneMethodBodies(info.impl.getJavacTask()).scan(parser.root, 0L);
-                }
-            });
+            info.getReferenceIndex().put(value.toURI(), skeleton.getReferences());
+            info.updateImmediately(new SkeletonIndex.SkeletonFileObject(value, skeleton));
         }
 
         KotlinEnvironment kotlinEnvironment = KotlinEnvironment.Companion.get(module);
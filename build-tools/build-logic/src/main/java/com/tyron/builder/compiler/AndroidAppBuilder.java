@@ -2,7 +2,6 @@ package com.tyron.builder.compiler;
 
 import com.tyron.builder.compiler.apk.PackageTask;
 import com.tyron.builder.compiler.apk.SignTask;
-import com.tyron.builder.compiler.apk.ZipAlignTask;
 import com.tyron.builder.compiler.dex.R8Task;
 import com.tyron.builder.compiler.firebase.GenerateFirebaseConfigTask;
 import com.tyron.builder.compiler.incremental.dex.IncrementalD8Task;
@@ -56,9 +55,6 @@ public class AndroidAppBuilder extends BuilderImpl<AndroidModule> {
             tasks.add(new IncrementalD8Task(getProject(), module, logger));
         }
         tasks.add(new PackageTask(getProject(), module, logger));
-        if (module.getSettings().getBoolean(ModuleSettings.ZIP_ALIGN_ENABLED, false)) {
-            tasks.add(new ZipAlignTask(getProject(), module, logger));
-        }
         tasks.add(new SignTask(getProject(), module, logger));
         return tasks;
     }
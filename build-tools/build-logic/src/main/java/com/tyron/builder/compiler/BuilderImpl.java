@@ -6,17 +6,37 @@ import android.os.Looper;
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
 
+import com.tyron.builder.compiler.trace.BuildTrace;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.Module;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public abstract class BuilderImpl<T extends Module> implements Builder<T> {
 
+    /**
+     * The maximum number of tasks running at the same time, most tasks are memory hungry so
+     * this is kept low even on devices with many cores
+     */
+    private static final int MAX_PARALLEL_TASKS = 3;
+
+    /**
+     * Written to the build directory after every build, it can be opened in chrome://tracing
+     */
+    private static final String TRACE_FILE = "trace.json";
+
     private final Handler mMainHandler;
     private final Project mProject;
     private final T mModule;
@@ -54,32 +74,186 @@ public abstract class BuilderImpl<T extends Module> implements Builder<T> {
         }
     }
 
+    /**
+     * Runs the tasks of the build, a task starts as soon as its prerequisites have finished
+     * so independent tasks run in parallel. See {@link Task#getPrerequisites()}.
+     * <p>
+     * When a task fails, no more tasks are started. The tasks that are already running are
+     * allowed to finish before the failed task and every finished task are cleaned.
+     */
     @Override
     public final void build(BuildType type) throws CompilationFailedException, IOException {
+        BuildTrace trace = BuildTrace.begin();
+        try {
+            try (BuildTrace.Span ignored = BuildTrace.span("Build " + type)) {
+                runTasks(type);
+            }
+        } finally {
+            BuildTrace.end(trace);
+            try {
+                trace.write(new File(getModule().getBuildDirectory(), TRACE_FILE));
+            } catch (IOException e) {
+                getLogger().warning("Unable to write build trace: " + e.getMessage());
+            }
+        }
+    }
+
+    private void runTasks(BuildType type) throws CompilationFailedException, IOException {
         mTasksRan.clear();
         List<Task<? super T>> tasks = getTasks(type);
-        for (int i = 0, tasksSize = tasks.size(); i < tasksSize; i++) {
-            Task<? super T> task = tasks.get(i);
-            final float current = i;
-            getLogger().info("Running " + task.getName());
-            try {
-                mMainHandler.post(() -> updateProgress(task.getName(), "Task started",
-                        (int) ((current / (float) tasks.size()) * 100f)));
-                task.prepare(type);
-                task.run();
-            } catch (Throwable e) {
-                if (e instanceof OutOfMemoryError) {
-                    tasks.clear();
-                    mTasksRan.clear();
-                    throw new CompilationFailedException("Builder ran out of memory", e);
+        List<Set<Integer>> prerequisites = getPrerequisites(tasks);
+
+        int threads = Math.min(MAX_PARALLEL_TASKS, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads),
+                runnable -> new Thread(runnable, "Build task"));
+        CompletionService<TaskResult> completionService =
+                new ExecutorCompletionService<>(executor);
+
+        Set<Integer> started = new HashSet<>();
+        Set<Integer> finished = new HashSet<>();
+        List<Task<? super T>> failedTasks = new ArrayList<>();
+        Throwable failure = null;
+        int running = 0;
+        try {
+            while (true) {
+                if (failure == null) {
+                    for (int i = 0; i < tasks.size(); i++) {
+                        if (!started.contains(i) && finished.containsAll(prerequisites.get(i))) {
+                            started.add(i);
+                            running++;
+                            int index = i;
+                            int progress = finished.size();
+                            completionService.submit(() -> runTask(type, tasks, index,
+                                    progress));
+                        }
+                    }
+                }
+                if (running == 0) {
+                    break;
                 }
-                task.clean();
-                mTasksRan.forEach(Task::clean);
-                throw e;
+
+                TaskResult result;
+                try {
+                    result = completionService.take().get();
+                } catch (ExecutionException e) {
+                    // runTask catches every error of the task itself
+                    throw new IllegalStateException(e.getCause());
+                }
+                running--;
+                Task<? super T> task = tasks.get(result.index);
+                if (result.error == null) {
+                    finished.add(result.index);
+                    mTasksRan.add(task);
+                } else {
+                    failedTasks.add(task);
+                    if (failure == null) {
+                        failure = result.error;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new CompilationFailedException("Build was interrupted", e);
+        } finally {
+            executor.shutdown();
+        }
+
+        if (failure != null) {
+            if (failure instanceof OutOfMemoryError) {
+                tasks.clear();
+                mTasksRan.clear();
+                throw new CompilationFailedException("Builder ran out of memory", failure);
             }
-            mTasksRan.add(task);
+            failedTasks.forEach(Task::clean);
+            mTasksRan.forEach(Task::clean);
+            rethrow(failure);
         }
         mTasksRan.forEach(Task::clean);
+
+        try (BuildTrace.Span ignored = BuildTrace.span("Save caches")) {
+            getModule().saveCaches();
+        } catch (IOException e) {
+            // the next build after a restart will just do more work
+            getLogger().warning("Unable to save build caches: " + e.getMessage());
+        }
+    }
+
+    private TaskResult runTask(BuildType type, List<Task<? super T>> tasks, int index,
+                               int finishedCount) {
+        Task<? super T> task = tasks.get(index);
+        getLogger().info("Running " + task.getName());
+        mMainHandler.post(() -> updateProgress(task.getName(), "Task started",
+                (int) ((finishedCount / (float) tasks.size()) * 100f)));
+        try (BuildTrace.Span ignored = BuildTrace.span("task", task.getName())) {
+            try (BuildTrace.Span prepare = BuildTrace.span("task", "prepare")) {
+                task.prepare(type);
+            }
+            task.run();
+            return new TaskResult(index, null);
+        } catch (Throwable e) {
+            return new TaskResult(index, e);
+        }
+    }
+
+    /**
+     * @return the indices of the tasks each task has to wait for. A task that does not declare
+     * its prerequisites waits for every task before it, and every task after it waits for it.
+     */
+    private List<Set<Integer>> getPrerequisites(List<Task<? super T>> tasks) {
+        List<Set<Integer>> prerequisites = new ArrayList<>(tasks.size());
+        int lastBarrier = -1;
+        for (int i = 0; i < tasks.size(); i++) {
+            Set<Class<?>> types = tasks.get(i).getPrerequisites();
+            Set<Integer> indices = new HashSet<>();
+            if (types == null) {
+                for (int j = 0; j < i; j++) {
+                    indices.add(j);
+                }
+                lastBarrier = i;
+            } else {
+                if (lastBarrier != -1) {
+                    indices.add(lastBarrier);
+                }
+                for (int j = lastBarrier + 1; j < i; j++) {
+                    Task<? super T> other = tasks.get(j);
+                    for (Class<?> prerequisite : types) {
+                        if (prerequisite.isInstance(other)) {
+                            indices.add(j);
+                            break;
+                        }
+                    }
+                }
+            }
+            prerequisites.add(indices);
+        }
+        return prerequisites;
+    }
+
+    private static void rethrow(Throwable e) throws CompilationFailedException, IOException {
+        if (e instanceof CompilationFailedException) {
+            throw (CompilationFailedException) e;
+        }
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new CompilationFailedException(e.getMessage(), e);
+    }
+
+    private static class TaskResult {
+        final int index;
+        final Throwable error;
+
+        TaskResult(int index, Throwable error) {
+            this.index = index;
+            this.error = error;
+        }
     }
 
     public abstract List<Task<? super T>> getTasks(BuildType type);
@@ -1,11 +1,14 @@
 package com.tyron.builder.compiler;
 
+import androidx.annotation.Nullable;
+
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.Module;
 
 import java.io.IOException;
+import java.util.Set;
 
 /**
  *
@@ -57,6 +60,20 @@ public abstract class Task<T extends Module> {
      */
     public abstract void run() throws IOException, CompilationFailedException;
 
+    /**
+     * Returns the types of the tasks that must finish before this task runs. Only the tasks
+     * added to the builder before this one are considered, the others may run at the same time
+     * as this task.
+     * <p>
+     * Tasks that return null wait for every task added before them, and every task added
+     * after them waits for them. Override this only if the task is safe to run in parallel
+     * with the tasks it does not list.
+     */
+    @Nullable
+    public Set<Class<?>> getPrerequisites() {
+        return null;
+    }
+
     /**
      * Called after the compilation has finished successfully on every tasks
      */
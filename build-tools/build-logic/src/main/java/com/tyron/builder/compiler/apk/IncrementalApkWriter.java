@@ -0,0 +1,444 @@
+package com.tyron.builder.compiler.apk;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.sdklib.build.ApkBuilder;
+import com.android.zipflinger.BytesSource;
+import com.android.zipflinger.Entry;
+import com.android.zipflinger.Source;
+import com.android.zipflinger.Sources;
+import com.android.zipflinger.ZipArchive;
+import com.android.zipflinger.ZipSource;
+import com.tyron.builder.compiler.trace.BuildTrace;
+import com.tyron.builder.exception.CompilationFailedException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Writes an APK by editing the one written by the previous build in place.
+ * <p>
+ * The inputs of every entry are saved to an index next to the APK. On the next build only the
+ * entries whose inputs have changed are deleted and written again, the rest of the APK
+ * including its central directory is kept as is. Entries copied from other zip files are
+ * copied without being recompressed, and uncompressed entries are aligned as they are written
+ * so the APK does not need to go through zipalign. Shared libraries are only stored
+ * uncompressed and page aligned when the app does not extract them, otherwise they are
+ * compressed like any other file.
+ */
+public class IncrementalApkWriter {
+
+    /**
+     * Bump this whenever the format of the index changes
+     */
+    private static final int VERSION = 2;
+    private static final int MAGIC = 0x41504B49;
+
+    private static final long DEFAULT_ALIGNMENT = 4;
+    private static final long PAGE_ALIGNMENT = 4096;
+
+    /**
+     * Where the contents of an entry come from
+     */
+    private static class Input {
+        final String path;
+        /**
+         * The name of the entry in the zip file at path, null if path is a regular file
+         */
+        final String entryName;
+        /**
+         * The length and last modified time of a file, or the crc and size of a zip entry
+         */
+        final long first;
+        final long second;
+
+        Input(String path, String entryName, long first, long second) {
+            this.path = path;
+            this.entryName = entryName;
+            this.first = first;
+            this.second = second;
+        }
+
+        /**
+         * @return the uncompressed size of the entry
+         */
+        long getSize() {
+            return entryName == null ? first : second;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Input)) {
+                return false;
+            }
+            Input input = (Input) o;
+            return first == input.first &&
+                   second == input.second &&
+                   path.equals(input.path) &&
+                   Objects.equals(entryName, input.entryName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, entryName, first, second);
+        }
+    }
+
+    private final File mApk;
+    private final File mIndex;
+    private final int mCompressionLevel;
+    private boolean mExtractNativeLibs = true;
+
+    private final Map<String, Input> mInputs = new LinkedHashMap<>();
+
+    /**
+     * @param apk              the apk to write, its index is saved next to it
+     * @param compressionLevel the compression level of files added to the apk, entries copied
+     *                         from zip files keep their compression
+     */
+    public IncrementalApkWriter(@NonNull File apk, int compressionLevel) {
+        mApk = apk;
+        mIndex = new File(apk.getParentFile(), apk.getName() + ".index");
+        mCompressionLevel = compressionLevel;
+    }
+
+    /**
+     * @param extractNativeLibs the value of android:extractNativeLibs in the manifest. When it
+     *                          is false the platform maps the shared libraries directly from
+     *                          the apk, so they are stored uncompressed and page aligned.
+     */
+    public void setExtractNativeLibs(boolean extractNativeLibs) {
+        mExtractNativeLibs = extractNativeLibs;
+    }
+
+    /**
+     * Adds a file to the apk
+     */
+    public void addFile(@NonNull File file, @NonNull String archivePath)
+            throws CompilationFailedException {
+        add(archivePath, new Input(file.getAbsolutePath(), null, file.length(),
+                file.lastModified()));
+    }
+
+    /**
+     * Adds every file entry of the zip to the apk
+     */
+    public void addZip(@NonNull File zip) throws IOException, CompilationFailedException {
+        addZip(zip, false);
+    }
+
+    /**
+     * Adds the java resources of a library jar to the apk, class files and the signature of
+     * the jar are skipped
+     */
+    public void addResourcesFromJar(@NonNull File jar)
+            throws IOException, CompilationFailedException {
+        addZip(jar, true);
+    }
+
+    private void addZip(File zip, boolean resourcesOnly)
+            throws IOException, CompilationFailedException {
+        String path = zip.getAbsolutePath();
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                String name = entry.getName();
+                if (name.contains("../")) {
+                    throw new CompilationFailedException(
+                            "Entry " + name + " of " + zip + " contains invalid characters");
+                }
+                if (resourcesOnly && !isJavaResource(name)) {
+                    continue;
+                }
+                add(name, new Input(path, name, entry.getCrc(), entry.getSize()));
+            }
+        }
+    }
+
+    /**
+     * Adds the shared libraries of a folder containing one folder per abi
+     */
+    public void addNativeLibraries(@NonNull File nativeFolder) throws CompilationFailedException {
+        File[] abis = nativeFolder.listFiles(File::isDirectory);
+        if (abis == null) {
+            return;
+        }
+        for (File abi : abis) {
+            File[] libraries = abi.listFiles(c -> c.isFile() && c.getName().endsWith(".so"));
+            if (libraries == null) {
+                continue;
+            }
+            for (File library : libraries) {
+                addFile(library, "lib/" + abi.getName() + "/" + library.getName());
+            }
+        }
+    }
+
+    /**
+     * Adds the java resources of a source folder
+     */
+    public void addSourceFolder(@NonNull File folder) throws CompilationFailedException {
+        addSourceFolder(folder, "");
+    }
+
+    private void addSourceFolder(File folder, String prefix) throws CompilationFailedException {
+        File[] children = folder.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String name = child.getName();
+            if (child.isDirectory()) {
+                if (ApkBuilder.checkFolderForPackaging(name)) {
+                    addSourceFolder(child, prefix + name + "/");
+                }
+            } else if (ApkBuilder.checkFileForPackaging(name)) {
+                addFile(child, prefix + name);
+            }
+        }
+    }
+
+    private void add(String archivePath, Input input) throws CompilationFailedException {
+        Input duplicate = mInputs.putIfAbsent(archivePath, input);
+        if (duplicate != null) {
+            String message = "Duplicate files from two libraries detected. \n";
+            message += "File1: " + duplicate.path + " \n";
+            message += "File2: " + input.path + " \n";
+            message += "Archive path: " + archivePath;
+            throw new CompilationFailedException(message);
+        }
+    }
+
+    /**
+     * Writes the entries added since this writer was created, the apk is written from scratch
+     * if it was not written by this class or has been modified since.
+     *
+     * @return the number of entries written
+     */
+    public int write() throws IOException {
+        Map<String, Input> previous = readIndex();
+        if (previous == null) {
+            Files.deleteIfExists(mApk.toPath());
+            previous = new HashMap<>();
+        }
+
+        List<String> deleted = new ArrayList<>();
+        for (Map.Entry<String, Input> entry : previous.entrySet()) {
+            if (!entry.getValue().equals(mInputs.get(entry.getKey()))) {
+                deleted.add(entry.getKey());
+            }
+        }
+        Map<String, Input> added = new LinkedHashMap<>();
+        for (Map.Entry<String, Input> entry : mInputs.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                added.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (deleted.isEmpty() && added.isEmpty()) {
+            return 0;
+        }
+
+        // the apk is only consistent with the index once it has been fully written
+        Files.deleteIfExists(mIndex.toPath());
+        try (ZipArchive archive = new ZipArchive(mApk.toPath())) {
+            // zipflinger requires deleting entries before adding the ones replacing them
+            for (String name : deleted) {
+                archive.delete(name);
+            }
+
+            Map<String, ZipSource> zipSources = new LinkedHashMap<>();
+            for (Map.Entry<String, Input> entry : added.entrySet()) {
+                String name = entry.getKey();
+                Input input = entry.getValue();
+                if (input.entryName == null) {
+                    archive.add(getFileSource(new File(input.path), name));
+                    continue;
+                }
+
+                ZipSource zipSource = zipSources.get(input.path);
+                if (zipSource == null) {
+                    zipSource = new ZipSource(new File(input.path).toPath());
+                    zipSources.put(input.path, zipSource);
+                }
+                Entry zipEntry = zipSource.entries().get(input.entryName);
+                long alignment = zipEntry != null && !zipEntry.isCompressed()
+                        ? getAlignment(name)
+                        : Source.NO_ALIGNMENT;
+                zipSource.select(input.entryName, name, ZipSource.COMPRESSION_NO_CHANGE,
+                        alignment);
+            }
+            for (ZipSource zipSource : zipSources.values()) {
+                archive.add(zipSource);
+            }
+        } catch (IOException | RuntimeException e) {
+            // never leave a half written apk behind to be used as the base of the next build
+            Files.deleteIfExists(mApk.toPath());
+            throw e;
+        }
+
+        writeIndex();
+
+        long bytes = 0;
+        for (Input input : added.values()) {
+            bytes += input.getSize();
+        }
+        BuildTrace.count("package.entriesWritten", added.size());
+        BuildTrace.count("package.bytesWritten", bytes);
+        return added.size();
+    }
+
+    private BytesSource getFileSource(File file, String name) throws IOException {
+        boolean stored = isStored(name) || (!mExtractNativeLibs && name.endsWith(".so"));
+        int compressionLevel = stored ? Deflater.NO_COMPRESSION : mCompressionLevel;
+        BytesSource source = Sources.from(file.toPath(), name, compressionLevel);
+        if (compressionLevel == Deflater.NO_COMPRESSION) {
+            source.align(getAlignment(name));
+        }
+        return source;
+    }
+
+    /**
+     * @return the saved inputs of the entries of the apk, null if the apk has to be written
+     * from scratch
+     */
+    @Nullable
+    private Map<String, Input> readIndex() {
+        if (!mIndex.isFile() || !mApk.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mIndex)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            if (in.readLong() != mApk.length() || in.readLong() != mApk.lastModified()) {
+                return null;
+            }
+            // the unchanged shared libraries would keep their previous compression
+            if (in.readBoolean() != mExtractNativeLibs) {
+                return null;
+            }
+            int count = in.readInt();
+            Map<String, Input> inputs = new HashMap<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                String path = in.readUTF();
+                String entryName = in.readBoolean() ? in.readUTF() : null;
+                inputs.put(name, new Input(path, entryName, in.readLong(), in.readLong()));
+            }
+            return inputs;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes to a temporary file first so a crash while writing never leaves a truncated
+     * index behind
+     */
+    private void writeIndex() throws IOException {
+        File temp = File.createTempFile(mIndex.getName(), ".tmp", mIndex.getParentFile());
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(mApk.length());
+                out.writeLong(mApk.lastModified());
+                out.writeBoolean(mExtractNativeLibs);
+                out.writeInt(mInputs.size());
+                for (Map.Entry<String, Input> entry : mInputs.entrySet()) {
+                    Input input = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(input.path);
+                    out.writeBoolean(input.entryName != null);
+                    if (input.entryName != null) {
+                        out.writeUTF(input.entryName);
+                    }
+                    out.writeLong(input.first);
+                    out.writeLong(input.second);
+                }
+            }
+            Files.move(temp.toPath(), mIndex.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private static boolean isJavaResource(String archivePath) {
+        String[] segments = archivePath.split("/");
+        if (segments.length == 0) {
+            return false;
+        }
+        for (int i = 0; i < segments.length - 1; i++) {
+            if (!ApkBuilder.checkFolderForPackaging(segments[i])) {
+                return false;
+            }
+        }
+        if (isSignatureFile(archivePath)) {
+            return false;
+        }
+        return ApkBuilder.checkFileForPackaging(segments[segments.length - 1]);
+    }
+
+    /**
+     * The apk is signed again after packaging, the signature of the libraries would conflict
+     * with it
+     */
+    private static boolean isSignatureFile(String archivePath) {
+        if (!archivePath.startsWith("META-INF/")) {
+            return false;
+        }
+        String name = archivePath.toUpperCase(Locale.ROOT);
+        return name.equals("META-INF/MANIFEST.MF") ||
+               name.endsWith(".SF") ||
+               name.endsWith(".RSA") ||
+               name.endsWith(".DSA") ||
+               name.endsWith(".EC");
+    }
+
+    /**
+     * Files that are already compressed gain nothing from being deflated again
+     */
+    private static boolean isStored(String archivePath) {
+        return archivePath.endsWith(".png") ||
+               archivePath.endsWith(".jpg") ||
+               archivePath.endsWith(".ogg") ||
+               archivePath.endsWith(".mp3") ||
+               archivePath.endsWith(".zip") ||
+               archivePath.endsWith(".jar");
+    }
+
+    private static long getAlignment(String archivePath) {
+        // uncompressed shared libraries are mapped directly from the apk
+        return archivePath.endsWith(".so") ? PAGE_ALIGNMENT : DEFAULT_ALIGNMENT;
+    }
+}
@@ -1,22 +1,27 @@
 package com.tyron.builder.compiler.apk;
 
-import android.net.Uri;
-
-import com.android.sdklib.build.ApkBuilder;
-import com.android.sdklib.build.ApkCreationException;
-import com.android.sdklib.build.DuplicateFileException;
-import com.android.sdklib.build.SealedApkException;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.incremental.dex.IncrementalD8Task;
+import com.tyron.builder.compiler.incremental.dex.LibraryDexStore;
+import com.tyron.builder.compiler.manifest.xml.AndroidManifest;
+import com.tyron.builder.compiler.trace.BuildTrace;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.AndroidModule;
 
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.Deflater;
 
 public class PackageTask extends Task<AndroidModule> {
 
@@ -41,6 +46,7 @@ public class PackageTask extends Task<AndroidModule> {
      */
     private File mApk;
     private BuildType mBuildType;
+    private boolean mExtractNativeLibs;
 
     public PackageTask(Project project, AndroidModule module, ILogger logger) {
         super(project, module, logger);
@@ -58,89 +64,109 @@ public class PackageTask extends Task<AndroidModule> {
         File mBinDir = new File(getModule().getBuildDirectory(), "bin");
 
         mApk = new File(mBinDir, "generated.apk");
-        mDexFile = new File(mBinDir, "classes.dex");
         mGeneratedRes = new File(mBinDir, "generated.apk.res");
-        File[] binFiles = mBinDir.listFiles();
-        if (binFiles != null) {
-            for (File child : binFiles) {
-                if (!child.isFile()) {
-                    continue;
-                }
-                if (!child.getName().equals("classes.dex") && child.getName().endsWith(".dex")) {
-                    mDexFiles.add(child);
-                }
+        if (type == BuildType.DEBUG) {
+            // debug builds merge the program classes into buckets instead of a single dex
+            List<File> dexFiles = IncrementalD8Task.getBucketDexFiles(getModule());
+            if (!dexFiles.isEmpty()) {
+                mDexFile = dexFiles.get(0);
+                mDexFiles.addAll(dexFiles.subList(1, dexFiles.size()));
             }
+        } else {
+            mDexFile = new File(mBinDir, "classes.dex");
+            mDexFiles.addAll(LibraryDexStore.getDexFiles(mBinDir));
+            mDexFiles.remove(mDexFile);
         }
 
         mLibraries.addAll(getModule().getLibraries());
+        mExtractNativeLibs = isExtractNativeLibs(new File(mBinDir, "AndroidManifest.xml"));
 
         getLogger().debug("Packaging APK.");
     }
 
     @Override
     public void run() throws IOException, CompilationFailedException {
+        // debug builds are rebuilt often, favor speed over size for the entries that changed
+        int compressionLevel = mBuildType == BuildType.DEBUG
+                ? Deflater.BEST_SPEED
+                : Deflater.DEFAULT_COMPRESSION;
+        IncrementalApkWriter writer = new IncrementalApkWriter(mApk, compressionLevel);
+        writer.setExtractNativeLibs(mExtractNativeLibs);
+        writer.addZip(mGeneratedRes);
 
         int dexCount = 1;
-        try {
-            ApkBuilder builder = new ApkBuilder(
-                    mApk.getAbsolutePath(),
-                    mGeneratedRes.getAbsolutePath(),
-                    mDexFile.getAbsolutePath(),
-                    null,
-                    null);
-
-            for (File extraDex : mDexFiles) {
-                dexCount++;
-                builder.addFile(extraDex, Uri.parse(extraDex.getAbsolutePath()).getLastPathSegment());
-            }
+        if (mDexFile != null) {
+            writer.addFile(mDexFile, "classes.dex");
+        }
+        for (File extraDex : mDexFiles) {
+            dexCount++;
+            writer.addFile(extraDex, "classes" + dexCount + ".dex");
+        }
 
-            for (File library : mLibraries) {
-                builder.addResourcesFromJar(library);
+        for (File library : mLibraries) {
+            writer.addResourcesFromJar(library);
 
-                File parent = library.getParentFile();
-                if (parent != null) {
-                    File jniFolder = new File(parent, "jni");
-                    if (jniFolder.exists() && jniFolder.isDirectory()) {
-                        builder.addNativeLibraries(jniFolder);
-                    }
+            File parent = library.getParentFile();
+            if (parent != null) {
+                File jniFolder = new File(parent, "jni");
+                if (jniFolder.exists() && jniFolder.isDirectory()) {
+                    writer.addNativeLibraries(jniFolder);
                 }
             }
+        }
 
-            if (getModule().getNativeLibrariesDirectory().exists()) {
-                builder.addNativeLibraries(getModule().getNativeLibrariesDirectory());
+        if (getModule().getNativeLibrariesDirectory().exists()) {
+            writer.addNativeLibraries(getModule().getNativeLibrariesDirectory());
+        }
+
+        if (mBuildType == BuildType.DEBUG) {
+            // For debug mode, dex files are not merged to save up compile time
+            for (File dexFile : IncrementalD8Task.getLibraryDexFiles(getModule())) {
+                dexCount++;
+                writer.addFile(dexFile, "classes" + dexCount + ".dex");
             }
+        }
+
+        File resourcesDir = getModule().getResourcesDir();
+        if (resourcesDir.exists()) {
+            writer.addSourceFolder(resourcesDir);
+        }
 
-            if (mBuildType == BuildType.DEBUG) {
-                builder.setDebugMode(true);
-                // For debug mode, dex files are not merged to save up compile time
-                for (File it : getModule().getLibraries()) {
-                    File parent = it.getParentFile();
-                    if (parent != null) {
-                        File[] dexFiles = parent.listFiles(c -> c.getName().endsWith(".dex"));
-                        if (dexFiles != null) {
-                            for (File dexFile : dexFiles) {
-                                dexCount++;
-                                builder.addFile(dexFile, "classes" + dexCount + ".dex");
-                            }
-                        }
+        try (BuildTrace.Span ignored = BuildTrace.span("Write APK")) {
+            int written = writer.write();
+            getLogger().debug("Packaged " + written + " changed entries.");
+        }
+    }
+
+    /**
+     * @return the value of android:extractNativeLibs of the merged manifest, the platform
+     * extracts the shared libraries unless it is set to false
+     */
+    private static boolean isExtractNativeLibs(File manifest) throws IOException {
+        if (!manifest.exists()) {
+            return true;
+        }
+        try (InputStream inputStream = new FileInputStream(manifest)) {
+            XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+            parser.setInput(inputStream, null);
+
+            int type;
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (type != XmlPullParser.START_TAG ||
+                    !AndroidManifest.NODE_APPLICATION.equals(parser.getName())) {
+                    continue;
+                }
+                for (int i = 0; i < parser.getAttributeCount(); i++) {
+                    String name = parser.getAttributeName(i);
+                    if (name.equals("android:" + AndroidManifest.ATTRIBUTE_EXTRACT_NATIVE_LIBS)) {
+                        return !"false".equals(parser.getAttributeValue(i));
                     }
                 }
+                return true;
             }
-
-            File resourcesDir = getModule().getResourcesDir();
-            if (resourcesDir.exists()) {
-                builder.addSourceFolder(resourcesDir);
-            }
-
-            builder.sealApk();
-        } catch (ApkCreationException | SealedApkException e) {
-            throw new CompilationFailedException(e);
-        } catch (DuplicateFileException e) {
-            String message = "Duplicate files from two libraries detected. \n";
-            message += "File1: " + e.getFile1() + " \n";
-            message += "File2: " + e.getFile2() + " \n";
-            message += "Archive path: " + e.getArchivePath();
-            throw new CompilationFailedException(message);
+        } catch (XmlPullParserException e) {
+            throw new IOException("Unable to read " + manifest, e);
         }
+        return true;
     }
 }
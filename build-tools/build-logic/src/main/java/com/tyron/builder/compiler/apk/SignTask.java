@@ -8,8 +8,6 @@ import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.AndroidModule;
 
-import org.apache.commons.io.FileUtils;
-
 import java.io.File;
 import java.io.IOException;
 
@@ -29,13 +27,10 @@ public class SignTask extends Task<AndroidModule> {
 
     @Override
     public void prepare(BuildType type) throws IOException {
-        mInputApk = new File(getModule().getBuildDirectory(), "bin/aligned.apk");
+        // the generated apk is kept, the next build packages on top of it
+        mInputApk = new File(getModule().getBuildDirectory(), "bin/generated.apk");
         mOutputApk = new File(getModule().getBuildDirectory(), "bin/signed.apk");
 
-        if (!mInputApk.exists()) {
-            mInputApk = new File(getModule().getBuildDirectory(), "bin/generated.apk");
-        }
-
         if (!mInputApk.exists()) {
             throw new IOException("Unable to find generated apk file.");
         }
@@ -53,7 +48,5 @@ public class SignTask extends Task<AndroidModule> {
         } catch (Exception e) {
             throw new CompilationFailedException(e);
         }
-
-        FileUtils.forceDelete(mInputApk);
     }
 }
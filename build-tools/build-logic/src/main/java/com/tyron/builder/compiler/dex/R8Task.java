@@ -7,6 +7,7 @@ import com.android.tools.r8.R8Command;
 import com.android.tools.r8.origin.Origin;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.symbol.MergeSymbolsTask;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
@@ -58,6 +59,10 @@ public class R8Task extends Task<AndroidModule> {
                     .setMode(CompilationMode.RELEASE)
                     .setProguardMapOutputPath(mappingOutput.toPath())
                     .setOutput(output.toPath(), OutputMode.DexIndexed);
+            File rClassJar = MergeSymbolsTask.getRClassJar(getModule());
+            if (rClassJar.exists()) {
+                command.addProgramFiles(rClassJar.toPath());
+            }
             R8.run(command.build());
         } catch (com.android.tools.r8.CompilationFailedException e) {
             throw new CompilationFailedException(e);
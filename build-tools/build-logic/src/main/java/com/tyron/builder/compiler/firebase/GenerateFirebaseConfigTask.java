@@ -2,8 +2,10 @@ package com.tyron.builder.compiler.firebase;
 
 import androidx.annotation.VisibleForTesting;
 
+import com.google.common.collect.ImmutableSet;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.java.CheckLibrariesTask;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
@@ -22,6 +24,7 @@ import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 public class GenerateFirebaseConfigTask extends Task<AndroidModule> {
 
@@ -57,6 +60,14 @@ public class GenerateFirebaseConfigTask extends Task<AndroidModule> {
         return TAG;
     }
 
+    /**
+     * Only writes to the resources of the module, it has to finish before they are compiled
+     */
+    @Override
+    public Set<Class<?>> getPrerequisites() {
+        return ImmutableSet.of(CheckLibrariesTask.class);
+    }
+
     private File mConfigFile;
 
     @Override
@@ -5,36 +5,63 @@ import com.android.tools.r8.D8;
 import com.android.tools.r8.D8Command;
 import com.android.tools.r8.DiagnosticsHandler;
 import com.android.tools.r8.OutputMode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
 import com.tyron.builder.compiler.dex.D8Task;
 import com.tyron.builder.compiler.dex.DexDiagnosticHandler;
+import com.tyron.builder.compiler.symbol.MergeSymbolsTask;
+import com.tyron.builder.compiler.trace.BuildTrace;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.CodeAssistLibrary;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.cache.CacheHolder;
+import com.tyron.builder.project.cache.DataSerializer;
 import com.tyron.common.util.Cache;
 
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class IncrementalD8Task extends Task<AndroidModule> {
 
     private static final String TAG = IncrementalD8Task.class.getSimpleName();
 
+    /**
+     * Libraries are never debugged so they are always dexed in release mode
+     */
+    private static final CompilationMode LIBRARY_MODE = CompilationMode.RELEASE;
+    private static final int MAX_PARALLEL_DEXING = 3;
+
+    /**
+     * The number of buckets the program classes are merged into on debug builds, changing it
+     * moves classes to other buckets and merges every bucket again
+     */
+    private static final int NUMBER_OF_BUCKETS = 16;
+    private static final String FINGERPRINT_FILE = "inputs.hash";
+    private static final String R_CLASSES = "rClasses";
+
     public static final CacheHolder.CacheKey<String, List<File>> CACHE_KEY =
-            new CacheHolder.CacheKey<>("dexCache");
+            new CacheHolder.CacheKey<>("dexCache", DataSerializer.STRING,
+                    DataSerializer.listOf(DataSerializer.FILE));
 
     private DiagnosticsHandler diagnosticsHandler;
     private List<Path> mClassFiles;
@@ -72,10 +99,15 @@ public class IncrementalD8Task extends Task<AndroidModule> {
                 new File(getModule().getBuildDirectory(), "bin/java/classes")));
         mClassFiles.addAll(D8Task.getClassFiles(
                 new File(getModule().getBuildDirectory(), "bin/kotlin/classes")));
+        Set<Path> classFiles = new HashSet<>(mClassFiles);
         for (Cache.Key<String> key : new HashSet<>(mDexCache.getKeys())) {
-            if (!mFilesToCompile.contains(key.file)) {
-                File file = mDexCache.get(key.file, "dex").iterator().next();
-                deleteAllFiles(file, ".dex");
+            if (!"dex".equals(key.key)) {
+                continue;
+            }
+            if (!classFiles.contains(key.file)) {
+                for (File dexFile : mDexCache.get(key.file, "dex")) {
+                    deleteAllFiles(dexFile, ".dex");
+                }
                 mDexCache.remove(key.file, "dex");
             }
         }
@@ -101,7 +133,7 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         super.clean();
     }
 
-    private void doRelease() throws CompilationFailedException {
+    private void doRelease() throws IOException, CompilationFailedException {
         try {
             ensureDexedLibraries();
             D8Command command = D8Command.builder(diagnosticsHandler).addClasspathFiles(
@@ -110,18 +142,22 @@ public class IncrementalD8Task extends Task<AndroidModule> {
                     .addLibraryFiles(getLibraryFiles()).setMinApiLevel(getModule().getMinSdk())
                     .setMode(CompilationMode.RELEASE).setIntermediate(true)
                     .setOutput(mOutputPath, OutputMode.DexFilePerClassFile).build();
-            D8.run(command);
+            try (BuildTrace.Span ignored = BuildTrace.span("Dex classes")) {
+                D8.run(command);
+                BuildTrace.count("d8.classesDexed", mFilesToCompile.size());
+            }
             for (Path file : mFilesToCompile) {
                 mDexCache.load(file, "dex", Collections.singletonList(getDexFile(file.toFile())));
             }
 
+            dexRClasses(CompilationMode.RELEASE);
             mergeRelease();
         } catch (com.android.tools.r8.CompilationFailedException e) {
             throw new CompilationFailedException(e);
         }
     }
 
-    private void doDebug() throws CompilationFailedException {
+    private void doDebug() throws IOException, CompilationFailedException {
         try {
             ensureDexedLibraries();
 
@@ -131,115 +167,341 @@ public class IncrementalD8Task extends Task<AndroidModule> {
                     .addLibraryFiles(getLibraryFiles()).setMinApiLevel(getModule().getMinSdk())
                     .setMode(CompilationMode.DEBUG).setIntermediate(true)
                     .setOutput(mOutputPath, OutputMode.DexFilePerClassFile).build();
-            D8.run(command);
+            try (BuildTrace.Span ignored = BuildTrace.span("Dex classes")) {
+                D8.run(command);
+                BuildTrace.count("d8.classesDexed", mFilesToCompile.size());
+            }
 
             for (Path file : mFilesToCompile) {
                 mDexCache.load(file, "dex", Collections.singletonList(getDexFile(file.toFile())));
             }
 
-            D8Command.Builder builder = D8Command.builder(diagnosticsHandler)
-                    .addProgramFiles(getAllDexFiles(mOutputPath.toFile()))
-                    .addLibraryFiles(getLibraryFiles()).addClasspathFiles(
-                            getModule().getLibraries().stream().map(File::toPath)
-                                    .collect(Collectors.toList()))
-                    .setMinApiLevel(getModule().getMinSdk());
-
-            File output = new File(getModule().getBuildDirectory(), "bin");
-            builder.setMode(CompilationMode.DEBUG);
-            builder.setOutput(output.toPath(), OutputMode.DexIndexed);
-            D8.run(builder.build());
-
+            dexRClasses(CompilationMode.DEBUG);
+            mergeBuckets();
         } catch (com.android.tools.r8.CompilationFailedException e) {
             throw new CompilationFailedException(e);
         }
     }
 
-    private void mergeRelease() throws com.android.tools.r8.CompilationFailedException {
+    /**
+     * Merges the dex files of each class into a fixed number of buckets, similar to how
+     * DexArchiveBuilderTask splits its inputs into class buckets. A class always lands in the
+     * same bucket, so only the buckets containing changed classes have to be merged again.
+     */
+    private void mergeBuckets()
+            throws IOException, com.android.tools.r8.CompilationFailedException {
+        try (BuildTrace.Span ignored = BuildTrace.span("Merge dex buckets")) {
+            mergeBuckets(getBucketsDirectory(getModule()));
+        }
+    }
+
+    private void mergeBuckets(File bucketsDirectory)
+            throws IOException, com.android.tools.r8.CompilationFailedException {
+        List<List<Path>> buckets = new ArrayList<>(NUMBER_OF_BUCKETS);
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        File intermediate = mOutputPath.toFile();
+        for (Path dexFile : getAllDexFiles(intermediate)) {
+            buckets.get(getBucket(intermediate, dexFile.toFile())).add(dexFile);
+        }
+
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+            List<Path> dexFiles = buckets.get(i);
+            File output = new File(bucketsDirectory, String.valueOf(i));
+            if (dexFiles.isEmpty()) {
+                if (output.exists()) {
+                    FileUtils.deleteDirectory(output);
+                }
+                continue;
+            }
+
+            String fingerprint = getFingerprint(dexFiles);
+            File fingerprintFile = new File(output, FINGERPRINT_FILE);
+            if (fingerprintFile.exists() &&
+                fingerprint.equals(FileUtils.readFileToString(fingerprintFile,
+                        StandardCharsets.UTF_8))) {
+                continue;
+            }
+
+            getLogger().debug("Merging dex bucket " + i);
+            if (output.exists()) {
+                FileUtils.deleteDirectory(output);
+            }
+            if (!output.mkdirs()) {
+                throw new IOException("Unable to create directory " + output);
+            }
+            D8Command command = D8Command.builder(diagnosticsHandler)
+                    .addProgramFiles(dexFiles)
+                    .addLibraryFiles(getLibraryFiles())
+                    .setMinApiLevel(getModule().getMinSdk())
+                    .setMode(CompilationMode.DEBUG)
+                    .setOutput(output.toPath(), OutputMode.DexIndexed)
+                    .build();
+            D8.run(command);
+            BuildTrace.count("d8.bucketsMerged", 1);
+            // written last, a bucket interrupted while merging is merged again
+            FileUtils.writeStringToFile(fingerprintFile, fingerprint, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @return the merged dex files of the program classes of a debug build, in the order they
+     * should be packaged
+     */
+    public static List<File> getBucketDexFiles(AndroidModule module) {
+        File bucketsDirectory = getBucketsDirectory(module);
+        List<File> dexFiles = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+            dexFiles.addAll(LibraryDexStore.getDexFiles(new File(bucketsDirectory,
+                    String.valueOf(i))));
+        }
+        dexFiles.addAll(LibraryDexStore.getDexFiles(getRClassesDirectory(module)));
+        return dexFiles;
+    }
+
+    private static File getRClassesDirectory(AndroidModule module) {
+        return new File(module.getBuildDirectory(), "intermediate/r-classes");
+    }
+
+    /**
+     * Dexes the R classes of the libraries, they are generated as a jar by MergeSymbolsTask
+     * instead of being compiled from sources so they are dexed separately, only when the jar
+     * has changed
+     */
+    private void dexRClasses(CompilationMode mode)
+            throws IOException, com.android.tools.r8.CompilationFailedException {
+        File rClassJar = MergeSymbolsTask.getRClassJar(getModule());
+        File output = getRClassesDirectory(getModule());
+        if (!rClassJar.exists()) {
+            if (output.exists()) {
+                FileUtils.deleteDirectory(output);
+            }
+            return;
+        }
+        if (output.exists() && !mDexCache.needs(rClassJar.toPath(), R_CLASSES)) {
+            return;
+        }
+
+        getLogger().debug("Dexing R classes");
+        if (output.exists()) {
+            FileUtils.deleteDirectory(output);
+        }
+        if (!output.mkdirs()) {
+            throw new IOException("Unable to create directory " + output);
+        }
+        D8Command command = D8Command.builder(diagnosticsHandler)
+                .addProgramFiles(rClassJar.toPath())
+                .addLibraryFiles(getLibraryFiles())
+                .setMinApiLevel(getModule().getMinSdk())
+                .setMode(mode)
+                .setOutput(output.toPath(), OutputMode.DexIndexed)
+                .build();
+        try (BuildTrace.Span ignored = BuildTrace.span("Dex R classes")) {
+            D8.run(command);
+        }
+        mDexCache.load(rClassJar.toPath(), R_CLASSES, LibraryDexStore.getDexFiles(output));
+    }
+
+    private static File getBucketsDirectory(AndroidModule module) {
+        return new File(module.getBuildDirectory(), "intermediate/dex-buckets");
+    }
+
+    private static int getBucket(File root, File dexFile) {
+        // use the relative path with forward slashes so the bucket is stable across file systems
+        String path = root.toURI().relativize(dexFile.toURI()).getPath();
+        return Math.floorMod(path.hashCode(), NUMBER_OF_BUCKETS);
+    }
+
+    /**
+     * The dex files of a class are only written when the class is dexed, so their names,
+     * lengths and modified times change whenever the contents of the bucket changes
+     */
+    private static String getFingerprint(List<Path> dexFiles) {
+        List<String> entries = new ArrayList<>(dexFiles.size());
+        for (Path dexFile : dexFiles) {
+            File file = dexFile.toFile();
+            entries.add(file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified());
+        }
+        Collections.sort(entries);
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (String entry : entries) {
+            hasher.putString(entry, StandardCharsets.UTF_8);
+            hasher.putByte((byte) 0);
+        }
+        return hasher.hash().toString();
+    }
+
+    private void mergeRelease()
+            throws IOException, com.android.tools.r8.CompilationFailedException {
         File output = new File(getModule().getBuildDirectory(), "bin");
         D8Command command = D8Command.builder(diagnosticsHandler).addClasspathFiles(
                 getModule().getLibraries().stream().map(File::toPath).collect(Collectors.toList()))
                 .addLibraryFiles(getLibraryFiles())
                 .addProgramFiles(getAllDexFiles(mOutputPath.toFile()))
-                .addProgramFiles(getLibraryDexes()).setMinApiLevel(getModule().getMinSdk())
+                .addProgramFiles(getLibraryDexes())
+                .addProgramFiles(LibraryDexStore.getDexFiles(getRClassesDirectory(getModule()))
+                        .stream().map(File::toPath).collect(Collectors.toList()))
+                .setMinApiLevel(getModule().getMinSdk())
                 .setMode(CompilationMode.RELEASE).setOutput(output.toPath(), OutputMode.DexIndexed)
                 .build();
-        D8.run(command);
+        try (BuildTrace.Span ignored = BuildTrace.span("Merge dex")) {
+            D8.run(command);
+        }
     }
 
-    private List<Path> getLibraryDexes() {
-        List<Path> dexes = new ArrayList<>();
-        for (File file : getModule().getLibraries()) {
-            File parent = file.getParentFile();
-            if (parent != null) {
-                File[] dexFiles = parent.listFiles(file1 -> file1.getName().endsWith(".dex"));
-                if (dexFiles != null) {
-                    dexes.addAll(
-                            Arrays.stream(dexFiles).map(File::toPath).collect(Collectors.toList()));
-                }
-            }
+    private List<Path> getLibraryDexes() throws IOException {
+        return getLibraryDexFiles(getModule()).stream().map(File::toPath)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the dex files of every library of the module from the {@link LibraryDexStore}
+     */
+    public static List<File> getLibraryDexFiles(AndroidModule module) throws IOException {
+        List<File> libraries = module.getLibraries().stream().filter(File::exists)
+                .collect(Collectors.toList());
+        Map<File, File> entries = LibraryDexStore.getInstance()
+                .getEntries(libraries, libraries, module.getMinSdk(), LIBRARY_MODE);
+        List<File> dexes = new ArrayList<>();
+        for (File library : libraries) {
+            dexes.addAll(LibraryDexStore.getDexFiles(entries.get(library)));
         }
         return dexes;
     }
 
-
+    /**
+     * @return the dex file d8 writes for the given class file, dex files are named after the
+     * class so they have the same path relative to the output directory
+     */
     private File getDexFile(File file) {
-        File output = new File(getModule().getBuildDirectory(), "bin/classes/");
-        String packageName =
-                file.getAbsolutePath().replace(output.getAbsolutePath(), "").substring(1)
-                        .replace(".class", ".dex");
-
-        File intermediate = new File(getModule().getBuildDirectory(), "intermediate/classes");
-        File file1 = new File(intermediate, packageName);
-        return file1;
+        String path = file.getAbsolutePath();
+        for (String root : new String[]{"bin/java/classes", "bin/kotlin/classes"}) {
+            String classesPath = new File(getModule().getBuildDirectory(), root)
+                    .getAbsolutePath() + File.separator;
+            if (path.startsWith(classesPath)) {
+                path = path.substring(classesPath.length());
+                break;
+            }
+        }
+        String packageName = path.substring(0, path.length() - ".class".length()) + ".dex";
+        return new File(mOutputPath.toFile(), packageName);
     }
 
     /**
-     * Ensures that all libraries of the project has been dex-ed
+     * Ensures that all libraries of the project has been dex-ed. Libraries missing from the
+     * {@link LibraryDexStore} are dexed in parallel.
      *
      * @throws com.android.tools.r8.CompilationFailedException if the compilation has failed
      */
-    protected void ensureDexedLibraries() throws com.android.tools.r8.CompilationFailedException {
-        List<File> libraries = getModule().getLibraries();
+    protected void ensureDexedLibraries()
+            throws IOException, com.android.tools.r8.CompilationFailedException {
+        try (BuildTrace.Span ignored = BuildTrace.span("Dex libraries")) {
+            ensureDexedLibraries(LibraryDexStore.getInstance());
+        }
+    }
 
-        for (File lib : libraries) {
-            File parentFile = lib.getParentFile();
-            if (parentFile == null) {
-                continue;
-            }
-            File[] libFiles = lib.getParentFile().listFiles();
-            if (libFiles == null) {
-                if (!lib.delete()) {
-                    getLogger().warning("Failed to delete " + lib.getAbsolutePath());
-                }
+    private void ensureDexedLibraries(LibraryDexStore store)
+            throws IOException, com.android.tools.r8.CompilationFailedException {
+        List<File> libraries = getModule().getLibraries();
+        int minSdk = getModule().getMinSdk();
+
+        List<File> existing = libraries.stream().filter(File::exists)
+                .collect(Collectors.toList());
+        // every library is dexed with all the libraries on the classpath
+        Map<File, File> libraryEntries = store.getEntries(existing, existing, minSdk,
+                LIBRARY_MODE);
+
+        Set<File> entries = new HashSet<>();
+        Map<File, File> missing = new LinkedHashMap<>();
+        for (File lib : existing) {
+            File entry = libraryEntries.get(lib);
+            entries.add(entry);
+            if (entry.exists()) {
+                store.touch(entry);
             } else {
-                File dex = new File(lib.getParentFile(), "classes.dex");
-                if (dex.exists()) {
-                    continue;
+                missing.put(lib, entry);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            List<Path> classpath = existing.stream().map(File::toPath)
+                    .collect(Collectors.toList());
+            int threads = Math.min(MAX_PARALLEL_DEXING,
+                    Runtime.getRuntime().availableProcessors());
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (Map.Entry<File, File> entry : missing.entrySet()) {
+                    futures.add(executor.submit(() -> {
+                        dexLibrary(store, entry.getKey(), entry.getValue(), classpath);
+                        return null;
+                    }));
                 }
-                if (lib.exists()) {
-                    String message;
-                    CodeAssistLibrary library = getModule().getLibrary(parentFile.getName());
-                    if (library != null) {
-                        boolean declared = library.getDeclaration() != null;
-                        message = "Dexing library " +
-                                  (declared ? library.getDeclaration() : library.getSourceFile()
-                                          .getName());
-                    } else {
-                        message = "Dexing jar " + parentFile.getName();
-                    }
-                    getLogger().debug(message);
-                    D8Command command = D8Command.builder(diagnosticsHandler)
-                                    .addLibraryFiles(getLibraryFiles())
-                                    .addClasspathFiles(libraries.stream().map(File::toPath)
-                                                               .collect(Collectors.toList()))
-                                    .addProgramFiles(lib.toPath())
-                                    .setMode(CompilationMode.RELEASE)
-                                    .setMinApiLevel(getModule().getMinSdk())
-                                    .setOutput(lib.getParentFile().toPath(), OutputMode.DexIndexed)
-                                    .build();
-                    D8.run(command);
+                for (Future<?> future : futures) {
+                    waitFor(future);
                 }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        store.trim(entries);
+    }
+
+    private void dexLibrary(LibraryDexStore store, File lib, File entry, List<Path> classpath)
+            throws IOException, com.android.tools.r8.CompilationFailedException {
+        File parentFile = lib.getParentFile();
+        String message;
+        CodeAssistLibrary library =
+                parentFile == null ? null : getModule().getLibrary(parentFile.getName());
+        if (library != null) {
+            boolean declared = library.getDeclaration() != null;
+            message = "Dexing library " +
+                      (declared ? library.getDeclaration() : library.getSourceFile().getName());
+        } else {
+            message = "Dexing jar " + lib.getName();
+        }
+        getLogger().debug(message);
+
+        store.create(entry, output -> {
+            D8Command command = D8Command.builder(diagnosticsHandler)
+                    .addLibraryFiles(getLibraryFiles())
+                    .addClasspathFiles(classpath)
+                    .addProgramFiles(lib.toPath())
+                    .setMode(LIBRARY_MODE)
+                    .setMinApiLevel(getModule().getMinSdk())
+                    .setOutput(output.toPath(), OutputMode.DexIndexed)
+                    .build();
+            try (BuildTrace.Span ignored = BuildTrace.span("Dex " + lib.getName())) {
+                D8.run(command);
+                BuildTrace.count("d8.librariesDexed", 1);
             }
+        });
+    }
+
+    private static void waitFor(Future<?> future)
+            throws IOException, com.android.tools.r8.CompilationFailedException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while dexing libraries", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof com.android.tools.r8.CompilationFailedException) {
+                throw (com.android.tools.r8.CompilationFailedException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
         }
     }
 
@@ -250,9 +512,7 @@ public class IncrementalD8Task extends Task<AndroidModule> {
         return path;
     }
 
-    private void deleteAllFiles(File classFile, String ext) throws IOException {
-
-        File dexFile = getDexFile(classFile);
+    private void deleteAllFiles(File dexFile, String ext) throws IOException {
         if (!dexFile.exists()) {
             return;
         }
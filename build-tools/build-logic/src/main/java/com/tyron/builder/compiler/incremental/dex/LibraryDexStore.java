@@ -0,0 +1,233 @@
+package com.tyron.builder.compiler.incremental.dex;
+
+import androidx.annotation.NonNull;
+
+import com.android.tools.r8.CompilationMode;
+import com.tyron.builder.BuildModule;
+import com.tyron.common.logging.IdeLog;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.tyron.common.util.FileHashCache;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Stores the dex files of libraries in a directory shared by every project.
+ * <p>
+ * Entries are keyed by the hash of the contents of the jar, the min sdk and the compilation
+ * mode it was dexed with, so projects using the same artifacts only dex them once. Below
+ * {@link #DESUGARING_MIN_SDK} the output also depends on the classpath the jar was dexed with,
+ * so the hash of the classpath is part of the key as well. The least recently used entries are
+ * deleted when the store grows past its maximum size.
+ */
+public class LibraryDexStore {
+
+    private static final Logger LOG = IdeLog.getCurrentLogger(LibraryDexStore.class);
+
+    private static final long MAX_SIZE = 512 * 1024 * 1024;
+    private static final String TEMP_PREFIX = "tmp-";
+
+    /**
+     * Below this api level d8 desugars the default and static methods of interfaces, which
+     * depends on the hierarchy of the classes found on the classpath
+     */
+    private static final int DESUGARING_MIN_SDK = 24;
+
+    /**
+     * Temporary directories older than this are left over from a build that was killed
+     */
+    private static final long STALE_TEMP_AGE = TimeUnit.HOURS.toMillis(1);
+
+    private static LibraryDexStore sInstance;
+
+    public static synchronized LibraryDexStore getInstance() {
+        if (sInstance == null) {
+            File directory = new File(BuildModule.getContext().getCacheDir(), "dex-libraries");
+            sInstance = new LibraryDexStore(directory, MAX_SIZE, FileHashCache.getInstance());
+        }
+        return sInstance;
+    }
+
+    public interface Dexer {
+        /**
+         * Dexes the library to the given directory
+         */
+        void dex(@NonNull File outputDirectory)
+                throws com.android.tools.r8.CompilationFailedException;
+    }
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    private final FileHashCache mHashCache;
+
+    public LibraryDexStore(@NonNull File directory, long maxSize,
+                           @NonNull FileHashCache hashCache) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+        mHashCache = hashCache;
+    }
+
+    private static String getEntryName(String hash, int minSdk, CompilationMode mode,
+                                       String classpathHash) {
+        String name = hash + "-" + minSdk + "-" + mode.name().toLowerCase(Locale.ROOT);
+        return classpathHash == null ? name : name + "-" + classpathHash;
+    }
+
+    /**
+     * Returns the entries of the given jars, the directories containing their dex files. An
+     * entry does not exist if its jar has not been dexed yet with the given settings. The jars
+     * that changed since they were last hashed are hashed in parallel.
+     *
+     * @param classpath the jars that are passed to d8 as the classpath when dexing each jar
+     */
+    @NonNull
+    public Map<File, File> getEntries(@NonNull Collection<File> jars,
+                                      @NonNull Collection<File> classpath, int minSdk,
+                                      @NonNull CompilationMode mode) throws IOException {
+        Set<File> files = new HashSet<>(jars);
+        files.addAll(classpath);
+        Map<File, String> hashes = mHashCache.getHashes(files);
+        mHashCache.save();
+
+        String classpathHash = minSdk < DESUGARING_MIN_SDK
+                ? getClasspathHash(classpath, hashes)
+                : null;
+        Map<File, File> entries = new HashMap<>();
+        for (File jar : jars) {
+            String name = getEntryName(hashes.get(jar), minSdk, mode, classpathHash);
+            entries.put(jar, new File(mDirectory, name));
+        }
+        return entries;
+    }
+
+    /**
+     * The classpath is hashed by the contents of its jars so it does not depend on where the
+     * project stores them
+     */
+    private static String getClasspathHash(Collection<File> classpath,
+                                           Map<File, String> hashes) {
+        List<String> sorted = new ArrayList<>(classpath.size());
+        for (File file : classpath) {
+            sorted.add(hashes.get(file));
+        }
+        Collections.sort(sorted);
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (String hash : sorted) {
+            hasher.putString(hash, StandardCharsets.UTF_8);
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * @return the dex files in the directory in the order d8 wrote them
+     */
+    @NonNull
+    public static List<File> getDexFiles(@NonNull File directory) {
+        File[] dexFiles = directory.listFiles(c -> c.isFile() && c.getName().endsWith(".dex"));
+        if (dexFiles == null) {
+            return Collections.emptyList();
+        }
+        // classes.dex, classes2.dex, ..., classes10.dex
+        Arrays.sort(dexFiles, Comparator.comparing(File::getName, (first, second) -> {
+            int compare = Integer.compare(first.length(), second.length());
+            return compare != 0 ? compare : first.compareTo(second);
+        }));
+        return Arrays.asList(dexFiles);
+    }
+
+    /**
+     * Marks the entry as recently used so it is the last to be deleted
+     */
+    public void touch(@NonNull File entry) {
+        if (!entry.setLastModified(System.currentTimeMillis())) {
+            LOG.warning("Unable to update the last used time of " + entry);
+        }
+    }
+
+    /**
+     * Dexes a library into the given entry. The dexer writes to a temporary directory which is
+     * then moved to the entry, so the store never contains partially written entries even if
+     * the build is killed.
+     */
+    public void create(@NonNull File entry, @NonNull Dexer dexer)
+            throws IOException, com.android.tools.r8.CompilationFailedException {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            throw new IOException("Unable to create directory " + mDirectory);
+        }
+        File temp = Files.createTempDirectory(mDirectory.toPath(), TEMP_PREFIX).toFile();
+        try {
+            dexer.dex(temp);
+            if (entry.exists()) {
+                // dexed by another build at the same time
+                touch(entry);
+                return;
+            }
+            Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            if (temp.exists()) {
+                FileUtils.deleteQuietly(temp);
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the store is smaller than its maximum
+     * size. Entries in use by the current build are never deleted.
+     */
+    public void trim(@NonNull Set<File> inUse) {
+        File[] children = mDirectory.listFiles(File::isDirectory);
+        if (children == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<File> entries = new ArrayList<>();
+        long totalSize = 0;
+        for (File child : children) {
+            if (child.getName().startsWith(TEMP_PREFIX)) {
+                if (now - child.lastModified() > STALE_TEMP_AGE) {
+                    FileUtils.deleteQuietly(child);
+                }
+                continue;
+            }
+            entries.add(child);
+            totalSize += FileUtils.sizeOfDirectory(child);
+        }
+        if (totalSize <= mMaxSize) {
+            return;
+        }
+
+        entries.sort(Comparator.comparingLong(File::lastModified));
+        for (File entry : entries) {
+            if (totalSize <= mMaxSize) {
+                break;
+            }
+            if (inUse.contains(entry)) {
+                continue;
+            }
+            long size = FileUtils.sizeOfDirectory(entry);
+            if (FileUtils.deleteQuietly(entry)) {
+                totalSize -= size;
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import androidx.annotation.NonNull;
+
+import java.util.Set;
+
+/**
+ * The result of analyzing a compiled class, see {@link ClassDependencyVisitor}
+ */
+public class ClassAnalysis {
+
+    private final String mClassName;
+    private final Set<String> mAccessibleDependencies;
+    private final Set<String> mPrivateDependencies;
+    private final long mAbiHash;
+    private final long mConstantsHash;
+    private final boolean mDependencyToAll;
+
+    public ClassAnalysis(@NonNull String className,
+                         @NonNull Set<String> accessibleDependencies,
+                         @NonNull Set<String> privateDependencies,
+                         long abiHash,
+                         long constantsHash,
+                         boolean dependencyToAll) {
+        mClassName = className;
+        mAccessibleDependencies = accessibleDependencies;
+        mPrivateDependencies = privateDependencies;
+        mAbiHash = abiHash;
+        mConstantsHash = constantsHash;
+        mDependencyToAll = dependencyToAll;
+    }
+
+    /**
+     * @return the binary name of the class
+     */
+    @NonNull
+    public String getClassName() {
+        return mClassName;
+    }
+
+    /**
+     * @return the classes referenced by the non private members of this class. A change in
+     * their ABI may change the ABI of this class, so classes depending on this class are
+     * affected too.
+     */
+    @NonNull
+    public Set<String> getAccessibleDependencies() {
+        return mAccessibleDependencies;
+    }
+
+    /**
+     * @return the classes referenced only by private members or method bodies
+     */
+    @NonNull
+    public Set<String> getPrivateDependencies() {
+        return mPrivateDependencies;
+    }
+
+    /**
+     * @return a hash of everything other classes can compile against: the class header and
+     * the signatures of its non private members. Method bodies are not included.
+     */
+    public long getAbiHash() {
+        return mAbiHash;
+    }
+
+    /**
+     * @return a hash of the non private compile time constants, javac inlines them so the
+     * classes using them do not reference this class
+     */
+    public long getConstantsHash() {
+        return mConstantsHash;
+    }
+
+    /**
+     * @return whether a change of this class affects every class, e.g. a source retention
+     * annotation which does not appear in the classes using it
+     */
+    public boolean isDependencyToAll() {
+        return mDependencyToAll;
+    }
+}
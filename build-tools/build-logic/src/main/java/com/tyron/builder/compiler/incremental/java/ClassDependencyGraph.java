@@ -0,0 +1,307 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks the classes compiled from each source file along with their dependencies and ABI
+ * hashes, used to find which sources need to be compiled again after a class changes.
+ * <p>
+ * The graph is saved in the build directory so it survives across builds.
+ */
+public class ClassDependencyGraph {
+
+    /**
+     * Bump this whenever the format of the saved graph or the way hashes are computed changes
+     */
+    private static final int VERSION = 2;
+    private static final int MAGIC = 0x434C4447;
+
+    /**
+     * The result of updating the classes of a source file
+     */
+    public static class Delta {
+
+        private final Set<String> mAbiChanged = new HashSet<>();
+        private boolean mFullRebuild;
+
+        /**
+         * @return the classes which were removed, added or whose ABI changed
+         */
+        public Set<String> getAbiChangedClasses() {
+            return mAbiChanged;
+        }
+
+        /**
+         * @return whether the change may affect classes that do not reference the changed
+         * classes, e.g. an inlined constant has changed
+         */
+        public boolean isFullRebuild() {
+            return mFullRebuild;
+        }
+
+        public void add(Delta other) {
+            mAbiChanged.addAll(other.mAbiChanged);
+            mFullRebuild |= other.mFullRebuild;
+        }
+    }
+
+    private static class Node {
+        final String source;
+        final ClassAnalysis analysis;
+
+        Node(String source, ClassAnalysis analysis) {
+            this.source = source;
+            this.analysis = analysis;
+        }
+    }
+
+    private final Map<String, Node> mClasses = new HashMap<>();
+    private final Map<String, Set<String>> mSourceToClasses = new HashMap<>();
+
+    public boolean isEmpty() {
+        return mClasses.isEmpty();
+    }
+
+    /**
+     * @return the source files that have classes in this graph
+     */
+    @NonNull
+    public Set<File> getSources() {
+        Set<File> sources = new HashSet<>();
+        for (String source : mSourceToClasses.keySet()) {
+            sources.add(new File(source));
+        }
+        return sources;
+    }
+
+    /**
+     * @return the binary names of the classes compiled from the given source
+     */
+    @NonNull
+    public Set<String> getClasses(@NonNull File source) {
+        Set<String> classes = mSourceToClasses.get(source.getAbsolutePath());
+        if (classes == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(classes);
+    }
+
+    /**
+     * Replaces the classes of the given source with the newly compiled ones
+     *
+     * @return the classes whose ABI is different from the previous compilation
+     */
+    @NonNull
+    public Delta update(@NonNull File source, @NonNull List<ClassAnalysis> classes) {
+        String path = source.getAbsolutePath();
+        Delta delta = new Delta();
+
+        Set<String> previous = mSourceToClasses.remove(path);
+        Set<String> current = new HashSet<>();
+        for (ClassAnalysis analysis : classes) {
+            String name = analysis.getClassName();
+            current.add(name);
+
+            Node old = mClasses.put(name, new Node(path, analysis));
+            if (old == null) {
+                // a new class may shadow a class of the same simple name imported on demand
+                delta.mAbiChanged.add(name);
+                continue;
+            }
+            if (old.analysis.getAbiHash() != analysis.getAbiHash()) {
+                delta.mAbiChanged.add(name);
+                if (old.analysis.isDependencyToAll() || analysis.isDependencyToAll()) {
+                    delta.mFullRebuild = true;
+                }
+            }
+            if (old.analysis.getConstantsHash() != analysis.getConstantsHash()) {
+                delta.mFullRebuild = true;
+            }
+        }
+        mSourceToClasses.put(path, current);
+
+        if (previous != null) {
+            for (String name : previous) {
+                if (!current.contains(name)) {
+                    removeClass(name, delta);
+                }
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Removes all the classes of a source file that no longer exists
+     */
+    @NonNull
+    public Delta remove(@NonNull File source) {
+        Delta delta = new Delta();
+        Set<String> classes = mSourceToClasses.remove(source.getAbsolutePath());
+        if (classes != null) {
+            for (String name : classes) {
+                removeClass(name, delta);
+            }
+        }
+        return delta;
+    }
+
+    private void removeClass(String name, Delta delta) {
+        Node removed = mClasses.remove(name);
+        delta.mAbiChanged.add(name);
+        if (removed != null && (removed.analysis.isDependencyToAll() ||
+                                removed.analysis.getConstantsHash() != 0)) {
+            delta.mFullRebuild = true;
+        }
+    }
+
+    /**
+     * Finds the sources of the classes that have to be compiled again because the ABI of the
+     * given classes has changed. A class that exposes a changed class through its own ABI
+     * is treated as changed as well, so its dependents are included too.
+     */
+    @NonNull
+    public Set<File> getDependentSources(@NonNull Collection<String> changedClasses) {
+        Map<String, Set<String>> accessibleDependents = new HashMap<>();
+        Map<String, Set<String>> privateDependents = new HashMap<>();
+        for (Node node : mClasses.values()) {
+            String name = node.analysis.getClassName();
+            for (String dependency : node.analysis.getAccessibleDependencies()) {
+                accessibleDependents.computeIfAbsent(dependency, k -> new HashSet<>()).add(name);
+            }
+            for (String dependency : node.analysis.getPrivateDependencies()) {
+                privateDependents.computeIfAbsent(dependency, k -> new HashSet<>()).add(name);
+            }
+        }
+
+        Set<String> dependents = new HashSet<>();
+        Set<String> visited = new HashSet<>(changedClasses);
+        Deque<String> queue = new ArrayDeque<>(changedClasses);
+        while (!queue.isEmpty()) {
+            String name = queue.poll();
+            dependents.addAll(privateDependents.getOrDefault(name, Collections.emptySet()));
+            for (String dependent : accessibleDependents.getOrDefault(name,
+                    Collections.emptySet())) {
+                dependents.add(dependent);
+                if (visited.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+
+        Set<File> sources = new HashSet<>();
+        for (String dependent : dependents) {
+            Node node = mClasses.get(dependent);
+            if (node != null) {
+                sources.add(new File(node.source));
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * @return the saved graph, or an empty graph if it does not exist, is unreadable or was
+     * saved by a different version. The dependencies of previously compiled classes are
+     * unknown in that case, so callers must compile everything again.
+     */
+    @NonNull
+    public static ClassDependencyGraph read(@NonNull File file) {
+        ClassDependencyGraph graph = new ClassDependencyGraph();
+        if (!file.isFile()) {
+            return graph;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return graph;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String source = in.readUTF();
+                String name = in.readUTF();
+                long abiHash = in.readLong();
+                long constantsHash = in.readLong();
+                boolean dependencyToAll = in.readBoolean();
+                Set<String> accessible = readSet(in);
+                Set<String> privateDependencies = readSet(in);
+                ClassAnalysis analysis = new ClassAnalysis(name, accessible,
+                        privateDependencies, abiHash, constantsHash, dependencyToAll);
+                graph.mClasses.put(name, new Node(source, analysis));
+                graph.mSourceToClasses.computeIfAbsent(source, k -> new HashSet<>()).add(name);
+            }
+        } catch (IOException e) {
+            // start over, every source will be treated as new
+            return new ClassDependencyGraph();
+        }
+        return graph;
+    }
+
+    /**
+     * Writes to a temporary file first so a crash while writing never leaves a truncated
+     * graph behind
+     */
+    public void write(@NonNull File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(mClasses.size());
+                for (Node node : mClasses.values()) {
+                    ClassAnalysis analysis = node.analysis;
+                    out.writeUTF(node.source);
+                    out.writeUTF(analysis.getClassName());
+                    out.writeLong(analysis.getAbiHash());
+                    out.writeLong(analysis.getConstantsHash());
+                    out.writeBoolean(analysis.isDependencyToAll());
+                    writeSet(out, analysis.getAccessibleDependencies());
+                    writeSet(out, analysis.getPrivateDependencies());
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private static Set<String> readSet(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Set<String> set = new HashSet<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            set.add(in.readUTF());
+        }
+        return set;
+    }
+
+    private static void writeSet(DataOutputStream out, Set<String> set) throws IOException {
+        out.writeInt(set.size());
+        for (String value : set) {
+            out.writeUTF(value);
+        }
+    }
+}
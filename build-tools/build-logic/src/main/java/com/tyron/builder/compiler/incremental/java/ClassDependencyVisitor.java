@@ -0,0 +1,426 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.signature.SignatureVisitor;
+
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects the classes a compiled class depends on and hashes its ABI.
+ * <p>
+ * Based on the ClassDependenciesVisitor of the gradle java plugin. Dependencies used by the non
+ * private members of the class are recorded as accessible, everything else found in the
+ * constant pool is recorded as private.
+ */
+public class ClassDependencyVisitor extends ClassVisitor {
+
+    private static final int API = Opcodes.ASM9;
+
+    private static final String ANNOTATION = "java/lang/annotation/Annotation";
+    private static final String RETENTION = "Ljava/lang/annotation/Retention;";
+    private static final String RETENTION_POLICY = "Ljava/lang/annotation/RetentionPolicy;";
+
+    private final String mClassName;
+    private final Set<String> mAccessibleTypes = new HashSet<>();
+    private final Set<String> mPrivateTypes = new HashSet<>();
+
+    /**
+     * Members are sorted before hashing so reordering them does not change the ABI
+     */
+    private final List<String> mAbiMembers = new ArrayList<>();
+    private final List<String> mConstants = new ArrayList<>();
+    private String mHeader;
+
+    private boolean mAnnotationType;
+    private boolean mDependencyToAll;
+
+    private ClassDependencyVisitor(String className) {
+        super(API);
+        mClassName = className;
+    }
+
+    @NonNull
+    public static ClassAnalysis analyze(@NonNull byte[] classFile) {
+        ClassReader reader = new ClassReader(classFile);
+        String className = Type.getObjectType(reader.getClassName()).getClassName();
+
+        ClassDependencyVisitor visitor = new ClassDependencyVisitor(className);
+        visitor.collectConstantPoolDependencies(reader);
+        reader.accept(visitor, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+        visitor.mPrivateTypes.removeAll(visitor.mAccessibleTypes);
+        return new ClassAnalysis(className, visitor.mAccessibleTypes, visitor.mPrivateTypes,
+                visitor.hash(visitor.mAbiMembers, visitor.mHeader),
+                visitor.mConstants.isEmpty() ? 0 : visitor.hash(visitor.mConstants, ""),
+                visitor.mDependencyToAll);
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName,
+                      String[] interfaces) {
+        mAnnotationType = interfaces.length == 1 && interfaces[0].equals(ANNOTATION);
+
+        Set<String> types = isAccessible(access) ? mAccessibleTypes : mPrivateTypes;
+        if (superName != null) {
+            addType(types, Type.getObjectType(superName));
+        }
+        for (String anInterface : interfaces) {
+            addType(types, Type.getObjectType(anInterface));
+        }
+        addSignature(types, signature);
+
+        String[] sortedInterfaces = interfaces.clone();
+        Arrays.sort(sortedInterfaces);
+        // ACC_SUPER is always set by javac and says nothing about the class
+        mHeader = (access & ~Opcodes.ACC_SUPER) + "|" + name + "|" + signature + "|" +
+                  superName + "|" + String.join(",", sortedInterfaces);
+    }
+
+    /**
+     * Classes used by method bodies appear in the constant pool as CONSTANT_Class entries,
+     * reading them directly avoids visiting every instruction
+     */
+    private void collectConstantPoolDependencies(ClassReader reader) {
+        char[] buffer = new char[reader.getMaxStringLength()];
+        for (int i = 1; i < reader.getItemCount(); i++) {
+            int offset = reader.getItem(i);
+            if (offset > 0 && reader.readByte(offset - 1) == 7) {
+                String descriptor = reader.readUTF8(offset, buffer);
+                addType(mPrivateTypes, Type.getObjectType(descriptor));
+            }
+        }
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String descriptor, String signature,
+                                   Object value) {
+        boolean accessible = isAccessible(access) && !isSynthetic(access);
+        Set<String> types = accessible ? mAccessibleTypes : mPrivateTypes;
+        addType(types, Type.getType(descriptor));
+        addSignature(types, signature);
+
+        if (accessible) {
+            mAbiMembers.add("field|" + access + "|" + name + "|" + descriptor + "|" + signature);
+            if (value != null && isConstant(access)) {
+                // both the name and value are needed, otherwise swapping the values of two
+                // constants would not be detected
+                mConstants.add(name + "|" + value);
+            }
+        }
+        return new DependencyFieldVisitor(types, accessible ? "field|" + name : null);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor,
+                                     String signature, String[] exceptions) {
+        // synthetic accessors are only used by the nested classes of the same source file,
+        // which are always compiled together. Bridge methods are part of the ABI.
+        boolean accessible = isAccessible(access) &&
+                             (!isSynthetic(access) || (access & Opcodes.ACC_BRIDGE) != 0);
+        Set<String> types = accessible ? mAccessibleTypes : mPrivateTypes;
+        Type methodType = Type.getMethodType(descriptor);
+        addType(types, methodType.getReturnType());
+        for (Type argumentType : methodType.getArgumentTypes()) {
+            addType(types, argumentType);
+        }
+        addSignature(types, signature);
+
+        String[] sortedExceptions = exceptions == null ? new String[0] : exceptions.clone();
+        for (String exception : sortedExceptions) {
+            addType(types, Type.getObjectType(exception));
+        }
+        if (accessible) {
+            Arrays.sort(sortedExceptions);
+            mAbiMembers.add("method|" + access + "|" + name + "|" + descriptor + "|" +
+                            signature + "|" + String.join(",", sortedExceptions));
+        }
+        return new DependencyMethodVisitor(types,
+                accessible ? "method|" + name + descriptor : null);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+        if (mAnnotationType && RETENTION.equals(descriptor)) {
+            return new RetentionPolicyVisitor();
+        }
+        addType(mAccessibleTypes, Type.getType(descriptor));
+        return new DependencyAnnotationVisitor(mAccessibleTypes, "annotation|" + descriptor);
+    }
+
+    private long hash(List<String> values, String header) {
+        Collections.sort(values);
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putString(header, StandardCharsets.UTF_8);
+        for (String value : values) {
+            hasher.putString(value, StandardCharsets.UTF_8);
+            hasher.putByte((byte) 0);
+        }
+        return hasher.hash().asLong();
+    }
+
+    private void addType(Set<String> types, Type type) {
+        while (type.getSort() == Type.ARRAY) {
+            type = type.getElementType();
+        }
+        if (type.getSort() != Type.OBJECT) {
+            return;
+        }
+        String name = type.getClassName();
+        if (!name.startsWith("java.") && !name.equals(mClassName)) {
+            types.add(name);
+        }
+    }
+
+    /**
+     * Type arguments only appear in the generic signature, not in the descriptor
+     */
+    private void addSignature(Set<String> types, String signature) {
+        if (signature == null) {
+            return;
+        }
+        new SignatureReader(signature).accept(new SignatureVisitor(API) {
+            @Override
+            public void visitClassType(String name) {
+                addType(types, Type.getObjectType(name));
+            }
+        });
+    }
+
+    private static boolean isAccessible(int access) {
+        return (access & Opcodes.ACC_PRIVATE) == 0;
+    }
+
+    private static boolean isSynthetic(int access) {
+        return (access & Opcodes.ACC_SYNTHETIC) != 0;
+    }
+
+    private static boolean isConstant(int access) {
+        return (access & Opcodes.ACC_STATIC) != 0 && (access & Opcodes.ACC_FINAL) != 0;
+    }
+
+    private class DependencyFieldVisitor extends FieldVisitor {
+
+        private final Set<String> mTypes;
+        /**
+         * Identifies the field in the ABI, null if the field is not part of it
+         */
+        private final String mAbiMember;
+
+        DependencyFieldVisitor(Set<String> types, @Nullable String abiMember) {
+            super(API);
+            mTypes = types;
+            mAbiMember = abiMember;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            addType(mTypes, Type.getType(descriptor));
+            return new DependencyAnnotationVisitor(mTypes,
+                    abiMember(mAbiMember, "annotation|" + descriptor));
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath,
+                                                     String descriptor, boolean visible) {
+            addType(mTypes, Type.getType(descriptor));
+            return new DependencyAnnotationVisitor(mTypes, null);
+        }
+    }
+
+    private class DependencyMethodVisitor extends MethodVisitor {
+
+        private final Set<String> mTypes;
+        /**
+         * Identifies the method in the ABI, null if the method is not part of it
+         */
+        private final String mAbiMember;
+
+        DependencyMethodVisitor(Set<String> types, @Nullable String abiMember) {
+            super(API);
+            mTypes = types;
+            mAbiMember = abiMember;
+        }
+
+        @Override
+        public void visitLocalVariable(String name, String descriptor, String signature,
+                                       Label start, Label end, int index) {
+            addType(mPrivateTypes, Type.getType(descriptor));
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            addType(mTypes, Type.getType(descriptor));
+            return new DependencyAnnotationVisitor(mTypes,
+                    abiMember(mAbiMember, "annotation|" + descriptor));
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor,
+                                                          boolean visible) {
+            addType(mTypes, Type.getType(descriptor));
+            return new DependencyAnnotationVisitor(mTypes,
+                    abiMember(mAbiMember, "parameter|" + parameter + "|" + descriptor));
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath,
+                                                     String descriptor, boolean visible) {
+            addType(mTypes, Type.getType(descriptor));
+            return new DependencyAnnotationVisitor(mTypes, null);
+        }
+
+        /**
+         * The default value of an element of an annotation type
+         */
+        @Override
+        public AnnotationVisitor visitAnnotationDefault() {
+            return new DependencyAnnotationVisitor(mTypes, abiMember(mAbiMember, "default"));
+        }
+    }
+
+    @Nullable
+    private static String abiMember(@Nullable String owner, String member) {
+        return owner == null ? null : owner + "|" + member;
+    }
+
+    /**
+     * Records the types used by an annotation. The element values of annotations on the ABI are
+     * part of it as well, annotation processors generate code from them.
+     */
+    private class DependencyAnnotationVisitor extends AnnotationVisitor {
+
+        private final Set<String> mTypes;
+        /**
+         * The values visited so far, null if the annotation is not part of the ABI
+         */
+        private final StringBuilder mValues;
+        /**
+         * Identifies the annotation in the ABI, null for nested annotations and arrays
+         */
+        private final String mAbiMember;
+        private final String mEnd;
+
+        DependencyAnnotationVisitor(Set<String> types, @Nullable String abiMember) {
+            this(types, abiMember == null ? null : new StringBuilder(), abiMember, "");
+        }
+
+        private DependencyAnnotationVisitor(Set<String> types, @Nullable StringBuilder values,
+                                            @Nullable String abiMember, String end) {
+            super(API);
+            mTypes = types;
+            mValues = values;
+            mAbiMember = abiMember;
+            mEnd = end;
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            if (value instanceof Type) {
+                addType(mTypes, (Type) value);
+            }
+            appendValue(name, valueToString(value));
+        }
+
+        @Override
+        public void visitEnum(String name, String descriptor, String value) {
+            addType(mTypes, Type.getType(descriptor));
+            appendValue(name, descriptor + "." + value);
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+            appendValue(name, "{");
+            return new DependencyAnnotationVisitor(mTypes, mValues, null, "}");
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+            addType(mTypes, Type.getType(descriptor));
+            appendValue(name, "@" + descriptor + "(");
+            return new DependencyAnnotationVisitor(mTypes, mValues, null, ")");
+        }
+
+        @Override
+        public void visitEnd() {
+            if (mValues == null) {
+                return;
+            }
+            mValues.append(mEnd);
+            if (mAbiMember != null) {
+                mAbiMembers.add(mAbiMember + "(" + mValues + ")");
+            }
+        }
+
+        private void appendValue(String name, String value) {
+            if (mValues == null) {
+                return;
+            }
+            if (name != null) {
+                mValues.append(name).append('=');
+            }
+            mValues.append(value).append(',');
+        }
+
+        private String valueToString(Object value) {
+            if (value instanceof Type) {
+                return ((Type) value).getDescriptor();
+            }
+            if (value.getClass().isArray()) {
+                // arrays of primitives are passed as a single value
+                StringBuilder builder = new StringBuilder("{");
+                for (int i = 0; i < Array.getLength(value); i++) {
+                    builder.append(Array.get(value, i)).append(',');
+                }
+                return builder.append('}').toString();
+            }
+            if (value instanceof String) {
+                return '"' + (String) value + '"';
+            }
+            return value.getClass().getSimpleName() + ":" + value;
+        }
+    }
+
+    /**
+     * Source retention annotations are not written to the classes using them, so there is no
+     * way to know which classes need to be compiled again when they change
+     */
+    private class RetentionPolicyVisitor extends AnnotationVisitor {
+
+        RetentionPolicyVisitor() {
+            super(API);
+        }
+
+        @Override
+        public void visitEnum(String name, String descriptor, String value) {
+            if (RETENTION_POLICY.equals(descriptor)) {
+                mAbiMembers.add("retention|" + value);
+                if (RetentionPolicy.valueOf(value) == RetentionPolicy.SOURCE) {
+                    mDependencyToAll = true;
+                }
+            }
+        }
+    }
+}
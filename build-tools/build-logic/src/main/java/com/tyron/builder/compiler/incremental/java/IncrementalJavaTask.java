@@ -3,11 +3,14 @@ package com.tyron.builder.compiler.incremental.java;
 import androidx.annotation.VisibleForTesting;
 
 import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
 import com.sun.tools.javac.api.JavacTool;
 import com.sun.tools.javac.file.JavacFileManager;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
-import com.tyron.builder.compiler.incremental.kotlin.IncrementalKotlinCompiler;
+import com.tyron.builder.compiler.symbol.MergeSymbolsTask;
+import com.tyron.builder.compiler.trace.BuildTrace;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.DiagnosticWrapper;
@@ -15,13 +18,13 @@ import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.cache.CacheHolder;
+import com.tyron.builder.project.cache.DataSerializer;
 import com.tyron.common.util.Cache;
 
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -29,10 +32,13 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Locale;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Set;
 
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
 import javax.tools.DiagnosticListener;
 import javax.tools.JavaFileObject;
 import javax.tools.SimpleJavaFileObject;
@@ -41,13 +47,16 @@ import javax.tools.StandardLocation;
 public class IncrementalJavaTask extends Task<JavaModule> {
 
     public static final CacheHolder.CacheKey<String, List<File>> CACHE_KEY =
-            new CacheHolder.CacheKey<>("javaCache");
+            new CacheHolder.CacheKey<>("javaCache", DataSerializer.STRING,
+                    DataSerializer.listOf(DataSerializer.FILE));
     private static final String TAG = IncrementalJavaTask.class.getSimpleName();
 
     private File mOutputDir;
+    private File mDependenciesFile;
     private List<File> mJavaFiles;
     private List<File> mFilesToCompile;
     private Cache<String, List<File>> mClassCache;
+    private ClassDependencyGraph mDependencyGraph;
 
     public IncrementalJavaTask(Project project, JavaModule module, ILogger logger) {
         super(project, module, logger);
@@ -64,33 +73,72 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         if (!mOutputDir.exists() && !mOutputDir.mkdirs()) {
             throw new IOException("Unable to create output directory");
         }
+        mDependenciesFile = new File(getModule().getBuildDirectory(), "bin/java/dependencies.bin");
+        mDependencyGraph = ClassDependencyGraph.read(mDependenciesFile);
 
         mFilesToCompile = new ArrayList<>();
         mClassCache = getModule().getCache(CACHE_KEY, new Cache<>());
 
         mJavaFiles = new ArrayList<>(getModule().getJavaFiles().values());
         if (getModule() instanceof AndroidModule) {
-            mJavaFiles.addAll(((AndroidModule) getModule()).getResourceClasses().values());
+            for (File file : ((AndroidModule) getModule()).getResourceClasses().values()) {
+                // the R.java files of libraries are deleted once they are moved to R.jar
+                if (file.exists()) {
+                    mJavaFiles.add(file);
+                }
+            }
         }
         for (Cache.Key<String> key : new HashSet<>(mClassCache.getKeys())) {
             if (!mJavaFiles.contains(key.file.toFile())) {
-                File file = mClassCache.get(key.file, "class").iterator().next();
-                deleteAllFiles(file, ".class");
+                List<File> classFiles = mClassCache.get(key.file, "class");
+                if (!classFiles.isEmpty()) {
+                    deleteAllFiles(classFiles.iterator().next(), ".class");
+                }
                 mClassCache.remove(key.file, "class", "dex");
             }
         }
 
-        for (File file : mJavaFiles) {
-            Path filePath = file.toPath();
-            if (mClassCache.needs(filePath, "class")) {
-                mFilesToCompile.add(file);
+        // the graph also knows about deleted files that were compiled before the cache
+        // was created, their classes are removed and the classes using them compiled again
+        ClassDependencyGraph.Delta removed = new ClassDependencyGraph.Delta();
+        for (File source : mDependencyGraph.getSources()) {
+            if (!mJavaFiles.contains(source)) {
+                for (String className : mDependencyGraph.getClasses(source)) {
+                    File classFile = findClassFile(className);
+                    if (classFile.exists()) {
+                        FileUtils.delete(classFile);
+                    }
+                }
+                removed.add(mDependencyGraph.remove(source));
             }
         }
 
+        if (mDependencyGraph.isEmpty() && !mClassCache.getKeys().isEmpty()) {
+            // the classes were compiled but the graph is missing or could not be read, the
+            // files depending on the changed classes can't be found so compile all of them
+            getLogger().debug("Class dependency graph is unavailable, compiling all files.");
+            mFilesToCompile.addAll(mJavaFiles);
+        } else {
+            for (File file : mJavaFiles) {
+                Path filePath = file.toPath();
+                if (mClassCache.needs(filePath, "class")) {
+                    mFilesToCompile.add(file);
+                }
+            }
+        }
+        for (File file : getAffectedFiles(removed)) {
+            if (!mFilesToCompile.contains(file)) {
+                mFilesToCompile.add(file);
+            }
+        }
     }
 
     private boolean mHasErrors = false;
 
+    /**
+     * Compiles the changed files first, then the files depending on the classes whose ABI
+     * has changed. Files whose method bodies changed only are not followed by their dependents.
+     */
     @Override
     public void run() throws IOException, CompilationFailedException {
         if (mFilesToCompile.isEmpty()) {
@@ -110,33 +158,118 @@ public class IncrementalJavaTask extends Task<JavaModule> {
             }
         };
 
-        JavacTool tool = JavacTool.create();
-
-        JavacFileManager standardJavaFileManager =
-                tool.getStandardFileManager(diagnosticCollector, Locale.getDefault(),
-                        Charset.defaultCharset());
-        standardJavaFileManager.setSymbolFileEnabled(false);
-
+        List<File> platformClasspath = Arrays.asList(getModule().getBootstrapJarFile(),
+                getModule().getLambdaStubsJarFile());
         List<File> classpath = new ArrayList<>(getModule().getLibraries());
         classpath.add(mOutputDir);
 
         File kotlinOutputDir = new File(getModule().getBuildDirectory(), "bin/kotlin/classes");
         classpath.add(kotlinOutputDir);
 
+        if (getModule() instanceof AndroidModule) {
+            File rClassJar = MergeSymbolsTask.getRClassJar((AndroidModule) getModule());
+            if (rClassJar.exists()) {
+                classpath.add(rClassJar);
+            }
+        }
+
+        // the jars on the classpath stay open between builds until they change
+        JavaCompilerPool.Borrow borrow;
         try {
-            standardJavaFileManager.setLocation(StandardLocation.CLASS_OUTPUT,
-                    Collections.singletonList(mOutputDir));
-            standardJavaFileManager.setLocation(StandardLocation.PLATFORM_CLASS_PATH,
-                    Arrays.asList(getModule().getBootstrapJarFile(),
-                            getModule().getLambdaStubsJarFile()));
-            standardJavaFileManager.setLocation(StandardLocation.CLASS_PATH, classpath);
-            standardJavaFileManager.setLocation(StandardLocation.SOURCE_PATH, mJavaFiles);
+            borrow = JavaCompilerPool.getInstance().borrow(platformClasspath, classpath,
+                    diagnosticCollector);
         } catch (IOException e) {
             throw new CompilationFailedException(e);
         }
+        try (JavaCompilerPool.Borrow ignored = borrow) {
+            JavacFileManager standardJavaFileManager = borrow.getFileManager();
+            try {
+                standardJavaFileManager.setLocation(StandardLocation.CLASS_OUTPUT,
+                        Collections.singletonList(mOutputDir));
+                standardJavaFileManager.setLocation(StandardLocation.SOURCE_PATH, mJavaFiles);
+            } catch (IOException e) {
+                throw new CompilationFailedException(e);
+            }
+            try {
+                compile(JavaCompilerPool.getTool(), standardJavaFileManager, diagnosticCollector);
+            } catch (CompilationFailedException | RuntimeException | Error e) {
+                if (!mHasErrors) {
+                    // javac itself failed, its file manager may be in a broken state
+                    borrow.discard();
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Compiles the changed files until no more files are affected by the changes
+     */
+    private void compile(JavacTool tool,
+                         JavacFileManager standardJavaFileManager,
+                         DiagnosticListener<JavaFileObject> diagnosticCollector)
+            throws IOException, CompilationFailedException {
+        Set<File> compiled = new HashSet<>();
+        Set<File> pending = new LinkedHashSet<>(mFilesToCompile);
+        while (!pending.isEmpty()) {
+            // if this compilation fails, the files must still be compiled on the next build
+            for (File file : pending) {
+                mClassCache.remove(file.toPath(), "class");
+            }
+
+            Map<File, List<File>> compiledFiles;
+            try (BuildTrace.Span ignored = BuildTrace.span("javac")) {
+                compiledFiles = compile(tool, standardJavaFileManager, diagnosticCollector,
+                        pending);
+                BuildTrace.count("java.filesCompiled", pending.size());
+            }
+            compiled.addAll(pending);
+            if (mHasErrors) {
+                break;
+            }
+
+            Set<File> sources = new HashSet<>(pending);
+            sources.addAll(compiledFiles.keySet());
+            ClassDependencyGraph.Delta delta = new ClassDependencyGraph.Delta();
+            try (BuildTrace.Span ignored = BuildTrace.span("Analyze class dependencies")) {
+                for (File source : sources) {
+                    List<File> classFiles =
+                            compiledFiles.getOrDefault(source, Collections.emptyList());
+                    delta.add(mDependencyGraph.update(source, analyze(classFiles)));
+                    mClassCache.load(source.toPath(), "class", classFiles);
+                    BuildTrace.count("java.classesAnalyzed", classFiles.size());
+                }
+            }
+
+            pending = getAffectedFiles(delta);
+            pending.removeAll(compiled);
+            if (!pending.isEmpty()) {
+                getLogger().debug("Compiling " + pending.size() + " dependent java files");
+                mFilesToCompile.addAll(pending);
+            }
+        }
 
+        if (mHasErrors) {
+            // the graph is not saved and every file compiled in this build is compiled again
+            // on the next one, so the classes depending on them are found again even if the
+            // app is restarted in between
+            for (File file : compiled) {
+                mClassCache.remove(file.toPath(), "class");
+            }
+            throw new CompilationFailedException("Compilation failed, check logs for more details");
+        }
+        mDependencyGraph.write(mDependenciesFile);
+    }
+
+    /**
+     * @return the source files mapped to the class files generated from them
+     */
+    private Map<File, List<File>> compile(JavacTool tool,
+                                          JavacFileManager fileManager,
+                                          DiagnosticListener<JavaFileObject> diagnosticListener,
+                                          Set<File> files) throws CompilationFailedException {
         List<JavaFileObject> javaFileObjects = new ArrayList<>();
-        for (File file : mFilesToCompile) {
+        for (File file : files) {
             javaFileObjects.add(new SimpleJavaFileObject(file.toURI(), JavaFileObject.Kind.SOURCE) {
                 @Override
                 public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
@@ -150,42 +283,32 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         options.add("1.8");
         options.add("-target");
         options.add("1.8");
-        JavacTask task = tool.getTask(null, standardJavaFileManager, diagnosticCollector,
+        JavacTask task = tool.getTask(null, fileManager, diagnosticListener,
                 options, null, javaFileObjects);
 
-        HashMap<String, List<File>> compiledFiles = new HashMap<>();
-        try {
+        Map<File, List<File>> compiledFiles = new HashMap<>();
+        Elements elements = task.getElements();
+        task.addTaskListener(new TaskListener() {
+            @Override
+            public void finished(TaskEvent e) {
+                TypeElement element = e.getTypeElement();
+                if (e.getKind() != TaskEvent.Kind.GENERATE || element == null ||
+                    e.getSourceFile() == null) {
+                    return;
+                }
+                File source = new File(e.getSourceFile().toUri());
+                String className = elements.getBinaryName(element).toString();
+                compiledFiles.computeIfAbsent(source, k -> new ArrayList<>())
+                        .add(findClassFile(className));
+            }
+        });
 
+        try {
             task.parse();
             task.analyze();
-            Iterable<? extends JavaFileObject> generate = task.generate();
-            for (JavaFileObject fileObject : generate) {
-                String path = fileObject.getName();
-                File classFile = new File(path);
-                if (classFile. exists()) {
-                    String classPath = classFile.getAbsolutePath().replace("build/bin/classes/",
-                            "src/main/java/").replace(".class", ".java");
-                    if (classFile.getName().indexOf('$') != -1) {
-                        classPath = classPath.substring(0, classPath.indexOf('$')) + ".java";
-                    }
-                    File file = new File(classPath);
-                    if (!file.exists()) {
-                        file = new File(classPath.replace("src/main/java", "build/gen"));
-                    }
-
-                    if (!compiledFiles.containsKey(file.getAbsolutePath())) {
-                        ArrayList<File> list = new ArrayList<>();
-                        list.add(classFile);
-                        compiledFiles.put(file.getAbsolutePath(), list);
-                    } else {
-                        Objects.requireNonNull(compiledFiles.get(file.getAbsolutePath())).add(classFile);
-                    }
-                    mClassCache.load(file.toPath(), "class", Collections.singletonList(classFile));
-                }
-            }
+            task.generate();
 
-            compiledFiles.forEach((key, values) -> {
-                File sourceFile = new File(key);
+            compiledFiles.forEach((sourceFile, values) -> {
                 String name = sourceFile.getName().replace(".java", "");
                 File first = values.iterator().next();
                 File parent = first.getParentFile();
@@ -211,10 +334,37 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         } catch (Exception e) {
             throw new CompilationFailedException(e);
         }
+        return compiledFiles;
+    }
 
-        if (mHasErrors) {
-            throw new CompilationFailedException("Compilation failed, check logs for more details");
+    private List<ClassAnalysis> analyze(List<File> classFiles) throws IOException {
+        List<ClassAnalysis> analyses = new ArrayList<>(classFiles.size());
+        for (File classFile : classFiles) {
+            if (classFile.exists()) {
+                analyses.add(ClassDependencyVisitor.analyze(FileUtils.readFileToByteArray(classFile)));
+            }
+        }
+        return analyses;
+    }
+
+    /**
+     * @return the source files that need to be compiled again because of the given change
+     */
+    private Set<File> getAffectedFiles(ClassDependencyGraph.Delta delta) {
+        if (delta.isFullRebuild()) {
+            getLogger().debug("A change affects every class, compiling all java files");
+            return new LinkedHashSet<>(mJavaFiles);
+        }
+        Set<File> affected = new LinkedHashSet<>();
+        if (delta.getAbiChangedClasses().isEmpty()) {
+            return affected;
+        }
+        for (File source : mDependencyGraph.getDependentSources(delta.getAbiChangedClasses())) {
+            if (mJavaFiles.contains(source)) {
+                affected.add(source);
+            }
         }
+        return affected;
     }
 
     @VisibleForTesting
@@ -222,8 +372,8 @@ public class IncrementalJavaTask extends Task<JavaModule> {
         return mFilesToCompile;
     }
 
-    private File findClassFile(String packageName) {
-        String path = packageName.replace(".", "/").concat(".class");
+    private File findClassFile(String binaryName) {
+        String path = binaryName.replace(".", "/").concat(".class");
         return new File(mOutputDir, path);
     }
 
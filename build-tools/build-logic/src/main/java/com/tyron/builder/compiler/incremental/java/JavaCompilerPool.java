@@ -0,0 +1,225 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import androidx.annotation.NonNull;
+
+import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.tyron.common.logging.IdeLog;
+import com.tyron.common.util.FileHashCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Keeps the file manager of the java compiler warm between builds. Opening and indexing the
+ * platform jars and every library jar is a large part of compiling a few files, the pooled file
+ * manager keeps them open until the set of jars changes.
+ * <p>
+ * A file manager is borrowed for the duration of a compilation. It is created again when the
+ * platform classpath or the classpath is different from the previous build, and the jars whose
+ * contents have changed since then are opened again. The symbol tables of the compiler are
+ * still created for each compilation, reusing them would keep the symbols of changed and
+ * deleted sources of the project around.
+ */
+public class JavaCompilerPool {
+
+    private static final Logger LOG = IdeLog.getCurrentLogger(JavaCompilerPool.class);
+
+    private static final JavacTool sTool = JavacTool.create();
+
+    private static JavaCompilerPool sInstance;
+
+    public static synchronized JavaCompilerPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new JavaCompilerPool(FileHashCache.getInstance());
+        }
+        return sInstance;
+    }
+
+    /**
+     * The file manager is created with a listener, this forwards its diagnostics to the
+     * listener of the compilation that borrowed it
+     */
+    private static class ForwardingListener implements DiagnosticListener<JavaFileObject> {
+
+        private volatile DiagnosticListener<? super JavaFileObject> mDelegate;
+
+        @Override
+        public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+            DiagnosticListener<? super JavaFileObject> delegate = mDelegate;
+            if (delegate != null) {
+                delegate.report(diagnostic);
+            }
+        }
+    }
+
+    private final FileHashCache mHashCache;
+
+    private JavacFileManager mFileManager;
+    private ForwardingListener mListener;
+    private List<File> mPlatformClasspath;
+    private List<File> mClasspath;
+    /**
+     * The hashes of the jars the file manager has opened, by path
+     */
+    private final Map<File, String> mHashes = new HashMap<>();
+    private boolean mCheckedOut;
+
+    public JavaCompilerPool(@NonNull FileHashCache hashCache) {
+        mHashCache = hashCache;
+    }
+
+    @NonNull
+    public static JavacTool getTool() {
+        return sTool;
+    }
+
+    /**
+     * Borrows a file manager whose platform classpath and classpath are set to the given
+     * files. It must be closed once the compilation has finished, other locations set on it
+     * are kept until they are set again.
+     */
+    @NonNull
+    public synchronized Borrow borrow(@NonNull List<File> platformClasspath,
+                                      @NonNull List<File> classpath,
+                                      @NonNull DiagnosticListener<? super JavaFileObject> listener)
+            throws IOException {
+        if (mCheckedOut) {
+            // another build is compiling, this one gets a file manager of its own
+            ForwardingListener forwarding = new ForwardingListener();
+            forwarding.mDelegate = listener;
+            JavacFileManager fileManager =
+                    createFileManager(forwarding, platformClasspath, classpath);
+            return new Borrow(fileManager, forwarding, false);
+        }
+
+        Map<File, String> hashes = getJarHashes(platformClasspath, classpath);
+        if (mFileManager == null ||
+            !platformClasspath.equals(mPlatformClasspath) ||
+            !classpath.equals(mClasspath)) {
+            if (mFileManager != null) {
+                LOG.info("Classpath changed, creating a new file manager");
+                closeQuietly(mFileManager);
+            }
+            mListener = new ForwardingListener();
+            mFileManager = createFileManager(mListener, platformClasspath, classpath);
+            mPlatformClasspath = new ArrayList<>(platformClasspath);
+            mClasspath = new ArrayList<>(classpath);
+        } else {
+            for (Map.Entry<File, String> entry : hashes.entrySet()) {
+                if (!entry.getValue().equals(mHashes.get(entry.getKey()))) {
+                    mFileManager.closeContainer(entry.getKey().toPath());
+                }
+            }
+            // directory listings may have changed since the last build
+            mFileManager.flush();
+        }
+        mHashes.clear();
+        mHashes.putAll(hashes);
+
+        mCheckedOut = true;
+        mListener.mDelegate = listener;
+        return new Borrow(mFileManager, mListener, true);
+    }
+
+    private synchronized void release(Borrow borrow) {
+        borrow.mListener.mDelegate = null;
+        if (!borrow.mPooled) {
+            closeQuietly(borrow.mFileManager);
+            return;
+        }
+        mCheckedOut = false;
+        if (borrow.mDiscarded) {
+            closeQuietly(mFileManager);
+            mFileManager = null;
+        }
+    }
+
+    private Map<File, String> getJarHashes(List<File> platformClasspath, List<File> classpath)
+            throws IOException {
+        List<File> jars = new ArrayList<>();
+        for (File file : platformClasspath) {
+            if (file.isFile()) {
+                jars.add(file);
+            }
+        }
+        for (File file : classpath) {
+            if (file.isFile()) {
+                jars.add(file);
+            }
+        }
+        Map<File, String> hashes = mHashCache.getHashes(jars);
+        mHashCache.save();
+        return hashes;
+    }
+
+    private static JavacFileManager createFileManager(ForwardingListener listener,
+                                                      List<File> platformClasspath,
+                                                      List<File> classpath)
+            throws IOException {
+        JavacFileManager fileManager = sTool.getStandardFileManager(listener,
+                Locale.getDefault(), Charset.defaultCharset());
+        fileManager.setSymbolFileEnabled(false);
+        fileManager.setLocation(StandardLocation.PLATFORM_CLASS_PATH, platformClasspath);
+        fileManager.setLocation(StandardLocation.CLASS_PATH, classpath);
+        return fileManager;
+    }
+
+    private static void closeQuietly(JavacFileManager fileManager) {
+        try {
+            fileManager.close();
+        } catch (IOException e) {
+            LOG.warning("Unable to close file manager: " + e.getMessage());
+        }
+    }
+
+    public class Borrow implements AutoCloseable {
+
+        private final JavacFileManager mFileManager;
+        private final ForwardingListener mListener;
+        private final boolean mPooled;
+        private boolean mDiscarded;
+        private boolean mClosed;
+
+        private Borrow(JavacFileManager fileManager, ForwardingListener listener,
+                       boolean pooled) {
+            mFileManager = fileManager;
+            mListener = listener;
+            mPooled = pooled;
+        }
+
+        @NonNull
+        public JavacFileManager getFileManager() {
+            return mFileManager;
+        }
+
+        /**
+         * Closes the file manager instead of returning it to the pool when it is closed, for
+         * compilations that failed unexpectedly
+         */
+        public void discard() {
+            mDiscarded = true;
+        }
+
+        @Override
+        public void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            release(this);
+        }
+    }
+}
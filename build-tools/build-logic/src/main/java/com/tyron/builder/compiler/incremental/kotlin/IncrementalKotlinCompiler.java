@@ -7,6 +7,7 @@ import androidx.annotation.NonNull;
 import com.google.common.base.Throwables;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.symbol.MergeSymbolsTask;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.model.DiagnosticWrapper;
@@ -83,6 +84,10 @@ public class IncrementalKotlinCompiler extends Task<AndroidModule> {
         classpath.add(getModule().getBootstrapJarFile());
         classpath.add(getModule().getLambdaStubsJarFile());
         classpath.addAll(getModule().getLibraries());
+        File rClassJar = MergeSymbolsTask.getRClassJar(getModule());
+        if (rClassJar.exists()) {
+            classpath.add(rClassJar);
+        }
         List<String> arguments = new ArrayList<>();
         Collections.addAll(arguments, "-cp",
                 classpath.stream()
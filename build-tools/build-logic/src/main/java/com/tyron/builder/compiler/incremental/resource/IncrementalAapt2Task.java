@@ -1,8 +1,15 @@
 package com.tyron.builder.compiler.incremental.resource;
 
 import com.android.tools.aapt2.Aapt2Jni;
+import com.google.common.collect.ImmutableSet;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.firebase.GenerateFirebaseConfigTask;
+import com.tyron.builder.compiler.java.CheckLibrariesTask;
+import com.tyron.builder.compiler.log.InjectLoggerTask;
+import com.tyron.builder.compiler.manifest.ManifestMergeTask;
+import com.tyron.builder.compiler.trace.BuildTrace;
+import com.tyron.builder.crashlytics.CrashlyticsTask;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.log.LogUtils;
@@ -24,6 +31,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public class IncrementalAapt2Task extends Task<AndroidModule> {
@@ -45,6 +53,16 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
         return TAG;
     }
 
+    /**
+     * Compiles the resources generated by the other tasks and links them against the merged
+     * manifest
+     */
+    @Override
+    public Set<Class<?>> getPrerequisites() {
+        return ImmutableSet.of(CheckLibrariesTask.class, ManifestMergeTask.class,
+                GenerateFirebaseConfigTask.class, InjectLoggerTask.class, CrashlyticsTask.class);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
 
@@ -55,10 +73,15 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
                 getFiles(getModule(), getOutputDirectory(getModule()));
         List<File> librariesToCompile = getLibraries();
 
-        compileProject(filesToCompile);
-        compileLibraries(librariesToCompile);
-
-        link();
+        try (BuildTrace.Span ignored = BuildTrace.span("Compile resources")) {
+            compileProject(filesToCompile);
+        }
+        try (BuildTrace.Span ignored = BuildTrace.span("Compile library resources")) {
+            compileLibraries(librariesToCompile);
+        }
+        try (BuildTrace.Span ignored = BuildTrace.span("Link resources")) {
+            link();
+        }
 
         updateJavaFiles();
     }
@@ -82,6 +105,7 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
                 for (File fileToCompile : filesToCompile) {
                     args.add(fileToCompile.getAbsolutePath());
                 }
+                BuildTrace.count("aapt2.filesCompiled", filesToCompile.size());
             }
         }
         args.add("-o");
@@ -141,6 +165,7 @@ public class IncrementalAapt2Task extends Task<AndroidModule> {
                         throw new CompilationFailedException(
                                 "Compilation failed, check logs for more details.");
                     }
+                    BuildTrace.count("aapt2.librariesCompiled", 1);
                 }
             }
         }
@@ -13,17 +13,13 @@ import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.common.util.Decompress;
+import com.tyron.common.util.FileHashCache;
 
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -46,6 +42,14 @@ public class CheckLibrariesTask extends Task<JavaModule> {
         return CheckLibrariesTask.class.getSimpleName();
     }
 
+    /**
+     * Only waits for the clean task, which is not declared here since it runs before every task
+     */
+    @Override
+    public Set<Class<?>> getPrerequisites() {
+        return Collections.emptySet();
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
 
@@ -59,7 +63,7 @@ public class CheckLibrariesTask extends Task<JavaModule> {
     private void checkLibraries(JavaModule project, ILogger logger, List<File> newLibraries) throws IOException {
         Set<CodeAssistLibrary> libraries = new HashSet<>();
 
-        Map<String, CodeAssistLibrary> fileLibsHashes = new HashMap<>();
+        List<CodeAssistLibrary> fileLibs = new ArrayList<>();
         File[] fileLibraries = project.getLibraryDirectory().listFiles(c ->
                 c.getName().endsWith(".aar") || c.getName().endsWith(".jar"));
         if (fileLibraries != null) {
@@ -68,7 +72,7 @@ public class CheckLibrariesTask extends Task<JavaModule> {
                     ZipFile zipFile = new ZipFile(fileLibrary);
                     CodeAssistLibrary library = new CodeAssistLibrary();
                     library.setSourceFile(fileLibrary);
-                    fileLibsHashes.put(calculateMD5(fileLibrary), library);
+                    fileLibs.add(library);
                 } catch (IOException e) {
                     String message = "File " + fileLibrary +
                             " is corrupt! Ignoring.";
@@ -93,10 +97,26 @@ public class CheckLibrariesTask extends Task<JavaModule> {
         } catch (Exception ignore) {
 
         }
+        libraries.removeIf(it -> {
+            if (it.getSourceFile() == null || !it.getSourceFile().exists()) {
+                logger.warning("Library " + it.getSourceFile() + " does not exist. Ignoring.");
+                return true;
+            }
+            return false;
+        });
 
+        // only the libraries that changed since the last build are read again
+        FileHashCache hashCache = FileHashCache.getInstance();
+        Set<File> files = new HashSet<>();
+        libraries.forEach(it -> files.add(it.getSourceFile()));
+        fileLibs.forEach(it -> files.add(it.getSourceFile()));
+        Map<File, String> hashes = hashCache.getHashes(files);
+        hashCache.save();
+
+        Map<String, CodeAssistLibrary> fileLibsHashes = new HashMap<>();
+        fileLibs.forEach(it -> fileLibsHashes.put(hashes.get(it.getSourceFile()), it));
         Map<String, CodeAssistLibrary> md5Map = new HashMap<>();
-        libraries.forEach(it ->
-                md5Map.put(calculateMD5(it.getSourceFile()), it));
+        libraries.forEach(it -> md5Map.put(hashes.get(it.getSourceFile()), it));
         File buildLibs = new File(project.getBuildDirectory(), "libs");
         File[] buildLibraryDirs = buildLibs.listFiles(File::isDirectory);
         if (buildLibraryDirs != null) {
@@ -146,48 +166,4 @@ public class CheckLibrariesTask extends Task<JavaModule> {
                 .putString("libraries", librariesString)
                 .apply();
     }
-
-    public static String calculateMD5(File updateFile) {
-        InputStream is;
-        try {
-            is = new FileInputStream(updateFile);
-        } catch (FileNotFoundException e) {
-            Log.e("calculateMD5", "Exception while getting FileInputStream", e);
-            return null;
-        }
-
-        return calculateMD5(is);
-    }
-
-    public static String calculateMD5(InputStream is) {
-        MessageDigest digest;
-        try {
-            digest = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            Log.e("calculateMD5", "Exception while getting Digest", e);
-            return null;
-        }
-
-        byte[] buffer = new byte[8192];
-        int read;
-        try {
-            while ((read = is.read(buffer)) > 0) {
-                digest.update(buffer, 0, read);
-            }
-            byte[] md5sum = digest.digest();
-            BigInteger bigInt = new BigInteger(1, md5sum);
-            String output = bigInt.toString(16);
-            // Fill to 32 chars
-            output = String.format("%32s", output).replace(' ', '0');
-            return output;
-        } catch (IOException e) {
-            throw new RuntimeException("Unable to process file for MD5", e);
-        } finally {
-            try {
-                is.close();
-            } catch (IOException e) {
-                Log.e("calculateMD5", "Exception on closing MD5 input stream", e);
-            }
-        }
-    }
 }
@@ -3,8 +3,10 @@ package com.tyron.builder.compiler.log;
 import android.util.Log;
 import android.util.Pair;
 
+import com.google.common.collect.ImmutableSet;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.manifest.ManifestMergeTask;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
@@ -33,6 +35,7 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class InjectLoggerTask extends Task<AndroidModule> {
 
@@ -145,6 +148,14 @@ public class InjectLoggerTask extends Task<AndroidModule> {
         return TAG;
     }
 
+    /**
+     * The application class is injected into the merged manifest
+     */
+    @Override
+    public Set<Class<?>> getPrerequisites() {
+        return ImmutableSet.of(ManifestMergeTask.class);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         getModule().getJavaFiles();
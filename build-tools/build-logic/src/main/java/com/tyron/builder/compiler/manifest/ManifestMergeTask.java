@@ -1,7 +1,9 @@
 package com.tyron.builder.compiler.manifest;
 
+import com.google.common.collect.ImmutableSet;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.java.CheckLibrariesTask;
 import com.tyron.builder.compiler.manifest.ManifestMerger2.SystemProperty;
 import com.tyron.builder.compiler.manifest.xml.XmlFormatPreferences;
 import com.tyron.builder.compiler.manifest.xml.XmlFormatStyle;
@@ -20,6 +22,7 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class ManifestMergeTask extends Task<AndroidModule> {
 
@@ -37,6 +40,14 @@ public class ManifestMergeTask extends Task<AndroidModule> {
         return "ManifestMerger";
     }
 
+    /**
+     * The manifests of the libraries are merged so the libraries must be extracted first
+     */
+    @Override
+    public Set<Class<?>> getPrerequisites() {
+        return ImmutableSet.of(CheckLibrariesTask.class);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mPackageName = getApplicationId();
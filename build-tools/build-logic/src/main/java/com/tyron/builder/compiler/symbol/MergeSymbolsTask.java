@@ -2,61 +2,84 @@ package com.tyron.builder.compiler.symbol;
 
 import android.util.Log;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Table;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.incremental.resource.IncrementalAapt2Task;
+import com.tyron.builder.compiler.java.CheckLibrariesTask;
 import com.tyron.builder.compiler.resource.AAPT2Compiler;
+import com.tyron.builder.compiler.trace.BuildTrace;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.cache.CacheHolder;
+import com.tyron.builder.project.cache.DataSerializer;
 import com.tyron.common.util.Cache;
 
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * Class that loads R.txt files generated by AAPT/AAPT2  and converts them
- * to R.java class files
+ * Class that loads R.txt files generated by AAPT/AAPT2 and converts them
+ * to the R classes of the libraries, written directly as class files to R.jar
  */
 public class MergeSymbolsTask extends Task<AndroidModule> {
 
     public static final CacheHolder.CacheKey<Void, Void> CACHE_KEY =
-            new CacheHolder.CacheKey<>("mergeSymbolsCache");
+            new CacheHolder.CacheKey<>("mergeSymbolsCache", DataSerializer.VOID,
+                    DataSerializer.VOID);
 
     private File mSymbolOutputDir;
     private File mFullResourceFile;
+    private File mRClassJar;
 
     public MergeSymbolsTask(Project project, AndroidModule module, ILogger logger) {
         super(project, module, logger);
     }
 
+    /**
+     * @return the jar containing the R classes of the libraries of the module, it is put on
+     * the classpath of the compilers and dexed along with the classes of the module
+     */
+    public static File getRClassJar(AndroidModule module) {
+        return new File(module.getBuildDirectory(), "bin/res/R.jar");
+    }
+
     @Override
     public String getName() {
         return "SymbolProcessor";
     }
 
+    /**
+     * Reads the R.txt files produced by AAPT2 for the module and its libraries
+     */
+    @Override
+    public Set<Class<?>> getPrerequisites() {
+        return ImmutableSet.of(CheckLibrariesTask.class, IncrementalAapt2Task.class);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mSymbolOutputDir = new File(getModule().getBuildDirectory(), "gen");
         mFullResourceFile = new File(getModule().getBuildDirectory(), "bin/res/R.txt");
+        mRClassJar = getRClassJar(getModule());
     }
 
     @Override
     public void run() throws IOException, CompilationFailedException {
         Cache<Void, Void> cache = getModule().getCache(CACHE_KEY, new Cache<>());
-        SymbolLoader fullSymbolValues = null;
-        Multimap<String, SymbolLoader> libMap = ArrayListMultimap.create();
-
-        List<File> RFiles = new ArrayList<>();
+        Map<File, String> RFiles = new LinkedHashMap<>();
         for (File library : getModule().getLibraries()) {
             File parent = library.getParentFile();
             if (parent == null) {
@@ -79,58 +102,92 @@ public class MergeSymbolsTask extends Task<AndroidModule> {
                 continue;
             }
 
-            RFiles.add(rFile);
+            RFiles.put(rFile, packageName);
         }
 
+        // the values of the library symbols come from the R.txt of the app, so the classes
+        // are generated again when either of them changes
+        boolean changed = !mRClassJar.exists() || cache.needs(mFullResourceFile.toPath(), null);
         for (Cache.Key<Void> key : new HashSet<>(cache.getKeys())) {
-            if (!RFiles.contains(key.file.toFile())) {
+            if (!RFiles.containsKey(key.file.toFile()) &&
+                !key.file.equals(mFullResourceFile.toPath())) {
                 Log.d("MergeSymbolsTask", "Found deleted resource file, removing " + key.file.toFile().getName() + " on the cache.");
                 cache.remove(key.file, (Void) null);
-                FileUtils.delete(key.file.toFile());
+                changed = true;
             }
         }
+        for (File rFile : RFiles.keySet()) {
+            changed |= cache.needs(rFile.toPath(), null);
+        }
+        deleteLegacySources(RFiles.values());
+        if (!changed) {
+            return;
+        }
 
-        for (File rFile : RFiles) {
-
-            if (!cache.needs(rFile.toPath(), null)) {
-                continue;
-            }
-
-            File parent = rFile.getParentFile();
-            if (parent == null) {
-                getLogger().error("Unable to access parent directory for " + rFile);
-                continue;
-            }
-
-            String packageName = AAPT2Compiler.getPackageName(new File(parent, "AndroidManifest.xml"));
-            if (packageName == null) {
-                continue;
-            }
+        Map<String, Table<String, String, SymbolLoader.SymbolEntry>> packages = new HashMap<>();
+        try (BuildTrace.Span ignored = BuildTrace.span("Load symbols")) {
+            loadSymbols(RFiles, packages);
+        }
 
-            if (fullSymbolValues == null) {
-                fullSymbolValues = new SymbolLoader(mFullResourceFile, getLogger());
-                fullSymbolValues.load();
+        Set<String> generated;
+        try (BuildTrace.Span ignored = BuildTrace.span("Write R classes")) {
+            generated = new RClassJarWriter(mRClassJar).write(packages);
+            if (!generated.isEmpty()) {
+                BuildTrace.count("symbols.packagesGenerated", generated.size());
+                BuildTrace.count("symbols.bytesWritten", mRClassJar.length());
             }
-            SymbolLoader libSymbols = new SymbolLoader(rFile, getLogger());
-            libSymbols.load();
-
-            libMap.put(packageName, libSymbols);
+        }
+        if (!generated.isEmpty()) {
+            getLogger().debug("Generated R classes of " + generated.size() + " libraries");
         }
 
-        // now loop on all the package name, merge all the symbols to write, and write them
-        for (String packageName : libMap.keySet()) {
-            Collection<SymbolLoader> symbols = libMap.get(packageName);
+        cache.load(mFullResourceFile.toPath(), null, null);
+        for (File file : RFiles.keySet()) {
+            cache.load(file.toPath(), null, null);
+        }
+    }
 
-            SymbolWriter writer = new SymbolWriter(mSymbolOutputDir.getAbsolutePath(), packageName,
-                    fullSymbolValues, getModule());
-            for (SymbolLoader loader : symbols) {
-                writer.addSymbolsToWrite(loader);
+    /**
+     * Merges the symbols of the libraries of each package, with the final values of the app
+     */
+    private void loadSymbols(Map<File, String> RFiles,
+                             Map<String, Table<String, String, SymbolLoader.SymbolEntry>> packages)
+            throws IOException {
+        if (!RFiles.isEmpty()) {
+            SymbolLoader fullSymbolValues = new SymbolLoader(mFullResourceFile, getLogger());
+            fullSymbolValues.load();
+            Table<String, String, SymbolLoader.SymbolEntry> values =
+                    fullSymbolValues.getSymbols();
+
+            // merge all the symbols of each package, then resolve their final values
+            for (Map.Entry<File, String> entry : RFiles.entrySet()) {
+                SymbolLoader libSymbols = new SymbolLoader(entry.getKey(), getLogger());
+                libSymbols.load();
+
+                Table<String, String, SymbolLoader.SymbolEntry> symbols =
+                        packages.computeIfAbsent(entry.getValue(), k -> HashBasedTable.create());
+                for (Table.Cell<String, String, SymbolLoader.SymbolEntry> cell :
+                        libSymbols.getSymbols().cellSet()) {
+                    SymbolLoader.SymbolEntry value =
+                            values.get(cell.getRowKey(), cell.getColumnKey());
+                    if (value != null) {
+                        symbols.put(cell.getRowKey(), cell.getColumnKey(), value);
+                    }
+                }
             }
-            writer.write();
         }
+    }
 
-        for (File file : RFiles) {
-            cache.load(file.toPath(), null, null);
+    /**
+     * The R.java files of libraries were written to the gen folder before R.jar existed, they
+     * would be compiled by javac and clash with the classes in the jar
+     */
+    private void deleteLegacySources(Collection<String> packageNames) throws IOException {
+        for (String packageName : new HashSet<>(packageNames)) {
+            File source = new File(mSymbolOutputDir, packageName.replace('.', '/') + "/R.java");
+            if (source.exists()) {
+                FileUtils.delete(source);
+            }
         }
     }
 }
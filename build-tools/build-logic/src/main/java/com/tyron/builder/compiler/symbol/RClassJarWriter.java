@@ -0,0 +1,363 @@
+package com.tyron.builder.compiler.symbol;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.collect.Table;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes the R classes of libraries directly as class files into a jar, so they do not have to
+ * be compiled by javac on every build.
+ * <p>
+ * Unlike the R.java files written by {@link SymbolWriter}, the fields are not constants. They
+ * are non final fields assigned by the static initializer, so javac does not inline the ids
+ * into the classes that use them and those classes do not have to be compiled again when the
+ * ids change, the same as the R classes of libraries built by the Android Gradle Plugin.
+ * <p>
+ * The symbols of each package are hashed and the hashes are saved next to the jar, only the
+ * packages whose symbols have changed are generated again. The classes of the other packages
+ * are copied from the previous jar.
+ */
+public class RClassJarWriter {
+
+    /**
+     * Bump this whenever the generated classes or the format of the index changes
+     */
+    private static final int VERSION = 2;
+    private static final int MAGIC = 0x524A4152;
+
+    private final File mJar;
+    private final File mIndexFile;
+
+    public RClassJarWriter(@NonNull File jar) {
+        mJar = jar;
+        mIndexFile = new File(jar.getParentFile(), jar.getName() + ".index");
+    }
+
+    /**
+     * Writes the jar containing the R classes of the given packages. The jar is left untouched
+     * if no package has changed since the last write.
+     *
+     * @param packages the package names mapped to their symbols, the values of the symbols
+     *                 must already be the final values of the app
+     * @return the packages whose classes were generated again
+     */
+    @NonNull
+    public Set<String> write(@NonNull Map<String, Table<String, String,
+            SymbolLoader.SymbolEntry>> packages) throws IOException {
+        Map<String, String> previousHashes = readIndex();
+        if (!mJar.exists()) {
+            previousHashes.clear();
+        }
+
+        Map<String, String> hashes = new TreeMap<>();
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, Table<String, String, SymbolLoader.SymbolEntry>> entry :
+                packages.entrySet()) {
+            String hash = hash(entry.getValue());
+            hashes.put(entry.getKey(), hash);
+            if (!hash.equals(previousHashes.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        if (changed.isEmpty() && hashes.keySet().equals(previousHashes.keySet())) {
+            return changed;
+        }
+
+        Map<String, byte[]> classes = new TreeMap<>();
+        if (mJar.exists()) {
+            readUnchangedClasses(hashes.keySet(), changed, classes);
+        }
+        for (String packageName : changed) {
+            generate(packageName, packages.get(packageName), classes);
+        }
+
+        File parent = mJar.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        writeJar(classes);
+        writeIndex(hashes);
+        return changed;
+    }
+
+    /**
+     * Copies the classes of the packages that still exist and have not changed
+     */
+    private void readUnchangedClasses(Set<String> packages, Set<String> changed,
+                                      Map<String, byte[]> classes) throws IOException {
+        Set<String> unchanged = new HashSet<>(packages);
+        unchanged.removeAll(changed);
+        try (ZipFile zipFile = new ZipFile(mJar)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                int index = name.lastIndexOf('/');
+                String packageName = index == -1 ? "" : name.substring(0, index).replace('/', '.');
+                if (unchanged.contains(packageName)) {
+                    try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                        classes.put(name, ByteStreams.toByteArray(inputStream));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // a corrupted jar, generate everything again
+            classes.clear();
+            changed.addAll(packages);
+        }
+    }
+
+    private static void generate(String packageName,
+                                 Table<String, String, SymbolLoader.SymbolEntry> symbols,
+                                 Map<String, byte[]> classes) {
+        String outerName = packageName.isEmpty() ? "R" : packageName.replace('.', '/') + "/R";
+        List<String> types = new ArrayList<>(symbols.rowKeySet());
+        Collections.sort(types);
+        for (String type : types) {
+            String innerName = outerName + "$" + type;
+            classes.put(innerName + ".class",
+                    generateTypeClass(outerName, innerName, type, symbols.row(type)));
+        }
+        classes.put(outerName + ".class", generateOuterClass(outerName, types));
+    }
+
+    private static byte[] generateOuterClass(String outerName, List<String> types) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+                outerName, null, "java/lang/Object", null);
+        for (String type : types) {
+            writer.visitInnerClass(outerName + "$" + type, outerName, type,
+                    Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL);
+        }
+        visitConstructor(writer);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static byte[] generateTypeClass(String outerName, String innerName, String type,
+                                            Map<String, SymbolLoader.SymbolEntry> symbols) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER,
+                innerName, null, "java/lang/Object", null);
+        writer.visitInnerClass(innerName, outerName, type,
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL);
+
+        // not final and without a constant value, so the ids are never inlined by javac
+        int access = Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC;
+        List<String> names = new ArrayList<>(symbols.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            SymbolLoader.SymbolEntry symbol = symbols.get(name);
+            writer.visitField(access, symbol.getName(), isArray(symbol) ? "[I" : "I", null,
+                    null).visitEnd();
+        }
+        visitConstructor(writer);
+
+        if (!names.isEmpty()) {
+            MethodVisitor clinit = writer.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V",
+                    null, null);
+            clinit.visitCode();
+            for (String name : names) {
+                SymbolLoader.SymbolEntry symbol = symbols.get(name);
+                if (isArray(symbol)) {
+                    int[] values = parseArray(symbol.getValue());
+                    push(clinit, values.length);
+                    clinit.visitIntInsn(Opcodes.NEWARRAY, Opcodes.T_INT);
+                    for (int i = 0; i < values.length; i++) {
+                        clinit.visitInsn(Opcodes.DUP);
+                        push(clinit, i);
+                        push(clinit, values[i]);
+                        clinit.visitInsn(Opcodes.IASTORE);
+                    }
+                    clinit.visitFieldInsn(Opcodes.PUTSTATIC, innerName, symbol.getName(), "[I");
+                } else {
+                    push(clinit, parseInt(symbol.getValue()));
+                    clinit.visitFieldInsn(Opcodes.PUTSTATIC, innerName, symbol.getName(), "I");
+                }
+            }
+            clinit.visitInsn(Opcodes.RETURN);
+            clinit.visitMaxs(0, 0);
+            clinit.visitEnd();
+        }
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void visitConstructor(ClassWriter writer) {
+        MethodVisitor init = writer.visitMethod(Opcodes.ACC_PRIVATE, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+    }
+
+    private static void push(MethodVisitor visitor, int value) {
+        if (value >= -1 && value <= 5) {
+            visitor.visitInsn(Opcodes.ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            visitor.visitIntInsn(Opcodes.BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            visitor.visitIntInsn(Opcodes.SIPUSH, value);
+        } else {
+            visitor.visitLdcInsn(value);
+        }
+    }
+
+    private static boolean isArray(SymbolLoader.SymbolEntry symbol) {
+        return "int[]".equals(symbol.getType());
+    }
+
+    /**
+     * Parses values written by AAPT2 such as {@code 0x7f010000}
+     */
+    private static int parseInt(String value) {
+        value = value.trim();
+        if (value.startsWith("0x") || value.startsWith("0X")) {
+            return Integer.parseUnsignedInt(value.substring(2), 16);
+        }
+        return Integer.parseInt(value);
+    }
+
+    /**
+     * Parses arrays written by AAPT2 such as {@code { 0x7f010000, 0x7f010001 }}
+     */
+    private static int[] parseArray(String value) {
+        String contents = value.trim();
+        if (contents.startsWith("{")) {
+            contents = contents.substring(1);
+        }
+        if (contents.endsWith("}")) {
+            contents = contents.substring(0, contents.length() - 1);
+        }
+        contents = contents.trim();
+        if (contents.isEmpty()) {
+            return new int[0];
+        }
+        String[] parts = contents.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = parseInt(parts[i]);
+        }
+        return values;
+    }
+
+    private static String hash(Table<String, String, SymbolLoader.SymbolEntry> symbols) {
+        List<String> lines = new ArrayList<>(symbols.size());
+        for (Table.Cell<String, String, SymbolLoader.SymbolEntry> cell : symbols.cellSet()) {
+            SymbolLoader.SymbolEntry symbol = cell.getValue();
+            lines.add(cell.getRowKey() + " " + symbol.getType() + " " + symbol.getName() + " " +
+                      symbol.getValue());
+        }
+        Collections.sort(lines);
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (String line : lines) {
+            hasher.putString(line, StandardCharsets.UTF_8);
+            hasher.putByte((byte) 0);
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Writes to a temporary file first so the jar is never left truncated
+     */
+    private void writeJar(Map<String, byte[]> classes) throws IOException {
+        File temp = File.createTempFile(mJar.getName(), ".tmp", mJar.getParentFile());
+        try {
+            try (ZipOutputStream out = new ZipOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                // the jar is only read by javac and d8, compressing it is a waste of time
+                out.setLevel(Deflater.NO_COMPRESSION);
+                for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                    ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                    // fixed times so the jar only changes when its classes do
+                    zipEntry.setTime(0);
+                    out.putNextEntry(zipEntry);
+                    out.write(entry.getValue());
+                    out.closeEntry();
+                }
+            }
+            Files.move(temp.toPath(), mJar.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private Map<String, String> readIndex() {
+        Map<String, String> hashes = new HashMap<>();
+        if (!mIndexFile.isFile()) {
+            return hashes;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mIndexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return hashes;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                hashes.put(in.readUTF(), in.readUTF());
+            }
+        } catch (IOException e) {
+            // every package is generated again
+            hashes.clear();
+        }
+        return hashes;
+    }
+
+    private void writeIndex(Map<String, String> hashes) throws IOException {
+        File temp = File.createTempFile(mIndexFile.getName(), ".tmp",
+                mIndexFile.getParentFile());
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(hashes.size());
+                for (Map.Entry<String, String> entry : hashes.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                }
+            }
+            Files.move(temp.toPath(), mIndexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.tyron.builder.compiler.trace;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records where the time of a build goes, as spans and counters that are written in the
+ * Chrome trace event format. The written file can be opened in chrome://tracing or Perfetto.
+ * <p>
+ * Only one build is traced at a time. The static methods record to the trace of the running
+ * build and do nothing when no build is traced, so they are safe to call from anywhere.
+ * <pre>
+ * try (BuildTrace.Span span = BuildTrace.span("compile")) {
+ *     ...
+ *     BuildTrace.count("java.filesCompiled", files.size());
+ * }
+ * </pre>
+ */
+public class BuildTrace {
+
+    private static final int PROCESS_ID = 1;
+
+    private static volatile BuildTrace sCurrent;
+
+    /**
+     * The spans open on the current thread, counters are also added to the innermost one
+     */
+    private static final ThreadLocal<Deque<Span>> sOpenSpans =
+            ThreadLocal.withInitial(ArrayDeque::new);
+
+    private static final Span NO_OP = new Span(null, "", "") {
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * Starts tracing a build, replacing the trace of the previous one
+     */
+    @NonNull
+    public static BuildTrace begin() {
+        BuildTrace trace = new BuildTrace();
+        sCurrent = trace;
+        return trace;
+    }
+
+    /**
+     * Stops tracing, the trace can still be written afterwards
+     */
+    public static void end(@NonNull BuildTrace trace) {
+        if (sCurrent == trace) {
+            sCurrent = null;
+        }
+    }
+
+    /**
+     * Opens a span on the current thread, it ends when it is closed
+     */
+    @NonNull
+    public static Span span(@NonNull String name) {
+        return span("build", name);
+    }
+
+    @NonNull
+    public static Span span(@NonNull String category, @NonNull String name) {
+        BuildTrace trace = sCurrent;
+        if (trace == null) {
+            return NO_OP;
+        }
+        Span span = new Span(trace, category, name);
+        sOpenSpans.get().push(span);
+        return span;
+    }
+
+    /**
+     * Adds to a counter of the build, the value is also recorded on the innermost open span
+     * of the current thread
+     */
+    public static void count(@NonNull String name, long delta) {
+        BuildTrace trace = sCurrent;
+        if (trace == null) {
+            return;
+        }
+        Span span = sOpenSpans.get().peek();
+        if (span != null && span.mTrace == trace) {
+            span.mCounters.merge(name, delta, Long::sum);
+        }
+        long value = trace.mCounters.computeIfAbsent(name, k -> new AtomicLong())
+                .addAndGet(delta);
+        trace.mEvents.add(new Event(name, "counter", 'C', trace.now(), 0,
+                Thread.currentThread(), Collections.singletonMap("value", value)));
+    }
+
+    /**
+     * A timed section of the build, spans opened while another one is open on the same thread
+     * are shown nested inside it
+     */
+    public static class Span implements AutoCloseable {
+
+        private final BuildTrace mTrace;
+        private final String mCategory;
+        private final String mName;
+        private final long mStart;
+        private final Map<String, Long> mCounters = new LinkedHashMap<>();
+
+        private Span(@Nullable BuildTrace trace, String category, String name) {
+            mTrace = trace;
+            mCategory = category;
+            mName = name;
+            mStart = trace == null ? 0 : trace.now();
+        }
+
+        @Override
+        public void close() {
+            Deque<Span> spans = sOpenSpans.get();
+            spans.remove(this);
+            if (spans.isEmpty()) {
+                sOpenSpans.remove();
+            }
+            long end = mTrace.now();
+            mTrace.mEvents.add(new Event(mName, mCategory, 'X', mStart, end - mStart,
+                    Thread.currentThread(), new LinkedHashMap<>(mCounters)));
+        }
+    }
+
+    private static class Event {
+        final String name;
+        final String category;
+        final char phase;
+        final long timestamp;
+        final long duration;
+        final long threadId;
+        final String threadName;
+        final Map<String, Long> args;
+
+        Event(String name, String category, char phase, long timestamp, long duration,
+              Thread thread, Map<String, Long> args) {
+            this.name = name;
+            this.category = category;
+            this.phase = phase;
+            this.timestamp = timestamp;
+            this.duration = duration;
+            this.threadId = thread.getId();
+            this.threadName = thread.getName();
+            this.args = args;
+        }
+    }
+
+    private final long mStartNanos = System.nanoTime();
+    private final Queue<Event> mEvents = new ConcurrentLinkedQueue<>();
+    private final Map<String, AtomicLong> mCounters = new ConcurrentHashMap<>();
+
+    private BuildTrace() {
+    }
+
+    /**
+     * @return the microseconds since the trace has started
+     */
+    private long now() {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - mStartNanos);
+    }
+
+    /**
+     * @return the current values of the counters of the build
+     */
+    @NonNull
+    public Map<String, Long> getCounters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        mCounters.forEach((name, value) -> counters.put(name, value.get()));
+        return counters;
+    }
+
+    /**
+     * Writes the trace in the Chrome trace event format
+     */
+    public void write(@NonNull File file) throws IOException {
+        List<Event> events = new ArrayList<>(mEvents);
+        Map<Long, String> threads = new LinkedHashMap<>();
+        for (Event event : events) {
+            threads.putIfAbsent(event.threadId, event.threadName);
+        }
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            try (JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(temp), StandardCharsets.UTF_8)))) {
+                writer.beginObject();
+                writer.name("displayTimeUnit").value("ms");
+                writer.name("traceEvents").beginArray();
+                for (Map.Entry<Long, String> thread : threads.entrySet()) {
+                    writer.beginObject();
+                    writer.name("name").value("thread_name");
+                    writer.name("ph").value("M");
+                    writer.name("pid").value(PROCESS_ID);
+                    writer.name("tid").value(thread.getKey());
+                    writer.name("args").beginObject();
+                    writer.name("name").value(thread.getValue());
+                    writer.endObject();
+                    writer.endObject();
+                }
+                for (Event event : events) {
+                    writer.beginObject();
+                    writer.name("name").value(event.name);
+                    writer.name("cat").value(event.category);
+                    writer.name("ph").value(String.valueOf(event.phase));
+                    writer.name("ts").value(event.timestamp);
+                    if (event.phase == 'X') {
+                        writer.name("dur").value(event.duration);
+                    }
+                    writer.name("pid").value(PROCESS_ID);
+                    writer.name("tid").value(event.threadId);
+                    if (!event.args.isEmpty()) {
+                        writer.name("args").beginObject();
+                        for (Map.Entry<String, Long> arg : event.args.entrySet()) {
+                            writer.name(arg.getKey()).value(arg.getValue());
+                        }
+                        writer.endObject();
+                    }
+                    writer.endObject();
+                }
+                writer.endArray();
+                writer.endObject();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.tyron.builder.compiler.viewbinding
 import android.util.Log
 import com.tyron.builder.compiler.BuildType
 import com.tyron.builder.compiler.Task
+import com.tyron.builder.compiler.java.CheckLibrariesTask
 import com.tyron.builder.exception.CompilationFailedException
 import com.tyron.builder.log.ILogger
 import com.tyron.builder.model.ModuleSettings
@@ -38,6 +39,12 @@ class GenerateViewBindingTask(
 
     override fun getName() = TAG
 
+    /**
+     * Only reads the layout files of the module, so it can run while the resources are
+     * being compiled
+     */
+    override fun getPrerequisites(): Set<Class<*>> = setOf(CheckLibrariesTask::class.java)
+
     override fun prepare(type: BuildType?) {
         outputDirectory = File(module.buildDirectory, VIEW_BINDING_GEN_DIR)
         doPrepare()
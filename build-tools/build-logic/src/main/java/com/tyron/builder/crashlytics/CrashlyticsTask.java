@@ -1,7 +1,10 @@
 package com.tyron.builder.crashlytics;
 
+import com.google.common.collect.ImmutableSet;
 import com.tyron.builder.compiler.BuildType;
 import com.tyron.builder.compiler.Task;
+import com.tyron.builder.compiler.java.CheckLibrariesTask;
+import com.tyron.builder.compiler.log.InjectLoggerTask;
 import com.tyron.builder.compiler.manifest.resources.ResourceType;
 import com.tyron.builder.exception.CompilationFailedException;
 import com.tyron.builder.log.ILogger;
@@ -24,6 +27,7 @@ import java.io.IOException;
 import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Task to inject crashlytics build id to the resource directory
@@ -51,6 +55,15 @@ public class CrashlyticsTask extends Task<AndroidModule> {
         return TAG;
     }
 
+    /**
+     * Reads the classes of the module and its libraries, including the ones added by the
+     * logger task
+     */
+    @Override
+    public Set<Class<?>> getPrerequisites() {
+        return ImmutableSet.of(CheckLibrariesTask.class, InjectLoggerTask.class);
+    }
+
     @Override
     public void prepare(BuildType type) throws IOException {
         mContainsCrashlytics = getModule().getAllClasses().contains(CORE_CLASS);
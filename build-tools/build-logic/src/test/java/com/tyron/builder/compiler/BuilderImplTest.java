@@ -0,0 +1,180 @@
+package com.tyron.builder.compiler;
+
+import com.google.common.collect.ImmutableSet;
+import com.tyron.builder.exception.CompilationFailedException;
+import com.tyron.builder.log.ILogger;
+import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.builder.project.mock.MockJavaModule;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(RobolectricTestRunner.class)
+public class BuilderImplTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private JavaModule mModule;
+    private final List<String> mEvents = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setup() {
+        mModule = new MockJavaModule(mFolder.getRoot(), new MockFileManager(mFolder.getRoot()));
+    }
+
+    @Test
+    public void testPrerequisitesFinishFirst() throws Exception {
+        TestTask first = new FirstTask(Collections.emptySet());
+        TestTask second = new SecondTask(ImmutableSet.of(FirstTask.class));
+        TestTask third = new ThirdTask(ImmutableSet.of(FirstTask.class, SecondTask.class));
+        build(first, second, third);
+
+        assertBefore("end First", "start Second");
+        assertBefore("end Second", "start Third");
+        assert first.cleaned && second.cleaned && third.cleaned;
+    }
+
+    @Test
+    public void testBarrierWaitsForEveryTask() throws Exception {
+        build(new FirstTask(Collections.emptySet()),
+                new SecondTask(Collections.emptySet()),
+                new ThirdTask(null),
+                new FourthTask(Collections.emptySet()));
+
+        assertBefore("end First", "start Third");
+        assertBefore("end Second", "start Third");
+        assertBefore("end Third", "start Fourth");
+    }
+
+    /**
+     * Only the tasks added before a task are its prerequisites, so tasks that list each other
+     * can not wait on each other forever
+     */
+    @Test
+    public void testPrerequisiteCycle() throws Exception {
+        build(new FirstTask(ImmutableSet.of(SecondTask.class)),
+                new SecondTask(ImmutableSet.of(FirstTask.class)));
+
+        assertBefore("end First", "start Second");
+    }
+
+    @Test
+    public void testFailureStopsDependentTasks() throws Exception {
+        TestTask first = new FirstTask(Collections.emptySet());
+        first.fail = true;
+        TestTask second = new SecondTask(ImmutableSet.of(FirstTask.class));
+        TestTask third = new ThirdTask(null);
+
+        try {
+            build(first, second, third);
+            assert false : "The build should have failed";
+        } catch (CompilationFailedException e) {
+            assert "First failed".equals(e.getMessage());
+        }
+
+        assert !mEvents.contains("start Second");
+        assert !mEvents.contains("start Third");
+        assert first.cleaned;
+        assert !second.cleaned;
+    }
+
+    private void build(TestTask... tasks) throws IOException, CompilationFailedException {
+        List<Task<? super JavaModule>> list = new ArrayList<>(Arrays.asList(tasks));
+        new BuilderImpl<JavaModule>(null, mModule, ILogger.EMPTY) {
+            @Override
+            public List<Task<? super JavaModule>> getTasks(BuildType type) {
+                return list;
+            }
+        }.build(BuildType.DEBUG);
+    }
+
+    private void assertBefore(String first, String second) {
+        int firstIndex = mEvents.indexOf(first);
+        int secondIndex = mEvents.indexOf(second);
+        assert firstIndex != -1 && secondIndex != -1 : mEvents;
+        assert firstIndex < secondIndex : mEvents;
+    }
+
+    private abstract class TestTask extends Task<JavaModule> {
+
+        private final Set<Class<?>> mPrerequisites;
+        boolean fail;
+        boolean cleaned;
+
+        TestTask(Set<Class<?>> prerequisites) {
+            super(null, mModule, ILogger.EMPTY);
+            mPrerequisites = prerequisites;
+        }
+
+        @Override
+        public String getName() {
+            return getClass().getSimpleName().replace("Task", "");
+        }
+
+        @Override
+        public void prepare(BuildType type) {
+            mEvents.add("start " + getName());
+        }
+
+        @Override
+        public void run() throws CompilationFailedException {
+            try {
+                // gives the tasks that should wait for this one a chance to start too early
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (fail) {
+                throw new CompilationFailedException(getName() + " failed");
+            }
+            mEvents.add("end " + getName());
+        }
+
+        @Override
+        public Set<Class<?>> getPrerequisites() {
+            return mPrerequisites;
+        }
+
+        @Override
+        protected void clean() {
+            cleaned = true;
+        }
+    }
+
+    private class FirstTask extends TestTask {
+        FirstTask(Set<Class<?>> prerequisites) {
+            super(prerequisites);
+        }
+    }
+
+    private class SecondTask extends TestTask {
+        SecondTask(Set<Class<?>> prerequisites) {
+            super(prerequisites);
+        }
+    }
+
+    private class ThirdTask extends TestTask {
+        ThirdTask(Set<Class<?>> prerequisites) {
+            super(prerequisites);
+        }
+    }
+
+    private class FourthTask extends TestTask {
+        FourthTask(Set<Class<?>> prerequisites) {
+            super(prerequisites);
+        }
+    }
+}
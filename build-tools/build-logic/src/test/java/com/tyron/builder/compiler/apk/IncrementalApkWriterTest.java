@@ -0,0 +1,237 @@
+package com.tyron.builder.compiler.apk;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class IncrementalApkWriterTest {
+
+    private static final String LIBRARY = "lib/arm64-v8a/libnative.so";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testAlignment() throws Exception {
+        File apk = new File(mFolder.getRoot(), "generated.apk");
+        IncrementalApkWriter writer = createWriter(apk, false);
+        assert writer.write() == 5;
+
+        Map<String, EntryLocation> entries = readEntries(apk);
+        assert entries.get("classes.dex").method == ZipEntry.DEFLATED;
+        assert entries.get("res/raw/stored.txt").method == ZipEntry.STORED;
+        assert entries.get("res/raw/stored.txt").dataOffset % 4 == 0;
+        assert entries.get("assets/image.png").method == ZipEntry.STORED;
+        assert entries.get("assets/image.png").dataOffset % 4 == 0;
+        // shared libraries are mapped from the apk when they are not extracted
+        assert entries.get(LIBRARY).method == ZipEntry.STORED;
+        assert entries.get(LIBRARY).dataOffset % 4096 == 0;
+
+        assertContents(apk, LIBRARY, "native library");
+    }
+
+    @Test
+    public void testExtractedNativeLibraries() throws Exception {
+        File apk = new File(mFolder.getRoot(), "generated.apk");
+        assert createWriter(apk, false).write() == 5;
+
+        // the unchanged libraries must be written again with the new compression
+        assert createWriter(apk, true).write() == 5;
+        assert readEntries(apk).get(LIBRARY).method == ZipEntry.DEFLATED;
+        assertContents(apk, LIBRARY, "native library");
+    }
+
+    @Test
+    public void testUnchangedEntriesPreserved() throws Exception {
+        File apk = new File(mFolder.getRoot(), "generated.apk");
+        assert createWriter(apk, false).write() == 5;
+        Map<String, EntryLocation> before = readEntries(apk);
+
+        // nothing changed, the apk is not touched
+        long lastModified = apk.lastModified();
+        assert createWriter(apk, false).write() == 0;
+        assert apk.lastModified() == lastModified;
+
+        write(new File(mFolder.getRoot(), "classes.dex"), "changed dex contents");
+        assert createWriter(apk, false).write() == 1;
+
+        Map<String, EntryLocation> after = readEntries(apk);
+        assert after.keySet().equals(before.keySet());
+        for (String name : new String[]{LIBRARY, "res/raw/stored.txt", "assets/image.png"}) {
+            assert after.get(name).localHeaderOffset == before.get(name).localHeaderOffset : name;
+            assert after.get(name).dataOffset == before.get(name).dataOffset : name;
+        }
+        assertContents(apk, "classes.dex", "changed dex contents");
+        assertContents(apk, LIBRARY, "native library");
+    }
+
+    @Test
+    public void testRemovedEntry() throws Exception {
+        File apk = new File(mFolder.getRoot(), "generated.apk");
+        assert createWriter(apk, false).write() == 5;
+
+        Files.delete(new File(mFolder.getRoot(), "resources/assets/image.png").toPath());
+        assert createWriter(apk, false).write() == 0;
+
+        try (ZipFile zipFile = new ZipFile(apk)) {
+            assert zipFile.getEntry("assets/image.png") == null;
+            assert zipFile.getEntry("classes.dex") != null;
+        }
+    }
+
+    @Test
+    public void testModifiedApkIsRewritten() throws Exception {
+        File apk = new File(mFolder.getRoot(), "generated.apk");
+        assert createWriter(apk, false).write() == 5;
+
+        // an apk that was changed outside of the writer cannot be edited in place
+        try (RandomAccessFile file = new RandomAccessFile(apk, "rw")) {
+            file.setLength(file.length() + 1);
+        }
+        assert createWriter(apk, false).write() == 5;
+        assertContents(apk, "classes.dex", "dex contents");
+    }
+
+    private IncrementalApkWriter createWriter(File apk, boolean extractNativeLibs)
+            throws Exception {
+        File root = mFolder.getRoot();
+        File dex = new File(root, "classes.dex");
+        if (!dex.exists()) {
+            write(dex, "dex contents");
+        }
+        File library = new File(root, "jni/arm64-v8a/libnative.so");
+        if (!library.exists()) {
+            write(library, "native library");
+        }
+        File image = new File(root, "resources/assets/image.png");
+        if (!image.exists() && !new File(root, "resources").exists()) {
+            write(image, "png");
+        }
+        File resources = new File(root, "generated.apk.res");
+        if (!resources.exists()) {
+            createStoredZip(resources, "res/raw/stored.txt", "stored resource");
+        }
+
+        IncrementalApkWriter writer = new IncrementalApkWriter(apk, Deflater.BEST_SPEED);
+        writer.setExtractNativeLibs(extractNativeLibs);
+        writer.addZip(resources);
+        writer.addFile(dex, "classes.dex");
+        writer.addNativeLibraries(new File(root, "jni"));
+        writer.addSourceFolder(new File(root, "resources"));
+        return writer;
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void createStoredZip(File file, String name, String contents)
+            throws IOException {
+        byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(bytes.length);
+        entry.setCompressedSize(bytes.length);
+        entry.setCrc(crc.getValue());
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            // an odd sized first entry so the stored entry is not aligned by accident
+            out.putNextEntry(new ZipEntry("AndroidManifest.xml"));
+            out.write(1);
+            out.closeEntry();
+            out.putNextEntry(entry);
+            out.write(bytes);
+            out.closeEntry();
+        }
+    }
+
+    private static void assertContents(File apk, String name, String expected)
+            throws IOException {
+        try (ZipFile zipFile = new ZipFile(apk)) {
+            ZipEntry entry = zipFile.getEntry(name);
+            assert entry != null : name;
+            byte[] bytes = new byte[(int) entry.getSize()];
+            try (DataInputStream in = new DataInputStream(zipFile.getInputStream(entry))) {
+                in.readFully(bytes);
+            }
+            assert new String(bytes, StandardCharsets.UTF_8).equals(expected) : name;
+        }
+    }
+
+    private static class EntryLocation {
+        final int method;
+        final long localHeaderOffset;
+        final long dataOffset;
+
+        EntryLocation(int method, long localHeaderOffset, long dataOffset) {
+            this.method = method;
+            this.localHeaderOffset = localHeaderOffset;
+            this.dataOffset = dataOffset;
+        }
+    }
+
+    /**
+     * Reads the central directory to find where the data of each entry starts, which
+     * {@link ZipFile} does not expose
+     */
+    private static Map<String, EntryLocation> readEntries(File apk) throws IOException {
+        Map<String, EntryLocation> entries = new HashMap<>();
+        try (RandomAccessFile file = new RandomAccessFile(apk, "r")) {
+            long end = file.length() - 22;
+            while (end >= 0 && readIntLE(file, end) != 0x06054b50) {
+                end--;
+            }
+            assert end >= 0 : "No end of central directory";
+            int count = readShortLE(file, end + 10);
+            long offset = readIntLE(file, end + 16) & 0xFFFFFFFFL;
+
+            for (int i = 0; i < count; i++) {
+                assert readIntLE(file, offset) == 0x02014b50;
+                int method = readShortLE(file, offset + 10);
+                int nameLength = readShortLE(file, offset + 28);
+                int extraLength = readShortLE(file, offset + 30);
+                int commentLength = readShortLE(file, offset + 32);
+                long localHeader = readIntLE(file, offset + 42) & 0xFFFFFFFFL;
+                byte[] name = new byte[nameLength];
+                file.seek(offset + 46);
+                file.readFully(name);
+
+                long dataOffset = localHeader + 30 +
+                                  readShortLE(file, localHeader + 26) +
+                                  readShortLE(file, localHeader + 28);
+                entries.put(new String(name, StandardCharsets.UTF_8),
+                        new EntryLocation(method, localHeader, dataOffset));
+                offset += 46 + nameLength + extraLength + commentLength;
+            }
+        }
+        return entries;
+    }
+
+    private static int readShortLE(RandomAccessFile file, long position) throws IOException {
+        file.seek(position);
+        return file.read() | (file.read() << 8);
+    }
+
+    private static int readIntLE(RandomAccessFile file, long position) throws IOException {
+        file.seek(position);
+        return file.read() | (file.read() << 8) | (file.read() << 16) | (file.read() << 24);
+    }
+}
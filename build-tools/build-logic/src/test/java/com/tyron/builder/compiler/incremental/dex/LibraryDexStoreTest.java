@@ -0,0 +1,67 @@
+package com.tyron.builder.compiler.incremental.dex;
+
+import com.android.tools.r8.CompilationMode;
+import com.tyron.common.util.FileHashCache;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class LibraryDexStoreTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private LibraryDexStore mStore;
+    private File mLibrary;
+    private File mDependency;
+
+    @Before
+    public void setup() throws IOException {
+        mStore = new LibraryDexStore(mFolder.newFolder("store"), Long.MAX_VALUE,
+                new FileHashCache(new File(mFolder.getRoot(), "hashes.bin")));
+        mLibrary = write("library.jar", "library");
+        mDependency = write("dependency.jar", "dependency");
+    }
+
+    @Test
+    public void testClasspathIsPartOfTheKeyWhenDesugaring() throws IOException {
+        List<File> jars = Collections.singletonList(mLibrary);
+        List<File> classpath = Arrays.asList(mLibrary, mDependency);
+
+        File entry = getEntry(jars, classpath, 21);
+        assert entry.equals(getEntry(jars, Arrays.asList(mDependency, mLibrary), 21));
+        assert !entry.equals(getEntry(jars, jars, 21));
+
+        // the desugared library depends on the classes of the changed dependency
+        write("dependency.jar", "changed dependency");
+        assert !entry.equals(getEntry(jars, classpath, 21));
+    }
+
+    @Test
+    public void testClasspathIsIgnoredWithoutDesugaring() throws IOException {
+        List<File> jars = Collections.singletonList(mLibrary);
+        File entry = getEntry(jars, Arrays.asList(mLibrary, mDependency), 24);
+        assert entry.equals(getEntry(jars, jars, 24));
+        assert !entry.equals(getEntry(jars, jars, 26));
+    }
+
+    private File getEntry(List<File> jars, List<File> classpath, int minSdk) throws IOException {
+        return mStore.getEntries(jars, classpath, minSdk, CompilationMode.RELEASE).get(mLibrary);
+    }
+
+    private File write(String name, String contents) throws IOException {
+        File file = new File(mFolder.getRoot(), name);
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,130 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class ClassDependencyGraphTest {
+
+    private static final File FOO = new File("test/Foo.java").getAbsoluteFile();
+    private static final File BAR = new File("test/Bar.java").getAbsoluteFile();
+    private static final File BAZ = new File("test/Baz.java").getAbsoluteFile();
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        ClassDependencyGraph graph = createGraph();
+        File file = new File(mFolder.getRoot(), "dependencies.bin");
+        graph.write(file);
+
+        ClassDependencyGraph read = ClassDependencyGraph.read(file);
+        assert !read.isEmpty();
+        assert read.getSources().equals(graph.getSources());
+        assert read.getClasses(FOO).equals(setOf("test.Foo", "test.Foo$Inner"));
+        assert read.getDependentSources(Collections.singleton("test.Foo"))
+                .equals(graph.getDependentSources(Collections.singleton("test.Foo")));
+
+        // unchanged classes read back from the file are not reported as changed
+        ClassDependencyGraph.Delta delta = read.update(BAR, Collections.singletonList(
+                analysis("test.Bar", setOf("test.Foo"), setOf(), 2, 0)));
+        assert delta.getAbiChangedClasses().isEmpty();
+        assert !delta.isFullRebuild();
+    }
+
+    @Test
+    public void testUnreadableGraph() throws IOException {
+        File missing = new File(mFolder.getRoot(), "missing.bin");
+        assert ClassDependencyGraph.read(missing).isEmpty();
+
+        File file = new File(mFolder.getRoot(), "dependencies.bin");
+        createGraph().write(file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        File truncated = new File(mFolder.getRoot(), "truncated.bin");
+        Files.write(truncated.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+        assert ClassDependencyGraph.read(truncated).isEmpty();
+
+        File oldVersion = mFolder.newFile("old.bin");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(oldVersion))) {
+            out.writeInt(0x434C4447);
+            out.writeInt(1);
+            out.writeInt(0);
+        }
+        assert ClassDependencyGraph.read(oldVersion).isEmpty();
+    }
+
+    @Test
+    public void testDependentSources() {
+        ClassDependencyGraph graph = createGraph();
+
+        // Bar exposes Foo through its ABI, so the users of Bar are affected too
+        assert graph.getDependentSources(Collections.singleton("test.Foo"))
+                .equals(setOf(FOO, BAR, BAZ));
+        // Baz only uses Bar privately
+        assert graph.getDependentSources(Collections.singleton("test.Bar"))
+                .equals(Collections.singleton(BAZ));
+    }
+
+    @Test
+    public void testRemovedClass() {
+        ClassDependencyGraph graph = createGraph();
+
+        ClassDependencyGraph.Delta delta = graph.update(FOO, Collections.singletonList(
+                analysis("test.Foo", setOf(), setOf(), 1, 0)));
+        assert delta.getAbiChangedClasses().equals(setOf("test.Foo$Inner"));
+        assert !delta.isFullRebuild();
+        assert graph.getClasses(FOO).equals(setOf("test.Foo"));
+
+        delta = graph.remove(BAR);
+        assert delta.getAbiChangedClasses().equals(setOf("test.Bar"));
+        assert graph.getDependentSources(delta.getAbiChangedClasses())
+                .equals(Collections.singleton(BAZ));
+        assert !graph.getSources().contains(BAR);
+    }
+
+    @Test
+    public void testRemovedConstants() {
+        ClassDependencyGraph graph = createGraph();
+        graph.update(FOO, Collections.singletonList(
+                analysis("test.Foo", setOf(), setOf(), 1, 42)));
+
+        // the classes which inlined the constants do not reference the removed class
+        assert graph.remove(FOO).isFullRebuild();
+    }
+
+    private static ClassDependencyGraph createGraph() {
+        ClassDependencyGraph graph = new ClassDependencyGraph();
+        graph.update(FOO, Arrays.asList(
+                analysis("test.Foo", setOf(), setOf(), 1, 0),
+                analysis("test.Foo$Inner", setOf(), setOf("test.Foo"), 1, 0)));
+        graph.update(BAR, Collections.singletonList(
+                analysis("test.Bar", setOf("test.Foo"), setOf(), 2, 0)));
+        graph.update(BAZ, Collections.singletonList(
+                analysis("test.Baz", setOf(), setOf("test.Bar"), 3, 0)));
+        return graph;
+    }
+
+    private static ClassAnalysis analysis(String name, Set<String> accessible,
+                                          Set<String> privateDependencies, long abiHash,
+                                          long constantsHash) {
+        return new ClassAnalysis(name, accessible, privateDependencies, abiHash, constantsHash,
+                false);
+    }
+
+    @SafeVarargs
+    private static <T> Set<T> setOf(T... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
@@ -0,0 +1,196 @@
+package com.tyron.builder.compiler.incremental.java;
+
+import org.junit.Test;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+public class ClassDependencyVisitorTest {
+
+    @Test
+    public void testConstantChange() {
+        ClassAnalysis before = analyze(new TestClass().constant(1));
+        ClassAnalysis after = analyze(new TestClass().constant(2));
+        assert before.getAbiHash() == after.getAbiHash();
+        assert before.getConstantsHash() != after.getConstantsHash();
+
+        ClassDependencyGraph graph = new ClassDependencyGraph();
+        graph.update(TestClass.SOURCE, singletonList(before));
+        ClassDependencyGraph.Delta delta = graph.update(TestClass.SOURCE, singletonList(after));
+        assert delta.isFullRebuild();
+    }
+
+    @Test
+    public void testPrivateChange() {
+        ClassAnalysis before = analyze(new TestClass());
+        ClassAnalysis after = analyze(new TestClass().privateField("mCount"));
+        assert before.getAbiHash() == after.getAbiHash();
+        assert before.getConstantsHash() == after.getConstantsHash();
+
+        ClassDependencyGraph graph = new ClassDependencyGraph();
+        graph.update(TestClass.SOURCE, singletonList(before));
+        ClassDependencyGraph.Delta delta = graph.update(TestClass.SOURCE, singletonList(after));
+        assert delta.getAbiChangedClasses().isEmpty();
+        assert !delta.isFullRebuild();
+    }
+
+    @Test
+    public void testPublicChange() {
+        ClassAnalysis before = analyze(new TestClass());
+        ClassAnalysis after = analyze(new TestClass().publicMethod("run"));
+        assert before.getAbiHash() != after.getAbiHash();
+    }
+
+    @Test
+    public void testSourceRetentionAnnotation() {
+        ClassAnalysis source = analyze(new TestClass().annotationType("SOURCE"));
+        assert source.isDependencyToAll();
+
+        ClassAnalysis runtime = analyze(new TestClass().annotationType("RUNTIME"));
+        assert !runtime.isDependencyToAll();
+        assert source.getAbiHash() != runtime.getAbiHash();
+    }
+
+    @Test
+    public void testAnnotationValues() {
+        ClassAnalysis first = analyze(new TestClass().annotated("first"));
+        ClassAnalysis second = analyze(new TestClass().annotated("second"));
+        assert first.getAbiHash() != second.getAbiHash();
+        assert first.getAccessibleDependencies().contains("test.Marker");
+    }
+
+    @Test
+    public void testAnnotationDefault() {
+        ClassAnalysis first = analyze(new TestClass().annotationType("RUNTIME")
+                .elementDefault("first"));
+        ClassAnalysis second = analyze(new TestClass().annotationType("RUNTIME")
+                .elementDefault("second"));
+        assert first.getAbiHash() != second.getAbiHash();
+    }
+
+    private static ClassAnalysis analyze(TestClass testClass) {
+        return ClassDependencyVisitor.analyze(testClass.toByteArray());
+    }
+
+    private static List<ClassAnalysis> singletonList(ClassAnalysis analysis) {
+        return Collections.singletonList(analysis);
+    }
+
+    /**
+     * Builds a class file the way javac would write it for test.Foo
+     */
+    static class TestClass {
+
+        static final File SOURCE = new File("test/Foo.java");
+
+        private final String mName;
+        private Integer mConstant;
+        private String mPrivateField;
+        private String mPublicMethod;
+        private String mRetention;
+        private String mAnnotationValue;
+        private String mElementDefault;
+
+        TestClass() {
+            this("test/Foo");
+        }
+
+        TestClass(String name) {
+            mName = name;
+        }
+
+        TestClass constant(int value) {
+            mConstant = value;
+            return this;
+        }
+
+        TestClass privateField(String name) {
+            mPrivateField = name;
+            return this;
+        }
+
+        TestClass publicMethod(String name) {
+            mPublicMethod = name;
+            return this;
+        }
+
+        TestClass annotationType(String retention) {
+            mRetention = retention;
+            return this;
+        }
+
+        TestClass annotated(String value) {
+            mAnnotationValue = value;
+            return this;
+        }
+
+        TestClass elementDefault(String value) {
+            mElementDefault = value;
+            return this;
+        }
+
+        byte[] toByteArray() {
+            ClassWriter writer = new ClassWriter(0);
+            if (mRetention != null) {
+                writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_ANNOTATION |
+                                          Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT,
+                        mName, null, "java/lang/Object",
+                        new String[]{"java/lang/annotation/Annotation"});
+                AnnotationVisitor retention =
+                        writer.visitAnnotation("Ljava/lang/annotation/Retention;", true);
+                retention.visitEnum("value", "Ljava/lang/annotation/RetentionPolicy;",
+                        mRetention);
+                retention.visitEnd();
+            } else {
+                writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, mName, null,
+                        "java/lang/Object", null);
+            }
+
+            if (mAnnotationValue != null) {
+                AnnotationVisitor annotation = writer.visitAnnotation("Ltest/Marker;", true);
+                annotation.visit("value", mAnnotationValue);
+                AnnotationVisitor array = annotation.visitArray("types");
+                array.visit(null, Type.getObjectType("test/Bar"));
+                array.visitEnd();
+                annotation.visitEnd();
+            }
+            if (mConstant != null) {
+                FieldVisitor field = writer.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC |
+                                                       Opcodes.ACC_FINAL, "VALUE", "I", null,
+                        mConstant);
+                field.visitEnd();
+            }
+            if (mPrivateField != null) {
+                FieldVisitor field = writer.visitField(Opcodes.ACC_PRIVATE, mPrivateField, "I",
+                        null, null);
+                field.visitEnd();
+            }
+            if (mPublicMethod != null) {
+                MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, mPublicMethod,
+                        "()V", null, null);
+                method.visitCode();
+                method.visitInsn(Opcodes.RETURN);
+                method.visitMaxs(0, 1);
+                method.visitEnd();
+            }
+            if (mElementDefault != null) {
+                MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC |
+                                                          Opcodes.ACC_ABSTRACT, "value",
+                        "()Ljava/lang/String;", null, null);
+                AnnotationVisitor defaultValue = method.visitAnnotationDefault();
+                defaultValue.visit(null, mElementDefault);
+                defaultValue.visitEnd();
+                method.visitEnd();
+            }
+            writer.visitEnd();
+            return writer.toByteArray();
+        }
+    }
+}
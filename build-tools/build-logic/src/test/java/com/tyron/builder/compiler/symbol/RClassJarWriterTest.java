@@ -0,0 +1,135 @@
+package com.tyron.builder.compiler.symbol;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+public class RClassJarWriterTest {
+
+    private static final String PACKAGE = "com.google.android.material";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testGeneratedClasses() throws Exception {
+        File jar = new File(mFolder.getRoot(), "R.jar");
+        Set<String> generated = new RClassJarWriter(jar).write(createPackages("0x7f010000"));
+        assert generated.equals(Collections.singleton(PACKAGE));
+
+        try (URLClassLoader loader = load(jar)) {
+            Class<?> attr = loader.loadClass(PACKAGE + ".R$attr");
+            Field colorPrimary = attr.getField("colorPrimary");
+            assert Modifier.isStatic(colorPrimary.getModifiers());
+            // final fields would be inlined into the classes that use them
+            assert !Modifier.isFinal(colorPrimary.getModifiers());
+            assert colorPrimary.getInt(null) == 0x7f010000;
+            assert attr.getField("large").getInt(null) == 0x7f0100ff;
+
+            // arrays are initialized by the static initializer
+            Class<?> styleable = loader.loadClass(PACKAGE + ".R$styleable");
+            int[] button = (int[]) styleable.getField("Button").get(null);
+            assert Arrays.equals(button, new int[]{0x7f010000, 0x7f0100ff, 0x01010034});
+            int[] empty = (int[]) styleable.getField("Empty").get(null);
+            assert empty.length == 0;
+            assert styleable.getField("Button_colorPrimary").getInt(null) == 0;
+
+            Class<?> outer = loader.loadClass(PACKAGE + ".R");
+            assert Arrays.asList(outer.getDeclaredClasses()).contains(attr);
+            Constructor<?> constructor = outer.getDeclaredConstructor();
+            assert Modifier.isPrivate(constructor.getModifiers());
+        }
+    }
+
+    @Test
+    public void testUnchangedPackagesAreKept() throws Exception {
+        File jar = new File(mFolder.getRoot(), "R.jar");
+        RClassJarWriter writer = new RClassJarWriter(jar);
+        writer.write(createPackages("0x7f010000"));
+        long modified = jar.lastModified();
+
+        assert writer.write(createPackages("0x7f010000")).isEmpty();
+        assert jar.lastModified() == modified;
+
+        assert !writer.write(createPackages("0x7f010001")).isEmpty();
+        try (URLClassLoader loader = load(jar)) {
+            Class<?> attr = loader.loadClass(PACKAGE + ".R$attr");
+            assert attr.getField("colorPrimary").getInt(null) == 0x7f010001;
+        }
+    }
+
+    @Test
+    public void testChangedIdsAreNotInlined() throws Exception {
+        File jar = new File(mFolder.getRoot(), "R.jar");
+        RClassJarWriter writer = new RClassJarWriter(jar);
+        writer.write(createPackages("0x7f010000"));
+
+        // compiled once against the first jar, just like the incremental java task would
+        File classes = mFolder.newFolder("classes");
+        File source = new File(mFolder.newFolder("src"), "Main.java");
+        Files.write(source.toPath(), ("public class Main {\n" +
+                "    public static int colorPrimary() {\n" +
+                "        return " + PACKAGE + ".R.attr.colorPrimary;\n" +
+                "    }\n" +
+                "}\n").getBytes(StandardCharsets.UTF_8));
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int result = compiler.run(null, null, null, "-classpath", jar.getAbsolutePath(), "-d",
+                classes.getAbsolutePath(), source.getAbsolutePath());
+        assert result == 0;
+        assert colorPrimary(classes, jar) == 0x7f010000;
+
+        writer.write(createPackages("0x7f010001"));
+        assert colorPrimary(classes, jar) == 0x7f010001 : "The id was inlined into Main";
+    }
+
+    private static int colorPrimary(File classes, File jar) throws Exception {
+        try (URLClassLoader loader = new URLClassLoader(
+                new URL[]{classes.toURI().toURL(), jar.toURI().toURL()}, null)) {
+            return (int) loader.loadClass("Main").getMethod("colorPrimary").invoke(null);
+        }
+    }
+
+    private static URLClassLoader load(File jar) throws Exception {
+        return new URLClassLoader(new URL[]{jar.toURI().toURL()}, null);
+    }
+
+    private static Map<String, Table<String, String, SymbolLoader.SymbolEntry>> createPackages(
+            String colorPrimary) {
+        Table<String, String, SymbolLoader.SymbolEntry> symbols = HashBasedTable.create();
+        put(symbols, "attr", "int", "colorPrimary", colorPrimary);
+        put(symbols, "attr", "int", "large", "0x7f0100ff");
+        put(symbols, "styleable", "int[]", "Button",
+                "{ 0x7f010000, 0x7f0100ff, 0x01010034 }");
+        put(symbols, "styleable", "int", "Button_colorPrimary", "0");
+        put(symbols, "styleable", "int[]", "Empty", "{  }");
+
+        Map<String, Table<String, String, SymbolLoader.SymbolEntry>> packages = new HashMap<>();
+        packages.put(PACKAGE, symbols);
+        return packages;
+    }
+
+    private static void put(Table<String, String, SymbolLoader.SymbolEntry> table, String type,
+                            String javaType, String name, String value) {
+        table.put(type, name, new SymbolLoader.SymbolEntry(name, javaType, value));
+    }
+}
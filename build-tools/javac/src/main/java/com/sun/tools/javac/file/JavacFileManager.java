@@ -256,6 +256,20 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         }
     }
 
+    /**
+     * Closes the container opened for the given path, it is opened again the next time it is
+     * used. Used by file managers kept between compilations when an archive changes on disk.
+     */
+    public synchronized void closeContainer(Path path) throws IOException {
+        JavacFileManager.Container fs = this.containers.get(path);
+        if (fs == null) {
+            return;
+        }
+        this.containers.values().removeIf(it -> it == fs);
+        this.flush();
+        fs.close();
+    }
+
     private synchronized JRTIndex getJRTIndex() {
         if (this.jrtIndex == null) {
             this.jrtIndex = JRTIndex.getSharedInstance();
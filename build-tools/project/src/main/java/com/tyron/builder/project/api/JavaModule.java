@@ -5,6 +5,7 @@ import androidx.annotation.Nullable;
 
 import com.tyron.builder.model.CodeAssistLibrary;
 import com.tyron.builder.project.util.PackageTrie;
+import com.tyron.builder.project.util.ShortNameIndex;
 
 import java.io.File;
 import java.util.List;
@@ -54,6 +55,13 @@ public interface JavaModule extends Module {
     @NonNull
     PackageTrie getClassIndex();
 
+    /**
+     * @return The index of the classes in this module by their simple names, it is updated
+     * along with {@link #getClassIndex()}
+     */
+    @NonNull
+    ShortNameIndex getShortNameIndex();
+
     /**
      * @return The resources directory of the project. Note that
      * this is different from android's res directory
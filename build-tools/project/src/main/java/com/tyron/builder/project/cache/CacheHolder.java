@@ -2,22 +2,60 @@ package com.tyron.builder.project.cache;
 
 import com.tyron.common.util.Cache;
 
+import java.io.IOException;
+
 public interface CacheHolder {
 
     class CacheKey<K, V> {
 
         private final String name;
+        private final DataSerializer<K> keySerializer;
+        private final DataSerializer<V> valueSerializer;
 
+        /**
+         * Creates a key of a cache that only lives in memory
+         */
         public CacheKey(String name) {
+            this(name, null, null);
+        }
+
+        /**
+         * Creates a key of a cache that is saved to disk and survives restarts of the app
+         */
+        public CacheKey(String name, DataSerializer<K> keySerializer,
+                        DataSerializer<V> valueSerializer) {
             this.name = name;
+            this.keySerializer = keySerializer;
+            this.valueSerializer = valueSerializer;
         }
 
         public String getName() {
             return name;
         }
+
+        public boolean isPersistent() {
+            return keySerializer != null && valueSerializer != null;
+        }
+
+        public DataSerializer<K> getKeySerializer() {
+            return keySerializer;
+        }
+
+        public DataSerializer<V> getValueSerializer() {
+            return valueSerializer;
+        }
     }
 
+    /**
+     * Returns the cache of the given key. Persistent caches are loaded from disk the first
+     * time they are requested.
+     */
     <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue);
 
     <K, V> void put(CacheKey<K, V> key, Cache<K, V> value);
+
+    /**
+     * Writes the persistent caches that have changed since they were loaded or last saved
+     */
+    void saveCaches() throws IOException;
 }
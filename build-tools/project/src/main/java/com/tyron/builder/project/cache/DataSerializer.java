@@ -0,0 +1,80 @@
+package com.tyron.builder.project.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes and reads the keys and values of a cache so it can be saved to disk,
+ * see {@link PersistentCacheStore}
+ */
+public interface DataSerializer<T> {
+
+    DataSerializer<String> STRING = new DataSerializer<String>() {
+        @Override
+        public void write(DataOutput out, String value) throws IOException {
+            out.writeUTF(value);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    DataSerializer<File> FILE = new DataSerializer<File>() {
+        @Override
+        public void write(DataOutput out, File value) throws IOException {
+            out.writeUTF(value.getAbsolutePath());
+        }
+
+        @Override
+        public File read(DataInput in) throws IOException {
+            return new File(in.readUTF());
+        }
+    };
+
+    /**
+     * Used by caches that only track whether a file has changed
+     */
+    DataSerializer<Void> VOID = new DataSerializer<Void>() {
+        @Override
+        public void write(DataOutput out, Void value) {
+
+        }
+
+        @Override
+        public Void read(DataInput in) {
+            return null;
+        }
+    };
+
+    static <T> DataSerializer<List<T>> listOf(DataSerializer<T> serializer) {
+        return new DataSerializer<List<T>>() {
+            @Override
+            public void write(DataOutput out, List<T> value) throws IOException {
+                out.writeInt(value.size());
+                for (T t : value) {
+                    serializer.write(out, t);
+                }
+            }
+
+            @Override
+            public List<T> read(DataInput in) throws IOException {
+                int size = in.readInt();
+                List<T> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(serializer.read(in));
+                }
+                return list;
+            }
+        };
+    }
+
+    void write(DataOutput out, T value) throws IOException;
+
+    T read(DataInput in) throws IOException;
+}
@@ -0,0 +1,158 @@
+package com.tyron.builder.project.cache;
+
+import androidx.annotation.NonNull;
+
+import com.tyron.common.logging.IdeLog;
+import com.tyron.common.util.Cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Saves persistent caches of a module to its build directory so incremental tasks do not
+ * start over after the app is restarted.
+ * <p>
+ * Each cache is written to its own file along with the modified time each mapping was loaded
+ * with, so mappings of files modified while the app was not running are still treated as
+ * stale. A cache whose file is missing, corrupted or from another version starts empty.
+ */
+public class PersistentCacheStore {
+
+    private static final Logger LOG = IdeLog.getCurrentLogger(PersistentCacheStore.class);
+
+    /**
+     * Bump this whenever the format of the saved caches changes
+     */
+    private static final int VERSION = 1;
+    private static final int MAGIC = 0x43414348;
+    private static final String EXTENSION = ".bin";
+
+    private static class Entry<K, V> {
+        final Cache.Key<K> key;
+        final V value;
+        final long modified;
+
+        Entry(Cache.Key<K> key, V value, long modified) {
+            this.key = key;
+            this.value = value;
+            this.modified = modified;
+        }
+    }
+
+    private final File mDirectory;
+
+    /**
+     * The modification count of each cache when it was last loaded or saved
+     */
+    private final Map<String, Long> mSavedModifications = new HashMap<>();
+
+    /**
+     * @param directory the directory where the caches are saved, it is created when the
+     *                  first cache is saved
+     */
+    public PersistentCacheStore(@NonNull File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Adds the saved mappings of the given key to the cache
+     */
+    public synchronized <K, V> void load(@NonNull CacheHolder.CacheKey<K, V> key,
+                                         @NonNull Cache<K, V> cache) {
+        File file = getFile(key);
+        if (file.isFile()) {
+            try {
+                read(file, key, cache);
+            } catch (IOException | RuntimeException e) {
+                LOG.warning("Unable to load cache " + key.getName() + ": " + e.getMessage());
+                cache.clear();
+            }
+        }
+        mSavedModifications.put(key.getName(), cache.getModificationCount());
+    }
+
+    /**
+     * Saves the cache if it has changed since it was loaded or last saved
+     */
+    public synchronized <K, V> void save(@NonNull CacheHolder.CacheKey<K, V> key,
+                                         @NonNull Cache<K, V> cache) throws IOException {
+        long modificationCount = cache.getModificationCount();
+        Long saved = mSavedModifications.get(key.getName());
+        if (saved != null && saved == modificationCount) {
+            return;
+        }
+        write(getFile(key), key, cache);
+        mSavedModifications.put(key.getName(), modificationCount);
+    }
+
+    private File getFile(CacheHolder.CacheKey<?, ?> key) {
+        return new File(mDirectory, key.getName() + EXTENSION);
+    }
+
+    private static <K, V> void read(File file, CacheHolder.CacheKey<K, V> key,
+                                    Cache<K, V> cache) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long modified = in.readLong();
+                K k = key.getKeySerializer().read(in);
+                V v = key.getValueSerializer().read(in);
+                cache.restore(Paths.get(path), k, v, modified);
+            }
+        }
+    }
+
+    /**
+     * Writes to a temporary file first so a crash while writing never leaves a truncated
+     * cache behind
+     */
+    private static <K, V> void write(File file, CacheHolder.CacheKey<K, V> key,
+                                     Cache<K, V> cache) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            // copy the mappings first so the cache is not locked while writing
+            List<Entry<K, V>> entries = new ArrayList<>();
+            cache.forEach((k, value, modified) -> entries.add(new Entry<>(k, value, modified)));
+
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Entry<K, V> entry : entries) {
+                    out.writeUTF(entry.key.file.toString());
+                    out.writeLong(entry.modified);
+                    key.getKeySerializer().write(out, entry.key.key);
+                    key.getValueSerializer().write(out, entry.value);
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+}
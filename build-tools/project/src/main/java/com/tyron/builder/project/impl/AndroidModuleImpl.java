@@ -27,11 +27,11 @@ import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
@@ -52,8 +52,9 @@ public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
     public AndroidModuleImpl(File root) {
         super(root);
 
-        mKotlinFiles = new HashMap<>();
-        mResourceClasses = new HashMap<>(1);
+        mKotlinFiles = new ConcurrentHashMap<>();
+        // resource classes are added by build tasks that may run in parallel
+        mResourceClasses = new ConcurrentHashMap<>(1);
     }
 
     @Override
@@ -207,6 +208,9 @@ public class AndroidModuleImpl extends JavaModuleImpl implements AndroidModule {
     @Nullable
     @Override
     public File getKotlinFile(String packageName) {
+        if (packageName == null) {
+            return null;
+        }
         return mKotlinFiles.get(packageName);
     }
 
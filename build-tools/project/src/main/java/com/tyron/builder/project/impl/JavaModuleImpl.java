@@ -8,6 +8,7 @@ import com.google.common.collect.ImmutableMap;
 import com.tyron.builder.model.CodeAssistLibrary;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.util.PackageTrie;
+import com.tyron.builder.project.util.ShortNameIndex;
 import com.tyron.common.util.StringSearch;
 
 import org.apache.commons.io.FileUtils;
@@ -19,11 +20,11 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -38,14 +39,17 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
 
     // the index of all the class files in this module
     private final PackageTrie mClassIndex = new PackageTrie();
+    private final ShortNameIndex mShortNameIndex = new ShortNameIndex();
 
     public JavaModuleImpl(File root) {
         super(root);
-        mJavaFiles = new HashMap<>();
-        mClassFiles = new HashMap<>();
-        mLibraries = new HashSet<>();
-        mInjectedClassesMap = new HashMap<>();
-        mLibraryHashMap = new HashMap<>();
+        // build tasks running in parallel add and read files while other tasks
+        // iterate them, e.g. the logger task injects its class during the build
+        mJavaFiles = new ConcurrentHashMap<>();
+        mClassFiles = new ConcurrentHashMap<>();
+        mLibraries = ConcurrentHashMap.newKeySet();
+        mInjectedClassesMap = new ConcurrentHashMap<>();
+        mLibraryHashMap = new ConcurrentHashMap<>();
     }
 
     @NonNull
@@ -54,6 +58,12 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
         return mClassIndex;
     }
 
+    @NonNull
+    @Override
+    public ShortNameIndex getShortNameIndex() {
+        return mShortNameIndex;
+    }
+
     @NonNull
     @Override
     public Map<String, File> getJavaFiles() {
@@ -69,7 +79,10 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
     @Override
     public void removeJavaFile(@NonNull String packageName) {
         mJavaFiles.remove(packageName);
-        mClassIndex.remove(packageName);
+        synchronized (mClassIndex) {
+            mClassIndex.remove(packageName);
+        }
+        mShortNameIndex.remove(packageName);
     }
 
     @Override
@@ -79,7 +92,10 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
         }
         String className = getFullyQualifiedName(javaFile);
         mJavaFiles.put(className, javaFile);
-        mClassIndex.add(className);
+        synchronized (mClassIndex) {
+            mClassIndex.add(className);
+        }
+        mShortNameIndex.add(className);
     }
 
     @Override
@@ -90,6 +106,9 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
     @Nullable
     @Override
     public CodeAssistLibrary getLibrary(String hash) {
+        if (hash == null) {
+            return null;
+        }
         return mLibraryHashMap.get(hash);
     }
 
@@ -149,7 +168,10 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
                         .substring(0, entry.getName().length() - ".class".length());
 
                 mClassFiles.put(packageName, file);
-                mClassIndex.add(packageName);
+                synchronized (mClassIndex) {
+                    mClassIndex.add(packageName);
+                }
+                mShortNameIndex.add(packageName);
             }
         }
     }
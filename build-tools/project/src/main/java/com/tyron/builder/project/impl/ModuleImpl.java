@@ -5,6 +5,7 @@ import androidx.annotation.Nullable;
 import com.tyron.builder.model.ModuleSettings;
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.cache.PersistentCacheStore;
 import com.tyron.common.util.Cache;
 
 import org.jetbrains.annotations.NotNull;
@@ -146,11 +147,15 @@ public class ModuleImpl implements Module {
     private static final AtomicFieldUpdater<ModuleImpl, KeyFMap> updater = AtomicFieldUpdater.forFieldOfType(ModuleImpl.class, KeyFMap.class);
 
     private final Map<CacheKey<?, ?>, Cache<?, ?>> mCacheMap = new HashMap<>();
+    private PersistentCacheStore mCacheStore;
 
     @Override
-    public <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue) {
+    public synchronized <K, V> Cache<K, V> getCache(CacheKey<K, V> key, Cache<K, V> defaultValue) {
         Object o = mCacheMap.get(key);
         if (o == null) {
+            if (key.isPersistent()) {
+                getCacheStore().load(key, defaultValue);
+            }
             put(key, defaultValue);
             return defaultValue;
         }
@@ -158,12 +163,37 @@ public class ModuleImpl implements Module {
         return (Cache<K, V>) o;
     }
 
-    public <K, V> void removeCache(CacheKey<K, V> key) {
+    public synchronized <K, V> void removeCache(CacheKey<K, V> key) {
         mCacheMap.remove(key);
     }
 
     @Override
-    public <K, V> void put(CacheKey<K, V> key, Cache<K, V> value) {
+    public synchronized <K, V> void put(CacheKey<K, V> key, Cache<K, V> value) {
         mCacheMap.put(key, value);
     }
+
+    @Override
+    public synchronized void saveCaches() throws IOException {
+        for (Map.Entry<CacheKey<?, ?>, Cache<?, ?>> entry : mCacheMap.entrySet()) {
+            if (entry.getKey().isPersistent()) {
+                saveCache(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <K, V> void saveCache(CacheKey<K, V> key, Cache<?, ?> cache) throws IOException {
+        getCacheStore().save(key, (Cache<K, V>) cache);
+    }
+
+    /**
+     * The caches are kept inside the bin directory so cleaning the build outputs also
+     * removes the caches that refer to them
+     */
+    private PersistentCacheStore getCacheStore() {
+        if (mCacheStore == null) {
+            mCacheStore = new PersistentCacheStore(new File(getBuildDirectory(), "bin/caches"));
+        }
+        return mCacheStore;
+    }
 }
@@ -8,6 +8,7 @@ import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.impl.ModuleImpl;
 import com.tyron.builder.project.util.PackageTrie;
+import com.tyron.builder.project.util.ShortNameIndex;
 import com.tyron.common.util.StringSearch;
 
 import org.jetbrains.annotations.NotNull;
@@ -32,6 +33,8 @@ public class MockJavaModule extends ModuleImpl implements JavaModule {
 
     private final KeyFMap mDataMap = KeyFMap.EMPTY_MAP;
     private final Map<String, File> mJavaFiles = new HashMap<>();
+    private final PackageTrie mClassIndex = new PackageTrie();
+    private final ShortNameIndex mShortNameIndex = new ShortNameIndex();
 
     private final FileManager mFileManager;
     private final File mRootDir;
@@ -57,6 +60,8 @@ public class MockJavaModule extends ModuleImpl implements JavaModule {
     @Override
     public void removeJavaFile(@NonNull String packageName) {
         mJavaFiles.remove(packageName);
+        mClassIndex.remove(packageName);
+        mShortNameIndex.remove(packageName);
     }
 
     @Override
@@ -69,6 +74,8 @@ public class MockJavaModule extends ModuleImpl implements JavaModule {
             className = packageName + "." + javaFile.getName().replace(".java", "");
         }
         mJavaFiles.put(className, javaFile);
+        mClassIndex.add(className);
+        mShortNameIndex.add(className);
     }
 
     @Override
@@ -100,7 +107,13 @@ public class MockJavaModule extends ModuleImpl implements JavaModule {
     @NonNull
     @Override
     public PackageTrie getClassIndex() {
-        return new PackageTrie();
+        return mClassIndex;
+    }
+
+    @NonNull
+    @Override
+    public ShortNameIndex getShortNameIndex() {
+        return mShortNameIndex;
     }
 
     @NonNull
@@ -0,0 +1,304 @@
+package com.tyron.builder.project.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * An index of classes by their simple name, used for class name completion.
+ * <p>
+ * Classes are kept in two sorted arrays, one sorted by simple name and one by its camel hump
+ * key, the first letter of the name followed by its upper case letters (ArrayList -> AL).
+ * Looking up a prefix or a camel hump query such as {@code ALi} is a binary search followed by
+ * a scan of the matching range.
+ * <p>
+ * Changes are not applied immediately, instead they are merged into the sorted arrays on the
+ * next lookup so adding the classes of a whole jar does not sort the index for every class.
+ */
+public class ShortNameIndex {
+
+    private static final Comparator<Entry> NAME_ORDER = (a, b) -> {
+        int result = String.CASE_INSENSITIVE_ORDER.compare(a.simpleName, b.simpleName);
+        if (result != 0) {
+            return result;
+        }
+        result = a.simpleName.compareTo(b.simpleName);
+        if (result != 0) {
+            return result;
+        }
+        return a.fqn.compareTo(b.fqn);
+    };
+
+    private static final Comparator<Entry> HUMP_ORDER = (a, b) -> {
+        int result = a.humps.compareTo(b.humps);
+        if (result != 0) {
+            return result;
+        }
+        return a.fqn.compareTo(b.fqn);
+    };
+
+    private static final Entry[] EMPTY = new Entry[0];
+
+    private volatile Entry[] mByName = EMPTY;
+    private volatile Entry[] mByHumps = EMPTY;
+
+    private final Set<String> mPendingAdditions = new HashSet<>();
+    private final Set<String> mPendingRemovals = new HashSet<>();
+    private volatile boolean mDirty;
+
+    /**
+     * Add a class to the index
+     *
+     * @param fqn The fully qualified name of the class
+     */
+    public synchronized void add(@NonNull String fqn) {
+        mPendingRemovals.remove(fqn);
+        mPendingAdditions.add(fqn);
+        mDirty = true;
+    }
+
+    /**
+     * Remove a class from the index
+     *
+     * @param fqn The fully qualified name of the class
+     */
+    public synchronized void remove(@NonNull String fqn) {
+        mPendingAdditions.remove(fqn);
+        mPendingRemovals.add(fqn);
+        mDirty = true;
+    }
+
+    public synchronized void clear() {
+        mPendingAdditions.clear();
+        mPendingRemovals.clear();
+        mByName = EMPTY;
+        mByHumps = EMPTY;
+        mDirty = false;
+    }
+
+    public int size() {
+        flush();
+        return mByName.length;
+    }
+
+    /**
+     * Passes the fully qualified name of every class whose simple name starts with the
+     * query, or matches the query as camel humps, to the consumer. Each class is passed
+     * at most once. An empty query or {@code "."} matches every class.
+     *
+     * @param query The partial simple name of the class
+     * @param caseSensitive Whether the prefix and the lower case letters of the humps should
+     *                      be compared case sensitively
+     */
+    public void search(@NonNull String query, boolean caseSensitive, @NonNull Consumer<String> consumer) {
+        flush();
+
+        Entry[] byName = mByName;
+        if (query.isEmpty() || ".".equals(query)) {
+            for (Entry entry : byName) {
+                consumer.accept(entry.fqn);
+            }
+            return;
+        }
+
+        for (int i = lowerBound(byName, query); i < byName.length; i++) {
+            Entry entry = byName[i];
+            if (!entry.simpleName.regionMatches(true, 0, query, 0, query.length())) {
+                break;
+            }
+            if (!caseSensitive || entry.simpleName.startsWith(query)) {
+                consumer.accept(entry.fqn);
+            }
+        }
+
+        String queryHumps = getHumps(query);
+        if (queryHumps.length() < 2) {
+            // a single hump is just a prefix match, which is handled above
+            return;
+        }
+
+        Entry[] byHumps = mByHumps;
+        for (int i = lowerBoundHumps(byHumps, queryHumps); i < byHumps.length; i++) {
+            Entry entry = byHumps[i];
+            if (!entry.humps.startsWith(queryHumps)) {
+                break;
+            }
+            if (entry.simpleName.regionMatches(!caseSensitive, 0, query, 0, query.length())) {
+                // already matched as a prefix
+                continue;
+            }
+            if (matchesHumps(entry.simpleName, query, caseSensitive)) {
+                consumer.accept(entry.fqn);
+            }
+        }
+    }
+
+    private void flush() {
+        if (!mDirty) {
+            return;
+        }
+        synchronized (this) {
+            if (!mDirty) {
+                return;
+            }
+            List<Entry> added = new ArrayList<>(mPendingAdditions.size());
+            for (String fqn : mPendingAdditions) {
+                added.add(new Entry(fqn));
+            }
+            Entry[] additions = added.toArray(EMPTY);
+
+            Arrays.sort(additions, NAME_ORDER);
+            mByName = merge(mByName, additions, mPendingRemovals, NAME_ORDER);
+
+            Arrays.sort(additions, HUMP_ORDER);
+            mByHumps = merge(mByHumps, additions, mPendingRemovals, HUMP_ORDER);
+
+            mPendingAdditions.clear();
+            mPendingRemovals.clear();
+            mDirty = false;
+        }
+    }
+
+    /**
+     * Merges the sorted additions into the sorted existing entries, dropping duplicates and
+     * the entries that have been removed.
+     */
+    private static Entry[] merge(Entry[] existing,
+                                 Entry[] additions,
+                                 Set<String> removals,
+                                 Comparator<Entry> comparator) {
+        Entry[] result = new Entry[existing.length + additions.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < existing.length || j < additions.length) {
+            Entry next;
+            if (j >= additions.length) {
+                next = existing[i++];
+            } else if (i >= existing.length) {
+                next = additions[j++];
+            } else {
+                int compare = comparator.compare(existing[i], additions[j]);
+                if (compare == 0) {
+                    j++;
+                    next = existing[i++];
+                } else if (compare < 0) {
+                    next = existing[i++];
+                } else {
+                    next = additions[j++];
+                }
+            }
+            if (removals.contains(next.fqn)) {
+                continue;
+            }
+            result[size++] = next;
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    private static int lowerBound(Entry[] entries, String query) {
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (String.CASE_INSENSITIVE_ORDER.compare(entries[mid].simpleName, query) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int lowerBoundHumps(Entry[] entries, String humps) {
+        int low = 0;
+        int high = entries.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries[mid].humps.compareTo(humps) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The first letter of the name in upper case followed by the rest of its upper
+     * case letters.
+     */
+    static String getHumps(String name) {
+        if (name.isEmpty()) {
+            return name;
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append(Character.toUpperCase(name.charAt(0)));
+        for (int i = 1; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c)) {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Checks whether each hump of the query is a prefix of the consecutive humps of the name,
+     * e.g. {@code ALi} matches {@code ArrayList} but not {@code AbstractSequentialList}
+     */
+    static boolean matchesHumps(String name, String query, boolean caseSensitive) {
+        int nameIndex = 0;
+        int queryIndex = 0;
+        while (queryIndex < query.length()) {
+            if (nameIndex >= name.length()) {
+                return false;
+            }
+            // start of a hump in both the name and the query
+            if (Character.toUpperCase(name.charAt(nameIndex)) !=
+                Character.toUpperCase(query.charAt(queryIndex))) {
+                return false;
+            }
+            nameIndex++;
+            queryIndex++;
+
+            // the rest of the hump in the query must match the rest of the hump in the name
+            while (queryIndex < query.length() && !Character.isUpperCase(query.charAt(queryIndex))) {
+                if (nameIndex >= name.length() || Character.isUpperCase(name.charAt(nameIndex))) {
+                    return false;
+                }
+                char n = name.charAt(nameIndex);
+                char q = query.charAt(queryIndex);
+                if (caseSensitive ? n != q : Character.toLowerCase(n) != Character.toLowerCase(q)) {
+                    return false;
+                }
+                nameIndex++;
+                queryIndex++;
+            }
+
+            // skip to the start of the next hump in the name
+            while (nameIndex < name.length() && !Character.isUpperCase(name.charAt(nameIndex))) {
+                nameIndex++;
+            }
+        }
+        return true;
+    }
+
+    private static class Entry {
+        final String fqn;
+        final String simpleName;
+        final String humps;
+
+        Entry(String fqn) {
+            this.fqn = fqn;
+            this.simpleName = fqn.substring(fqn.lastIndexOf('.') + 1);
+            this.humps = getHumps(simpleName);
+        }
+    }
+}
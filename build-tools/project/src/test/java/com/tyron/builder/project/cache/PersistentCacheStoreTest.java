@@ -0,0 +1,100 @@
+package com.tyron.builder.project.cache;
+
+import com.tyron.common.util.Cache;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PersistentCacheStoreTest {
+
+    private static final CacheHolder.CacheKey<String, List<File>> KEY =
+            new CacheHolder.CacheKey<>("testCache", DataSerializer.STRING,
+                    DataSerializer.listOf(DataSerializer.FILE));
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mDirectory;
+    private Path mFirst;
+    private Path mSecond;
+
+    @Before
+    public void setup() throws IOException {
+        mDirectory = mFolder.newFolder("caches");
+        mFirst = mFolder.newFile("First.java").toPath();
+        mSecond = mFolder.newFile("Second.java").toPath();
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        Cache<String, List<File>> cache = new Cache<>();
+        cache.load(mFirst, "class", Arrays.asList(new File("First.class"),
+                new File("First$1.class")));
+        cache.load(mSecond, "class", Collections.singletonList(new File("Second.class")));
+
+        PersistentCacheStore store = new PersistentCacheStore(mDirectory);
+        store.load(KEY, new Cache<>());
+        store.save(KEY, cache);
+
+        Cache<String, List<File>> loaded = new Cache<>();
+        new PersistentCacheStore(mDirectory).load(KEY, loaded);
+        assert loaded.size() == 2;
+        assert loaded.has(mFirst, "class");
+        assert loaded.get(mFirst, "class").size() == 2;
+        assert loaded.get(mSecond, "class").get(0).getName().equals("Second.class");
+    }
+
+    @Test
+    public void testModifiedWhileClosed() throws IOException {
+        Cache<String, List<File>> cache = new Cache<>();
+        cache.load(mFirst, "class", Collections.emptyList());
+        cache.load(mSecond, "class", Collections.emptyList());
+        new PersistentCacheStore(mDirectory).save(KEY, cache);
+
+        File file = mFirst.toFile();
+        assert file.setLastModified(file.lastModified() - 10_000);
+
+        Cache<String, List<File>> loaded = new Cache<>();
+        new PersistentCacheStore(mDirectory).load(KEY, loaded);
+        assert loaded.needs(mFirst, "class");
+        assert loaded.has(mSecond, "class");
+    }
+
+    @Test
+    public void testUnchangedCacheIsNotWritten() throws IOException {
+        Cache<String, List<File>> cache = new Cache<>();
+        cache.load(mFirst, "class", Collections.emptyList());
+        PersistentCacheStore store = new PersistentCacheStore(mDirectory);
+        store.save(KEY, cache);
+
+        File saved = new File(mDirectory, "testCache.bin");
+        assert saved.delete();
+        store.save(KEY, cache);
+        assert !saved.exists();
+
+        cache.load(mSecond, "class", Collections.emptyList());
+        store.save(KEY, cache);
+        assert saved.exists();
+    }
+
+    @Test
+    public void testCorruptedCache() throws IOException {
+        Files.write(new File(mDirectory, "testCache.bin").toPath(),
+                "not a cache".getBytes(StandardCharsets.UTF_8));
+
+        Cache<String, List<File>> loaded = new Cache<>();
+        new PersistentCacheStore(mDirectory).load(KEY, loaded);
+        assert loaded.size() == 0;
+    }
+}
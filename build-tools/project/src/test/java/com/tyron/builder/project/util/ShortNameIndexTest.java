@@ -0,0 +1,68 @@
+package com.tyron.builder.project.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ShortNameIndexTest {
+
+    @Test
+    public void testPrefix() {
+        ShortNameIndex index = new ShortNameIndex();
+        index.add("java.util.ArrayList");
+        index.add("java.util.ArrayDeque");
+        index.add("java.util.HashMap");
+        index.add("android.widget.ArrayAdapter");
+
+        List<String> names = search(index, "Array", true);
+        assert names.size() == 3;
+        assert names.contains("java.util.ArrayList");
+        assert names.contains("java.util.ArrayDeque");
+        assert names.contains("android.widget.ArrayAdapter");
+
+        assert search(index, "array", true).isEmpty();
+        assert search(index, "array", false).size() == 3;
+    }
+
+    @Test
+    public void testCamelHumps() {
+        ShortNameIndex index = new ShortNameIndex();
+        index.add("java.util.ArrayList");
+        index.add("java.util.AbstractList");
+        index.add("java.util.AbstractSequentialList");
+        index.add("java.util.ArrayDeque");
+
+        List<String> names = search(index, "ALi", true);
+        assert names.size() == 2;
+        assert names.contains("java.util.ArrayList");
+        assert names.contains("java.util.AbstractList");
+
+        names = search(index, "ASL", true);
+        assert names.size() == 1;
+        assert names.contains("java.util.AbstractSequentialList");
+    }
+
+    @Test
+    public void testIncrementalUpdates() {
+        ShortNameIndex index = new ShortNameIndex();
+        index.add("a.Foo");
+        index.add("b.Foo");
+        assert search(index, "Foo", true).size() == 2;
+
+        index.remove("a.Foo");
+        index.add("c.FooBar");
+        index.add("b.Foo");
+        List<String> names = search(index, "Foo", true);
+        assert names.size() == 2;
+        assert names.contains("b.Foo");
+        assert names.contains("c.FooBar");
+        assert index.size() == 2;
+    }
+
+    private static List<String> search(ShortNameIndex index, String query, boolean caseSensitive) {
+        List<String> result = new ArrayList<>();
+        index.search(query, caseSensitive, result::add);
+        return result;
+    }
+}
@@ -0,0 +1,59 @@
+package com.tyron.xml.completion.repository;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.google.common.collect.ImmutableSet;
+import com.tyron.builder.compiler.manifest.resources.ResourceType;
+import com.tyron.xml.completion.repository.api.ResourceReference;
+
+import java.io.File;
+import java.util.Set;
+
+/**
+ * Describes the resources that were added, removed or changed when a file of a
+ * {@link SimpleResourceRepository} was updated. Resources whose values are the same as before
+ * the update are not included.
+ */
+public class ResourceChangeEvent {
+
+    private final File mFile;
+    private final ImmutableSet<ResourceReference> mChangedResources;
+
+    public ResourceChangeEvent(@NotNull File file,
+                               @NotNull Set<ResourceReference> changedResources) {
+        mFile = file;
+        mChangedResources = ImmutableSet.copyOf(changedResources);
+    }
+
+    /**
+     * @return the file that was updated
+     */
+    @NotNull
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * @return the namespace, type and name of every resource that has changed
+     */
+    @NotNull
+    public ImmutableSet<ResourceReference> getChangedResources() {
+        return mChangedResources;
+    }
+
+    /**
+     * @return whether a resource of the given type has changed
+     */
+    public boolean hasChanges(@NotNull ResourceType type) {
+        for (ResourceReference reference : mChangedResources) {
+            if (reference.getResourceType() == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return mChangedResources.isEmpty();
+    }
+}
@@ -0,0 +1,11 @@
+package com.tyron.xml.completion.repository;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Notified after a {@link SimpleResourceRepository} has applied the changes of an updated file
+ */
+public interface ResourceChangeListener {
+
+    void resourcesChanged(@NotNull ResourceChangeEvent event);
+}
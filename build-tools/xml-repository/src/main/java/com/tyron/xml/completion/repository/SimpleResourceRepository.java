@@ -7,7 +7,6 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Multimap;
 import com.tyron.builder.compiler.manifest.configuration.Configurable;
 import com.tyron.builder.compiler.manifest.configuration.FolderConfiguration;
 import com.tyron.builder.compiler.manifest.resources.ResourceFolderType;
@@ -33,11 +32,15 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
 
@@ -65,7 +68,17 @@ public class SimpleResourceRepository implements Repository {
     private final File mResDir;
     private final ResourceNamespace mNamespace;
     protected final ResourceTable mTable = new ResourceTable();
-    protected final Multimap<File, ResourceItem> mFileItems = ArrayListMultimap.create();
+    protected final ListMultimap<File, ResourceItem> mFileItems = ArrayListMultimap.create();
+    private final List<ResourceChangeListener> mListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Numbers the calls to {@link #updateFile(File, String)} in the order they are made
+     */
+    private final AtomicLong mUpdateSequence = new AtomicLong();
+    /**
+     * The sequence number of the last update applied to each file, guarded by this
+     */
+    private final Map<File, Long> mAppliedUpdates = new HashMap<>();
 
     private FolderConfiguration mConfiguration;
 
@@ -113,44 +126,112 @@ public class SimpleResourceRepository implements Repository {
         return sParsers.get(folderType);
     }
 
-    private synchronized void parseFile(@NotNull ResourceParser parser,
+    private void parseFile(@NotNull ResourceParser parser,
                            @NotNull File xmlFile,
                            @Nullable String contents,
                            @NotNull String folderName,
                            @NotNull ResourceNamespace namespace,
                            @Nullable String libraryName) throws IOException {
         List<ResourceValue> values = parser.parse(xmlFile, contents, namespace, libraryName);
-        for (ResourceValue value : values) {
-            ListMultimap<String, ResourceItem> tableValue =
-                    mTable.getOrPutEmpty(value.getNamespace(), value.getResourceType());
-            SimpleResourceItem resourceItem = new SimpleResourceItem(value, folderName);
-            tableValue.put(value.getName(), resourceItem);
-
-            mFileItems.put(xmlFile, resourceItem);
+        synchronized (this) {
+            for (ResourceValue value : values) {
+                SimpleResourceItem resourceItem = new SimpleResourceItem(value, folderName);
+                mTable.getOrPutEmpty(value.getNamespace(), value.getResourceType())
+                        .put(value.getName(), resourceItem);
+                mFileItems.put(xmlFile, resourceItem);
+            }
         }
     }
 
+    public void addChangeListener(@NotNull ResourceChangeListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeChangeListener(@NotNull ResourceChangeListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Parses the file again and applies only the differences to the resources it had before.
+     * Resources whose values have not changed keep their existing items, the listeners are
+     * notified of the resources that were added, removed or changed.
+     * <p>
+     * Updates of the same file may be parsed concurrently, an update that finishes parsing
+     * after a newer update of the file has already been applied is discarded so the older
+     * contents never replace the newer ones.
+     */
     @Override
-    public synchronized void updateFile(@NotNull File file, @Nullable String contents) throws IOException {
-        Collection<ResourceItem> existingItems = mFileItems.get(file);
-        if (existingItems != null) {
-            existingItems.stream()
-                    .filter(Objects::nonNull)
-                    .forEach(mTable::remove);
+    public void updateFile(@NotNull File file, @Nullable String contents) throws IOException {
+        long sequence = mUpdateSequence.incrementAndGet();
+        File parent = file.getParentFile();
+        ResourceParser parser = parent == null ? null : getParser(parent);
+
+        // parse outside of the lock, it is the slow part of the update
+        List<ResourceValue> values;
+        if (parser == null) {
+            values = Collections.emptyList();
+        } else {
+            values = parser.parse(file, contents, mNamespace, null);
         }
 
-        File parent = file.getParentFile();
-        if (parent == null) {
-            return;
+        ResourceChangeEvent event;
+        synchronized (this) {
+            Long applied = mAppliedUpdates.get(file);
+            if (applied != null && applied > sequence) {
+                return;
+            }
+            mAppliedUpdates.put(file, sequence);
+            event = applyChanges(file, parent == null ? "" : parent.getName(), values);
         }
+        if (!event.isEmpty()) {
+            for (ResourceChangeListener listener : mListeners) {
+                listener.resourcesChanged(event);
+            }
+        }
+    }
 
-        ResourceParser parser = getParser(parent);
-        if (parser == null) {
-            // should not happen, but return just in case
-            return;
+    /**
+     * Compares the new values of the file with the values of its current items. Only the items
+     * whose values are no longer there are removed, and only the new values get an item.
+     */
+    @NotNull
+    private ResourceChangeEvent applyChanges(@NotNull File file,
+                                             @NotNull String folderName,
+                                             @NotNull List<ResourceValue> values) {
+        ListMultimap<ResourceValue, ResourceItem> unmatched = ArrayListMultimap.create();
+        List<ResourceItem> removed = new ArrayList<>();
+        for (ResourceItem item : mFileItems.get(file)) {
+            ResourceValue value = item.getResourceValue();
+            if (value == null) {
+                removed.add(item);
+            } else {
+                unmatched.put(value, item);
+            }
+        }
+
+        Set<ResourceReference> changed = new LinkedHashSet<>();
+        List<ResourceItem> items = new ArrayList<>(values.size());
+        for (ResourceValue value : values) {
+            List<ResourceItem> sameValue = unmatched.get(value);
+            if (!sameValue.isEmpty()) {
+                items.add(sameValue.remove(0));
+                continue;
+            }
+            SimpleResourceItem item = new SimpleResourceItem(value, folderName);
+            mTable.getOrPutEmpty(value.getNamespace(), value.getResourceType())
+                    .put(value.getName(), item);
+            items.add(item);
+            changed.add(item.getReferenceToSelf());
+        }
+        removed.addAll(unmatched.values());
+        for (ResourceItem item : removed) {
+            mTable.remove(item);
+            changed.add(item.getReferenceToSelf());
         }
 
-        parseFile(parser, file, contents, parent.getName(), mNamespace, null);
+        // the items of the file are replaced, not added to, so they don't pile up across edits
+        mFileItems.replaceValues(file, items);
+        return new ResourceChangeEvent(file, changed);
     }
 
     @NotNull
@@ -8,6 +8,7 @@ import com.tyron.builder.compiler.manifest.resources.ResourceType;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Represents an Android array resource with a name and a list of children {@link ResourceValue}
@@ -75,4 +76,17 @@ public class ArrayResourceValueImpl extends ResourceValueImpl implements ArrayRe
 
         return super.getValue();
     }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), elements);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (this == obj) return true;
+        if (!super.equals(obj)) return false;
+        ArrayResourceValueImpl other = (ArrayResourceValueImpl) obj;
+        return elements.equals(other.elements);
+    }
 }
@@ -11,6 +11,7 @@ import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 /**
@@ -116,4 +117,22 @@ public class AttrResourceValueImpl extends ResourceValueImpl implements AttrReso
     public void setFormats(@NotNull Collection<AttributeFormat> formats) {
         this.formats = EnumSet.copyOf(formats);
     }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), valueMap, valueDescriptionMap, description,
+                groupName, formats);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (this == obj) return true;
+        if (!super.equals(obj)) return false;
+        AttrResourceValueImpl other = (AttrResourceValueImpl) obj;
+        return Objects.equals(valueMap, other.valueMap)
+                && Objects.equals(valueDescriptionMap, other.valueDescriptionMap)
+                && Objects.equals(description, other.description)
+                && Objects.equals(groupName, other.groupName)
+                && formats.equals(other.formats);
+    }
 }
@@ -6,6 +6,7 @@ import com.google.common.collect.ImmutableList;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import kotlin.Pair;
 
@@ -59,4 +60,19 @@ public class LayoutInfo {
         }
         mChildren.add(child);
     }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mName, mAttributes, mChildren);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        LayoutInfo other = (LayoutInfo) obj;
+        return Objects.equals(mName, other.mName)
+                && Objects.equals(mAttributes, other.mAttributes)
+                && Objects.equals(mChildren, other.mChildren);
+    }
 }
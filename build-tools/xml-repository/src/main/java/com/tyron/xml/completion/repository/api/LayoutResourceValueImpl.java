@@ -3,6 +3,8 @@ package com.tyron.xml.completion.repository.api;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Objects;
+
 public class LayoutResourceValueImpl extends ResourceValueImpl implements LayoutResourceValue {
 
     private final LayoutInfo mRoot;
@@ -22,4 +24,17 @@ public class LayoutResourceValueImpl extends ResourceValueImpl implements Layout
     public LayoutInfo getRoot() {
         return mRoot;
     }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), mRoot);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (this == obj) return true;
+        if (!super.equals(obj)) return false;
+        LayoutResourceValueImpl other = (LayoutResourceValueImpl) obj;
+        return Objects.equals(mRoot, other.mRoot);
+    }
 }
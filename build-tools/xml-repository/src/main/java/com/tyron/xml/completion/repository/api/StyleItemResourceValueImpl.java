@@ -6,6 +6,8 @@ import org.jetbrains.annotations.Nullable;
 import com.google.common.base.MoreObjects;
 import com.tyron.builder.compiler.manifest.resources.ResourceType;
 
+import java.util.Objects;
+
 /**
  * A straightforward implementation of the {@link StyleItemResourceValue} interface.
  */
@@ -75,4 +77,17 @@ public class StyleItemResourceValueImpl extends ResourceValueImpl implements Sty
                 .add("value", getValue())
                 .toString();
     }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), attributeName);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (this == obj) return true;
+        if (!super.equals(obj)) return false;
+        StyleItemResourceValueImpl other = (StyleItemResourceValueImpl) obj;
+        return attributeName.equals(other.attributeName);
+    }
 }
@@ -8,6 +8,7 @@ import com.google.common.collect.Table;
 import com.tyron.builder.compiler.manifest.resources.ResourceType;
 
 import java.util.Collection;
+import java.util.Objects;
 
 /**
  * Represents an Android style resource with a name and a list of children {@link ResourceValue}.
@@ -122,4 +123,18 @@ public class StyleResourceValueImpl extends ResourceValueImpl implements StyleRe
             styleItems.putAll(((StyleResourceValueImpl) style).styleItems);
         }
     }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), parentStyle, styleItems);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (this == obj) return true;
+        if (!super.equals(obj)) return false;
+        StyleResourceValueImpl other = (StyleResourceValueImpl) obj;
+        return Objects.equals(parentStyle, other.parentStyle)
+                && styleItems.equals(other.styleItems);
+    }
 }
@@ -7,6 +7,7 @@ import com.tyron.builder.compiler.manifest.resources.ResourceType;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /** A resource value representing a declare-styleable resource. */
 public class StyleableResourceValueImpl extends ResourceValueImpl
@@ -40,4 +41,17 @@ public class StyleableResourceValueImpl extends ResourceValueImpl
                 : "Can't add non-framework attributes to framework resource.";
         attrs.add(attr);
     }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), attrs);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+        if (this == obj) return true;
+        if (!super.equals(obj)) return false;
+        StyleableResourceValueImpl other = (StyleableResourceValueImpl) obj;
+        return attrs.equals(other.attrs);
+    }
 }
@@ -0,0 +1,116 @@
+package com.tyron.xml.completion.repository;
+
+import com.tyron.builder.compiler.manifest.resources.ResourceType;
+import com.tyron.xml.completion.repository.api.ResourceNamespace;
+import com.tyron.xml.completion.repository.api.ResourceReference;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+public class SimpleResourceRepositoryTest {
+
+    private static final ResourceNamespace NAMESPACE = ResourceNamespace.RES_AUTO;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private SimpleResourceRepository mRepository;
+    private File mStrings;
+    private final List<ResourceChangeEvent> mEvents = new ArrayList<>();
+
+    @Before
+    public void setup() throws IOException {
+        File resDir = mFolder.newFolder("res");
+        mStrings = new File(new File(resDir, "values"), "strings.xml");
+        mRepository = new SimpleResourceRepository(resDir, NAMESPACE);
+        mRepository.addChangeListener(mEvents::add);
+    }
+
+    @Test
+    public void testRepeatedUpdates() throws IOException {
+        mRepository.updateFile(mStrings, strings("First", "Second"));
+        assert mRepository.mFileItems.get(mStrings).size() == 2;
+        assert mEvents.size() == 1;
+        assert mEvents.get(0).getFile().equals(mStrings);
+        assert mEvents.get(0).getChangedResources()
+                .equals(new HashSet<>(Arrays.asList(string("first"), string("second"))));
+
+        // the same contents again, the items are replaced instead of added
+        for (int i = 0; i < 3; i++) {
+            mRepository.updateFile(mStrings, strings("First", "Second"));
+            assert mRepository.mFileItems.get(mStrings).size() == 2;
+        }
+        assert mEvents.size() == 1;
+
+        // only the resource whose value has changed is in the delta
+        mRepository.updateFile(mStrings, strings("First", "Changed"));
+        assert mRepository.mFileItems.get(mStrings).size() == 2;
+        assert mEvents.size() == 2;
+        assert mEvents.get(1).getChangedResources()
+                .equals(Collections.singleton(string("second")));
+        assert mEvents.get(1).hasChanges(ResourceType.STRING);
+        List<ResourceItem> second =
+                mRepository.getResources(NAMESPACE, ResourceType.STRING, "second");
+        assert second.size() == 1;
+        assert "Changed".equals(second.get(0).getResourceValue().getValue());
+    }
+
+    @Test
+    public void testRemovedResource() throws IOException {
+        mRepository.updateFile(mStrings, strings("First", "Second"));
+        mRepository.updateFile(mStrings, "<resources>\n" +
+                "    <string name=\"first\">First</string>\n" +
+                "</resources>");
+
+        assert mRepository.mFileItems.get(mStrings).size() == 1;
+        assert mEvents.get(1).getChangedResources()
+                .equals(Collections.singleton(string("second")));
+        assert mRepository.getResources(NAMESPACE, ResourceType.STRING, "second").isEmpty();
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String value = "Value " + i;
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 50; j++) {
+                    try {
+                        mRepository.updateFile(mStrings, strings("First", value));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // whichever update was applied last, the file never has more items than resources
+        assert mRepository.mFileItems.get(mStrings).size() == 2;
+        assert mRepository.getResources(NAMESPACE, ResourceType.STRING, "second").size() == 1;
+    }
+
+    private static ResourceReference string(String name) {
+        return new ResourceReference(NAMESPACE, ResourceType.STRING, name);
+    }
+
+    private static String strings(String first, String second) {
+        return "<resources>\n" +
+               "    <string name=\"first\">" + first + "</string>\n" +
+               "    <string name=\"second\">" + second + "</string>\n" +
+               "</resources>";
+    }
+}
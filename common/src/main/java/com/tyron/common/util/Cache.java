@@ -3,15 +3,47 @@ package com.tyron.common.util;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.FileTime;
-import java.time.Instant;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
-/** Cache maps a file + an arbitrary key to a value. When the file is modified, the mapping expires. */
+/**
+ * Cache maps a file + an arbitrary key to a value. When the file is modified, the mapping expires.
+ * <p>
+ * The cache is safe to use from multiple threads. It can be bounded by a maximum total weight,
+ * in which case the least recently used mappings are evicted first. By default every mapping
+ * weighs 1 and the cache is unbounded, which is what build caches need since an evicted mapping
+ * would cause a file to be compiled again.
+ * <p>
+ * Every lookup compares the modified time of the file with the one read when the mapping was
+ * loaded, so files written without going through the IDE, such as by the editor or by another
+ * app, never return stale values. Reading the modified time is a single stat call that is done
+ * outside of the lock, {@link #invalidate(Path)} can still be used to drop the mappings of a
+ * file that is known to have changed.
+ */
 public class Cache<K, V> {
+
+    /**
+     * Computes the weight of a mapping, used to bound the cache by its estimated size
+     */
+    public interface Weigher<K, V> {
+        long weigh(Key<K> key, V value);
+    }
+
+    /**
+     * Receives the mappings of the cache along with the modified time of their file when they
+     * were loaded, see {@link #forEach(EntryConsumer)}
+     */
+    public interface EntryConsumer<K, V> {
+        void accept(Key<K> key, V value, long modified);
+    }
+
     public static class Key<K> {
         public final Path file;
         public final K key;
@@ -23,8 +55,8 @@ public class Cache<K, V> {
 
         @Override
         public boolean equals(Object other) {
-            if (other.getClass() != Cache.Key.class) return false;
-            Cache.Key that = (Cache.Key) other;
+            if (!(other instanceof Cache.Key)) return false;
+            Cache.Key<?> that = (Cache.Key<?>) other;
             return Objects.equals(this.key, that.key) && Objects.equals(this.file, that.file);
         }
 
@@ -34,67 +66,261 @@ public class Cache<K, V> {
         }
     }
 
-    private class Value {
+    private static class Value<V> {
         final V value;
-        final Instant created = Instant.now();
+        /** The last modified time of the file when the value was loaded, -1 if unknown */
+        final long modified;
+        final long weight;
 
-        Value(V value) {
+        Value(V value, long modified, long weight) {
             this.value = value;
+            this.modified = modified;
+            this.weight = weight;
         }
     }
 
-    private final Map<Key<K>, Value> map = new HashMap<>();
+    private final long maxWeight;
+    private final Weigher<K, V> weigher;
+
+    private final LinkedHashMap<Key<K>, Value<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Path, Set<Key<K>>> keysByFile = new HashMap<>();
+    private long weight;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong modificationCount = new AtomicLong();
+
+    public Cache() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxEntries The maximum number of mappings before the least recently used ones
+     *                   are evicted
+     */
+    public Cache(long maxEntries) {
+        this(maxEntries, (key, value) -> 1);
+    }
+
+    /**
+     * @param maxWeight The maximum total weight of the mappings before the least recently used
+     *                  ones are evicted
+     * @param weigher Computes the weight of each mapping
+     */
+    public Cache(long maxWeight, Weigher<K, V> weigher) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be positive");
+        }
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
 
     public boolean has(Path file, K k) {
         return !needs(file, k);
     }
 
-    public void clear() {
+    public synchronized void clear() {
         map.clear();
+        keysByFile.clear();
+        weight = 0;
+        modificationCount.incrementAndGet();
     }
 
     public boolean needs(Path file, K k) {
-        // If key is not in map, it needs to be loaded
+        return getFresh(new Key<>(file, k)) == null;
+    }
+
+    /**
+     * Returns the value mapped to the file and key, loading it first if the mapping does not
+     * exist or the file has been modified since it was loaded. Unlike calling {@link #needs}
+     * and {@link #get} separately, this does not fail if another thread evicts the mapping
+     * in between.
+     */
+    public V get(Path file, K k, Supplier<V> loader) {
         Key<K> key = new Key<>(file, k);
-        if (!map.containsKey(key)) return true;
+        Value<V> value = getFresh(key);
+        if (value != null) {
+            return value.value;
+        }
+        // read before loading so a modification made while loading expires the mapping
+        long modified = getLastModified(file);
+        V loaded = loader.get();
+        putValue(key, new Value<>(loaded, modified, weigher.weigh(key, loaded)));
+        return loaded;
+    }
 
-        // If key was loaded before file was last modified, it needs to be reloaded
-        Value value = map.get(key);
-        FileTime modified = null;
-        try {
-            modified = Files.getLastModifiedTime(file);
-        } catch (IOException e) {
-            modified = FileTime.from(Instant.now());
+    /**
+     * @return the mapping if it exists and the file has not been modified since it was loaded,
+     * stale mappings are removed
+     */
+    private Value<V> getFresh(Key<K> key) {
+        Value<V> value;
+        synchronized (this) {
+            value = map.get(key);
         }
-        // TODO remove all keys associated with file when file changes
-        boolean before = value.created.isBefore(modified.toInstant());
-        return before;
+        if (value == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        // the file is checked outside of the lock so other threads are not blocked on I/O
+        long modified = getLastModified(key.file);
+        if (modified == -1 || modified != value.modified) {
+            synchronized (this) {
+                if (map.get(key) == value) {
+                    removeKey(key);
+                }
+            }
+            missCount.incrementAndGet();
+            return null;
+        }
+
+        hitCount.incrementAndGet();
+        return value;
     }
 
     @SafeVarargs
-    public final void remove(Path file, K... keys) {
+    public final synchronized void remove(Path file, K... keys) {
         for (K k : keys) {
-            Key<K> key = new Key<>(file, k);
-            map.remove(key);
+            removeKey(new Key<>(file, k));
         }
     }
 
-    public Set<Key<K>> getKeys() {
-        return map.keySet();
+    /**
+     * Removes all the mappings of the given file regardless of their keys, call this when the
+     * file has changed
+     */
+    public synchronized void invalidate(Path file) {
+        Set<Key<K>> keys = keysByFile.remove(file);
+        if (keys == null) {
+            return;
+        }
+        for (Key<K> key : keys) {
+            Value<V> removed = map.remove(key);
+            if (removed != null) {
+                weight -= removed.weight;
+            }
+        }
+        modificationCount.incrementAndGet();
+    }
+
+    /**
+     * @return a snapshot of the keys currently in the cache
+     */
+    public synchronized Set<Key<K>> getKeys() {
+        return new HashSet<>(map.keySet());
     }
 
     public void load(Path file, K k, V v) {
-        // TODO limit total size of cache
+        put(new Key<>(file, k), v);
+    }
+
+    /**
+     * Adds a mapping that was loaded in a previous session. Unlike {@link #load(Path, Object,
+     * Object)}, the given modified time is kept so the mapping expires if the file was modified
+     * in between.
+     */
+    public void restore(Path file, K k, V v, long modified) {
         Key<K> key = new Key<>(file, k);
-        Value value = new Value(v);
+        putValue(key, new Value<>(v, modified, weigher.weigh(key, v)));
+    }
+
+    /**
+     * Calls the consumer with every mapping of the cache, the cache is locked in the meantime
+     * so the consumer should not block
+     */
+    public synchronized void forEach(EntryConsumer<K, V> consumer) {
+        for (Map.Entry<Key<K>, Value<V>> entry : map.entrySet()) {
+            Value<V> value = entry.getValue();
+            consumer.accept(entry.getKey(), value.value, value.modified);
+        }
+    }
+
+    /**
+     * @return a number that changes whenever a mapping is added or removed, used to know
+     * whether the cache has to be saved again
+     */
+    public long getModificationCount() {
+        return modificationCount.get();
+    }
+
+    private void put(Key<K> key, V v) {
+        long modified = getLastModified(key.file);
+        putValue(key, new Value<>(v, modified, weigher.weigh(key, v)));
+    }
+
+    private synchronized void putValue(Key<K> key, Value<V> value) {
+        removeKey(key);
         map.put(key, value);
+        keysByFile.computeIfAbsent(key.file, f -> new HashSet<>()).add(key);
+        weight += value.weight;
+        modificationCount.incrementAndGet();
+        trim();
     }
 
-    public V get(Path file, K k) {
+    @SuppressWarnings("unchecked")
+    public synchronized V get(Path file, K k) {
         Key<K> key = new Key<>(file, k);
         if (!map.containsKey(key)) {
             throw new IllegalArgumentException(k + " is not in map " + map);
         }
         return (V) map.get(key).value;
     }
-}
\ No newline at end of file
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<Key<K>, Value<V>>> iterator = map.entrySet().iterator();
+        // the most recently added mapping is always kept even if it is heavier than the maximum
+        while (weight > maxWeight && map.size() > 1 && iterator.hasNext()) {
+            Map.Entry<Key<K>, Value<V>> eldest = iterator.next();
+            iterator.remove();
+            weight -= eldest.getValue().weight;
+            removeFromFile(eldest.getKey());
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    private void removeKey(Key<K> key) {
+        Value<V> removed = map.remove(key);
+        if (removed == null) {
+            return;
+        }
+        weight -= removed.weight;
+        removeFromFile(key);
+        modificationCount.incrementAndGet();
+    }
+
+    private void removeFromFile(Key<K> key) {
+        Set<Key<K>> keys = keysByFile.get(key.file);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysByFile.remove(key.file);
+            }
+        }
+    }
+
+    private static long getLastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.tyron.common.util;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.hash.Hashing;
+import com.tyron.common.ApplicationProvider;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hashes the contents of files, remembering the hash of each file along with its path, size,
+ * modified time and inode so a file is only hashed again once it has changed.
+ * <p>
+ * The hashes are saved to disk and survive restarts of the app. The hash is not meant to be
+ * cryptographically secure, only to identify the contents of a file quickly.
+ */
+public class FileHashCache {
+
+    /**
+     * Bump this whenever the format of the saved hashes or the hash function changes
+     */
+    private static final int VERSION = 1;
+    private static final int MAGIC = 0x46484153;
+
+    private static FileHashCache sInstance;
+
+    public static synchronized FileHashCache getInstance() {
+        if (sInstance == null) {
+            File cacheDir = ApplicationProvider.getApplicationContext().getCacheDir();
+            sInstance = new FileHashCache(new File(cacheDir, "file-hashes.bin"));
+            sInstance.load();
+        }
+        return sInstance;
+    }
+
+    private static class Stamp {
+        final long size;
+        final long modified;
+        /**
+         * Identifies the inode of the file, empty if the file system does not expose it
+         */
+        final String fileKey;
+
+        Stamp(long size, long modified, String fileKey) {
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+        }
+
+        static Stamp of(File file) throws IOException {
+            BasicFileAttributes attributes =
+                    Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            Object fileKey = attributes.fileKey();
+            return new Stamp(attributes.size(), attributes.lastModifiedTime().toMillis(),
+                    fileKey == null ? "" : fileKey.toString());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Stamp)) {
+                return false;
+            }
+            Stamp stamp = (Stamp) o;
+            return size == stamp.size &&
+                   modified == stamp.modified &&
+                   fileKey.equals(stamp.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, modified, fileKey);
+        }
+    }
+
+    private static class HashedFile {
+        final Stamp stamp;
+        final String hash;
+
+        HashedFile(Stamp stamp, String hash) {
+            this.stamp = stamp;
+            this.hash = hash;
+        }
+    }
+
+    private final File mFile;
+    private final Map<String, HashedFile> mHashes = new ConcurrentHashMap<>();
+    private final AtomicBoolean mModified = new AtomicBoolean();
+
+    /**
+     * @param file the file where the hashes are saved
+     */
+    public FileHashCache(@NonNull File file) {
+        mFile = file;
+    }
+
+    /**
+     * @return the hash of the contents of the file
+     */
+    @NonNull
+    public String getHash(@NonNull File file) throws IOException {
+        Stamp stamp = Stamp.of(file);
+        HashedFile hashed = mHashes.get(file.getAbsolutePath());
+        if (hashed != null && hashed.stamp.equals(stamp)) {
+            return hashed.hash;
+        }
+        return hash(file, stamp);
+    }
+
+    /**
+     * Returns the hashes of the given files, the files that have changed since they were last
+     * hashed are hashed in parallel.
+     *
+     * @throws IOException if one of the files cannot be read
+     */
+    @NonNull
+    public Map<File, String> getHashes(@NonNull Collection<File> files) throws IOException {
+        Map<File, String> hashes = new HashMap<>();
+        Map<File, Stamp> changed = new HashMap<>();
+        for (File file : files) {
+            Stamp stamp = Stamp.of(file);
+            HashedFile hashed = mHashes.get(file.getAbsolutePath());
+            if (hashed != null && hashed.stamp.equals(stamp)) {
+                hashes.put(file, hashed.hash);
+            } else {
+                changed.put(file, stamp);
+            }
+        }
+        if (changed.isEmpty()) {
+            return hashes;
+        }
+        if (changed.size() == 1) {
+            Map.Entry<File, Stamp> entry = changed.entrySet().iterator().next();
+            hashes.put(entry.getKey(), hash(entry.getKey(), entry.getValue()));
+            return hashes;
+        }
+
+        int threads = Math.min(changed.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService service = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            Map<File, Future<String>> futures = new HashMap<>();
+            changed.forEach((file, stamp) ->
+                    futures.put(file, service.submit(() -> hash(file, stamp))));
+            for (Map.Entry<File, Future<String>> entry : futures.entrySet()) {
+                hashes.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } finally {
+            service.shutdownNow();
+        }
+        return hashes;
+    }
+
+    private String hash(File file, Stamp stamp) throws IOException {
+        String hash = com.google.common.io.Files.asByteSource(file)
+                .hash(Hashing.murmur3_128())
+                .toString();
+        // the file may have been modified while it was being hashed
+        if (stamp.equals(Stamp.of(file))) {
+            mHashes.put(file.getAbsolutePath(), new HashedFile(stamp, hash));
+            mModified.set(true);
+        }
+        return hash;
+    }
+
+    /**
+     * Loads the saved hashes, a missing or corrupted file is ignored
+     */
+    public synchronized void load() {
+        if (!mFile.isFile()) {
+            return;
+        }
+        Map<String, HashedFile> hashes = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                Stamp stamp = new Stamp(in.readLong(), in.readLong(), in.readUTF());
+                hashes.put(path, new HashedFile(stamp, in.readUTF()));
+            }
+        } catch (IOException e) {
+            return;
+        }
+        hashes.forEach(mHashes::putIfAbsent);
+    }
+
+    /**
+     * Saves the hashes if a file was hashed since they were loaded or last saved. Hashes of
+     * files that no longer exist are dropped.
+     */
+    public synchronized void save() throws IOException {
+        if (!mModified.getAndSet(false)) {
+            return;
+        }
+        mHashes.keySet().removeIf(path -> !new File(path).exists());
+        List<Map.Entry<String, HashedFile>> entries = new ArrayList<>(mHashes.entrySet());
+
+        File parent = mFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        // write to a temporary file first so a crash never leaves a truncated file behind
+        File temp = File.createTempFile(mFile.getName(), ".tmp", parent);
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, HashedFile> entry : entries) {
+                    HashedFile hashed = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(hashed.stamp.size);
+                    out.writeLong(hashed.stamp.modified);
+                    out.writeUTF(hashed.stamp.fileKey);
+                    out.writeUTF(hashed.hash);
+                }
+            }
+            Files.move(temp.toPath(), mFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            mModified.set(true);
+            throw e;
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+}
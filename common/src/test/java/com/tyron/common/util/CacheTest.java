@@ -0,0 +1,175 @@
+package com.tyron.common.util;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class CacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private Path mFirst;
+    private Path mSecond;
+
+    @Before
+    public void setup() throws IOException {
+        mFirst = mFolder.newFile("First.java").toPath();
+        mSecond = mFolder.newFile("Second.java").toPath();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        Cache<String, String> cache = new Cache<>(2);
+        cache.load(mFirst, "a", "1");
+        cache.load(mFirst, "b", "2");
+
+        // access a so b becomes the least recently used
+        assert cache.has(mFirst, "a");
+        cache.load(mFirst, "c", "3");
+
+        assert cache.size() == 2;
+        assert cache.has(mFirst, "a");
+        assert cache.needs(mFirst, "b");
+        assert cache.has(mFirst, "c");
+        assert cache.getEvictionCount() == 1;
+    }
+
+    @Test
+    public void testWeight() {
+        Cache<String, String> cache = new Cache<>(10, (key, value) -> value.length());
+        cache.load(mFirst, "a", "12345");
+        cache.load(mFirst, "b", "12345");
+        assert cache.size() == 2;
+
+        cache.load(mFirst, "c", "1");
+        assert cache.size() == 2;
+        assert cache.needs(mFirst, "a");
+    }
+
+    @Test
+    public void testInvalidateFile() {
+        Cache<String, String> cache = new Cache<>();
+        cache.load(mFirst, "a", "1");
+        cache.load(mFirst, "b", "2");
+        cache.load(mSecond, "a", "3");
+
+        cache.invalidate(mFirst);
+
+        assert cache.size() == 1;
+        assert cache.needs(mFirst, "a");
+        assert cache.needs(mFirst, "b");
+        assert cache.has(mSecond, "a");
+    }
+
+    @Test
+    public void testModifiedFileExpires() {
+        Cache<String, String> cache = new Cache<>();
+        cache.load(mFirst, "a", "1");
+        assert cache.has(mFirst, "a");
+
+        File file = mFirst.toFile();
+        assert file.setLastModified(file.lastModified() - 10_000);
+        assert cache.needs(mFirst, "a");
+        assert cache.size() == 0;
+    }
+
+    @Test
+    public void testWrittenFileExpiresWithoutInvalidate() throws IOException {
+        Cache<String, String> cache = new Cache<>();
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<String> loader = () -> String.valueOf(loads.incrementAndGet());
+        assert "1".equals(cache.get(mFirst, "a", loader));
+        assert "1".equals(cache.get(mFirst, "a", loader));
+
+        // written directly, the way the editor saves a file, with nothing invalidating the cache
+        Files.write(mFirst, "class First {}".getBytes(StandardCharsets.UTF_8));
+        File file = mFirst.toFile();
+        assert file.setLastModified(file.lastModified() + 10_000);
+
+        assert cache.needs(mFirst, "a");
+        assert "2".equals(cache.get(mFirst, "a", loader));
+        assert cache.getMissCount() == 3;
+    }
+
+    @Test
+    public void testInvalidateReadsModifiedTime() {
+        Cache<String, String> cache = new Cache<>();
+        cache.load(mFirst, "a", "1");
+
+        File file = mFirst.toFile();
+        assert file.setLastModified(file.lastModified() - 10_000);
+        cache.invalidate(mFirst);
+
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            cache.get(mFirst, "a", () -> {
+                loads.incrementAndGet();
+                return "2";
+            });
+        }
+        assert loads.get() == 1;
+        assert "2".equals(cache.get(mFirst, "a"));
+    }
+
+    @Test
+    public void testRestoredMappingIsChecked() {
+        Cache<String, String> cache = new Cache<>();
+        long modified = mFirst.toFile().lastModified();
+        cache.restore(mFirst, "a", "1", modified);
+        cache.restore(mSecond, "a", "2", modified - 10_000);
+
+        assert cache.has(mFirst, "a");
+        // the file was modified after the mapping was saved
+        assert cache.needs(mSecond, "a");
+    }
+
+    @Test
+    public void testCounters() {
+        Cache<String, String> cache = new Cache<>();
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assert "1".equals(cache.get(mFirst, "a", () -> {
+                loads.incrementAndGet();
+                return "1";
+            }));
+        }
+        assert loads.get() == 1;
+        assert cache.getMissCount() == 1;
+        assert cache.getHitCount() == 2;
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        Cache<Integer, Integer> cache = new Cache<>(64);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    int key = j % 100;
+                    Path file = j % 2 == 0 ? mFirst : mSecond;
+                    assert cache.get(file, key, () -> key) == key;
+                    if (j % 1000 == 0) {
+                        cache.invalidate(file);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assert cache.size() <= 64;
+    }
+}
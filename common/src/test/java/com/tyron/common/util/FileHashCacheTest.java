@@ -0,0 +1,95 @@
+package com.tyron.common.util;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class FileHashCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mStore;
+    private File mFirst;
+    private File mSecond;
+
+    @Before
+    public void setup() throws IOException {
+        mStore = new File(mFolder.newFolder("caches"), "hashes.bin");
+        mFirst = mFolder.newFile("first.jar");
+        mSecond = mFolder.newFile("second.jar");
+        write(mFirst, "first");
+        write(mSecond, "second");
+    }
+
+    @Test
+    public void testSameContentsSameHash() throws IOException {
+        FileHashCache cache = new FileHashCache(mStore);
+        write(mSecond, "first");
+        assert cache.getHash(mFirst).equals(cache.getHash(mSecond));
+    }
+
+    @Test
+    public void testModifiedFileIsHashedAgain() throws IOException {
+        FileHashCache cache = new FileHashCache(mStore);
+        String hash = cache.getHash(mFirst);
+
+        write(mFirst, "modified");
+        assert mFirst.setLastModified(mFirst.lastModified() + 10_000);
+        assert !cache.getHash(mFirst).equals(hash);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        FileHashCache cache = new FileHashCache(mStore);
+        String hash = cache.getHash(mFirst);
+        cache.save();
+
+        // the saved hash is used as long as the file looks unchanged, even if it is not
+        long modified = mFirst.lastModified();
+        write(mFirst, "frist");
+        assert mFirst.setLastModified(modified);
+
+        FileHashCache loaded = new FileHashCache(mStore);
+        loaded.load();
+        assert loaded.getHash(mFirst).equals(hash);
+    }
+
+    @Test
+    public void testCorruptedStore() throws IOException {
+        write(mStore, "not a cache");
+        FileHashCache cache = new FileHashCache(mStore);
+        cache.load();
+        assert cache.getHash(mFirst).equals(new FileHashCache(mStore).getHash(mFirst));
+    }
+
+    @Test
+    public void testParallelHashes() throws IOException {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            File file = mFolder.newFile("library" + i + ".jar");
+            write(file, "library" + i);
+            files.add(file);
+        }
+
+        FileHashCache cache = new FileHashCache(mStore);
+        Map<File, String> hashes = cache.getHashes(files);
+        assert hashes.size() == files.size();
+        for (File file : files) {
+            assert hashes.get(file).equals(new FileHashCache(mStore).getHash(file));
+        }
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    }
+}
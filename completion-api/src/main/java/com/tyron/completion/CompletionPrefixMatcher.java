@@ -1,17 +1,13 @@
 package com.tyron.completion;
 
-import me.xdrop.fuzzywuzzy.FuzzySearch;
-
 /**
  * Logic of matching a completion name with a given completion prefix
+ * <p>
+ * Matching is done in a single pass over the characters of the name and does not allocate,
+ * since it is called for every candidate while the user is typing.
  */
 public class CompletionPrefixMatcher {
 
-    /**
-     * The minimum score needed for a candidate to be considered as partial match.
-     */
-    private static final int MINIMUM_SCORE = 70;
-
     /**
      * How well does the candidate name match the completion prefix.
      *
@@ -21,7 +17,19 @@ public class CompletionPrefixMatcher {
      */
     public enum MatchLevel {
         NOT_MATCH,
+        /**
+         * The first character matches and the rest of the prefix is a subsequence of the name.
+         * <p>
+         * This accepts more candidates than the fuzzy ratio used before, which rejected names
+         * much longer than the prefix, e.g. {@code Ag} now matches {@code AbstractStringBuilder}.
+         * Prefixes with transposed letters no longer match.
+         */
         PARTIAL_MATCH,
+        /**
+         * Each part of the prefix matches the start of a hump of the name,
+         * e.g. {@code ALi} and {@code arrLi} match {@code ArrayList}
+         */
+        CAMEL_HUMP_MATCH,
         CASE_INSENSITIVE_PREFIX,
         CASE_SENSITIVE_PREFIX,
         CASE_INSENSITIVE_EQUAL,
@@ -29,22 +37,99 @@ public class CompletionPrefixMatcher {
     }
 
     public static MatchLevel computeMatchLevel(String candidateName, String completionPrefix) {
-        if (candidateName.startsWith(completionPrefix)) {
-            return candidateName.length() == completionPrefix.length()
-                    ? MatchLevel.CASE_SENSITIVE_EQUAL
-                    : MatchLevel.CASE_SENSITIVE_PREFIX;
+        int nameLength = candidateName.length();
+        int prefixLength = completionPrefix.length();
+
+        if (prefixLength <= nameLength) {
+            boolean caseSensitive = true;
+            int i = 0;
+            for (; i < prefixLength; i++) {
+                char c = candidateName.charAt(i);
+                char p = completionPrefix.charAt(i);
+                if (c == p) {
+                    continue;
+                }
+                if (!equalsIgnoreCase(c, p)) {
+                    break;
+                }
+                caseSensitive = false;
+            }
+            if (i == prefixLength) {
+                boolean equal = nameLength == prefixLength;
+                if (caseSensitive) {
+                    return equal
+                            ? MatchLevel.CASE_SENSITIVE_EQUAL
+                            : MatchLevel.CASE_SENSITIVE_PREFIX;
+                }
+                return equal
+                        ? MatchLevel.CASE_INSENSITIVE_EQUAL
+                        : MatchLevel.CASE_INSENSITIVE_PREFIX;
+            }
         }
 
-        if (candidateName.toLowerCase().startsWith(completionPrefix.toLowerCase())) {
-            return candidateName.length() == completionPrefix.length()
-                    ? MatchLevel.CASE_INSENSITIVE_EQUAL
-                    : MatchLevel.CASE_INSENSITIVE_PREFIX;
+        if (nameLength == 0 || !equalsIgnoreCase(candidateName.charAt(0), completionPrefix.charAt(0))) {
+            return MatchLevel.NOT_MATCH;
         }
 
-        int score = FuzzySearch.ratio(candidateName, completionPrefix);
-        if (score > MINIMUM_SCORE) {
-            return MatchLevel.PARTIAL_MATCH;
+        // the hump and the subsequence matches are done greedily at the same time, the hump
+        // match is stopped as soon as it fails but the subsequence match may still succeed
+        int humpIndex = 1;
+        int subsequenceIndex = 1;
+        for (int i = 1; i < prefixLength; i++) {
+            char p = completionPrefix.charAt(i);
+
+            if (humpIndex != -1) {
+                if (!Character.isUpperCase(p) &&
+                    humpIndex < nameLength &&
+                    candidateName.charAt(humpIndex) == p) {
+                    // continuation of the current hump
+                    humpIndex++;
+                } else {
+                    humpIndex = nextHumpStart(candidateName, humpIndex, p);
+                }
+            }
+
+            while (subsequenceIndex < nameLength &&
+                   !equalsIgnoreCase(candidateName.charAt(subsequenceIndex), p)) {
+                subsequenceIndex++;
+            }
+            if (subsequenceIndex == nameLength) {
+                return MatchLevel.NOT_MATCH;
+            }
+            subsequenceIndex++;
         }
-        return MatchLevel.NOT_MATCH;
+        return humpIndex != -1 ? MatchLevel.CAMEL_HUMP_MATCH : MatchLevel.PARTIAL_MATCH;
+    }
+
+    /**
+     * @return the index after the next hump starting at or after {@code from} whose first
+     * character is {@code c}, or -1 if there is none
+     */
+    private static int nextHumpStart(String name, int from, char c) {
+        for (int i = from; i < name.length(); i++) {
+            if (isHumpStart(name, i) && equalsIgnoreCase(name.charAt(i), c)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isHumpStart(String name, int index) {
+        if (index == 0) {
+            return true;
+        }
+        char c = name.charAt(index);
+        char previous = name.charAt(index - 1);
+        if (Character.isUpperCase(c)) {
+            return true;
+        }
+        if (previous == '_' || previous == '$') {
+            return true;
+        }
+        return Character.isDigit(c) && !Character.isDigit(previous);
+    }
+
+    private static boolean equalsIgnoreCase(char a, char b) {
+        return a == b || Character.toLowerCase(a) == Character.toLowerCase(b);
     }
 }
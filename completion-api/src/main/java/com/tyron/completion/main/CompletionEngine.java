@@ -1,5 +1,6 @@
 package com.tyron.completion.main;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Throwables;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.Module;
@@ -8,11 +9,17 @@ import com.tyron.completion.CompletionParameters;
 import com.tyron.completion.CompletionProvider;
 import com.tyron.completion.model.CompletionList;
 import com.tyron.completion.progress.ProcessCanceledException;
+import com.tyron.completion.progress.ProgressIndicator;
+import com.tyron.completion.progress.ProgressManager;
 import com.tyron.editor.Editor;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -29,12 +36,42 @@ public class CompletionEngine {
         return sInstance;
     }
 
+    /**
+     * The default time that the providers have to compute their completions
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 3000;
+
+    /**
+     * How often the thread waiting for the providers checks whether it has been canceled
+     */
+    private static final long CANCEL_CHECK_INTERVAL_MILLIS = 20;
+
     private final Logger logger = IdeLog.getCurrentLogger(this);
 
+    private volatile long mTimeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
     public CompletionEngine() {
 
     }
 
+    /**
+     * Sets the time that the providers have to compute their completions, the results of the
+     * providers that have finished are returned once it has elapsed and the rest are canceled.
+     */
+    public void setTimeout(long millis) {
+        mTimeoutMillis = millis;
+    }
+
+    public long getTimeout() {
+        return mTimeoutMillis;
+    }
+
+    /**
+     * Runs the completion providers of the file concurrently and merges their items in the
+     * order the providers are registered. If a provider does not finish before the timeout,
+     * it is canceled and the returned list is marked as incomplete. The time each provider
+     * took is returned with the list, see {@link CompletionList#getProviderTimings()}.
+     */
     public CompletionList complete(Project project,
                                    Module module,
                                    Editor editor,
@@ -48,9 +85,6 @@ public class CompletionEngine {
             return CompletionList.EMPTY;
         }
 
-        CompletionList list = new CompletionList();
-        list.items = new ArrayList<>();
-
         CompletionParameters parameters = CompletionParameters.builder()
                 .setProject(project)
                 .setModule(module)
@@ -62,26 +96,135 @@ public class CompletionEngine {
                 .setColumn(column)
                 .setIndex(index)
                 .build();
-        List<CompletionProvider> providers = CompletionProvider.forParameters(parameters);
+        return complete(parameters, CompletionProvider.forParameters(parameters));
+    }
+
+    @VisibleForTesting
+    CompletionList complete(CompletionParameters parameters, List<CompletionProvider> providers) {
+        CompletionList list = new CompletionList();
+        list.items = new ArrayList<>();
+        if (providers.isEmpty()) {
+            return list;
+        }
+
+        CountDownLatch latch = new CountDownLatch(providers.size());
+        List<ProviderCall> calls = new ArrayList<>(providers.size());
         for (CompletionProvider provider : providers) {
-            try {
-                CompletionList complete = provider.complete(parameters);
-                if (complete != null) {
-                    list.items.addAll(complete.items);
-                }
-            } catch (Throwable e) {
-                if (e instanceof ProcessCanceledException) {
-                    throw e;
+            ProviderCall call = new ProviderCall(provider);
+            calls.add(call);
+            ProgressManager.getInstance().runAsync(() -> {
+                try {
+                    call.run(parameters);
+                } finally {
+                    latch.countDown();
                 }
+            }, indicator -> {}, call.indicator);
+        }
+
+        awaitProviders(latch, calls);
+
+        Map<String, Long> timings = new HashMap<>();
+        for (ProviderCall call : calls) {
+            String name = call.provider.getClass().getName();
+            if (call.canceled) {
+                // canceled by something other than the timeout, e.g. a newer edit
+                list.setIncomplete(true);
+                timings.put(name, call.durationMillis);
+                logger.info(name + " was canceled after " + call.durationMillis + "ms");
+                continue;
+            }
+            if (!call.finished) {
+                call.indicator.cancel();
+                list.setIncomplete(true);
+                timings.put(name, mTimeoutMillis);
+                logger.warning(name + " did not finish within " + mTimeoutMillis + "ms");
+                continue;
+            }
+            timings.put(name, call.durationMillis);
 
+            if (call.error != null) {
                 String message = "Failed to complete: \n" +
-                                 "index: " + index + "\n" +
-                                 "prefix: " + prefix + "\n" +
-                                 "File: " + file.getName() + "\n" +
-                                 "Stack trace: " + Throwables.getStackTraceAsString(e);
+                                 "index: " + parameters.getIndex() + "\n" +
+                                 "prefix: " + parameters.getPrefix() + "\n" +
+                                 "File: " + parameters.getFile().getName() + "\n" +
+                                 "Stack trace: " + Throwables.getStackTraceAsString(call.error);
                 logger.severe(message);
+            } else if (call.result != null) {
+                list.items.addAll(call.result.items);
+                if (call.result.isIncomplete()) {
+                    list.setIncomplete(true);
+                }
             }
         }
+        list.setProviderTimings(timings);
         return list;
     }
+
+    /**
+     * Waits until all providers have finished or the timeout has elapsed. If the thread
+     * requesting the completions is canceled, all the providers are canceled as well.
+     */
+    private void awaitProviders(CountDownLatch latch, List<ProviderCall> calls) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(mTimeoutMillis);
+        try {
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return;
+                }
+                long wait = Math.min(remaining,
+                        TimeUnit.MILLISECONDS.toNanos(CANCEL_CHECK_INTERVAL_MILLIS));
+                if (latch.await(wait, TimeUnit.NANOSECONDS)) {
+                    return;
+                }
+                ProgressManager.checkCanceled();
+            }
+        } catch (InterruptedException e) {
+            cancel(calls);
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException();
+        } catch (ProcessCanceledException e) {
+            cancel(calls);
+            throw e;
+        }
+    }
+
+    private static void cancel(List<ProviderCall> calls) {
+        for (ProviderCall call : calls) {
+            call.indicator.cancel();
+        }
+    }
+
+    private static class ProviderCall {
+        final CompletionProvider provider;
+        final ProgressIndicator indicator = new ProgressIndicator();
+
+        volatile CompletionList result;
+        volatile Throwable error;
+        volatile long durationMillis;
+        volatile boolean finished;
+        /**
+         * Whether the provider stopped because it was canceled, it has not finished then
+         */
+        volatile boolean canceled;
+
+        ProviderCall(CompletionProvider provider) {
+            this.provider = provider;
+        }
+
+        void run(CompletionParameters parameters) {
+            long start = System.currentTimeMillis();
+            try {
+                result = provider.complete(parameters);
+            } catch (ProcessCanceledException e) {
+                durationMillis = System.currentTimeMillis() - start;
+                canceled = true;
+                throw e;
+            } catch (Throwable e) {
+                error = e;
+            }
+            durationMillis = System.currentTimeMillis() - start;
+            finished = true;
+        }
+    }
 }
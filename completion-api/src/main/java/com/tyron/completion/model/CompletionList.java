@@ -15,6 +15,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a list of completion items to be return from a {@link CompletionProvider}
@@ -35,6 +36,8 @@ public class CompletionList {
 
     public List<CompletionItem> items = new ArrayList<>();
 
+    private Map<String, Long> providerTimings = Collections.emptyMap();
+
     /**
      * For performance reasons, the completion items are limited to a certain amount.
      * A completion provider may indicate that its results are incomplete so next as
@@ -54,6 +57,19 @@ public class CompletionList {
         return items;
     }
 
+    /**
+     * @return the time in milliseconds each provider took to compute this list, keyed by the
+     * class name of the provider. Providers that did not finish before the timeout are
+     * reported with the time they were given.
+     */
+    public Map<String, Long> getProviderTimings() {
+        return providerTimings;
+    }
+
+    public void setProviderTimings(Map<String, Long> timings) {
+        providerTimings = Collections.unmodifiableMap(timings);
+    }
+
     public static CompletionList copy(CompletionList old, String newPrefix) {
         Builder builder = CompletionList.builder(newPrefix);
         if (old.isIncomplete) {
@@ -42,7 +42,8 @@ public class ProgressManager {
     private final Map<Thread, ProgressIndicator> mThreadToIndicator;
 
     public ProgressManager() {
-        mThreadToIndicator = new WeakHashMap<>();
+        // accessed by every thread that checks whether it has been canceled
+        mThreadToIndicator = Collections.synchronizedMap(new WeakHashMap<>());
         if (TestUtil.isDalvik()) {
             mMainHandler = new DefaultHandlerInterface(new Handler(Looper.getMainLooper()));
         } else {
@@ -0,0 +1,52 @@
+package com.tyron.completion;
+
+import static com.tyron.completion.CompletionPrefixMatcher.computeMatchLevel;
+
+import com.tyron.completion.CompletionPrefixMatcher.MatchLevel;
+
+import org.junit.Test;
+
+public class CompletionPrefixMatcherTest {
+
+    @Test
+    public void testPrefix() {
+        assert computeMatchLevel("String", "String") == MatchLevel.CASE_SENSITIVE_EQUAL;
+        assert computeMatchLevel("String", "string") == MatchLevel.CASE_INSENSITIVE_EQUAL;
+        assert computeMatchLevel("StringBuilder", "Str") == MatchLevel.CASE_SENSITIVE_PREFIX;
+        assert computeMatchLevel("StringBuilder", "str") == MatchLevel.CASE_INSENSITIVE_PREFIX;
+        assert computeMatchLevel("String", "") == MatchLevel.CASE_SENSITIVE_PREFIX;
+        assert computeMatchLevel("Str", "String") == MatchLevel.NOT_MATCH;
+    }
+
+    @Test
+    public void testCamelHumps() {
+        assert computeMatchLevel("ArrayList", "AL") == MatchLevel.CAMEL_HUMP_MATCH;
+        assert computeMatchLevel("ArrayList", "ALi") == MatchLevel.CAMEL_HUMP_MATCH;
+        assert computeMatchLevel("ArrayList", "arrLi") == MatchLevel.CAMEL_HUMP_MATCH;
+        assert computeMatchLevel("ArrayList", "al") == MatchLevel.CAMEL_HUMP_MATCH;
+        assert computeMatchLevel("NullPointerException", "NPE") == MatchLevel.CAMEL_HUMP_MATCH;
+        assert computeMatchLevel("NullPointerException", "NE") == MatchLevel.CAMEL_HUMP_MATCH;
+        assert computeMatchLevel("MAX_VALUE", "MV") == MatchLevel.CAMEL_HUMP_MATCH;
+    }
+
+    @Test
+    public void testSubsequence() {
+        assert computeMatchLevel("String", "Sg") == MatchLevel.PARTIAL_MATCH;
+        assert computeMatchLevel("ArrayList", "Ayt") == MatchLevel.PARTIAL_MATCH;
+        // names much longer than the prefix match as well
+        assert computeMatchLevel("AbstractStringBuilder", "Ag") == MatchLevel.PARTIAL_MATCH;
+        // transposed letters are not a subsequence
+        assert computeMatchLevel("String", "Srt") == MatchLevel.NOT_MATCH;
+
+        // the first character must match
+        assert computeMatchLevel("ArrayList", "rL") == MatchLevel.NOT_MATCH;
+        assert computeMatchLevel("ArrayList", "AZ") == MatchLevel.NOT_MATCH;
+        assert computeMatchLevel("", "A") == MatchLevel.NOT_MATCH;
+    }
+
+    @Test
+    public void testOrdering() {
+        assert MatchLevel.CAMEL_HUMP_MATCH.compareTo(MatchLevel.PARTIAL_MATCH) > 0;
+        assert MatchLevel.CASE_INSENSITIVE_PREFIX.compareTo(MatchLevel.CAMEL_HUMP_MATCH) > 0;
+    }
+}
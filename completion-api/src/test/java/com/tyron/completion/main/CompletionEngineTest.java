@@ -0,0 +1,152 @@
+package com.tyron.completion.main;
+
+import com.tyron.completion.CompletionParameters;
+import com.tyron.completion.CompletionProvider;
+import com.tyron.completion.model.CompletionItem;
+import com.tyron.completion.model.CompletionList;
+import com.tyron.completion.progress.ProcessCanceledException;
+import com.tyron.completion.progress.ProgressManager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class CompletionEngineTest {
+
+    private static final long TIMEOUT = 200;
+
+    private CompletionEngine mEngine;
+    private CompletionParameters mParameters;
+
+    @Before
+    public void setup() {
+        mEngine = new CompletionEngine();
+        mEngine.setTimeout(TIMEOUT);
+        mParameters = CompletionParameters.builder()
+                .setFile(new File("Main.java"))
+                .setPrefix("")
+                .build();
+    }
+
+    @Test
+    public void testResultsAreMerged() {
+        CompletionProvider first = new ItemProvider("first", false);
+        CompletionProvider second = new ItemProvider("second", false);
+
+        CompletionList list = mEngine.complete(mParameters, Arrays.asList(first, second));
+        assert !list.isIncomplete();
+        assert list.getItems().size() == 2;
+        assert "first".equals(list.getItems().get(0).label);
+        assert "second".equals(list.getItems().get(1).label);
+        assert list.getProviderTimings().size() == 2;
+        assert list.getProviderTimings().get(first.getClass().getName()) < TIMEOUT;
+    }
+
+    @Test
+    public void testIncompleteResult() {
+        CompletionList list = mEngine.complete(mParameters, Arrays.asList(
+                new ItemProvider("first", false), new ItemProvider("second", true)));
+        assert list.isIncomplete();
+        assert list.getItems().size() == 2;
+    }
+
+    @Test
+    public void testTimeout() throws InterruptedException {
+        CountDownLatch canceled = new CountDownLatch(1);
+        CompletionProvider slow = new SlowProvider(canceled);
+        CompletionProvider fast = new ItemProvider("fast", false);
+
+        CompletionList list = mEngine.complete(mParameters, Arrays.asList(slow, fast));
+        assert list.isIncomplete();
+        assert list.getItems().size() == 1;
+        assert list.getProviderTimings().get(slow.getClass().getName()) == TIMEOUT;
+
+        // the provider that missed the deadline is canceled
+        assert canceled.await(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testCancellation() {
+        CompletionProvider canceled = new CanceledProvider();
+        CompletionProvider fast = new ItemProvider("fast", false);
+
+        long start = System.currentTimeMillis();
+        CompletionList list = mEngine.complete(mParameters, Arrays.asList(canceled, fast));
+        // a canceled provider does not make the engine wait for the timeout
+        assert System.currentTimeMillis() - start < TIMEOUT;
+        assert list.isIncomplete();
+        assert list.getItems().size() == 1;
+        assert list.getProviderTimings().get(canceled.getClass().getName()) < TIMEOUT;
+    }
+
+    private static class ItemProvider extends CompletionProvider {
+
+        private final String mLabel;
+        private final boolean mIncomplete;
+
+        ItemProvider(String label, boolean incomplete) {
+            mLabel = label;
+            mIncomplete = incomplete;
+        }
+
+        @Override
+        public boolean accept(File file) {
+            return true;
+        }
+
+        @Override
+        public CompletionList complete(CompletionParameters parameters) {
+            CompletionList list = new CompletionList();
+            list.items = Collections.singletonList(new CompletionItem(mLabel));
+            list.setIncomplete(mIncomplete);
+            return list;
+        }
+    }
+
+    private static class SlowProvider extends CompletionProvider {
+
+        private final CountDownLatch mCanceled;
+
+        SlowProvider(CountDownLatch canceled) {
+            mCanceled = canceled;
+        }
+
+        @Override
+        public boolean accept(File file) {
+            return true;
+        }
+
+        @Override
+        public CompletionList complete(CompletionParameters parameters) {
+            try {
+                while (true) {
+                    ProgressManager.checkCanceled();
+                    Thread.sleep(10);
+                }
+            } catch (ProcessCanceledException e) {
+                mCanceled.countDown();
+                throw e;
+            } catch (InterruptedException e) {
+                throw new ProcessCanceledException();
+            }
+        }
+    }
+
+    private static class CanceledProvider extends CompletionProvider {
+
+        @Override
+        public boolean accept(File file) {
+            return true;
+        }
+
+        @Override
+        public CompletionList complete(CompletionParameters parameters) {
+            throw new ProcessCanceledException();
+        }
+    }
+}
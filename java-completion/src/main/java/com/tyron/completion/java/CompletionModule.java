@@ -11,6 +11,7 @@ import androidx.annotation.VisibleForTesting;
 import com.tyron.actions.ActionManager;
 import com.tyron.builder.BuildModule;
 import com.tyron.common.util.Decompress;
+import com.tyron.completion.java.action.context.FindReferencesAction;
 import com.tyron.completion.java.action.context.IntroduceLocalVariableAction;
 import com.tyron.completion.java.action.context.OverrideInheritedMethodsAction;
 import com.tyron.completion.java.action.quickfix.AddCatchClauseAction;
@@ -39,6 +40,7 @@ public class CompletionModule {
 
         actionManager.registerAction(IntroduceLocalVariableAction.ID, new IntroduceLocalVariableAction());
         actionManager.registerAction(OverrideInheritedMethodsAction.ID, new OverrideInheritedMethodsAction());
+        actionManager.registerAction(FindReferencesAction.ID, new FindReferencesAction());
     }
 
 
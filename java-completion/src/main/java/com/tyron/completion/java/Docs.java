@@ -6,22 +6,31 @@ import com.tyron.builder.project.Project;
 import com.tyron.common.util.Decompress;
 import com.tyron.completion.java.compiler.SourceFileManager;
 
+import javax.tools.JavaFileObject;
 import javax.tools.StandardLocation;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 /**
  * Main class that holds all the files that ends with "-sources" including
  * android.jar sources
+ * <p>
+ * Each sources jar is indexed with a {@link DocsIndex} so the source of a class is read
+ * directly from its jar entry, the file manager is only used for the paths that
+ * could not be indexed.
  */
 public class Docs {
 
     public final SourceFileManager fileManager;
 
+    private final List<DocsIndex> mIndexes = new ArrayList<>();
+    private final List<File> mUnindexedPaths = new ArrayList<>();
+
     public Docs(Project project, Set<File> docPaths) {
         // we include android sources into the list
         fileManager = new SourceFileManager(project);
@@ -31,6 +40,13 @@ public class Docs {
         if (srcZip != NOT_FOUND) {
             sourcePaths.add(srcZip);
         }
+        for (File sourcePath : sourcePaths) {
+            if (sourcePath.isFile()) {
+                mIndexes.add(new DocsIndex(sourcePath));
+            } else {
+                mUnindexedPaths.add(sourcePath);
+            }
+        }
         try {
             fileManager.setLocation(StandardLocation.SOURCE_PATH, sourcePaths);
         } catch (IOException e) {
@@ -38,6 +54,37 @@ public class Docs {
         }
     }
 
+    /**
+     * Finds the source file of a class in the sources jars
+     *
+     * @param className the fully qualified name of the class
+     * @return optional of type JavaFileObject, may be empty if it doesn't exist
+     */
+    public Optional<JavaFileObject> find(String className) {
+        boolean searchFileManager = !mUnindexedPaths.isEmpty();
+        for (DocsIndex index : mIndexes) {
+            if (!index.isAvailable()) {
+                searchFileManager = true;
+                continue;
+            }
+            JavaFileObject found = index.find(className);
+            if (found != null) {
+                return Optional.of(found);
+            }
+        }
+        if (!searchFileManager) {
+            return Optional.empty();
+        }
+
+        try {
+            JavaFileObject found = fileManager.getJavaFileForInput(StandardLocation.SOURCE_PATH,
+                    className, JavaFileObject.Kind.SOURCE);
+            return Optional.ofNullable(found);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private static final File NOT_FOUND = new File("");
     private static File cacheAndroidSources;
 
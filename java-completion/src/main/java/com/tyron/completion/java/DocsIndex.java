@@ -0,0 +1,453 @@
+package com.tyron.completion.java;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.common.logging.IdeLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+/**
+ * An index of the java sources inside a sources jar, mapping the fully qualified name of each
+ * top level class to the location of its zip entry.
+ * <p>
+ * The index is built once from the central directory of the jar and saved next to it, so
+ * looking up the source of a class reads its entry directly instead of scanning the jar
+ * through a file manager. Zip64 archives are not supported, {@link #isAvailable()} returns
+ * false for them.
+ */
+public class DocsIndex {
+
+    private static final Logger LOG = IdeLog.getCurrentLogger(DocsIndex.class);
+
+    /**
+     * Bump this whenever the format of the index changes so old indexes are rebuilt
+     */
+    private static final int VERSION = 1;
+    private static final int MAGIC = 0x444F4358;
+    private static final String EXTENSION = ".index";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private static final String JAVA_EXTENSION = ".java";
+
+    private final File mJar;
+    private final File mIndexFile;
+
+    private volatile Map<String, Entry> mEntries;
+    private volatile Set<String> mPackages;
+    private volatile boolean mAvailable = true;
+
+    /**
+     * The same file object is returned for an entry every time, so callers caching by file
+     * such as {@link com.tyron.completion.java.compiler.Parser} see it as the same file and
+     * its contents are only read once
+     */
+    private final Map<String, DocFileObject> mFileObjects = new ConcurrentHashMap<>();
+
+    public DocsIndex(@NonNull File jar) {
+        this(jar, new File(jar.getParentFile(), jar.getName() + EXTENSION));
+    }
+
+    public DocsIndex(@NonNull File jar, @NonNull File indexFile) {
+        mJar = jar;
+        mIndexFile = indexFile;
+    }
+
+    /**
+     * @return false if the jar could not be indexed, lookups should then go through a
+     * file manager instead
+     */
+    public boolean isAvailable() {
+        getEntries();
+        return mAvailable;
+    }
+
+    /**
+     * @param className the fully qualified name of the class, nested classes are resolved to
+     *                  the file of their top level class
+     * @return the source file of the class, or null if it is not in this jar
+     */
+    @Nullable
+    public JavaFileObject find(@NonNull String className) {
+        Map<String, Entry> entries = getEntries();
+        Set<String> packages = mPackages;
+        String name = className;
+        while (true) {
+            Entry entry = entries.get(name);
+            if (entry != null) {
+                return mFileObjects.computeIfAbsent(entry.name,
+                        key -> new DocFileObject(mJar, entry));
+            }
+            // only classes can contain nested classes, the walk stops at the package
+            if (packages.contains(name)) {
+                return null;
+            }
+            int lastDot = name.lastIndexOf('.');
+            if (lastDot == -1) {
+                return null;
+            }
+            name = name.substring(0, lastDot);
+        }
+    }
+
+    private Map<String, Entry> getEntries() {
+        Map<String, Entry> entries = mEntries;
+        if (entries != null) {
+            return entries;
+        }
+        synchronized (this) {
+            if (mEntries == null) {
+                Map<String, Entry> loaded = load();
+                mPackages = getPackages(loaded.keySet());
+                mEntries = loaded;
+            }
+            return mEntries;
+        }
+    }
+
+    /**
+     * @return the packages of the given classes along with their parent packages
+     */
+    private static Set<String> getPackages(Set<String> classNames) {
+        Set<String> packages = new HashSet<>();
+        for (String className : classNames) {
+            int lastDot = className.lastIndexOf('.');
+            while (lastDot != -1) {
+                if (!packages.add(className.substring(0, lastDot))) {
+                    break;
+                }
+                lastDot = className.lastIndexOf('.', lastDot - 1);
+            }
+        }
+        return packages;
+    }
+
+    private Map<String, Entry> load() {
+        if (!mJar.isFile()) {
+            return new HashMap<>();
+        }
+        if (mIndexFile.isFile()) {
+            try {
+                Map<String, Entry> entries = read();
+                if (entries != null) {
+                    return entries;
+                }
+            } catch (IOException e) {
+                LOG.warning("Corrupted docs index " + mIndexFile + ", indexing again");
+            }
+        }
+
+        Map<String, Entry> entries;
+        try (FileChannel channel = FileChannel.open(mJar.toPath(), StandardOpenOption.READ)) {
+            entries = readCentralDirectory(channel);
+        } catch (IOException e) {
+            LOG.warning("Unable to index " + mJar + ": " + e.getMessage());
+            mAvailable = false;
+            return new HashMap<>();
+        }
+
+        try {
+            write(entries);
+        } catch (IOException e) {
+            // the index still works, it will just be built again next time
+            LOG.warning("Unable to save docs index " + mIndexFile + ": " + e.getMessage());
+        }
+        return entries;
+    }
+
+    /**
+     * @return the saved entries, or null if they are out of date
+     */
+    @Nullable
+    private Map<String, Entry> read() throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mIndexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            if (in.readLong() != mJar.length() || in.readLong() != mJar.lastModified()) {
+                return null;
+            }
+            int count = in.readInt();
+            Map<String, Entry> entries = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String className = in.readUTF();
+                entries.put(className, Entry.read(in));
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Writes to a temporary file first so a crash in the middle of writing never leaves
+     * a truncated index behind
+     */
+    private void write(Map<String, Entry> entries) throws IOException {
+        File parent = mIndexFile.getParentFile();
+        File temp = File.createTempFile(mIndexFile.getName(), TEMP_EXTENSION, parent);
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(mJar.length());
+                out.writeLong(mJar.lastModified());
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    entry.getValue().write(out);
+                }
+            }
+            Files.move(temp.toPath(), mIndexFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private static Map<String, Entry> readCentralDirectory(FileChannel channel)
+            throws IOException {
+        long size = channel.size();
+        int tailLength = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_LENGTH + MAX_COMMENT_LENGTH);
+        ByteBuffer tail = readFully(channel, size - tailLength, tailLength);
+
+        int end = -1;
+        for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_LENGTH; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) {
+            throw new ZipException("End of central directory not found");
+        }
+
+        int entryCount = tail.getShort(end + 10) & 0xFFFF;
+        long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        if (entryCount == 0xFFFF || directorySize == 0xFFFFFFFFL ||
+            directoryOffset == 0xFFFFFFFFL) {
+            throw new ZipException("Zip64 archives are not supported");
+        }
+
+        ByteBuffer directory = readFully(channel, directoryOffset, (int) directorySize);
+        Map<String, Entry> entries = new HashMap<>(entryCount * 2);
+        int position = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (directory.getInt(position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header");
+            }
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            long uncompressedSize = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localHeaderOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+            String name = new String(directory.array(), position + CENTRAL_HEADER_LENGTH,
+                    nameLength, StandardCharsets.UTF_8);
+            position += CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength;
+
+            if (!name.endsWith(JAVA_EXTENSION) ||
+                name.endsWith("package-info.java") ||
+                name.endsWith("module-info.java")) {
+                continue;
+            }
+            if (compressedSize > Integer.MAX_VALUE || uncompressedSize > Integer.MAX_VALUE) {
+                continue;
+            }
+            String className = name.substring(0, name.length() - JAVA_EXTENSION.length())
+                    .replace('/', '.');
+            entries.put(className, new Entry(name, localHeaderOffset, (int) compressedSize,
+                    (int) uncompressedSize, method));
+        }
+        return entries;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read == -1) {
+                throw new ZipException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static class Entry {
+        final String name;
+        final long localHeaderOffset;
+        final int compressedSize;
+        final int size;
+        final int method;
+
+        Entry(String name, long localHeaderOffset, int compressedSize, int size, int method) {
+            this.name = name;
+            this.localHeaderOffset = localHeaderOffset;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.method = method;
+        }
+
+        byte[] read(File jar) throws IOException {
+            try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer header = readFully(channel, localHeaderOffset, LOCAL_HEADER_LENGTH);
+                if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                    throw new ZipException("Invalid local header for " + name);
+                }
+                // the extra field of the local header may differ from the central directory
+                int nameLength = header.getShort(26) & 0xFFFF;
+                int extraLength = header.getShort(28) & 0xFFFF;
+                long dataOffset = localHeaderOffset + LOCAL_HEADER_LENGTH + nameLength + extraLength;
+                byte[] data = readFully(channel, dataOffset, compressedSize).array();
+
+                switch (method) {
+                    case METHOD_STORED:
+                        return data;
+                    case METHOD_DEFLATED:
+                        return inflate(data, size);
+                    default:
+                        throw new ZipException("Unsupported compression method " + method);
+                }
+            }
+        }
+
+        private static byte[] inflate(byte[] data, int size) throws ZipException {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(data);
+                byte[] result = new byte[size];
+                int offset = 0;
+                while (offset < size && !inflater.finished()) {
+                    int inflated = inflater.inflate(result, offset, size - offset);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    offset += inflated;
+                }
+                if (offset != size) {
+                    throw new ZipException("Unexpected size of inflated entry");
+                }
+                return result;
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(name);
+            out.writeLong(localHeaderOffset);
+            out.writeInt(compressedSize);
+            out.writeInt(size);
+            out.writeShort(method);
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            return new Entry(in.readUTF(), in.readLong(), in.readInt(), in.readInt(),
+                    in.readShort());
+        }
+    }
+
+    /**
+     * A source file inside a sources jar, its contents are read from the jar the first time
+     * they are requested
+     */
+    private static class DocFileObject extends SimpleJavaFileObject {
+
+        private final File mJar;
+        private final Entry mEntry;
+        private String mContents;
+
+        DocFileObject(File jar, Entry entry) {
+            // opaque jar: URIs are not accepted by SimpleJavaFileObject, the entry is
+            // represented as a path inside the jar instead
+            super(new File(jar, entry.name).toURI(), Kind.SOURCE);
+            mJar = jar;
+            mEntry = entry;
+        }
+
+        @Override
+        public synchronized CharSequence getCharContent(boolean ignoreEncodingErrors)
+                throws IOException {
+            if (mContents == null) {
+                mContents = new String(mEntry.read(mJar), StandardCharsets.UTF_8);
+            }
+            return mContents;
+        }
+
+        @Override
+        public String getName() {
+            return mJar.getPath() + "(" + mEntry.name + ")";
+        }
+
+        @Override
+        public boolean isNameCompatible(String simpleName, Kind kind) {
+            String baseName = simpleName + kind.extension;
+            return kind == getKind() &&
+                   (mEntry.name.equals(baseName) || mEntry.name.endsWith("/" + baseName));
+        }
+
+        @Override
+        public long getLastModified() {
+            return mJar.lastModified();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DocFileObject)) {
+                return false;
+            }
+            return toUri().equals(((DocFileObject) o).toUri());
+        }
+
+        @Override
+        public int hashCode() {
+            return toUri().hashCode();
+        }
+    }
+}
@@ -3,7 +3,9 @@ package com.tyron.completion.java;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.tyron.builder.compiler.symbol.MergeSymbolsTask;
 import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.completion.index.CompilerProvider;
@@ -68,6 +70,13 @@ public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService>
                 paths.addAll(((JavaModule) dependency).getLibraries());
                 paths.addAll(((JavaModule) dependency).getInjectedClasses().values());
             }
+            if (dependency instanceof AndroidModule) {
+                // the R classes of libraries only exist as class files once the module is built
+                File rClassJar = MergeSymbolsTask.getRClassJar((AndroidModule) dependency);
+                if (rClassJar.exists()) {
+                    paths.add(rClassJar);
+                }
+            }
         }
 
         if (mProvider == null || changed(mCachedPaths, paths)) {
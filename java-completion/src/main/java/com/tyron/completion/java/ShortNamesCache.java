@@ -4,6 +4,7 @@ import com.tyron.builder.model.CodeAssistLibrary;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.builder.project.impl.JavaModuleImpl;
+import com.tyron.builder.project.util.ShortNameIndex;
 
 import java.util.Deque;
 import java.util.HashSet;
@@ -12,6 +13,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.function.Consumer;
 
 /**
  * Allows to retrieve java classes in a project by non-qualified names
@@ -53,7 +55,29 @@ public class ShortNamesCache {
         }
 
         Set<String> classNames = new HashSet<>();
+        forEachModule(javaModule -> classNames.addAll(javaModule.getClassIndex().getLeafNodes()));
+        return classNames.toArray(new String[0]);
+    }
 
+    /**
+     * Passes the fully qualified names of the classes in the project and its libraries whose
+     * simple name starts with or matches the camel humps of the partial name to the consumer.
+     * The same class may be passed more than once if it is present in multiple modules.
+     *
+     * @see ShortNameIndex#search(String, boolean, Consumer)
+     */
+    public void processClassNames(String partial, boolean caseSensitive, Consumer<String> consumer) {
+        if (!(module instanceof JavaModule)) {
+            return;
+        }
+        forEachModule(javaModule -> javaModule.getShortNameIndex()
+                .search(partial, caseSensitive, consumer));
+    }
+
+    /**
+     * Visits this module, the modules it depends on and the JDK module
+     */
+    private void forEachModule(Consumer<JavaModule> consumer) {
         Deque<Module> queue = new LinkedList<>();
         Set<Module> visitedModules = new HashSet<>();
         queue.addLast(module);
@@ -62,8 +86,7 @@ public class ShortNamesCache {
             Module current = queue.removeFirst();
 
             if (current instanceof JavaModule) {
-                JavaModule javaModule = (JavaModule) current;
-                classNames.addAll(javaModule.getClassIndex().getLeafNodes());
+                consumer.accept((JavaModule) current);
             }
 
             visitedModules.add(current);
@@ -75,7 +98,6 @@ public class ShortNamesCache {
             }
         }
 
-        classNames.addAll(JDK_MODULE.getClassIndex().getLeafNodes());
-        return classNames.toArray(new String[0]);
+        consumer.accept(JDK_MODULE);
     }
 }
@@ -0,0 +1,131 @@
+package com.tyron.completion.java.action.context;
+
+import android.app.Activity;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.sun.source.util.TreePath;
+import com.tyron.actions.ActionPlaces;
+import com.tyron.actions.AnAction;
+import com.tyron.actions.AnActionEvent;
+import com.tyron.actions.CommonDataKeys;
+import com.tyron.actions.Presentation;
+import com.tyron.common.util.AndroidUtilities;
+import com.tyron.completion.java.R;
+import com.tyron.completion.java.action.CommonJavaContextKeys;
+import com.tyron.completion.java.compiler.JavaCompilerService;
+import com.tyron.completion.java.provider.ReferencesProvider;
+import com.tyron.completion.model.Range;
+import com.tyron.completion.progress.ProgressManager;
+import com.tyron.editor.Editor;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class FindReferencesAction extends AnAction {
+
+    public static final String ID = "javaFindReferencesAction";
+
+    @Override
+    public void update(@NonNull AnActionEvent event) {
+        Presentation presentation = event.getPresentation();
+        presentation.setVisible(false);
+
+        if (!ActionPlaces.EDITOR.equals(event.getPlace())) {
+            return;
+        }
+
+        File file = event.getData(CommonDataKeys.FILE);
+        if (file == null) {
+            return;
+        }
+
+        Editor editor = event.getData(CommonDataKeys.EDITOR);
+        if (editor == null) {
+            return;
+        }
+
+        TreePath currentPath = event.getData(CommonJavaContextKeys.CURRENT_PATH);
+        if (currentPath == null) {
+            return;
+        }
+
+        JavaCompilerService compiler = event.getData(CommonJavaContextKeys.COMPILER);
+        if (compiler == null) {
+            return;
+        }
+
+        presentation.setVisible(true);
+        presentation.setText(event.getDataContext()
+                                     .getString(R.string.menu_action_find_references_title));
+    }
+
+    @Override
+    public void actionPerformed(@NonNull AnActionEvent e) {
+        Editor editor = e.getRequiredData(CommonDataKeys.EDITOR);
+        Activity activity = e.getRequiredData(CommonDataKeys.ACTIVITY);
+        File file = e.getRequiredData(CommonDataKeys.FILE);
+        JavaCompilerService compiler = e.getRequiredData(CommonJavaContextKeys.COMPILER);
+        int offset = editor.getCaret().getStart();
+
+        ListenableFuture<Map<Path, List<Range>>> future = ProgressManager.getInstance()
+                .computeNonCancelableAsync(() -> {
+                    ReferencesProvider provider = new ReferencesProvider(compiler);
+                    return Futures.immediateFuture(provider.findReferences(file.toPath(), offset));
+                });
+
+        Futures.addCallback(future, new FutureCallback<Map<Path, List<Range>>>() {
+            @Override
+            public void onSuccess(@Nullable Map<Path, List<Range>> references) {
+                if (activity.isFinishing() || activity.isDestroyed()) {
+                    return;
+                }
+                if (references == null || references.isEmpty()) {
+                    AndroidUtilities.showSimpleAlert(e.getDataContext(),
+                            R.string.menu_action_find_references_title,
+                            R.string.menu_action_no_references_message);
+                    return;
+                }
+                showReferences(e, editor, references);
+            }
+
+            @Override
+            public void onFailure(@NonNull Throwable t) {
+                if (activity.isFinishing() || activity.isDestroyed()) {
+                    return;
+                }
+                AndroidUtilities.showSimpleAlert(e.getDataContext(), "Error", t.getMessage());
+            }
+        }, ContextCompat.getMainExecutor(e.getDataContext()));
+    }
+
+    private void showReferences(@NonNull AnActionEvent e,
+                                Editor editor,
+                                Map<Path, List<Range>> references) {
+        List<File> files = new ArrayList<>();
+        List<String> items = new ArrayList<>();
+        references.forEach((path, ranges) -> {
+            for (Range range : ranges) {
+                files.add(path.toFile());
+                items.add(path.getFileName() + ":" + (range.start.line + 1));
+            }
+        });
+
+        new MaterialAlertDialogBuilder(e.getDataContext())
+                .setTitle(R.string.menu_action_find_references_title)
+                .setItems(items.toArray(new String[0]),
+                        (dialog, which) -> editor.openFile(files.get(which)))
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+}
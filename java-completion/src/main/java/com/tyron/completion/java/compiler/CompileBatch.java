@@ -6,6 +6,7 @@ import com.sun.source.tree.CompilationUnitTree;
 
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.common.util.StringSearch;
+import com.tyron.completion.java.CompilerProvider;
 import com.tyron.completion.java.CompletionModule;
 
 import org.apache.commons.io.FileUtils;
@@ -41,19 +42,29 @@ public class CompileBatch implements AutoCloseable {
     public final JavaCompilerService parent;
     public final ReusableCompiler.Borrow borrow;
     /**
-     * Indicates the task that requested the compilation is finished with it.
+     * Indicates the batch is no longer cached and its context may have been cleared.
      */
-    public boolean closed;
+    public volatile boolean closed;
 
     public final JavacTask task;
     public final Trees trees;
     public final Elements elements;
     public final Types types;
     public final List<CompilationUnitTree> roots;
+    /**
+     * The diagnostics reported while compiling this batch
+     */
+    public final List<Diagnostic<? extends JavaFileObject>> diagnostics;
 
     public CompileBatch(JavaCompilerService parent, Collection<? extends JavaFileObject> files) {
+        this(parent, parent.compiler, files);
+    }
+
+    public CompileBatch(JavaCompilerService parent,
+                        ReusableCompiler compiler,
+                        Collection<? extends JavaFileObject> files) {
         this.parent = parent;
-        this.borrow = batchTask(parent, files);
+        this.borrow = batchTask(parent, compiler, files);
         this.task = borrow.task;
         this.trees = Trees.instance(borrow.task);
         this.elements = borrow.task.getElements();
@@ -69,8 +80,14 @@ public class CompileBatch implements AutoCloseable {
             // You can get at `Element` values using `Trees`
             task.analyze();
         } catch (IOException e) {
+            borrow.close();
             throw new RuntimeException(e);
+        } catch (Throwable t) {
+            // the batch is never returned, free the compiler so it can be used again
+            borrow.close();
+            throw t;
         }
+        this.diagnostics = parent.getDiagnostics();
     }
 
     /**
@@ -85,7 +102,7 @@ public class CompileBatch implements AutoCloseable {
         JavaModule module = parent.getCurrentModule();
         // Check for "class not found errors" that refer to package private classes
         Set<Path> addFiles = new HashSet<>();
-        for (Diagnostic<? extends JavaFileObject> err : parent.getDiagnostics()) {
+        for (Diagnostic<? extends JavaFileObject> err : diagnostics) {
             if (!err.getCode().equals("compiler.err.cant.resolve.location")) {
                 continue;
             }
@@ -106,6 +123,16 @@ public class CompileBatch implements AutoCloseable {
             File javaFile = module.getJavaFile(packageName);
             if (javaFile != null) {
                 addFiles.add(javaFile.toPath());
+                continue;
+            }
+            // package private classes may be declared in a file with a different name,
+            // look up the file that declares it from the reference index
+            String qualifiedName = packageName.isEmpty()
+                    ? className
+                    : packageName + "." + className;
+            Path declaringFile = parent.findIndexedTypeDeclaration(module, qualifiedName);
+            if (declaringFile != CompilerProvider.NOT_FOUND) {
+                addFiles.add(declaringFile);
             }
         }
         return addFiles;
@@ -156,11 +183,12 @@ public class CompileBatch implements AutoCloseable {
         closed = true;
     }
 
-    private static ReusableCompiler.Borrow batchTask(JavaCompilerService parent, Collection<?
-            extends JavaFileObject> sources) {
+    private static ReusableCompiler.Borrow batchTask(JavaCompilerService parent,
+                                                     ReusableCompiler compiler,
+                                                     Collection<? extends JavaFileObject> sources) {
         parent.clearDiagnostics();
         List<String> options = options(parent.classPath, parent.addExports);
-        return parent.compiler.getTask(parent.mSourceFileManager, parent::addDiagnostic, options,
+        return compiler.getTask(parent.mSourceFileManager, parent::addDiagnostic, options,
                 Collections.emptyList(), sources);
     }
 
@@ -0,0 +1,254 @@
+package com.tyron.completion.java.compiler;
+
+import androidx.annotation.Nullable;
+
+import com.tyron.common.logging.IdeLog;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import javax.tools.JavaFileObject;
+
+/**
+ * A bounded cache of {@link CompileBatch}es keyed by the set of files they have compiled.
+ * <p>
+ * Every cached batch owns a {@link ReusableCompiler} so its javac context is not cleared when
+ * another set of files is compiled, switching back to a recently compiled file reuses the
+ * attributed batch instead of parsing and analyzing it again.
+ * <p>
+ * The least recently used batches are evicted when there are more than the maximum number of
+ * entries, when the estimated heap usage of the batches goes over the budget or when the
+ * heap is running low. The compilers of evicted batches are kept to compile the next batch
+ * since their contexts already have the class path loaded.
+ * <p>
+ * The cache owns its batches, only eviction, invalidation and {@link #remove(CompileBatch)}
+ * close them. Invalidated batches are closed the next time they are looked up, which happens
+ * while no reader is using them.
+ */
+class CompileBatchCache {
+
+    private static final Logger LOG = IdeLog.getCurrentLogger(CompileBatchCache.class);
+
+    static final int DEFAULT_MAX_ENTRIES = 4;
+
+    /**
+     * The minimum weight of a batch, used when the heap usage could not be measured because
+     * a garbage collection happened while compiling
+     */
+    private static final long MIN_WEIGHT = 4 * 1024 * 1024;
+
+    private static final int MAX_IDLE_COMPILERS = 1;
+
+    private static class Entry {
+        final CompileBatch batch;
+        final ReusableCompiler compiler;
+        final Map<URI, Long> modified;
+        final long weight;
+
+        Entry(CompileBatch batch, ReusableCompiler compiler, Map<URI, Long> modified, long weight) {
+            this.batch = batch;
+            this.compiler = compiler;
+            this.modified = modified;
+            this.weight = weight;
+        }
+    }
+
+    private final int mMaxEntries;
+    private final long mMaxWeight;
+
+    private final LinkedHashMap<Set<URI>, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Deque<ReusableCompiler> mIdleCompilers = new ArrayDeque<>();
+    private long mWeight;
+
+    CompileBatchCache() {
+        this(DEFAULT_MAX_ENTRIES, Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    CompileBatchCache(int maxEntries, long maxWeight) {
+        mMaxEntries = maxEntries;
+        mMaxWeight = maxWeight;
+    }
+
+    @Nullable
+    private Entry getEntry(Collection<? extends JavaFileObject> sources) {
+        Set<URI> key = getKey(sources);
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.batch.closed || !isUpToDate(entry, sources)) {
+            // the batch is never used again, free its compiler for the next compile
+            mEntries.remove(key);
+            release(entry);
+            return null;
+        }
+        return entry;
+    }
+
+    private static boolean isUpToDate(Entry entry, Collection<? extends JavaFileObject> sources) {
+        for (JavaFileObject source : sources) {
+            Long modified = entry.modified.get(source.toUri());
+            if (modified == null || modified != source.getLastModified()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the cached batch for these sources, or null if they have not been compiled,
+     * one of them has been modified since or the batch has been closed
+     */
+    @Nullable
+    synchronized CompileBatch get(Collection<? extends JavaFileObject> sources) {
+        Entry entry = getEntry(sources);
+        return entry == null ? null : entry.batch;
+    }
+
+    /**
+     * @return the compiler that owns the cached batch for these sources
+     */
+    @Nullable
+    synchronized ReusableCompiler getCompiler(Collection<? extends JavaFileObject> sources) {
+        Entry entry = getEntry(sources);
+        return entry == null ? null : entry.compiler;
+    }
+
+    /**
+     * @return a compiler that is not used by any cached batch
+     */
+    synchronized ReusableCompiler takeCompiler() {
+        ReusableCompiler compiler = mIdleCompilers.poll();
+        return compiler != null ? compiler : new ReusableCompiler();
+    }
+
+    /**
+     * Returns a compiler taken with {@link #takeCompiler()} whose compilation failed
+     */
+    synchronized void returnCompiler(ReusableCompiler compiler) {
+        if (mIdleCompilers.size() < MAX_IDLE_COMPILERS) {
+            mIdleCompilers.push(compiler);
+        }
+    }
+
+    /**
+     * Cache a newly compiled batch, evicting the least recently used batches if needed
+     *
+     * @param weight the estimated number of bytes the batch holds on the heap
+     */
+    synchronized void put(Collection<? extends JavaFileObject> sources,
+                          ReusableCompiler compiler,
+                          CompileBatch batch,
+                          long weight) {
+        Map<URI, Long> modified = new HashMap<>();
+        for (JavaFileObject source : sources) {
+            modified.put(source.toUri(), source.getLastModified());
+        }
+        Entry entry = new Entry(batch, compiler, modified, Math.max(MIN_WEIGHT, weight));
+
+        Entry previous = mEntries.put(getKey(sources), entry);
+        if (previous != null) {
+            release(previous);
+        }
+        mWeight += entry.weight;
+
+        trim(entry);
+    }
+
+    /**
+     * Marks the cached batches containing these sources as out of date
+     */
+    synchronized void invalidate(Collection<? extends JavaFileObject> sources) {
+        for (JavaFileObject source : sources) {
+            URI uri = source.toUri();
+            for (Entry entry : mEntries.values()) {
+                entry.modified.remove(uri);
+            }
+        }
+    }
+
+    /**
+     * Removes the batch from the cache and closes it, for batches whose context may be broken
+     * because a compilation or a read was canceled
+     */
+    synchronized void remove(CompileBatch batch) {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.batch == batch) {
+                iterator.remove();
+                release(entry);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Closes all the cached batches
+     */
+    synchronized void clear() {
+        for (Entry entry : mEntries.values()) {
+            closeBorrow(entry);
+        }
+        mEntries.clear();
+        mIdleCompilers.clear();
+        mWeight = 0;
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    private void trim(Entry newest) {
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (iterator.hasNext() && mEntries.size() > 1 && shouldEvict()) {
+            Entry eldest = iterator.next();
+            if (eldest == newest) {
+                continue;
+            }
+            LOG.info("Evicting compile batch of " + eldest.modified.keySet());
+            iterator.remove();
+            release(eldest);
+        }
+    }
+
+    private boolean shouldEvict() {
+        if (mEntries.size() > mMaxEntries || mWeight > mMaxWeight) {
+            return true;
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        return runtime.maxMemory() - used < runtime.maxMemory() / 8;
+    }
+
+    private void release(Entry entry) {
+        mWeight -= entry.weight;
+        closeBorrow(entry);
+        returnCompiler(entry.compiler);
+    }
+
+    private static void closeBorrow(Entry entry) {
+        entry.batch.close();
+        ReusableCompiler.Borrow borrow = entry.batch.borrow;
+        if (borrow != null && !borrow.closed) {
+            borrow.close();
+        }
+    }
+
+    private static Set<URI> getKey(Collection<? extends JavaFileObject> sources) {
+        Set<URI> key = new HashSet<>();
+        for (JavaFileObject source : sources) {
+            key.add(source.toUri());
+        }
+        return key;
+    }
+}
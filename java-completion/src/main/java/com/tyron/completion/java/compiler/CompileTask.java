@@ -17,9 +17,15 @@ import javax.tools.JavaFileObject;
 import com.sun.source.util.Trees;
 import com.sun.tools.javac.api.JavacTrees;
 
+/**
+ * A view of a {@link CompileBatch} handed to readers. The batch is owned by the cache of
+ * {@link JavaCompilerService}, closing the task does not close the batch so it can be used again
+ * when the same files are compiled.
+ */
 public class CompileTask implements AutoCloseable {
 
     private final CompileBatch mCompileBatch;
+    private volatile boolean mClosed;
     public final JavacTask task;
     public final List<CompilationUnitTree> roots;
     public final List<Diagnostic<? extends JavaFileObject>> diagnostics;
@@ -32,7 +38,7 @@ public class CompileTask implements AutoCloseable {
         this.trees = JavacTrees.instance(task);
 
         this.roots = batch.roots;
-        this.diagnostics = batch.parent.getDiagnostics();
+        this.diagnostics = batch.diagnostics;
     }
 
     public Trees getTrees() {
@@ -70,14 +76,13 @@ public class CompileTask implements AutoCloseable {
 
     @Override
     public void close() {
-        mCompileBatch.close();
-        ReusableCompiler.Borrow borrow = mCompileBatch.borrow;
-        if (borrow != null && !borrow.closed) {
-            borrow.close();
-        }
+        mClosed = true;
     }
 
+    /**
+     * @return whether this task has been closed or its batch has been evicted from the cache
+     */
     public boolean isClosed() {
-        return mCompileBatch.closed;
+        return mClosed || mCompileBatch.closed;
     }
 }
@@ -2,8 +2,6 @@ package com.tyron.completion.java.compiler;
 
 import android.util.Log;
 
-import androidx.annotation.GuardedBy;
-
 import com.sun.source.util.JavacTask;
 import com.sun.tools.javac.api.JavacTaskImpl;
 import com.sun.tools.javac.util.Context;
@@ -15,7 +13,8 @@ import com.tyron.completion.progress.ProgressManager;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 
 import kotlin.jvm.functions.Function1;
@@ -26,20 +25,25 @@ import kotlin.jvm.functions.Function1;
  * A read is when the {@link CompileTask} is being accessed to get information about the parse tree.
  * A write is when the {@link CompileTask} is being changed from a compile call
  *
- * Any threads are allowed to read only if there is no thread that is currently writing.
- * If there is a thread that is currently writing, all other threads that attempts to read
- * will be blocked until the write thread has finished.
+ * Any number of threads are allowed to read at the same time as long as there is no thread
+ * that is currently writing. Readers share the same {@link CompileTask}, which is a snapshot
+ * that is fully attributed by {@link CompileBatch} before it is published and is not modified
+ * until the next write, so they must not close it or compile anything with it.
  *
  * Only one thread is allowed to write at a time, during a write operation all threads that
- * attempts to read will be blocked until the thread writing has finished.
+ * attempt to read will be blocked until the thread writing has finished. The previous
+ * {@link CompileTask} is closed by the writer once all readers are done with it.
  */
 public class CompilerContainer {
 
     private static final String TAG = CompilerContainer.class.getSimpleName();
 
-    private volatile boolean mIsWriting;
+    private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock(true);
 
-    private static final Semaphore semaphore = new Semaphore(1);
+    /**
+     * The number of threads that are writing or waiting to write
+     */
+    private final AtomicInteger mPendingWrites = new AtomicInteger();
 
     private volatile CompileTask mCompileTask;
 
@@ -69,39 +73,27 @@ public class CompilerContainer {
 
     /**
      * This is for codes that will use the compile information,
-     * it ensures that all other threads accessing the compile information
-     * are synchronized
+     * it ensures that no thread is changing the compile information while
+     * it is being read
      */
     public void run(Consumer<CompileTask> consumer) {
         cancel();
-        semaphore.acquireUninterruptibly();
+        mLock.readLock().lock();
         try {
             consumer.accept(mCompileTask);
         } finally {
-            mCompileTask.close();
-            semaphore.release();
+            mLock.readLock().unlock();
         }
     }
 
     public <T> T get(Function1<CompileTask, T> fun) {
         cancel();
-        try {
-            semaphore.acquire();
-        } catch (InterruptedException e) {
-            throw new ProcessCanceledException();
-        }
-
-        try {
-            return fun.invoke(mCompileTask);
-        } finally {
-            mCompileTask.close();
-            semaphore.release();
-        }
+        return getWithLock(fun);
     }
 
     public <T> T getWithLock(Function1<CompileTask, T> fun) {
         try {
-            semaphore.acquire();
+            mLock.readLock().lockInterruptibly();
         } catch (InterruptedException e) {
             throw new ProcessCanceledException();
         }
@@ -109,35 +101,36 @@ public class CompilerContainer {
         try {
             return fun.invoke(mCompileTask);
         } finally {
-            mCompileTask.close();
-            semaphore.release();
+            mLock.readLock().unlock();
         }
-
     }
 
-    public synchronized boolean isWriting() {
-        return mIsWriting || semaphore.hasQueuedThreads();
+    public boolean isWriting() {
+        return mPendingWrites.get() > 0;
     }
 
     void initialize(Runnable runnable) {
+        mPendingWrites.incrementAndGet();
         try {
-            semaphore.acquire();
-        } catch (InterruptedException e) {
-            throw new ProcessCanceledException();
-        }
-        mIsWriting = true;
-        try {
-            // ensure that compile task is closed
-            if (mCompileTask != null) {
-                mCompileTask.close();
+            try {
+                mLock.writeLock().lockInterruptibly();
+            } catch (InterruptedException e) {
+                throw new ProcessCanceledException();
             }
+            try {
+                // no reader is using the compile task at this point, ensure that it is closed
+                if (mCompileTask != null) {
+                    mCompileTask.close();
+                }
 
-            cancel();
+                cancel();
 
-            runnable.run();
+                runnable.run();
+            } finally {
+                mLock.writeLock().unlock();
+            }
         } finally {
-            mIsWriting = false;
-            semaphore.release();
+            mPendingWrites.decrementAndGet();
         }
     }
 
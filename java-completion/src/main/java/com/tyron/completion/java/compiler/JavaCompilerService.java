@@ -27,6 +27,8 @@ import javax.tools.StandardLocation;
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.tools.javac.file.PathFileObject;
 import com.tyron.completion.java.compiler.services.CancelAbort;
+import com.tyron.completion.java.parse.CompilationInfo;
+import com.tyron.completion.java.parse.ReferenceIndex;
 import com.tyron.completion.progress.ProcessCanceledException;
 
 import java.io.File;
@@ -35,13 +37,14 @@ import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -65,9 +68,17 @@ public class JavaCompilerService implements CompilerProvider {
     public ReusableCompiler compiler = new ReusableCompiler();
     private final Docs docs;
 
+    /**
+     * The maximum number of entries of the caches used to find references, the parse cache is
+     * smaller since each entry holds a whole compilation unit
+     */
+    private static final int MAX_CONTAINS_WORD_ENTRIES = 10_000;
+    private static final int MAX_CONTAINS_TYPE_ENTRIES = 2_000;
+    private static final int MAX_PARSE_ENTRIES = 32;
+
     private final CompilerContainer mContainer = new CompilerContainer();
+    private final CompileBatchCache mCompileCache = new CompileBatchCache();
     private CompileBatch cachedCompile;
-    private final Map<JavaFileObject, Long> cachedModified = new HashMap<>();
 
     public final ReentrantLock mLock = new ReentrantLock();
 
@@ -93,42 +104,44 @@ public class JavaCompilerService implements CompilerProvider {
     }
 
     /**
-     * Checks whether this list has been compiled before
+     * Uses the cached batch of these sources if they have been compiled before and have not
+     * been modified since, otherwise compiles them with a compiler that is not used by any
+     * other cached batch so recently compiled batches stay usable.
      *
      * @param sources list of java files to compile
-     * @return true if there's a valid cache for it, false otherwise
      */
-    private boolean needsCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedModified.size() != sources.size()) {
-            return true;
-        }
-        for (JavaFileObject f : sources) {
-            if (!cachedModified.containsKey(f)) {
-                return true;
-            }
-            Long cached = cachedModified.get(f);
-            if (cached == null) {
-                return true;
-            }
-            if (f.getLastModified() != cached) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     private synchronized void loadCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedCompile != null) {
-            if (!cachedCompile.closed) {
-                throw new RuntimeException("Compiler is still in-use!");
+        CompileBatch cached = mCompileCache.get(sources);
+        if (cached != null) {
+            cachedCompile = cached;
+            compiler = mCompileCache.getCompiler(sources);
+            // report the diagnostics of the cached batch as if it has just been compiled
+            clearDiagnostics();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : cached.diagnostics) {
+                addDiagnostic(diagnostic);
             }
-            cachedCompile.borrow.close();
+            return;
         }
-        cachedCompile = doCompile(sources);
-        cachedModified.clear();
-        for (JavaFileObject f : sources) {
-            cachedModified.put(f, f.getLastModified());
+
+        ReusableCompiler batchCompiler = mCompileCache.takeCompiler();
+        long usedBefore = usedMemory();
+        CompileBatch batch;
+        try {
+            batch = doCompile(batchCompiler, sources);
+        } catch (Throwable t) {
+            // the failed batch has already released the compiler
+            mCompileCache.returnCompiler(batchCompiler);
+            throw t;
         }
+        mCompileCache.put(sources, batchCompiler, batch, usedMemory() - usedBefore);
+
+        cachedCompile = batch;
+        compiler = batchCompiler;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
     }
 
     public void invalidate(Path source) {
@@ -136,16 +149,23 @@ public class JavaCompilerService implements CompilerProvider {
     }
 
     public void invalidate(Collection<? extends JavaFileObject> sources) {
+        mCompileCache.invalidate(sources);
         for (JavaFileObject source : sources) {
-            cachedModified.remove(source);
+            if (source instanceof SourceFileObject) {
+                Path file = ((SourceFileObject) source).mFile;
+                cacheContainsWord.invalidate(file);
+                cacheContainsType.invalidate(file);
+                parseCache.invalidate(file);
+            }
         }
     }
 
-    private CompileBatch doCompile(Collection<? extends JavaFileObject> sources) {
+    private CompileBatch doCompile(ReusableCompiler compiler,
+                                   Collection<? extends JavaFileObject> sources) {
         if (sources.isEmpty()) {
             throw new RuntimeException("empty sources");
         }
-        CompileBatch firstAttempt = new CompileBatch(this, sources);
+        CompileBatch firstAttempt = new CompileBatch(this, compiler, sources);
         Set<Path> addFiles = firstAttempt.needsAdditionalSources();
         if (addFiles.isEmpty()) {
             return firstAttempt;
@@ -159,7 +179,7 @@ public class JavaCompilerService implements CompilerProvider {
         for (Path add : addFiles) {
             moreSources.add(new SourceFileObject(add, mCurrentModule));
         }
-        return new CompileBatch(this, moreSources);
+        return new CompileBatch(this, compiler, moreSources);
     }
 
     /**
@@ -171,9 +191,7 @@ public class JavaCompilerService implements CompilerProvider {
     private CompilerContainer compileBatch(Collection<? extends JavaFileObject> sources) {
         try {
             mContainer.initialize(() -> {
-                if (needsCompile(sources)) {
-                    loadCompile(sources);
-                }
+                loadCompile(sources);
                 if (cachedCompile.task == null || ((JavacTaskImpl) cachedCompile.task).getContext() == null) {
                     System.out.println();
                 }
@@ -183,9 +201,7 @@ public class JavaCompilerService implements CompilerProvider {
             return mContainer;
         } catch (Throwable t) {
             if (t instanceof CancelAbort || t.getCause() instanceof CancelAbort) {
-                if (cachedCompile != null) {
-                    cachedCompile.borrow.close();
-                }
+                // the canceled batch was never cached, the previous one is still usable
                 throw new ProcessCanceledException();
             }
             throw t;
@@ -267,7 +283,13 @@ public class JavaCompilerService implements CompilerProvider {
 
     @Override
     public Iterable<Path> search(String query) {
-        return null;
+        Set<Path> files = new LinkedHashSet<>();
+        for (ReferenceIndex index : getReferenceIndexes(mProject.getModules())) {
+            for (URI uri : index.getReferencingFiles(query)) {
+                files.add(Paths.get(uri));
+            }
+        }
+        return files;
     }
 
     /**
@@ -299,14 +321,7 @@ public class JavaCompilerService implements CompilerProvider {
      * @return optional of type JavaFileObject, may be empty if it doesn't exist
      */
     private Optional<JavaFileObject> findPublicTypeDeclarationInDocPath(String className) {
-        try {
-            JavaFileObject found = docs.fileManager
-                    .getJavaFileForInput(StandardLocation.SOURCE_PATH, className,
-                            JavaFileObject.Kind.SOURCE);
-            return Optional.ofNullable(found);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        return docs.find(className);
     }
 
     private static final Pattern PACKAGE_EXTRACTOR =
@@ -330,25 +345,23 @@ public class JavaCompilerService implements CompilerProvider {
         return "";
     }
 
-    private static final Cache<String, Boolean> cacheContainsWord = new Cache<>();
+    private static final Cache<String, Boolean> cacheContainsWord =
+            new Cache<>(MAX_CONTAINS_WORD_ENTRIES);
 
     private boolean containsWord(Path file, String word) {
-        if (cacheContainsWord.needs(file, word)) {
-            cacheContainsWord.load(file, word, StringSearch.containsWord(file, word));
-        }
-        return cacheContainsWord.get(file, word);
+        return cacheContainsWord.get(file, word, () -> StringSearch.containsWord(file, word));
     }
 
-    private static final Cache<Void, List<String>> cacheContainsType = new Cache<>();
+    private static final Cache<Void, List<String>> cacheContainsType =
+            new Cache<>(MAX_CONTAINS_TYPE_ENTRIES);
 
     private boolean containsType(Path file, String className) {
-        if (cacheContainsType.needs(file, null)) {
+        return cacheContainsType.get(file, null, () -> {
             CompilationUnitTree root = parse(file).root;
             List<String> types = new ArrayList<>();
             new FindTypeDeclarations().scan(root, types);
-            cacheContainsType.load(file, null, types);
-        }
-        return cacheContainsType.get(file, null).contains(className);
+            return types;
+        }).contains(className);
     }
 
 
@@ -378,6 +391,10 @@ public class JavaCompilerService implements CompilerProvider {
                                                    String packageName,
                                                    String simpleName,
                                                    String className) {
+        Path indexed = findIndexedTypeDeclaration(module, className);
+        if (indexed != NOT_FOUND) {
+            return indexed;
+        }
         for (File file : SourceFileManager.list(module, packageName)) {
             if (containsWord(file.toPath(), simpleName) && containsType(file.toPath(), className)) {
                 if (file.getName().endsWith(".java")) {
@@ -421,24 +438,110 @@ public class JavaCompilerService implements CompilerProvider {
         return Optional.ofNullable(source);
     }
 
+    /**
+     * Finds the file that declares the class using the reference index of the module
+     *
+     * @return the path of the file or {@link #NOT_FOUND} if it is not indexed
+     */
+    public Path findIndexedTypeDeclaration(Module module, String className) {
+        CompilationInfo info = module.getUserData(CompilationInfo.COMPILATION_INFO_KEY);
+        if (info == null) {
+            return NOT_FOUND;
+        }
+        URI uri = info.getReferenceIndex().getDeclaringFile(className);
+        if (uri == null) {
+            return NOT_FOUND;
+        }
+        return Paths.get(uri);
+    }
+
+    /**
+     * Returns the files that may refer to the given class, these are the files that use its
+     * simple name and are able to refer to it by that name, by its fully qualified name or
+     * through its outer classes.
+     *
+     * @param className fully qualified name of the class
+     */
     @Override
     public Path[] findTypeReferences(String className) {
-        return null;
+        String simpleName = simpleName(className);
+        Set<Path> files = new LinkedHashSet<>();
+        for (ReferenceIndex index : getReferenceIndexes(getDependentModules(className))) {
+            for (URI uri : index.getReferencingFiles(simpleName)) {
+                ReferenceIndex.FileReferences references = index.get(uri);
+                if (references != null && references.mayReferTo(className)) {
+                    files.add(Paths.get(uri));
+                }
+            }
+        }
+        return files.toArray(new Path[0]);
     }
 
+    /**
+     * Returns the files that may refer to the given member. A member can be accessed
+     * without naming its class so every file that uses the member name is a candidate.
+     */
     @Override
     public Path[] findMemberReferences(String className, String memberName) {
-        return null;
+        Set<Path> files = new LinkedHashSet<>();
+        for (ReferenceIndex index : getReferenceIndexes(getDependentModules(className))) {
+            for (URI uri : index.getReferencingFiles(memberName)) {
+                files.add(Paths.get(uri));
+            }
+        }
+        return files.toArray(new Path[0]);
     }
 
-    private final Cache<String, ParseTask> parseCache = new Cache<>();
+    /**
+     * Returns the modules that can refer to the given class, these are the module that declares
+     * it and the modules that depend on it directly or transitively. Classes that are not
+     * declared in any module, such as library classes, are looked up from the current module.
+     */
+    private Set<Module> getDependentModules(String className) {
+        Module declaringModule = mCurrentModule;
+        for (Module module : mProject.getModules()) {
+            if (findIndexedTypeDeclaration(module, className) != NOT_FOUND) {
+                declaringModule = module;
+                break;
+            }
+        }
 
-    private ParseTask cachedParse(Path file) {
-        if (parseCache.needs(file, file.toFile().getName())) {
-            Parser parser = Parser.parseFile(mProject, file);
-            parseCache.load(file, file.toFile().getName(), new ParseTask(parser.task, parser.root));
+        Set<Module> dependents = new LinkedHashSet<>();
+        Deque<Module> queue = new ArrayDeque<>();
+        queue.addLast(declaringModule);
+        while (!queue.isEmpty()) {
+            Module current = queue.removeFirst();
+            if (!dependents.add(current)) {
+                continue;
+            }
+            for (Module module : mProject.getModules()) {
+                if (module.getModuleDependencies().contains(current.getName())) {
+                    queue.addLast(module);
+                }
+            }
         }
-        return parseCache.get(file, file.toFile().getName());
+        return dependents;
+    }
+
+    private List<ReferenceIndex> getReferenceIndexes(Collection<Module> modules) {
+        List<ReferenceIndex> indexes = new ArrayList<>();
+        for (Module module : modules) {
+            CompilationInfo info = module.getUserData(CompilationInfo.COMPILATION_INFO_KEY);
+            if (info != null) {
+                indexes.add(info.getReferenceIndex());
+            }
+        }
+        return indexes;
+    }
+
+    private final Cache<String, ParseTask> parseCache = new Cache<>(MAX_PARSE_ENTRIES);
+
+    private ParseTask cachedParse(Path file) {
+        // parseCache already caches the result, skip the single entry cache of Parser
+        return parseCache.get(file, file.toFile().getName(), () -> {
+            Parser parser = Parser.parseUncached(mProject, new SourceFileObject(file));
+            return new ParseTask(parser.task, parser.root);
+        });
     }
 
     private ParseTask cachedParse(JavaFileObject file) {
@@ -448,14 +551,10 @@ public class JavaCompilerService implements CompilerProvider {
                     file.toUri().toString().substring(4, file.toUri().toString().lastIndexOf("!"));
 
             Path parsedPath = new File(URI.create(path)).toPath();
-            if (parseCache.needs(parsedPath, file.getName())) {
-                Parser parser = Parser.parseJavaFileObject(mProject, file);
-                parseCache
-                        .load(parsedPath, file.getName(), new ParseTask(parser.task, parser.root));
-            } else {
-                Log.d("JavaCompilerService", "Using cached parse for " + file.getName());
-            }
-            return parseCache.get(parsedPath, file.getName());
+            return parseCache.get(parsedPath, file.getName(), () -> {
+                Parser parser = Parser.parseUncached(mProject, file);
+                return new ParseTask(parser.task, parser.root);
+            });
         } else if (file instanceof SourceFileObject) {
             return cachedParse(((SourceFileObject) file).mFile);
         }
@@ -521,10 +620,16 @@ public class JavaCompilerService implements CompilerProvider {
         return compileBatch(sources);
     }
 
+    /**
+     * Discards the current batch, for when a read of it was canceled and its context may be
+     * in a broken state. Waits for the other readers of the batch to finish.
+     */
     public synchronized void close() {
-        if (cachedCompile != null && !cachedCompile.closed) {
-            cachedCompile.close();
-        }
+        mContainer.initialize(() -> {
+            if (cachedCompile != null) {
+                mCompileCache.remove(cachedCompile);
+            }
+        });
         if (mLock.isHeldByCurrentThread() && mLock.isLocked()) {
             mLock.unlock();
         }
@@ -537,14 +642,8 @@ public class JavaCompilerService implements CompilerProvider {
     public void destroy() {
         mContainer.initialize(() -> {
             close();
-            if (cachedCompile != null) {
-                final ReusableCompiler.Borrow borrow = cachedCompile.borrow;
-                if (borrow != null) {
-                    borrow.close();
-                }
-            }
             cachedCompile = null;
-            cachedModified.clear();
+            mCompileCache.clear();
             compiler = new ReusableCompiler();
         });
     }
@@ -78,25 +78,51 @@ public class Parser {
         return parseJavaFileObject(project, new SourceFileObject(file));
     }
 
-    private static Parser cachedParse;
-    private static long cachedModified = -1;
+    /**
+     * The last parsed file along with its modified time when it was parsed. Both are replaced
+     * together so a thread never sees the parser of one file with the modified time of another.
+     */
+    private static class CachedParse {
+        final Parser parser;
+        final long modified;
 
-    private static boolean needsParse(JavaFileObject file) {
-        if (cachedParse == null) return true;
-        if (!cachedParse.file.equals(file)) return true;
-        return file.getLastModified() > cachedModified;
+        CachedParse(Parser parser, long modified) {
+            this.parser = parser;
+            this.modified = modified;
+        }
     }
 
-    private static void loadParse(Project project, JavaFileObject file) {
-        cachedParse = new Parser(project, file);
-        cachedModified = file.getLastModified();
+    private static volatile CachedParse cachedParse;
+
+    private static boolean needsParse(CachedParse cached, JavaFileObject file) {
+        if (cached == null) return true;
+        if (!cached.parser.file.equals(file)) return true;
+        return file.getLastModified() > cached.modified;
     }
 
+    /**
+     * Parses the file, reusing the previous result if the same file is parsed again without
+     * being modified. Safe to call from multiple threads, concurrent callers parsing different
+     * files each get their own parser and the last one is kept.
+     */
     public static Parser parseJavaFileObject(Project project, JavaFileObject file) {
-        if (needsParse(file)) {
-            loadParse(project, file);
+        CachedParse cached = cachedParse;
+        if (!needsParse(cached, file)) {
+            return cached.parser;
         }
-        return cachedParse;
+        // read before parsing so a modification made while parsing is not missed
+        long modified = file.getLastModified();
+        Parser parser = new Parser(project, file);
+        cachedParse = new CachedParse(parser, modified);
+        return parser;
+    }
+
+    /**
+     * Parses the file without going through the single entry parse cache, use this for files
+     * that are parsed once so they do not replace the cached parse of the file being edited.
+     */
+    public static Parser parseUncached(Project project, JavaFileObject file) {
+        return new Parser(project, file);
     }
 
     public Set<Name> packagePrivateClasses() {
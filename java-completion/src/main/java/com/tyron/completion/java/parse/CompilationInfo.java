@@ -82,6 +82,7 @@ public class CompilationInfo {
 
     public final CompilationInfoImpl impl;
     private final Map<URI, JCCompilationUnit> compiledMap = new HashMap<>();
+    private final ReferenceIndex referenceIndex = new ReferenceIndex();
 
     private final DebouncerStore<String> debouncerStore = DebouncerStore.DEFAULT;
 
@@ -151,6 +152,13 @@ public class CompilationInfo {
                         throw new RuntimeException(e);
                     }
 
+                    // skeletons have their method bodies removed, their references are
+                    // put to the index separately
+                    if (!(fileObject instanceof SkeletonIndex.SkeletonFileObject) &&
+                        "file".equals(fileObject.toUri().getScheme())) {
+                        referenceIndex.update(fileObject.toUri(), unit);
+                    }
+
                     Iterable<? extends Element> enter = javacTask.enter(List.of(unit));
 
                     if (previous != null) {
@@ -171,6 +179,14 @@ public class CompilationInfo {
         });
     }
 
+    /**
+     * @return the index of the identifiers used in the files of this module
+     */
+    @NonNull
+    public ReferenceIndex getReferenceIndex() {
+        return referenceIndex;
+    }
+
     public JCCompilationUnit getCompilationUnit(JavaFileObject fileObject) {
         return getCompilationUnit(fileObject.toUri());
     }
@@ -0,0 +1,384 @@
+package com.tyron.completion.java.parse;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.SetMultimap;
+import com.google.common.primitives.Ints;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.ImportTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.util.TreeScanner;
+import com.sun.tools.javac.tree.EndPosTable;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.tree.TreeInfo;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An inverted index of the identifiers used in the source files of a module.
+ * <p>
+ * Each identifier maps to the files that use it and the offsets where it is used. This is a
+ * syntactic index, the files returned for an identifier are the candidates that may refer
+ * to a symbol with that name; callers that need exact results should attribute the candidates.
+ * The package declaration and the package parts of imports are not indexed.
+ * The index also keeps the fully qualified names of the types declared in each file.
+ */
+public class ReferenceIndex {
+
+    private final Map<URI, FileReferences> mFiles = new HashMap<>();
+    private final SetMultimap<String, URI> mReferences = HashMultimap.create();
+    private final Map<String, URI> mDeclarations = new HashMap<>();
+
+    /**
+     * Re-index the given file from its parsed tree
+     */
+    public void update(@NonNull URI file, @NonNull CompilationUnitTree root) {
+        put(file, FileReferences.create(root));
+    }
+
+    public synchronized void put(@NonNull URI file, @NonNull FileReferences references) {
+        remove(file);
+        mFiles.put(file, references);
+        for (String identifier : references.occurrences.keySet()) {
+            mReferences.put(identifier, file);
+        }
+        for (String declaredType : references.declaredTypes) {
+            mDeclarations.put(declaredType, file);
+        }
+    }
+
+    public synchronized void remove(@NonNull URI file) {
+        FileReferences previous = mFiles.remove(file);
+        if (previous == null) {
+            return;
+        }
+        for (String identifier : previous.occurrences.keySet()) {
+            mReferences.remove(identifier, file);
+        }
+        for (String declaredType : previous.declaredTypes) {
+            mDeclarations.remove(declaredType, file);
+        }
+    }
+
+    public synchronized void clear() {
+        mFiles.clear();
+        mReferences.clear();
+        mDeclarations.clear();
+    }
+
+    @Nullable
+    public synchronized FileReferences get(@NonNull URI file) {
+        return mFiles.get(file);
+    }
+
+    /**
+     * @return The files that use the given identifier
+     */
+    @NonNull
+    public synchronized Set<URI> getReferencingFiles(@NonNull String identifier) {
+        return ImmutableSet.copyOf(mReferences.get(identifier));
+    }
+
+    /**
+     * @param className the fully qualified name of the class
+     * @return the file that declares the class, or null if it is not in the index
+     */
+    @Nullable
+    public synchronized URI getDeclaringFile(@NonNull String className) {
+        return mDeclarations.get(className);
+    }
+
+    /**
+     * The identifiers used in a single file along with its package, imports and declared types.
+     * Instances are immutable.
+     */
+    public static class FileReferences {
+
+        private static final int[] NO_OFFSETS = new int[0];
+
+        private final String packageName;
+        private final Set<String> imports;
+        private final Set<String> declaredTypes;
+        private final Map<String, int[]> occurrences;
+        /** Whether a type declared in this file extends or implements another type */
+        private final boolean hasSupertypes;
+
+        FileReferences(String packageName,
+                       Set<String> imports,
+                       Set<String> declaredTypes,
+                       Map<String, int[]> occurrences,
+                       boolean hasSupertypes) {
+            this.packageName = packageName;
+            this.imports = ImmutableSet.copyOf(imports);
+            this.declaredTypes = ImmutableSet.copyOf(declaredTypes);
+            this.occurrences = ImmutableMap.copyOf(occurrences);
+            this.hasSupertypes = hasSupertypes;
+        }
+
+        public static FileReferences create(CompilationUnitTree root) {
+            Collector collector = new Collector(root);
+            collector.scan(root, null);
+            return collector.build();
+        }
+
+        @NonNull
+        public String getPackageName() {
+            return packageName;
+        }
+
+        @NonNull
+        public Set<String> getImports() {
+            return imports;
+        }
+
+        @NonNull
+        public Set<String> getDeclaredTypes() {
+            return declaredTypes;
+        }
+
+        @NonNull
+        public int[] getOffsets(@NonNull String identifier) {
+            int[] offsets = occurrences.get(identifier);
+            return offsets == null ? NO_OFFSETS : offsets.clone();
+        }
+
+        /**
+         * @return whether this file can refer to the class by its simple name
+         */
+        public boolean canReferBySimpleName(@NonNull String className) {
+            if (declaredTypes.contains(className) || imports.contains(className)) {
+                return true;
+            }
+            int lastDot = className.lastIndexOf('.');
+            String classPackage = lastDot == -1 ? "" : className.substring(0, lastDot);
+            return packageName.equals(classPackage) || imports.contains(classPackage + ".*");
+        }
+
+        /**
+         * Checks whether this file may refer to the class, assuming it uses the simple name of
+         * the class. The class may be named by its simple name, by its fully qualified name
+         * such as {@code java.util.Map} or through one of its outer classes such as
+         * {@code Outer.Inner}.
+         *
+         * @return false only if the file cannot refer to the class, files that may refer to it
+         * in a way that cannot be known without attributing them are kept
+         */
+        public boolean mayReferTo(@NonNull String className) {
+            if (canReferBySimpleName(className) || imports.contains("static " + className)) {
+                return true;
+            }
+            int firstDot = className.indexOf('.');
+            if (firstDot != -1 && occurrences.containsKey(className.substring(0, firstDot))) {
+                return true;
+            }
+            for (String outer = enclosingName(className); !outer.isEmpty();
+                 outer = enclosingName(outer)) {
+                if (occurrences.containsKey(simpleName(outer)) && canReferBySimpleName(outer)) {
+                    return true;
+                }
+                if (imports.contains("static " + outer + ".*")) {
+                    return true;
+                }
+            }
+            // a nested class is also named by its simple name in the subclasses of its outer
+            // class, which cannot be known from the syntax alone
+            return isNestedClassName(className) && hasSupertypes;
+        }
+
+        private static String enclosingName(String className) {
+            int lastDot = className.lastIndexOf('.');
+            return lastDot == -1 ? "" : className.substring(0, lastDot);
+        }
+
+        private static String simpleName(String className) {
+            return className.substring(className.lastIndexOf('.') + 1);
+        }
+
+        /**
+         * Packages are lower case by convention, an upper case enclosing name is a class
+         */
+        private static boolean isNestedClassName(String className) {
+            String outer = simpleName(enclosingName(className));
+            return !outer.isEmpty() && Character.isUpperCase(outer.charAt(0));
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeUTF(packageName);
+            out.writeInt(imports.size());
+            for (String name : imports) {
+                out.writeUTF(name);
+            }
+            out.writeInt(declaredTypes.size());
+            for (String name : declaredTypes) {
+                out.writeUTF(name);
+            }
+            out.writeInt(occurrences.size());
+            for (Map.Entry<String, int[]> entry : occurrences.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                for (int offset : entry.getValue()) {
+                    out.writeInt(offset);
+                }
+            }
+            out.writeBoolean(hasSupertypes);
+        }
+
+        public static FileReferences read(DataInput in) throws IOException {
+            String packageName = in.readUTF();
+            Set<String> imports = new HashSet<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                imports.add(in.readUTF());
+            }
+            Set<String> declaredTypes = new HashSet<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                declaredTypes.add(in.readUTF());
+            }
+            Map<String, int[]> occurrences = new HashMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                String name = in.readUTF();
+                int[] offsets = new int[in.readInt()];
+                for (int j = 0; j < offsets.length; j++) {
+                    offsets[j] = in.readInt();
+                }
+                occurrences.put(name, offsets);
+            }
+            boolean hasSupertypes = in.readBoolean();
+            return new FileReferences(packageName, imports, declaredTypes, occurrences,
+                    hasSupertypes);
+        }
+    }
+
+    private static class Collector extends TreeScanner<Void, Void> {
+
+        private final EndPosTable endPositions;
+        private final String packageName;
+        private final Set<String> imports = new HashSet<>();
+        private final Set<String> declaredTypes = new HashSet<>();
+        private final Map<String, List<Integer>> occurrences = new HashMap<>();
+        private final Deque<String> enclosingClasses = new ArrayDeque<>();
+        private boolean hasSupertypes;
+
+        Collector(CompilationUnitTree root) {
+            endPositions = ((JCTree.JCCompilationUnit) root).endPositions;
+            packageName = root.getPackageName() == null ? "" : root.getPackageName().toString();
+        }
+
+        FileReferences build() {
+            Map<String, int[]> result = new HashMap<>();
+            occurrences.forEach((name, offsets) -> result.put(name, Ints.toArray(offsets)));
+            return new FileReferences(packageName, imports, declaredTypes, result,
+                    hasSupertypes);
+        }
+
+        private void record(String name, int offset) {
+            if (name.isEmpty() || "<init>".equals(name) || "<error>".equals(name)) {
+                return;
+            }
+            occurrences.computeIfAbsent(name, __ -> new ArrayList<>()).add(offset);
+        }
+
+        private int nameOffset(JCTree tree, String name) {
+            if (endPositions == null) {
+                return tree.getPreferredPosition();
+            }
+            return TreeInfo.getEndPos(tree, endPositions) - name.length();
+        }
+
+        @Override
+        public Void visitCompilationUnit(CompilationUnitTree tree, Void unused) {
+            // the package name does not refer to anything, it would make every file of the
+            // package look like it uses a fully qualified name
+            scan(tree.getPackageAnnotations(), unused);
+            scan(tree.getImports(), unused);
+            scan(tree.getTypeDecls(), unused);
+            return null;
+        }
+
+        @Override
+        public Void visitImport(ImportTree importTree, Void unused) {
+            String name = importTree.getQualifiedIdentifier().toString();
+            imports.add(importTree.isStatic() ? "static " + name : name);
+
+            // only the imported class and member are references, not the packages
+            if (importTree.getQualifiedIdentifier() instanceof MemberSelectTree) {
+                MemberSelectTree select = (MemberSelectTree) importTree.getQualifiedIdentifier();
+                recordSelect(select);
+                if (importTree.isStatic() && select.getExpression() instanceof MemberSelectTree) {
+                    recordSelect((MemberSelectTree) select.getExpression());
+                }
+            }
+            return null;
+        }
+
+        private void recordSelect(MemberSelectTree select) {
+            String name = select.getIdentifier().toString();
+            if (!"*".equals(name)) {
+                record(name, nameOffset((JCTree) select, name));
+            }
+        }
+
+        @Override
+        public Void visitClass(ClassTree classTree, Void unused) {
+            if (classTree.getExtendsClause() != null ||
+                !classTree.getImplementsClause().isEmpty()) {
+                hasSupertypes = true;
+            }
+            String simpleName = classTree.getSimpleName().toString();
+            if (simpleName.isEmpty()) {
+                // anonymous classes are not declarations
+                return super.visitClass(classTree, unused);
+            }
+            String outer = enclosingClasses.isEmpty()
+                    ? packageName
+                    : enclosingClasses.peek();
+            String qualifiedName = outer.isEmpty() ? simpleName : outer + "." + simpleName;
+            declaredTypes.add(qualifiedName);
+
+            enclosingClasses.push(qualifiedName);
+            try {
+                return super.visitClass(classTree, unused);
+            } finally {
+                enclosingClasses.pop();
+            }
+        }
+
+        @Override
+        public Void visitIdentifier(IdentifierTree identifierTree, Void unused) {
+            record(identifierTree.getName().toString(),
+                    ((JCTree) identifierTree).getStartPosition());
+            return super.visitIdentifier(identifierTree, unused);
+        }
+
+        @Override
+        public Void visitMemberSelect(MemberSelectTree memberSelectTree, Void unused) {
+            String name = memberSelectTree.getIdentifier().toString();
+            record(name, nameOffset((JCTree) memberSelectTree, name));
+            return super.visitMemberSelect(memberSelectTree, unused);
+        }
+
+        @Override
+        public Void visitMemberReference(MemberReferenceTree memberReferenceTree, Void unused) {
+            String name = memberReferenceTree.getName().toString();
+            record(name, nameOffset((JCTree) memberReferenceTree, name));
+            return super.visitMemberReference(memberReferenceTree, unused);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.tyron.completion.java.parse;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.tyron.builder.model.SourceFileObject;
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.Module;
+import com.tyron.common.logging.IdeLog;
+import com.tyron.completion.java.compiler.Parser;
+import com.tyron.completion.java.provider.PruneMethodBodies;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import javax.tools.SimpleJavaFileObject;
+
+/**
+ * An on-disk index of the pruned compilation units of a module.
+ * <p>
+ * A skeleton is the source of a file with the statements inside its method bodies erased,
+ * leaving only the types, members, signatures and imports that completion needs. Along with
+ * it, the {@link ReferenceIndex.FileReferences} of the complete file are stored so the
+ * reference index does not miss the identifiers used inside method bodies. Skeletons
+ * are keyed by the hash of the file contents, so a file is only parsed again when it has
+ * actually changed, even after the app has been restarted.
+ */
+public class SkeletonIndex {
+
+    private static final Logger LOG = IdeLog.getCurrentLogger(SkeletonIndex.class);
+
+    /**
+     * Bump this whenever the format of the skeletons change so old entries are not used
+     */
+    private static final int VERSION = 3;
+    private static final String INDEX_DIRECTORY = "intermediates/java_skeletons/v" + VERSION;
+    private static final String EXTENSION = ".skel";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    public static final int DEFAULT_PARALLELISM =
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    public static SkeletonIndex forModule(Module module) {
+        return new SkeletonIndex(new File(module.getBuildDirectory(), INDEX_DIRECTORY));
+    }
+
+    private final File mIndexDirectory;
+
+    public SkeletonIndex(File indexDirectory) {
+        mIndexDirectory = indexDirectory;
+    }
+
+    public Map<File, Skeleton> index(Project project, Collection<File> files) throws IOException {
+        return index(project, files, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Returns the skeletons of the given files. Files which are not in the index yet are
+     * parsed in parallel with at most {@code parallelism} threads and their skeletons are
+     * written to disk. Entries that are no longer used by any of the files are removed.
+     *
+     * @return the skeletons in the iteration order of {@code files}, files that could not be
+     * read or parsed are not included.
+     */
+    public Map<File, Skeleton> index(Project project,
+                                     Collection<File> files,
+                                     int parallelism) throws IOException {
+        if (!mIndexDirectory.exists() && !mIndexDirectory.mkdirs()) {
+            throw new IOException("Unable to create index directory " + mIndexDirectory);
+        }
+
+        ExecutorService service = Executors.newFixedThreadPool(Math.max(1, parallelism));
+        try {
+            Map<File, Future<Skeleton>> futures = new LinkedHashMap<>();
+            for (File file : files) {
+                futures.put(file, service.submit(() -> load(project, file)));
+            }
+
+            Map<File, Skeleton> skeletons = new LinkedHashMap<>();
+            Set<String> usedKeys = new HashSet<>();
+            for (Map.Entry<File, Future<Skeleton>> entry : futures.entrySet()) {
+                try {
+                    Skeleton result = entry.getValue().get();
+                    if (result != null) {
+                        skeletons.put(entry.getKey(), result);
+                        usedKeys.add(result.key);
+                    }
+                } catch (ExecutionException e) {
+                    LOG.warning("Failed to index " + entry.getKey() + ": " + e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Indexing was interrupted");
+                }
+            }
+
+            removeUnusedEntries(usedKeys);
+            return skeletons;
+        } finally {
+            service.shutdownNow();
+        }
+    }
+
+    @Nullable
+    private Skeleton load(Project project, File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        String source = FileUtils.readFileToString(file, Charset.defaultCharset());
+        String key = HASH_FUNCTION.hashString(source, StandardCharsets.UTF_8).toString();
+
+        File indexed = new File(mIndexDirectory, key + EXTENSION);
+        if (indexed.isFile()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(indexed)))) {
+                return Skeleton.read(key, in);
+            } catch (IOException e) {
+                LOG.warning("Corrupted skeleton for " + file + ", parsing it again");
+            }
+        }
+
+        SourceFileObject fileObject = new SourceFileObject(file.toPath(), source,
+                Instant.ofEpochMilli(file.lastModified()));
+        Parser parser = Parser.parseUncached(project, fileObject);
+        // During indexing, statements inside methods are not needed so
+        // it is stripped to speed up the index process
+        ReferenceIndex.FileReferences references =
+                ReferenceIndex.FileReferences.create(parser.root);
+        String contents = new PruneMethodBodies(parser.task).scan(parser.root, 0L).toString();
+        Skeleton skeleton = new Skeleton(key, contents, references);
+        write(indexed, skeleton);
+        return skeleton;
+    }
+
+    /**
+     * Writes to a temporary file first so a crash in the middle of writing never leaves
+     * a truncated skeleton behind
+     */
+    private void write(File destination, Skeleton skeleton) throws IOException {
+        File temp = File.createTempFile(destination.getName(), TEMP_EXTENSION, mIndexDirectory);
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                skeleton.write(out);
+            }
+            Files.move(temp.toPath(), destination.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private void removeUnusedEntries(Set<String> usedKeys) {
+        File[] children = mIndexDirectory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String name = child.getName();
+            if (name.endsWith(TEMP_EXTENSION)) {
+                // left behind by a previous run that did not finish writing
+                FileUtils.deleteQuietly(child);
+                continue;
+            }
+            if (!name.endsWith(EXTENSION)) {
+                continue;
+            }
+            String key = name.substring(0, name.length() - EXTENSION.length());
+            if (!usedKeys.contains(key)) {
+                FileUtils.deleteQuietly(child);
+            }
+        }
+    }
+
+    public static class Skeleton {
+        private final String key;
+        private final String contents;
+        private final ReferenceIndex.FileReferences references;
+
+        Skeleton(@NonNull String key,
+                 @NonNull String contents,
+                 @NonNull ReferenceIndex.FileReferences references) {
+            this.key = key;
+            this.contents = contents;
+            this.references = references;
+        }
+
+        /**
+         * @return The source of the file with its method bodies erased
+         */
+        @NonNull
+        public String getContents() {
+            return contents;
+        }
+
+        /**
+         * @return The references of the complete file, including method bodies
+         */
+        @NonNull
+        public ReferenceIndex.FileReferences getReferences() {
+            return references;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            references.write(out);
+            byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        static Skeleton read(String key, DataInputStream in) throws IOException {
+            ReferenceIndex.FileReferences references = ReferenceIndex.FileReferences.read(in);
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new Skeleton(key, new String(bytes, StandardCharsets.UTF_8), references);
+        }
+    }
+
+    /**
+     * A file object whose contents are a skeleton. {@link CompilationInfo} does not
+     * update the {@link ReferenceIndex} from these since their method bodies are erased.
+     */
+    public static class SkeletonFileObject extends SimpleJavaFileObject {
+
+        private final String contents;
+
+        public SkeletonFileObject(File file, Skeleton skeleton) {
+            super(file.toURI(), Kind.SOURCE);
+            this.contents = skeleton.getContents();
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return contents;
+        }
+    }
+}
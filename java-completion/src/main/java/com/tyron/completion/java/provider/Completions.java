@@ -132,9 +132,6 @@ public class Completions {
 
             if (cancelled || e instanceof ProcessCanceledException) {
                 compiler.close();
-                if (compiler.getCompileBatch() != null) {
-                    compiler.getCompileBatch().borrow.close();
-                }
                 throw e;
             }
 
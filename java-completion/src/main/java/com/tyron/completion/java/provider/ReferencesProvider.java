@@ -0,0 +1,221 @@
+package com.tyron.completion.java.provider;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.LineMap;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.NewClassTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+import com.tyron.completion.java.CompilerProvider;
+import com.tyron.completion.java.compiler.CompileTask;
+import com.tyron.completion.java.compiler.CompilerContainer;
+import com.tyron.completion.java.hover.FindHoverElement;
+import com.tyron.completion.model.Position;
+import com.tyron.completion.model.Range;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+
+/**
+ * Finds the references to the element at a position in a file.
+ * <p>
+ * The candidate files are narrowed down with the reference indexes of the modules that can see
+ * the element, then the candidates are compiled and each use is attributed to check that it
+ * really refers to the element.
+ */
+public class ReferencesProvider {
+
+    public static final Map<Path, List<Range>> NOT_SUPPORTED = Collections.emptyMap();
+
+    private final CompilerProvider compiler;
+
+    public ReferencesProvider(CompilerProvider compiler) {
+        this.compiler = compiler;
+    }
+
+    /**
+     * @return the ranges of the references grouped by file, the ranges contain both the offsets
+     * and the zero based lines and columns of the referring names
+     */
+    public Map<Path, List<Range>> findReferences(Path file, int offset) {
+        CompilerContainer container = compiler.compile(file);
+        Target target = container.get(task -> {
+            Element element = new FindHoverElement(task.task).scan(task.root(), (long) offset);
+            return element == null ? null : Target.of(element);
+        });
+        if (target == null) {
+            return NOT_SUPPORTED;
+        }
+
+        Set<Path> candidates = new LinkedHashSet<>();
+        candidates.add(file);
+        if (target.className != null) {
+            if (target.memberName == null) {
+                Collections.addAll(candidates, compiler.findTypeReferences(target.className));
+            } else if (target.kind == ElementKind.CONSTRUCTOR) {
+                // constructors are called by the name of their class
+                Collections.addAll(candidates, compiler.findTypeReferences(target.className));
+            } else {
+                Collections.addAll(candidates,
+                        compiler.findMemberReferences(target.className, target.memberName));
+            }
+        }
+
+        if (target.className == null) {
+            // local variables and parameters can only be used in the file that declares them
+            return container.get(task -> collect(task, target, Collections.singleton(file)));
+        }
+        return compiler.compile(candidates.toArray(new Path[0]))
+                .get(task -> collect(task, target, candidates));
+    }
+
+    private Map<Path, List<Range>> collect(CompileTask task, Target target, Set<Path> files) {
+        Map<Path, List<Range>> references = new LinkedHashMap<>();
+        for (CompilationUnitTree root : task.roots) {
+            Path path = Paths.get(root.getSourceFile().toUri());
+            if (!files.contains(path)) {
+                continue;
+            }
+            List<Range> ranges = new ArrayList<>();
+            new FindReferences(task, target).scan(root, ranges);
+            if (!ranges.isEmpty()) {
+                references.put(path, ranges);
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Identifies an element independently of the compilation it comes from, so elements of
+     * different batches can be compared. Local elements are compared by identity.
+     */
+    private static class Target {
+
+        final ElementKind kind;
+        final String className;
+        final String memberName;
+        final String signature;
+        final Element local;
+
+        private Target(ElementKind kind, String className, String memberName, String signature,
+                       Element local) {
+            this.kind = kind;
+            this.className = className;
+            this.memberName = memberName;
+            this.signature = signature;
+            this.local = local;
+        }
+
+        static Target of(Element element) {
+            if (element instanceof TypeElement) {
+                String className = ((TypeElement) element).getQualifiedName().toString();
+                return new Target(element.getKind(), className, null, null, null);
+            }
+            Element owner = element.getEnclosingElement();
+            if (owner instanceof TypeElement) {
+                String className = ((TypeElement) owner).getQualifiedName().toString();
+                return new Target(element.getKind(), className,
+                        element.getSimpleName().toString(), element.toString(), null);
+            }
+            return new Target(element.getKind(), null, null, null, element);
+        }
+
+        boolean matches(Element element) {
+            if (element == null || element.getKind() != kind) {
+                return false;
+            }
+            if (local != null) {
+                return local.equals(element);
+            }
+            Target other = of(element);
+            return className.equals(other.className) &&
+                   (signature == null || signature.equals(other.signature));
+        }
+    }
+
+    private static class FindReferences extends TreePathScanner<Void, List<Range>> {
+
+        private final Trees trees;
+        private final SourcePositions positions;
+        private final Target target;
+
+        FindReferences(CompileTask task, Target target) {
+            this.trees = Trees.instance(task.task);
+            this.positions = trees.getSourcePositions();
+            this.target = target;
+        }
+
+        @Override
+        public Void visitIdentifier(IdentifierTree tree, List<Range> ranges) {
+            if (target.matches(trees.getElement(getCurrentPath()))) {
+                long start = positions.getStartPosition(getCurrentPath().getCompilationUnit(),
+                        tree);
+                add(ranges, start, start + tree.getName().length());
+            }
+            return super.visitIdentifier(tree, ranges);
+        }
+
+        @Override
+        public Void visitMemberSelect(MemberSelectTree tree, List<Range> ranges) {
+            if (target.matches(trees.getElement(getCurrentPath()))) {
+                long end = positions.getEndPosition(getCurrentPath().getCompilationUnit(), tree);
+                add(ranges, end - tree.getIdentifier().length(), end);
+            }
+            return super.visitMemberSelect(tree, ranges);
+        }
+
+        @Override
+        public Void visitMemberReference(MemberReferenceTree tree, List<Range> ranges) {
+            if (target.matches(trees.getElement(getCurrentPath()))) {
+                long end = positions.getEndPosition(getCurrentPath().getCompilationUnit(), tree);
+                String name = tree.getMode() == MemberReferenceTree.ReferenceMode.NEW
+                        ? "new"
+                        : tree.getName().toString();
+                add(ranges, end - name.length(), end);
+            }
+            return super.visitMemberReference(tree, ranges);
+        }
+
+        @Override
+        public Void visitNewClass(NewClassTree tree, List<Range> ranges) {
+            if (target.kind == ElementKind.CONSTRUCTOR &&
+                target.matches(trees.getElement(getCurrentPath()))) {
+                CompilationUnitTree root = getCurrentPath().getCompilationUnit();
+                Tree identifier = tree.getIdentifier();
+                add(ranges, positions.getStartPosition(root, identifier),
+                        positions.getEndPosition(root, identifier));
+            }
+            return super.visitNewClass(tree, ranges);
+        }
+
+        private void add(List<Range> ranges, long start, long end) {
+            if (start < 0 || end < start) {
+                return;
+            }
+            LineMap lines = getCurrentPath().getCompilationUnit().getLineMap();
+            ranges.add(new Range(position(lines, start), position(lines, end)));
+        }
+
+        private static Position position(LineMap lines, long offset) {
+            Position position = new Position(offset, offset);
+            position.line = (int) lines.getLineNumber(offset) - 1;
+            position.column = (int) lines.getColumnNumber(offset) - 1;
+            return position;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.tyron.completion.java;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.tools.JavaFileObject;
+
+public class DocsIndexTest {
+
+    private static final String VIEW = "package android.view;\n/** A view */\npublic class View {}\n";
+    private static final String LIST = "package java.util;\npublic interface List<E> {}\n";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void testFind() throws IOException {
+        File jar = createJar();
+        DocsIndex index = new DocsIndex(jar);
+
+        assert index.isAvailable();
+        assertContents(index.find("android.view.View"), VIEW);
+        assertContents(index.find("java.util.List"), LIST);
+        // nested classes are in the file of their top level class
+        assertContents(index.find("android.view.View.OnClickListener"), VIEW);
+        assert index.find("android.view.Missing") == null;
+        assert index.find("android.view.package-info") == null;
+    }
+
+    @Test
+    public void testPersisted() throws IOException {
+        File jar = createJar();
+        new DocsIndex(jar).isAvailable();
+
+        File indexFile = new File(jar.getParentFile(), jar.getName() + ".index");
+        assert indexFile.isFile();
+        long modified = indexFile.lastModified();
+
+        DocsIndex reloaded = new DocsIndex(jar);
+        assertContents(reloaded.find("android.view.View"), VIEW);
+        assert indexFile.lastModified() == modified;
+    }
+
+    @Test
+    public void testSameFileObject() throws IOException {
+        DocsIndex index = new DocsIndex(createJar());
+        JavaFileObject view = index.find("android.view.View");
+        assert view == index.find("android.view.View");
+        assert view == index.find("android.view.View.OnClickListener");
+
+        // file objects of another index of the same jar are equal too
+        assert view.equals(new DocsIndex(createJar()).find("android.view.View"));
+        assert !view.equals(index.find("java.util.List"));
+    }
+
+    @Test
+    public void testPackageBoundary() throws IOException {
+        File jar = new File(mFolder.getRoot(), "example-sources.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("com/example/Foo.java"));
+            out.write("package com.example;\npublic class Foo {}\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+
+            out.putNextEntry(new ZipEntry("com/example/Foo/impl/Bar.java"));
+            out.write("package com.example.Foo.impl;\npublic class Bar {}\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        DocsIndex index = new DocsIndex(jar);
+
+        assert index.find("com.example.Foo.Nested") != null;
+        assert index.find("com.example.Foo.impl.Bar") != null;
+        // a missing class of a package is not looked up as a nested class of its parent
+        assert index.find("com.example.Foo.impl.Missing") == null;
+        assert index.find("com.example.Foo.impl") == null;
+        assert index.find("com.example") == null;
+    }
+
+    @Test
+    public void testInvalidJar() throws IOException {
+        File jar = mFolder.newFile("invalid-sources.jar");
+        try (FileOutputStream out = new FileOutputStream(jar)) {
+            out.write("not a zip file".getBytes(StandardCharsets.UTF_8));
+        }
+        DocsIndex index = new DocsIndex(jar);
+        assert !index.isAvailable();
+        assert index.find("android.view.View") == null;
+    }
+
+    private File createJar() throws IOException {
+        File jar = new File(mFolder.getRoot(), "android-sources.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("android/view/View.java"));
+            out.write(VIEW.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+
+            out.putNextEntry(new ZipEntry("android/view/package-info.java"));
+            out.write("package android.view;".getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+
+            byte[] list = LIST.getBytes(StandardCharsets.UTF_8);
+            CRC32 crc = new CRC32();
+            crc.update(list);
+            ZipEntry stored = new ZipEntry("java/util/List.java");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(list.length);
+            stored.setCompressedSize(list.length);
+            stored.setCrc(crc.getValue());
+            out.putNextEntry(stored);
+            out.write(list);
+            out.closeEntry();
+        }
+        return jar;
+    }
+
+    private static void assertContents(JavaFileObject file, String expected) throws IOException {
+        assert file != null;
+        assert expected.contentEquals(file.getCharContent(true)) : file.getCharContent(true);
+    }
+}
@@ -0,0 +1,88 @@
+package com.tyron.completion.java.benchmark;
+
+import com.sun.source.util.TreePath;
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.sun.tools.javac.tree.JCTree;
+import com.tyron.completion.java.ShortNamesCache;
+import com.tyron.completion.java.action.FindCurrentPath;
+import com.tyron.completion.java.benchmark.SyntheticProject.CompletionKind;
+import com.tyron.completion.java.parse.CompilationInfo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+/**
+ * Measures the steps of a completion request in isolation: updating the compilation unit of
+ * the edited file, finding the path at the cursor and listing the class names.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompilationInfoBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int fileCount;
+
+    private SyntheticProject mProject;
+    private CompilationInfo mInfo;
+    private JavaFileObject mFileObject;
+    private JCTree.JCCompilationUnit mUnit;
+    private long mCursor;
+    private ShortNamesCache mShortNamesCache;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SyntheticProject.initializeEnvironment();
+
+        mProject = SyntheticProject.create(fileCount);
+        mProject.index();
+
+        mInfo = CompilationInfo.get(mProject.getModule());
+        String contents = mProject.getContents(CompletionKind.MEMBER_SELECT);
+        mCursor = mProject.getCursor(CompletionKind.MEMBER_SELECT);
+        mFileObject = new SimpleJavaFileObject(mProject.getTargetFile().toURI(),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return contents;
+            }
+        };
+        mUnit = mInfo.updateImmediately(mFileObject);
+        mShortNamesCache = ShortNamesCache.getInstance(mProject.getModule());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mProject.delete();
+    }
+
+    @Benchmark
+    public JCTree.JCCompilationUnit updateImmediately() {
+        return mInfo.updateImmediately(mFileObject);
+    }
+
+    @Benchmark
+    public TreePath findCurrentPath() {
+        JavacTaskImpl task = mInfo.impl.getJavacTask();
+        return new FindCurrentPath(task).scan(mUnit, mCursor);
+    }
+
+    @Benchmark
+    public String[] getAllClassNames() {
+        return mShortNamesCache.getAllClassNames();
+    }
+}
@@ -0,0 +1,112 @@
+package com.tyron.completion.java.benchmark;
+
+import com.tyron.completion.CompletionPrefixMatcher;
+import com.tyron.completion.CompletionPrefixMatcher.MatchLevel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import me.xdrop.fuzzywuzzy.FuzzySearch;
+
+/**
+ * Compares {@link CompletionPrefixMatcher} against the previous implementation which used
+ * {@link FuzzySearch#ratio(String, String)}, on the simple names of the classes of the
+ * platform, which is about the size of android.jar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompletionPrefixMatcherBenchmark {
+
+    private static final String[] PREFIXES = {"S", "Str", "ArrLi", "AL", "get", "hm", "NPE",
+            "onCre", "View", "xyz"};
+
+    private List<String> mNames;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mNames = loadClassNames();
+    }
+
+    @Benchmark
+    public int computeMatchLevel() {
+        int matches = 0;
+        for (String prefix : PREFIXES) {
+            for (String name : mNames) {
+                if (CompletionPrefixMatcher.computeMatchLevel(name, prefix) !=
+                    MatchLevel.NOT_MATCH) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int fuzzySearch() {
+        int matches = 0;
+        for (String prefix : PREFIXES) {
+            for (String name : mNames) {
+                if (legacyMatchLevel(name, prefix) != MatchLevel.NOT_MATCH) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static MatchLevel legacyMatchLevel(String candidateName, String completionPrefix) {
+        if (candidateName.startsWith(completionPrefix)) {
+            return candidateName.length() == completionPrefix.length()
+                    ? MatchLevel.CASE_SENSITIVE_EQUAL
+                    : MatchLevel.CASE_SENSITIVE_PREFIX;
+        }
+
+        if (candidateName.toLowerCase().startsWith(completionPrefix.toLowerCase())) {
+            return candidateName.length() == completionPrefix.length()
+                    ? MatchLevel.CASE_INSENSITIVE_EQUAL
+                    : MatchLevel.CASE_INSENSITIVE_PREFIX;
+        }
+
+        if (FuzzySearch.ratio(candidateName, completionPrefix) > 70) {
+            return MatchLevel.PARTIAL_MATCH;
+        }
+        return MatchLevel.NOT_MATCH;
+    }
+
+    private static List<String> loadClassNames() throws IOException {
+        List<String> names = new ArrayList<>();
+        FileSystem fileSystem;
+        try {
+            fileSystem = FileSystems.getFileSystem(URI.create("jrt:/"));
+        } catch (RuntimeException e) {
+            // running on Java 8
+            return names;
+        }
+        try (Stream<Path> stream = Files.walk(fileSystem.getPath("/modules"))) {
+            stream.map(path -> path.getFileName() == null ? "" : path.getFileName().toString())
+                    .filter(name -> name.endsWith(".class") && !name.contains("$"))
+                    .map(name -> name.substring(0, name.length() - ".class".length()))
+                    .forEach(names::add);
+        }
+        return names;
+    }
+}
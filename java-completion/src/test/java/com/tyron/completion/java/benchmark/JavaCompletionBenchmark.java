@@ -0,0 +1,76 @@
+package com.tyron.completion.java.benchmark;
+
+import com.tyron.completion.CompletionParameters;
+import com.tyron.completion.java.JavaCompletionProvider;
+import com.tyron.completion.java.benchmark.SyntheticProject.CompletionKind;
+import com.tyron.completion.model.CompletionList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link JavaCompletionProvider#complete(CompletionParameters)} end to end, from
+ * parsing the edited file to building the sorted completion list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JavaCompletionBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int fileCount;
+
+    @Param({"MEMBER_SELECT", "IDENTIFIER", "CLASS_NAME"})
+    public CompletionKind kind;
+
+    private SyntheticProject mProject;
+    private JavaCompletionProvider mProvider;
+    private CompletionParameters mParameters;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SyntheticProject.initializeEnvironment();
+
+        mProject = SyntheticProject.create(fileCount);
+        mProject.index();
+
+        mProvider = new JavaCompletionProvider();
+        mParameters = CompletionParameters.builder()
+                .setProject(mProject.getProject())
+                .setModule(mProject.getModule())
+                .setFile(mProject.getTargetFile())
+                .setContents(mProject.getContents(kind))
+                .setPrefix(kind.prefix)
+                // the line is not known so the provider does not reuse its previous results
+                .setLine(-1)
+                .setColumn(-1)
+                .setIndex(mProject.getCursor(kind))
+                .build();
+
+        CompletionList list = mProvider.complete(mParameters);
+        if (list.items.isEmpty()) {
+            throw new IllegalStateException("No completions for " + kind);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mProject.delete();
+    }
+
+    @Benchmark
+    public CompletionList complete() {
+        return mProvider.complete(mParameters);
+    }
+}
@@ -0,0 +1,52 @@
+package com.tyron.completion.java.benchmark;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+/**
+ * Runs the JMH benchmarks of this package. They are skipped unless the {@code benchmark}
+ * system property is set, run them with:
+ * <pre>
+ * ./gradlew :java-completion:testDebugUnitTest --tests '*JavaCompletionBenchmarks' -Pbenchmark
+ * </pre>
+ * A regular expression can be passed with {@code -Pbenchmark=<regex>} to run only some of
+ * them. The benchmarks run in the test JVM since the completion module needs the Robolectric
+ * environment, the results are written to {@code build/reports/jmh/results.json}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, resourceDir = Config.NONE)
+public class JavaCompletionBenchmarks {
+
+    @Test
+    public void runBenchmarks() throws RunnerException {
+        String include = System.getProperty("benchmark");
+        Assume.assumeTrue("Benchmarks are not enabled", include != null && !include.isEmpty());
+        if ("true".equals(include)) {
+            include = JavaCompletionBenchmarks.class.getPackage().getName() + ".*Benchmark";
+        }
+
+        File results = new File("build/reports/jmh/results.json");
+        //noinspection ResultOfMethodCallIgnored
+        results.getParentFile().mkdirs();
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .forks(0)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .resultFormat(ResultFormatType.JSON)
+                .result(results.getAbsolutePath())
+                .build();
+        new Runner(options).run();
+    }
+}
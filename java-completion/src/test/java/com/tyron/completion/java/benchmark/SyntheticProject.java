@@ -0,0 +1,209 @@
+package com.tyron.completion.java.benchmark;
+
+import static com.tyron.completion.TestUtil.resolveBasePath;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.ContentRoot;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.completion.index.CompilerService;
+import com.tyron.completion.java.CompletionModule;
+import com.tyron.completion.java.JavaCompilerProvider;
+import com.tyron.completion.java.parse.CompilationInfo;
+import com.tyron.completion.java.parse.SkeletonIndex;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A generated project used by the benchmarks. The project contains a number of classes spread
+ * over packages of 100 classes each, every class referring to the previous one, and a
+ * {@code Target} class where completions are requested.
+ */
+public class SyntheticProject {
+
+    public static final String TARGET_CLASS = "com.bench.Target";
+
+    private static final int CLASSES_PER_PACKAGE = 100;
+    private static final String CURSOR = "/*cursor*/";
+
+    /**
+     * The kinds of completion that are benchmarked, along with the code inserted at the cursor
+     * and the prefix the editor would pass.
+     */
+    public enum CompletionKind {
+        MEMBER_SELECT("names.", ""),
+        IDENTIFIER("val", "val"),
+        CLASS_NAME("Synth", "Synth");
+
+        final String insertedText;
+        final String prefix;
+
+        CompletionKind(String insertedText, String prefix) {
+            this.insertedText = insertedText;
+            this.prefix = prefix;
+        }
+    }
+
+    private static final String TARGET_SOURCE = "package com.bench;\n" +
+                                                "\n" +
+                                                "import java.util.ArrayList;\n" +
+                                                "import java.util.List;\n" +
+                                                "import com.bench.p0.Synthetic0;\n" +
+                                                "\n" +
+                                                "public class Target {\n" +
+                                                "\n" +
+                                                "    private final List<String> names = new ArrayList<>();\n" +
+                                                "    private int valueCount;\n" +
+                                                "\n" +
+                                                "    public void run(Synthetic0 synthetic) {\n" +
+                                                "        int valueLocal = synthetic.getValue();\n" +
+                                                "        " + CURSOR + "\n" +
+                                                "    }\n" +
+                                                "}\n";
+
+    /**
+     * Initializes the completion module the same way the functional tests do, this must be
+     * called from a Robolectric environment.
+     */
+    public static void initializeEnvironment() {
+        CompletionModule.initialize(ApplicationProvider.getApplicationContext());
+        CompletionModule.setAndroidJar(new File(resolveBasePath(), "classpath/rt.jar"));
+        CompletionModule.setLambdaStubs(new File(resolveBasePath(),
+                "classpath/core-lambda-stubs.jar"));
+
+        CompilerService service = CompilerService.getInstance();
+        if (service.isEmpty()) {
+            service.registerIndexProvider(JavaCompilerProvider.KEY, new JavaCompilerProvider());
+        }
+    }
+
+    public static SyntheticProject create(int classCount) throws IOException {
+        File root = Files.createTempDirectory("synthetic-project").toFile();
+        File javaDirectory = new File(root, "src/main/java");
+
+        List<File> files = new ArrayList<>(classCount + 1);
+        for (int i = 0; i < classCount; i++) {
+            String packageName = packageName(i);
+            File file = new File(javaDirectory,
+                    packageName.replace('.', '/') + "/Synthetic" + i + ".java");
+            FileUtils.writeStringToFile(file, classSource(i), StandardCharsets.UTF_8);
+            files.add(file);
+        }
+        File target = new File(javaDirectory, TARGET_CLASS.replace('.', '/') + ".java");
+        FileUtils.writeStringToFile(target, TARGET_SOURCE, StandardCharsets.UTF_8);
+        files.add(target);
+
+        return new SyntheticProject(root, javaDirectory, target, files);
+    }
+
+    private static String packageName(int index) {
+        return "com.bench.p" + index / CLASSES_PER_PACKAGE;
+    }
+
+    private static String classSource(int index) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("package ").append(packageName(index)).append(";\n\n");
+        if (index > 0) {
+            builder.append("import ").append(packageName(index - 1))
+                    .append(".Synthetic").append(index - 1).append(";\n\n");
+        }
+        builder.append("public class Synthetic").append(index).append(" {\n\n");
+        builder.append("    private int value = ").append(index).append(";\n\n");
+        builder.append("    public int getValue() {\n");
+        builder.append("        return value;\n");
+        builder.append("    }\n");
+        if (index > 0) {
+            builder.append("\n    public Synthetic").append(index - 1).append(" previous() {\n");
+            builder.append("        return new Synthetic").append(index - 1).append("();\n");
+            builder.append("    }\n");
+        }
+        builder.append("}\n");
+        return builder.toString();
+    }
+
+    private final File mRoot;
+    private final File mTargetFile;
+    private final List<File> mFiles;
+    private final Project mProject;
+    private final MockAndroidModule mModule;
+
+    private SyntheticProject(File root, File javaDirectory, File target, List<File> files)
+            throws IOException {
+        mRoot = root;
+        mTargetFile = target;
+        mFiles = files;
+
+        ContentRoot contentRoot = new ContentRoot(root);
+        contentRoot.addSourceDirectory(javaDirectory);
+        Set<ContentRoot> contentRoots = Collections.singleton(contentRoot);
+
+        mProject = new Project(root);
+        mModule = new MockAndroidModule(root, new MockFileManager(root)) {
+            @Override
+            public Set<ContentRoot> getContentRoots() {
+                return contentRoots;
+            }
+        };
+        mModule.open();
+        for (File file : files) {
+            mModule.addJavaFile(file);
+        }
+        mProject.addModule(mModule);
+    }
+
+    /**
+     * Indexes the project the same way the project manager does when a project is opened
+     */
+    public void index() throws IOException {
+        CompilationInfo info = CompilationInfo.get(mModule);
+        Map<File, SkeletonIndex.Skeleton> skeletons =
+                SkeletonIndex.forModule(mModule).index(mProject, mFiles);
+        for (Map.Entry<File, SkeletonIndex.Skeleton> entry : skeletons.entrySet()) {
+            info.getReferenceIndex().put(entry.getKey().toURI(), entry.getValue().getReferences());
+            info.updateImmediately(new SkeletonIndex.SkeletonFileObject(entry.getKey(),
+                    entry.getValue()));
+        }
+    }
+
+    public Project getProject() {
+        return mProject;
+    }
+
+    public MockAndroidModule getModule() {
+        return mModule;
+    }
+
+    public File getTargetFile() {
+        return mTargetFile;
+    }
+
+    /**
+     * @return The contents of the target file with the text of the completion kind inserted
+     */
+    public String getContents(CompletionKind kind) {
+        return TARGET_SOURCE.replace(CURSOR, kind.insertedText);
+    }
+
+    /**
+     * @return The index of the cursor, right after the inserted text
+     */
+    public long getCursor(CompletionKind kind) {
+        return TARGET_SOURCE.indexOf(CURSOR) + kind.insertedText.length();
+    }
+
+    public void delete() {
+        FileUtils.deleteQuietly(mRoot);
+    }
+}
@@ -0,0 +1,103 @@
+package com.tyron.completion.java.compiler;
+
+import static com.tyron.completion.TestUtil.resolveBasePath;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.sun.tools.javac.api.JavacTaskImpl;
+import com.tyron.builder.model.SourceFileObject;
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.completion.index.CompilerService;
+import com.tyron.completion.java.CompletionModule;
+import com.tyron.completion.java.JavaCompilerProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Collections;
+
+import javax.tools.Diagnostic;
+
+/**
+ * Switching between files reuses their cached batches, which must still be usable and report
+ * their own diagnostics.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, resourceDir = Config.NONE)
+public class CompileBatchCacheTest {
+
+    private MockAndroidModule mModule;
+    private JavaCompilerService mService;
+
+    @Before
+    public void setup() throws IOException {
+        CompletionModule.initialize(ApplicationProvider.getApplicationContext());
+        CompletionModule.setAndroidJar(new File(resolveBasePath(), "classpath/rt.jar"));
+        CompletionModule.setLambdaStubs(new File(resolveBasePath(),
+                "classpath/core-lambda-stubs" + ".jar"));
+
+        JavaCompilerProvider provider = new JavaCompilerProvider();
+        CompilerService.getInstance().registerIndexProvider(JavaCompilerProvider.KEY, provider);
+
+        File root = new File(resolveBasePath(), "EmptyProject");
+        MockFileManager fileManager = new MockFileManager(root);
+        Project project = new Project(root);
+        mModule = new MockAndroidModule(root, fileManager);
+        mModule.open();
+
+        mService = provider.get(project, mModule);
+    }
+
+    @Test
+    public void testCachedBatchIsUsableAfterSwitchingFiles() {
+        File root = new File(resolveBasePath(), "EmptyProject");
+        Instant modified = Instant.now();
+        SourceFileObject broken = new SourceFileObject(new File(root, "A.java").toPath(),
+                "class A { int a = \"a\"; }", modified);
+        SourceFileObject valid = new SourceFileObject(new File(root, "B.java").toPath(),
+                "class B { int b = 1; }", modified);
+
+        CompileTask first = compile(broken);
+        assert hasErrors(first);
+
+        CompileTask other = compile(valid);
+        assert !hasErrors(other);
+
+        CompileTask second = compile(broken);
+        assert !second.isClosed();
+        assert ((JavacTaskImpl) second.task).getContext() != null;
+        assert second.roots == first.roots : "The cached batch was not reused";
+        assert hasErrors(second) : "The diagnostics of another batch were reported";
+    }
+
+    @Test
+    public void testCanceledReadDiscardsTheBatch() {
+        File root = new File(resolveBasePath(), "EmptyProject");
+        SourceFileObject source = new SourceFileObject(new File(root, "A.java").toPath(),
+                "class A { }", Instant.now());
+
+        CompileTask first = compile(source);
+        mService.close();
+        assert first.isClosed();
+
+        CompileTask second = compile(source);
+        assert !second.isClosed();
+        assert ((JavacTaskImpl) second.task).getContext() != null;
+    }
+
+    private CompileTask compile(SourceFileObject source) {
+        return mService.compile(Collections.singletonList(source)).get(task -> task);
+    }
+
+    private static boolean hasErrors(CompileTask task) {
+        return task.diagnostics.stream().anyMatch(d -> d.getKind() == Diagnostic.Kind.ERROR);
+    }
+}
@@ -0,0 +1,135 @@
+package com.tyron.completion.java.concurrent;
+
+import static com.tyron.completion.TestUtil.resolveBasePath;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.mock.MockAndroidModule;
+import com.tyron.builder.project.mock.MockFileManager;
+import com.tyron.completion.TestUtil;
+import com.tyron.completion.index.CompilerService;
+import com.tyron.completion.java.CompletionModule;
+import com.tyron.completion.java.JavaCompilerProvider;
+import com.tyron.completion.java.compiler.CompilerContainer;
+import com.tyron.completion.java.compiler.JavaCompilerService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Readers of a {@link CompilerContainer} share the same compile task, this test ensures that
+ * reads are not serialized and that a write waits for the readers.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, resourceDir = Config.NONE)
+public class ConcurrentReadTest {
+
+    private MockAndroidModule mModule;
+    private JavaCompilerService mService;
+
+    @Before
+    public void setup() throws IOException {
+        CompletionModule.initialize(ApplicationProvider.getApplicationContext());
+        CompletionModule.setAndroidJar(new File(resolveBasePath(), "classpath/rt.jar"));
+        CompletionModule.setLambdaStubs(new File(resolveBasePath(),
+                "classpath/core-lambda-stubs" + ".jar"));
+
+        JavaCompilerProvider provider = new JavaCompilerProvider();
+        CompilerService.getInstance().registerIndexProvider(JavaCompilerProvider.KEY, provider);
+
+        File root = new File(TestUtil.resolveBasePath(), "EmptyProject");
+        MockFileManager fileManager = new MockFileManager(root);
+        Project project = new Project(root);
+        mModule = new MockAndroidModule(root, fileManager);
+        mModule.open();
+
+        File[] testFiles = new File(root, "completion").listFiles(c -> c.getName().endsWith(
+                ".java"));
+        if (testFiles != null) {
+            for (File testFile : testFiles) {
+                mModule.addJavaFile(testFile);
+            }
+        }
+
+        mService = provider.get(project, mModule);
+    }
+
+    @Test
+    public void testReadersDoNotBlockEachOther() throws InterruptedException {
+        File file = mModule.getJavaFile("com.tyron.test.MemberSelect");
+        assert file != null;
+
+        CompilerContainer container = mService.compile(file.toPath());
+
+        int readers = 4;
+        CountDownLatch inside = new CountDownLatch(readers);
+        AtomicInteger timedOut = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            threads.add(new Thread(() -> container.run(task -> {
+                inside.countDown();
+                try {
+                    // every reader waits for all the others to be inside the read lock,
+                    // this can only finish if the readers are not serialized
+                    if (!inside.await(10, TimeUnit.SECONDS)) {
+                        timedOut.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                assert !task.isClosed();
+            }), "Reader #" + i));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assert timedOut.get() == 0 : "Readers were blocked by each other";
+        assert !container.isWriting();
+    }
+
+    @Test
+    public void testWriteWaitsForReaders() throws InterruptedException {
+        File file = mModule.getJavaFile("com.tyron.test.MemberSelect");
+        assert file != null;
+
+        CompilerContainer container = mService.compile(file.toPath());
+
+        CountDownLatch reading = new CountDownLatch(1);
+        AtomicInteger closedWhileReading = new AtomicInteger();
+        Thread reader = new Thread(() -> container.run(task -> {
+            reading.countDown();
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            if (task.isClosed()) {
+                closedWhileReading.incrementAndGet();
+            }
+        }));
+        reader.start();
+        reading.await();
+
+        // recompiling closes the previous task, which must wait for the reader to finish
+        mService.invalidate(file.toPath());
+        mService.compile(file.toPath());
+        reader.join();
+
+        assert closedWhileReading.get() == 0 : "The compile task was closed while being read";
+    }
+}
@@ -0,0 +1,182 @@
+package com.tyron.completion.java.parse;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.util.JavacTask;
+import com.sun.tools.javac.api.JavacTool;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+
+public class ReferenceIndexTest {
+
+    private static final URI FOO = URI.create("file:///test/Foo.java");
+    private static final URI BAR = URI.create("file:///test/Bar.java");
+
+    private static final String FOO_SOURCE = "package test;\n" +
+            "import java.util.List;\n" +
+            "public class Foo {\n" +
+            "    List<String> names;\n" +
+            "    int count() { return names.size(); }\n" +
+            "    Runnable task() { return this::count; }\n" +
+            "    static class Inner {}\n" +
+            "}\n";
+    private static final String BAR_SOURCE = "package test;\n" +
+            "import java.util.*;\n" +
+            "class Bar {\n" +
+            "    Foo foo;\n" +
+            "    int count() { return foo.count(); }\n" +
+            "}\n";
+
+    @Test
+    public void testUpdate() throws IOException {
+        ReferenceIndex index = new ReferenceIndex();
+        index.update(FOO, parse(FOO, FOO_SOURCE));
+
+        assert index.getReferencingFiles("List").equals(Collections.singleton(FOO));
+        assert index.getReferencingFiles("size").equals(Collections.singleton(FOO));
+        assert index.getReferencingFiles("count").equals(Collections.singleton(FOO));
+        // the names of packages are not references
+        assert index.getReferencingFiles("java").isEmpty();
+        assert index.getReferencingFiles("test").isEmpty();
+        assert FOO.equals(index.getDeclaringFile("test.Foo"));
+        assert FOO.equals(index.getDeclaringFile("test.Foo.Inner"));
+
+        ReferenceIndex.FileReferences references = index.get(FOO);
+        assert references != null;
+        assert Arrays.equals(references.getOffsets("size"),
+                new int[]{FOO_SOURCE.indexOf("size")});
+        assert Arrays.equals(references.getOffsets("count"),
+                new int[]{FOO_SOURCE.lastIndexOf("count")});
+
+        // re-indexing a file replaces its previous identifiers and declarations
+        String updated = "package test;\nclass Renamed { Object value; }\n";
+        index.update(FOO, parse(FOO, updated));
+        assert index.getReferencingFiles("size").isEmpty();
+        assert index.getReferencingFiles("List").isEmpty();
+        assert index.getReferencingFiles("Object").equals(Collections.singleton(FOO));
+        assert index.getDeclaringFile("test.Foo") == null;
+        assert FOO.equals(index.getDeclaringFile("test.Renamed"));
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        ReferenceIndex index = new ReferenceIndex();
+        index.update(FOO, parse(FOO, FOO_SOURCE));
+        index.update(BAR, parse(BAR, BAR_SOURCE));
+        assert index.getReferencingFiles("count").equals(setOf(FOO, BAR));
+
+        index.remove(FOO);
+        assert index.get(FOO) == null;
+        assert index.getReferencingFiles("count").equals(Collections.singleton(BAR));
+        assert index.getReferencingFiles("size").isEmpty();
+        assert index.getDeclaringFile("test.Foo") == null;
+        assert BAR.equals(index.getDeclaringFile("test.Bar"));
+
+        // removing a file that is not indexed is a no-op
+        index.remove(FOO);
+
+        index.clear();
+        assert index.get(BAR) == null;
+        assert index.getReferencingFiles("count").isEmpty();
+        assert index.getDeclaringFile("test.Bar") == null;
+    }
+
+    @Test
+    public void testCanReferBySimpleName() throws IOException {
+        ReferenceIndex.FileReferences foo =
+                ReferenceIndex.FileReferences.create(parse(FOO, FOO_SOURCE));
+        assert foo.canReferBySimpleName("java.util.List");
+        assert foo.canReferBySimpleName("test.Bar");
+        assert foo.canReferBySimpleName("test.Foo.Inner");
+        assert !foo.canReferBySimpleName("java.util.Map");
+
+        ReferenceIndex.FileReferences bar =
+                ReferenceIndex.FileReferences.create(parse(BAR, BAR_SOURCE));
+        assert bar.canReferBySimpleName("java.util.Map");
+        assert !bar.canReferBySimpleName("java.io.File");
+    }
+
+    @Test
+    public void testMayReferTo() throws IOException {
+        URI uri = URI.create("file:///other/Other.java");
+        ReferenceIndex.FileReferences qualified = ReferenceIndex.FileReferences.create(
+                parse(uri, "package other;\nclass Other { java.util.Map<String, String> map; }"));
+        assert !qualified.canReferBySimpleName("java.util.Map");
+        assert qualified.mayReferTo("java.util.Map");
+
+        ReferenceIndex.FileReferences outer = ReferenceIndex.FileReferences.create(
+                parse(uri, "package other;\nimport test.Foo;\nclass Other { Foo.Inner inner; }"));
+        assert !outer.canReferBySimpleName("test.Foo.Inner");
+        assert outer.mayReferTo("test.Foo.Inner");
+        assert !outer.mayReferTo("test.Bar.Inner");
+
+        // a class of another package with the same simple name
+        ReferenceIndex.FileReferences unrelated = ReferenceIndex.FileReferences.create(
+                parse(uri, "package other;\nclass Other { Map map; Inner inner; }"));
+        assert !unrelated.mayReferTo("java.util.Map");
+        assert !unrelated.mayReferTo("test.Foo.Inner");
+
+        // the nested class may be inherited, only attributing the file can tell
+        ReferenceIndex.FileReferences inherited = ReferenceIndex.FileReferences.create(
+                parse(uri, "package other;\nclass Other extends Base { Inner inner; }"));
+        assert inherited.mayReferTo("test.Foo.Inner");
+        assert !inherited.mayReferTo("java.util.Map");
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        ReferenceIndex.FileReferences references =
+                ReferenceIndex.FileReferences.create(parse(FOO, FOO_SOURCE));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            references.write(out);
+        }
+        ReferenceIndex.FileReferences read;
+        try (DataInputStream in =
+                     new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = ReferenceIndex.FileReferences.read(in);
+        }
+
+        assert read.getPackageName().equals("test");
+        assert read.getImports().equals(references.getImports());
+        assert read.getDeclaredTypes().equals(references.getDeclaredTypes());
+        assert Arrays.equals(read.getOffsets("size"), references.getOffsets("size"));
+        assert read.getOffsets("missing").length == 0;
+        assert read.mayReferTo("test.Foo.Inner") == references.mayReferTo("test.Foo.Inner");
+
+        ReferenceIndex index = new ReferenceIndex();
+        index.put(FOO, read);
+        assert index.getReferencingFiles("names").equals(Collections.singleton(FOO));
+    }
+
+    private static CompilationUnitTree parse(URI uri, String contents) throws IOException {
+        JavaFileObject file = new SimpleJavaFileObject(uri, JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return contents;
+            }
+        };
+        JavacTask task = JavacTool.create().getTask(null, null, __ -> { }, null, null,
+                Collections.singletonList(file));
+        return task.parse().iterator().next();
+    }
+
+    @SafeVarargs
+    private static <T> Set<T> setOf(T... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
@@ -1,6 +1,7 @@
 package com.tyron.kotlin_completion;
 
 import com.tyron.builder.BuildModule;
+import com.tyron.builder.compiler.symbol.MergeSymbolsTask;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.kotlin_completion.classpath.ClassPathEntry;
 import com.tyron.kotlin_completion.classpath.DefaultClassPathResolver;
@@ -40,6 +41,11 @@ public class CompilerClassPath implements Closeable {
         mJavaSourcePath.addAll(project.getResourceClasses().values().stream().map(File::toPath).collect(Collectors.toList()));
         mClassPath = project.getLibraries().stream().map(file -> new ClassPathEntry(file.toPath(), null)).collect(Collectors.toSet());
         mClassPath.add(new ClassPathEntry(BuildModule.getAndroidJar().toPath(), null));
+        // the R classes of libraries are compiled to R.jar instead of R.java files
+        File rClassJar = MergeSymbolsTask.getRClassJar(project);
+        if (rClassJar.exists()) {
+            mClassPath.add(new ClassPathEntry(rClassJar.toPath(), null));
+        }
 
         compiler = new Compiler(project, mJavaSourcePath, mClassPath.stream().map(ClassPathEntry::getCompiledJar).collect(Collectors.toSet()));
         //compiler.updateConfiguration(mConfiguration);
@@ -3,21 +3,19 @@ package com.tyron.completion.xml;
 import android.content.Context;
 import android.util.AttributeSet;
 import android.view.View;
-import android.view.ViewGroup;
 
 import com.google.common.collect.ImmutableSet;
-import com.tyron.builder.BuildModule;
-import com.tyron.completion.xml.util.PartialClassParser;
 
-import org.apache.bcel.Repository;
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.ClassParser;
 import org.apache.bcel.classfile.JavaClass;
 import org.apache.bcel.classfile.Method;
 import org.apache.bcel.generic.Type;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Set;
@@ -27,8 +25,8 @@ import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 /**
- * Scans jar files and saves all the class files that extends {@link View} and has the
- * appropriate constructors to be inflated in XML.
+ * Scans jar files for the classes that extend {@link View} and have the appropriate
+ * constructors to be inflated in XML, the results are kept by {@link ViewClassIndex}.
  */
 public class BytecodeScanner {
 
@@ -56,115 +54,34 @@ public class BytecodeScanner {
         sIgnoredPaths = builder.build();
     }
 
-    public static void loadJar(File jar) throws IOException {
+    /**
+     * Reads the super class and the constructors of every class of the jar. The classes are
+     * parsed straight from the jar, they are not added to the BCEL repository.
+     */
+    public static List<ViewClassIndex.ClassInfo> scanClasses(File jar) throws IOException {
+        List<ViewClassIndex.ClassInfo> classes = new ArrayList<>();
         try (JarFile jarFile = new JarFile(jar)) {
             iterateClasses(jarFile, element -> {
-                PartialClassParser classParser =
-                        new PartialClassParser(jar.getAbsolutePath(), element.getName());
-                try {
-                    Repository.addClass(classParser.parse());
-                } catch (IOException e) {
-                    // ignored, keep parsing other classes
+                String name = element.getName();
+                int index = name.lastIndexOf('/');
+                String packagePath = index == -1 ? "" : name.substring(0, index);
+                if (sIgnoredPaths.contains(packagePath) || packagePath.startsWith("java/") ||
+                    packagePath.startsWith("META-INF")) {
+                    return;
                 }
-            });
-        }
-    }
-
-    public static List<JavaClass> scan(File file) throws IOException {
-        List<JavaClass> viewClasses = new ArrayList<>();
-        try (JarFile jarFile = new JarFile(file)) {
-            iterateClasses(jarFile, element -> {
-                String fqn = element.getName().replace('/', '.')
-                        .substring(0, element.getName().length() - ".class".length());
-                try {
-                    JavaClass javaClass = Repository.lookupClass(fqn);
-                    if (isViewClass(javaClass)) {
-                        viewClasses.add(javaClass);
-                    }
-                } catch (ClassNotFoundException e) {
-                    // should not happen, the class should already be loaded here.
+                try (InputStream inputStream = jarFile.getInputStream(element)) {
+                    JavaClass javaClass = new ClassParser(inputStream, name).parse();
+                    String superClassName = javaClass.getSuperclassName();
+                    classes.add(new ViewClassIndex.ClassInfo(javaClass.getClassName(),
+                            javaClass.getClassName().equals(superClassName) ? null :
+                                    superClassName,
+                            containsViewConstructors(javaClass.getMethods())));
+                } catch (IOException | ClassFormatException e) {
+                    // ignored, keep parsing other classes
                 }
             });
         }
-        return viewClasses;
-    }
-
-    public static boolean isViewGroup(JavaClass javaClass) {
-        JavaClass[] superClasses = getSuperClasses(javaClass);
-        return Arrays.stream(superClasses)
-                .anyMatch(it -> ViewGroup.class.getName().equals(it.getClassName()));
-    }
-
-    public static void scanBootstrapIfNeeded() {
-        if (!needScanBootstrap()) {
-            return;
-        }
-
-        File androidJar = BuildModule.getAndroidJar();
-        if (androidJar != null && androidJar.exists()) {
-            try (JarFile jarFile = new JarFile(androidJar)) {
-                iterateClasses(jarFile, element -> {
-                    String name = element.getName();
-                    String packagePath = name.substring(0, name.lastIndexOf('/'));
-                    if (sIgnoredPaths.contains(packagePath)) {
-                        return;
-                    }
-                    if (packagePath.startsWith("java/")) {
-                        return;
-                    }
-                    PartialClassParser classParser =
-                            new PartialClassParser(androidJar.getAbsolutePath(), name);
-                    try {
-                        Repository.addClass(classParser.parse());
-                    } catch (IOException e) {
-                        // ignored, keep parsing other classes
-                    }
-
-                });
-            } catch (IOException e) {
-                // ignored
-            }
-        }
-    }
-
-    private static boolean needScanBootstrap() {
-        try {
-            Repository.getRepository().loadClass(View.class);
-            return false;
-        } catch (ClassNotFoundException e) {
-            return true;
-        }
-    }
-
-    private static boolean isViewClass(JavaClass javaClass) {
-        JavaClass[] superClasses = getSuperClasses(javaClass);
-        return Arrays.stream(superClasses)
-                .anyMatch(it -> View.class.getName().equals(it.getClassName()));
-    }
-
-    /**
-     * Get the array of java classes even if the root class does not exist
-     *
-     * @param javaClass The java class
-     * @return array of super classes
-     */
-    public static JavaClass[] getSuperClasses(JavaClass javaClass) {
-        List<JavaClass> superClasses = new ArrayList<>();
-        JavaClass current = javaClass;
-        while (current != null && current.getSuperclassName() != null) {
-            JavaClass lookupClass;
-            try {
-                lookupClass = Repository.lookupClass(current.getSuperclassName());
-            } catch (ClassNotFoundException e) {
-                lookupClass = null;
-            }
-
-            if (lookupClass != null) {
-                superClasses.add(lookupClass);
-            }
-            current = lookupClass;
-        }
-        return superClasses.toArray(new JavaClass[0]);
+        return classes;
     }
 
     private static boolean containsViewConstructors(Method[] methods) {
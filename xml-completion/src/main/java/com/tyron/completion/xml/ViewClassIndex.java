@@ -0,0 +1,224 @@
+package com.tyron.completion.xml;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.common.ApplicationPaths;
+import com.tyron.common.logging.IdeLog;
+import com.tyron.common.util.FileHashCache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the super class of every class in a jar and whether it can be inflated, so the view
+ * classes of a project can be found without reading its jars again.
+ * <p>
+ * The classes of a jar are saved in a file named after the hash of the contents of the jar.
+ * Jars that have not been indexed yet are scanned in parallel, unchanged jars are never read
+ * again, even by other projects using the same library.
+ */
+public class ViewClassIndex {
+
+    private static final Logger LOG = IdeLog.getCurrentLogger(ViewClassIndex.class);
+
+    /**
+     * Bump this whenever the format of the index files or what is scanned changes
+     */
+    private static final int VERSION = 1;
+    private static final int MAGIC = 0x56434958;
+
+    private static ViewClassIndex sInstance;
+
+    public static synchronized ViewClassIndex getInstance() {
+        if (sInstance == null) {
+            File directory = new File(ApplicationPaths.getCacheDir(), "view-classes");
+            sInstance = new ViewClassIndex(directory, FileHashCache.getInstance());
+        }
+        return sInstance;
+    }
+
+    /**
+     * A class of a jar, only what is needed to tell whether it is a view is kept
+     */
+    public static class ClassInfo {
+
+        private final String mName;
+        private final String mSuperClassName;
+        private final boolean mHasInflationConstructor;
+
+        public ClassInfo(@NonNull String name,
+                         @Nullable String superClassName,
+                         boolean hasInflationConstructor) {
+            mName = name;
+            mSuperClassName = superClassName;
+            mHasInflationConstructor = hasInflationConstructor;
+        }
+
+        @NonNull
+        public String getName() {
+            return mName;
+        }
+
+        @Nullable
+        public String getSuperClassName() {
+            return mSuperClassName;
+        }
+
+        public boolean hasInflationConstructor() {
+            return mHasInflationConstructor;
+        }
+    }
+
+    private final File mDirectory;
+    private final FileHashCache mHashCache;
+
+    public ViewClassIndex(@NonNull File directory, @NonNull FileHashCache hashCache) {
+        mDirectory = directory;
+        mHashCache = hashCache;
+    }
+
+    /**
+     * Returns the classes of each of the given jars, in the order of the jars. A jar that
+     * cannot be read has no classes.
+     */
+    @NonNull
+    public Map<File, List<ClassInfo>> getClasses(@NonNull List<File> jars) throws IOException {
+        Map<File, String> hashes = mHashCache.getHashes(jars);
+        mHashCache.save();
+
+        Map<File, List<ClassInfo>> classes = new ConcurrentHashMap<>();
+        List<File> changed = new ArrayList<>();
+        for (File jar : jars) {
+            List<ClassInfo> indexed = read(getIndexFile(hashes.get(jar)));
+            if (indexed != null) {
+                classes.put(jar, indexed);
+            } else {
+                changed.add(jar);
+            }
+        }
+
+        changed.parallelStream().forEach(jar -> {
+            List<ClassInfo> scanned;
+            try {
+                scanned = BytecodeScanner.scanClasses(jar);
+            } catch (IOException e) {
+                LOG.warning("Unable to scan " + jar + ": " + e.getMessage());
+                classes.put(jar, Collections.emptyList());
+                return;
+            }
+            try {
+                write(getIndexFile(hashes.get(jar)), scanned);
+            } catch (IOException e) {
+                LOG.warning("Unable to save the classes of " + jar + ": " + e.getMessage());
+            }
+            classes.put(jar, scanned);
+        });
+
+        Map<File, List<ClassInfo>> ordered = new LinkedHashMap<>();
+        for (File jar : jars) {
+            ordered.put(jar, classes.get(jar));
+        }
+        return ordered;
+    }
+
+    /**
+     * @param classes the classes to look up the super classes from, by name
+     * @return the names of the super classes of the class, starting from the direct super
+     * class and ending at the first one that is not in the given classes
+     */
+    @NonNull
+    public static List<String> getSuperClassNames(@NonNull ClassInfo classInfo,
+                                                  @NonNull Map<String, ClassInfo> classes) {
+        List<String> superClasses = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        visited.add(classInfo.getName());
+        ClassInfo current = classInfo;
+        while (current != null && current.getSuperClassName() != null) {
+            String superClassName = current.getSuperClassName();
+            if (!visited.add(superClassName)) {
+                break;
+            }
+            current = classes.get(superClassName);
+            if (current != null) {
+                superClasses.add(superClassName);
+            }
+        }
+        return superClasses;
+    }
+
+    private File getIndexFile(String hash) {
+        return new File(mDirectory, hash + ".bin");
+    }
+
+    /**
+     * @return the saved classes, or null if the file is missing or cannot be read
+     */
+    @Nullable
+    private static List<ClassInfo> read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            int count = in.readInt();
+            List<ClassInfo> classes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                String superClassName = in.readUTF();
+                classes.add(new ClassInfo(name, superClassName.isEmpty() ? null : superClassName,
+                        in.readBoolean()));
+            }
+            return classes;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void write(File file, List<ClassInfo> classes) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+        // write to a temporary file first so a crash never leaves a truncated file behind
+        File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(classes.size());
+                for (ClassInfo classInfo : classes) {
+                    out.writeUTF(classInfo.getName());
+                    String superClassName = classInfo.getSuperClassName();
+                    out.writeUTF(superClassName == null ? "" : superClassName);
+                    out.writeBoolean(classInfo.hasInflationConstructor());
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+}
@@ -22,17 +22,17 @@ import android.widget.TextView;
 import android.widget.ViewFlipper;
 import android.widget.ViewSwitcher;
 
+import com.tyron.builder.BuildModule;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.completion.index.CompilerService;
 import com.tyron.completion.xml.model.AttributeInfo;
 import com.tyron.completion.xml.model.DeclareStyleable;
 import com.tyron.completion.xml.model.Format;
+import com.tyron.completion.xml.model.ViewClass;
 import com.tyron.completion.xml.util.StyleUtils;
 import com.tyron.xml.completion.repository.ResourceRepository;
 
-import org.apache.bcel.Repository;
-import org.apache.bcel.classfile.JavaClass;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
@@ -42,6 +42,8 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -52,7 +54,7 @@ public class XmlRepository {
     private final Map<String, DeclareStyleable> mDeclareStyleables = new TreeMap<>();
     private final Map<String, DeclareStyleable> mManifestAttrs = new TreeMap<>();
     private final Map<String, AttributeInfo> mExtraAttributes = new TreeMap<>();
-    private final Map<String, JavaClass> mJavaViewClasses = new TreeMap<>();
+    private final Map<String, ViewClass> mJavaViewClasses = new TreeMap<>();
 
     private boolean mInitialized = false;
     private ResourceRepository mRepository;
@@ -71,7 +73,7 @@ public class XmlRepository {
         return mDeclareStyleables;
     }
 
-    public Map<String, JavaClass> getJavaViewClasses() {
+    public Map<String, ViewClass> getJavaViewClasses() {
         return mJavaViewClasses;
     }
 
@@ -84,11 +86,16 @@ public class XmlRepository {
         if (mInitialized) {
             return;
         }
-        BytecodeScanner.scanBootstrapIfNeeded();
-
         mRepository = new ResourceRepository(module);
         mRepository.initialize();
 
+        // android.jar comes first, so the framework classes are the ones found by name
+        Set<File> jars = new LinkedHashSet<>();
+        File androidJar = BuildModule.getAndroidJar();
+        if (androidJar != null && androidJar.exists()) {
+            jars.add(androidJar);
+        }
+        List<File> libraries = new ArrayList<>();
         for (File library : module.getLibraries()) {
             File parent = library.getParentFile();
             if (parent == null) {
@@ -96,66 +103,71 @@ public class XmlRepository {
             }
             File classesFile = new File(parent, "classes.jar");
             if (classesFile.exists()) {
-                try {
-                    BytecodeScanner.loadJar(classesFile);
-                } catch (IOException ignored) {
+                jars.add(classesFile);
+            }
+            if (library.isFile()) {
+                jars.add(library);
+                libraries.add(library);
+            }
+        }
 
-                }
+        Map<File, List<ViewClassIndex.ClassInfo>> jarClasses =
+                ViewClassIndex.getInstance().getClasses(new ArrayList<>(jars));
+        Map<String, ViewClassIndex.ClassInfo> classes = new HashMap<>();
+        for (List<ViewClassIndex.ClassInfo> infos : jarClasses.values()) {
+            for (ViewClassIndex.ClassInfo info : infos) {
+                classes.putIfAbsent(info.getName(), info);
             }
         }
 
-        for (File library : module.getLibraries()) {
-            try {
-                List<JavaClass> scan =
-                        BytecodeScanner.scan(library);
-                for (JavaClass javaClass : scan) {
-                    StyleUtils.putStyles(javaClass);
-                    mJavaViewClasses.put(javaClass.getClassName(), javaClass);
+        for (File library : libraries) {
+            for (ViewClassIndex.ClassInfo info : jarClasses.get(library)) {
+                List<String> superClasses = ViewClassIndex.getSuperClassNames(info, classes);
+                if (!superClasses.contains(View.class.getName())) {
+                    continue;
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
+                ViewClass viewClass = new ViewClass(info.getName(), superClasses,
+                        info.hasInflationConstructor());
+                StyleUtils.putStyles(viewClass);
+                mJavaViewClasses.put(viewClass.getClassName(), viewClass);
             }
         }
 
-        addFrameworkViews();
-
-        Repository.clearCache();
+        addFrameworkViews(classes);
 
         mInitialized = true;
     }
 
-    private void addFrameworkViews() {
-        addFrameworkView(View.class);
-        addFrameworkView(ViewGroup.class);
-        addFrameworkView(FrameLayout.class);
-        addFrameworkView(RelativeLayout.class);
-        addFrameworkView(LinearLayout.class);
-        addFrameworkView(AbsoluteLayout.class);
-        addFrameworkView(ListView.class);
-        addFrameworkView(EditText.class);
-        addFrameworkView(Button.class);
-        addFrameworkView(TextView.class);
-        addFrameworkView(ImageView.class);
-        addFrameworkView(ImageButton.class);
-        addFrameworkView(ImageSwitcher.class);
-        addFrameworkView(ViewFlipper.class);
-        addFrameworkView(ViewSwitcher.class);
-        addFrameworkView(ScrollView.class);
-        addFrameworkView(HorizontalScrollView.class);
-        addFrameworkView(CompoundButton.class);
-        addFrameworkView(ProgressBar.class);
-        addFrameworkView(CheckBox.class);
+    private void addFrameworkViews(Map<String, ViewClassIndex.ClassInfo> classes) {
+        addFrameworkView(View.class, classes);
+        addFrameworkView(ViewGroup.class, classes);
+        addFrameworkView(FrameLayout.class, classes);
+        addFrameworkView(RelativeLayout.class, classes);
+        addFrameworkView(LinearLayout.class, classes);
+        addFrameworkView(AbsoluteLayout.class, classes);
+        addFrameworkView(ListView.class, classes);
+        addFrameworkView(EditText.class, classes);
+        addFrameworkView(Button.class, classes);
+        addFrameworkView(TextView.class, classes);
+        addFrameworkView(ImageView.class, classes);
+        addFrameworkView(ImageButton.class, classes);
+        addFrameworkView(ImageSwitcher.class, classes);
+        addFrameworkView(ViewFlipper.class, classes);
+        addFrameworkView(ViewSwitcher.class, classes);
+        addFrameworkView(ScrollView.class, classes);
+        addFrameworkView(HorizontalScrollView.class, classes);
+        addFrameworkView(CompoundButton.class, classes);
+        addFrameworkView(ProgressBar.class, classes);
+        addFrameworkView(CheckBox.class, classes);
     }
 
-    private void addFrameworkView(Class<? extends View> viewClass) {
-        org.apache.bcel.util.Repository repository = Repository.getRepository();
-        try {
-            JavaClass javaClass = repository.loadClass(viewClass);
-            if (javaClass != null) {
-                mJavaViewClasses.put(javaClass.getClassName(), javaClass);
-            }
-        } catch (ClassNotFoundException e) {
-            // ignored
+    private void addFrameworkView(Class<? extends View> viewClass,
+                                  Map<String, ViewClassIndex.ClassInfo> classes) {
+        ViewClassIndex.ClassInfo info = classes.get(viewClass.getName());
+        if (info != null) {
+            mJavaViewClasses.put(info.getName(), new ViewClass(info.getName(),
+                    ViewClassIndex.getSuperClassNames(info, classes),
+                    info.hasInflationConstructor()));
         }
     }
 
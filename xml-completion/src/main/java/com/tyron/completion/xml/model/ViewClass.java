@@ -0,0 +1,64 @@
+package com.tyron.completion.xml.model;
+
+import androidx.annotation.NonNull;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * A class that extends {@link android.view.View} and may be used as a tag in a layout
+ */
+public class ViewClass {
+
+    private static final String VIEW_GROUP = "android.view.ViewGroup";
+
+    private final String mClassName;
+    private final ImmutableList<String> mSuperClassNames;
+    private final boolean mHasInflationConstructor;
+
+    public ViewClass(@NonNull String className,
+                     @NonNull List<String> superClassNames,
+                     boolean hasInflationConstructor) {
+        mClassName = className;
+        mSuperClassNames = ImmutableList.copyOf(superClassNames);
+        mHasInflationConstructor = hasInflationConstructor;
+    }
+
+    @NonNull
+    public String getClassName() {
+        return mClassName;
+    }
+
+    @NonNull
+    public String getPackageName() {
+        int index = mClassName.lastIndexOf('.');
+        return index == -1 ? "" : mClassName.substring(0, index);
+    }
+
+    /**
+     * @return the names of the super classes, starting from the direct super class
+     */
+    @NonNull
+    public ImmutableList<String> getSuperClassNames() {
+        return mSuperClassNames;
+    }
+
+    public boolean isViewGroup() {
+        return mSuperClassNames.contains(VIEW_GROUP);
+    }
+
+    /**
+     * @return whether the class has a {@code (Context, AttributeSet)} constructor, which is
+     * needed to inflate it from XML
+     */
+    public boolean hasInflationConstructor() {
+        return mHasInflationConstructor;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return mClassName;
+    }
+}
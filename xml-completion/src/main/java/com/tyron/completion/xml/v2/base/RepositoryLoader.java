@@ -124,6 +124,11 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
   @NotNull private final ListMultimap<String, BasicAttrResourceItem> myAttrs = ArrayListMultimap.create();
   @NotNull private final ListMultimap<String, BasicAttrResourceItem> myAttrCandidates = ArrayListMultimap.create();
   @NotNull private final ListMultimap<String, BasicStyleableResourceItem> myStyleables = ArrayListMultimap.create();
+  /**
+   * Attr and styleable resources in the order they were parsed, when they are processed by another loader.
+   * See {@link #deferAttrsAndStyleables()}.
+   */
+  @Nullable private List<DeferredResource> myDeferredResources;
   @NotNull protected ResourceVisibility myDefaultVisibility = ResourceVisibility.PRIVATE;
   /** Cache of FolderConfiguration instances, keyed by qualifier strings (see {@link FolderConfiguration#getQualifierString()}). */
   @NotNull protected final Map<String, FolderConfiguration> myFolderConfigCache = new HashMap<>();
@@ -246,6 +251,35 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
     processAttrsAndStyleables();
   }
 
+  /**
+   * Makes this loader keep the attr and styleable resources it parses instead of merging them, for loaders that parse
+   * a part of the resource files on another thread. Definitions of the same attr in different files are merged with each
+   * other, so they are merged by the loader of the whole repository in {@link #addDeferredAttrsAndStyleables} in the order
+   * the files were parsed.
+   */
+  protected final void deferAttrsAndStyleables() {
+    myDeferredResources = new ArrayList<>();
+  }
+
+  /**
+   * Adds the attr and styleable resources kept by the given loader as if they were parsed by this one.
+   */
+  protected final void addDeferredAttrsAndStyleables(@NotNull RepositoryLoader<T> loader) {
+    List<DeferredResource> resources = loader.myDeferredResources;
+    if (resources == null) {
+      return;
+    }
+    for (DeferredResource resource : resources) {
+      if (resource.isCandidate) {
+        addAttrCandidate((BasicAttrResourceItem)resource.item);
+      }
+      else {
+        addValueResourceItem(resource.item);
+      }
+    }
+    resources.clear();
+  }
+
   @NotNull
   public final String getSourceFileProtocol() {
     if (myLoadingFromZipArchive) {
@@ -538,7 +572,10 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
     ResourceType resourceType = item.getType();
     // Add attr and styleable resources to intermediate maps to post-process them in the processAttrsAndStyleables
     // method after all resources are loaded.
-    if (resourceType == ResourceType.ATTR) {
+    if (myDeferredResources != null && (resourceType == ResourceType.ATTR || resourceType == ResourceType.STYLEABLE)) {
+      myDeferredResources.add(new DeferredResource(item, false));
+    }
+    else if (resourceType == ResourceType.ATTR) {
       addAttr((BasicAttrResourceItem)item, myAttrs);
     }
     else if (resourceType == ResourceType.STYLEABLE) {
@@ -877,7 +914,7 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
           // The second condition is determined by the fact that the attr in the res-auto namespace may have an explicit definition
           // outside of this resource repository.
           if (attr.getNamespace().equals(myNamespace) && (myNamespace != ResourceNamespace.RES_AUTO || !attr.getFormats().isEmpty())) {
-            addAttr(attr, myAttrCandidates);
+            addAttrCandidate(attr);
           }
         }
         catch (XmlSyntaxException e) {
@@ -892,6 +929,15 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
     return item;
   }
 
+  private void addAttrCandidate(@NotNull BasicAttrResourceItem attr) {
+    if (myDeferredResources != null) {
+      myDeferredResources.add(new DeferredResource(attr, true));
+    }
+    else {
+      addAttr(attr, myAttrCandidates);
+    }
+  }
+
   private static void addAttr(@NotNull BasicAttrResourceItem attr, @NotNull ListMultimap<String, BasicAttrResourceItem> map) {
     List<BasicAttrResourceItem> attrs = map.get(attr.getName());
     int i = findResourceWithSameNameAndConfiguration(attr, attrs);
@@ -1147,6 +1193,17 @@ public abstract class RepositoryLoader<T extends LoadableResourceRepository> imp
     return fileName.replace(File.separatorChar, '/');
   }
 
+  private static class DeferredResource {
+    @NotNull final BasicValueResourceItemBase item;
+    /** Whether the item is an attr defined inside a styleable, see {@link #myAttrCandidates}. */
+    final boolean isCandidate;
+
+    DeferredResource(@NotNull BasicValueResourceItemBase item, boolean isCandidate) {
+      this.item = item;
+      this.isCandidate = isCandidate;
+    }
+  }
+
   private interface XmlTagVisitor {
     /** Is called when the parser is positioned at a {@link XmlPullParser#START_TAG}. */
     void visitTag() throws IOException, XmlPullParserException;
@@ -251,7 +251,6 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
    * Package accessible version of {@link #getMap(ResourceNamespace, ResourceType)}.
    * Do not call outside of {@link MultiResourceRepository}.
    */
-  @GuardedBy("ITEM_MAP_LOCK")
   @Nullable
   ListMultimap<String, ResourceItem> getMapPackageAccessible(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
     return getMap(namespace, type);
@@ -280,7 +279,6 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
       return Collections.emptySet();
     }
 
-    @GuardedBy("ITEM_MAP_LOCK")
     @Override
     @Nullable
     protected ListMultimap<String, ResourceItem> getMap(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
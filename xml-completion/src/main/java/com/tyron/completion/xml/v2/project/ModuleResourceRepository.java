@@ -9,18 +9,24 @@ import com.android.resources.ResourceType;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ListMultimap;
+import com.google.common.hash.Hashing;
 import com.tyron.builder.project.api.AndroidContentRoot;
 import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.common.ApplicationPaths;
+import com.tyron.completion.xml.v2.aar.CachingDataKt;
 import com.tyron.completion.xml.v2.aar.FrameworkResourceRepository;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 public class ModuleResourceRepository extends MultiResourceRepository implements SingleNamespaceResourceRepository {
@@ -91,11 +97,26 @@ public class ModuleResourceRepository extends MultiResourceRepository implements
                     facet,
                     resourceDirectory,
                     ResourceRepositoryManager.getInstance(facet).getNamespace(),
-                    null);
+                    createCachingData(facet, resourceDirectory));
             childRepositories.add(resourceFolderRepository);
         }
     }
 
+    @NotNull
+    private static ResourceFolderRepositoryCachingData createCachingData(@NotNull AndroidModule facet,
+                                                                         @NotNull File resourceDirectory) {
+        String pathHash = Hashing.farmHashFingerprint64()
+                .hashUnencodedChars(resourceDirectory.getAbsolutePath())
+                .toString();
+        String moduleName = facet.getName().replaceAll("[^A-Za-z0-9_-]", "_");
+        String fileName = String.format("%s_%s.dat", moduleName, pathHash);
+        Path cacheFile = Paths.get(ApplicationPaths.getCacheDir().getAbsolutePath(),
+                CachingDataKt.RESOURCE_CACHE_DIRECTORY, "project", fileName);
+        // the cache is written in the background once the repository has been loaded
+        return new ResourceFolderRepositoryCachingData(cacheFile, false, "7.4",
+                ForkJoinPool.commonPool());
+    }
+
     private ModuleResourceRepository(@NotNull AndroidModule facet,
                                      @NotNull ResourceNamespace namespace,
                                      @NotNull List<? extends LocalResourceRepository> delegates,
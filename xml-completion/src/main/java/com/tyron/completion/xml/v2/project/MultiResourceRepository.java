@@ -5,7 +5,6 @@ import androidx.annotation.GuardedBy;
 import com.android.ide.common.rendering.api.ResourceNamespace;
 import com.android.ide.common.resources.ResourceItem;
 import com.android.ide.common.resources.ResourceRepository;
-import com.android.ide.common.resources.ResourceTable;
 import com.android.ide.common.resources.ResourceVisitor;
 import com.android.ide.common.resources.SingleNamespaceResourceRepository;
 import com.android.ide.common.resources.configuration.FolderConfiguration;
@@ -15,13 +14,9 @@ import com.google.common.base.Stopwatch;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multiset;
-import com.google.common.collect.Table;
-import com.google.common.collect.Tables;
 import com.tyron.completion.xml.v2.aar.AarResourceRepository;
 
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
@@ -40,8 +35,11 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Predicate;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -64,41 +62,29 @@ import org.jetbrains.kotlin.com.intellij.util.SmartList;
 public abstract class MultiResourceRepository extends LocalResourceRepository implements Disposable {
   private static final Logger LOG = Logger.getInstance(MultiResourceRepository.class);
 
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableList<LocalResourceRepository> myLocalResources = ImmutableList.of();
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableList<AarResourceRepository> myLibraryResources = ImmutableList.of();
+  // The children are replaced while holding ITEM_MAP_LOCK and read without it.
+  @NotNull private volatile ImmutableList<LocalResourceRepository> myLocalResources = ImmutableList.of();
+  @NotNull private volatile ImmutableList<AarResourceRepository> myLibraryResources = ImmutableList.of();
   /** A concatenation of {@link #myLocalResources} and {@link #myLibraryResources}. */
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableList<ResourceRepository> myChildren = ImmutableList.of();
+  @NotNull private volatile ImmutableList<ResourceRepository> myChildren = ImmutableList.of();
   /** Leaf resource repositories keyed by namespace. */
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableListMultimap<ResourceNamespace, SingleNamespaceResourceRepository> myLeafsByNamespace =
+  @NotNull private volatile ImmutableListMultimap<ResourceNamespace, SingleNamespaceResourceRepository> myLeafsByNamespace =
       ImmutableListMultimap.of();
   /** Contained single-namespace resource repositories keyed by namespace. */
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ImmutableListMultimap<ResourceNamespace, SingleNamespaceResourceRepository> myRepositoriesByNamespace =
+  @NotNull private volatile ImmutableListMultimap<ResourceNamespace, SingleNamespaceResourceRepository> myRepositoriesByNamespace =
       ImmutableListMultimap.of();
 
-  @GuardedBy("ITEM_MAP_LOCK")
-  @NotNull private ResourceItemComparator myResourceComparator =
+  @NotNull private volatile ResourceItemComparator myResourceComparator =
       new ResourceItemComparator(new ResourcePriorityComparator(ImmutableList.of()));
 
   @GuardedBy("ITEM_MAP_LOCK")
   private long[] myModificationCounts;
 
-  @GuardedBy("ITEM_MAP_LOCK")
-  private final ResourceTable myCachedMaps = new ResourceTable();
-
-  /** Names of resources from local leaf repositories. */
-  @GuardedBy("ITEM_MAP_LOCK")
-  private final Table<SingleNamespaceResourceRepository, ResourceType, Set<String>> myResourceNames =
-      Tables.newCustomTable(new HashMap<>(), () -> Maps.newEnumMap(ResourceType.class));
-
-  /** Describes groups of resources that are out of date in {@link #myCachedMaps}. */
-  @GuardedBy("ITEM_MAP_LOCK")
-  private final Table<ResourceNamespace, ResourceType, Set<SingleNamespaceResourceRepository>> myUnreconciledResources =
-      Tables.newCustomTable(new HashMap<>(), () -> Maps.newEnumMap(ResourceType.class));
+  /**
+   * Merged maps keyed by namespace and indexed by the ordinal of the resource type. A merged map
+   * is used as long as the leaf repositories return the same maps it was merged from.
+   */
+  private final ConcurrentMap<ResourceNamespace, AtomicReferenceArray<MergedMap>> myCachedMaps = new ConcurrentHashMap<>();
 
   MultiResourceRepository(@NotNull String displayName) {
     super(displayName);
@@ -182,22 +168,16 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   }
 
   public ImmutableList<LocalResourceRepository> getLocalResources() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myLocalResources;
-    }
+    return myLocalResources;
   }
 
   public ImmutableList<AarResourceRepository> getLibraryResources() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myLibraryResources;
-    }
+    return myLibraryResources;
   }
 
   @NotNull
   public final List<ResourceRepository> getChildren() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myChildren;
-    }
+    return myChildren;
   }
 
   /**
@@ -210,9 +190,7 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
    */
   @NotNull
   public final List<SingleNamespaceResourceRepository> getRepositoriesForNamespace(@NotNull ResourceNamespace namespace) {
-    synchronized (ITEM_MAP_LOCK) {
-      return myRepositoriesByNamespace.get(namespace);
-    }
+    return myRepositoriesByNamespace.get(namespace);
   }
 
   @Override
@@ -244,25 +222,21 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   @Override
   @NotNull
   public Set<ResourceNamespace> getNamespaces() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myRepositoriesByNamespace.keySet();
-    }
+    return myRepositoriesByNamespace.keySet();
   }
 
   @Override
   @NotNull
   public ResourceVisitor.VisitResult accept(@NotNull ResourceVisitor visitor) {
-    synchronized (ITEM_MAP_LOCK) {
-      for (ResourceNamespace namespace : getNamespaces()) {
-        if (visitor.shouldVisitNamespace(namespace)) {
-          for (ResourceType type : ResourceType.values()) {
-            if (visitor.shouldVisitResourceType(type)) {
-              ListMultimap<String, ResourceItem> map = getMap(namespace, type);
-              if (map != null) {
-                for (ResourceItem item : map.values()) {
-                  if (visitor.visit(item) == ResourceVisitor.VisitResult.ABORT) {
-                    return ResourceVisitor.VisitResult.ABORT;
-                  }
+    for (ResourceNamespace namespace : getNamespaces()) {
+      if (visitor.shouldVisitNamespace(namespace)) {
+        for (ResourceType type : ResourceType.values()) {
+          if (visitor.shouldVisitResourceType(type)) {
+            ListMultimap<String, ResourceItem> map = getMap(namespace, type);
+            if (map != null) {
+              for (ResourceItem item : map.values()) {
+                if (visitor.visit(item) == ResourceVisitor.VisitResult.ABORT) {
+                  return ResourceVisitor.VisitResult.ABORT;
                 }
               }
             }
@@ -274,101 +248,65 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
     return ResourceVisitor.VisitResult.CONTINUE;
   }
 
-  @GuardedBy("ITEM_MAP_LOCK")
   @Override
   @Nullable
   protected ListMultimap<String, ResourceItem> getMap(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
     ImmutableList<SingleNamespaceResourceRepository> repositoriesForNamespace = myLeafsByNamespace.get(namespace);
+    ResourceItemComparator comparator = myResourceComparator;
     if (repositoriesForNamespace.size() == 1) {
       SingleNamespaceResourceRepository repository = repositoriesForNamespace.get(0);
-      return getResourcesUnderLock(repository, namespace, type);
+      return getLeafResources(repository, namespace, type);
     }
 
-    ListMultimap<String, ResourceItem> map = myCachedMaps.get(namespace, type);
-    Set<SingleNamespaceResourceRepository> unreconciledRepositories = null;
-    if (map != null) {
-      unreconciledRepositories = myUnreconciledResources.get(namespace, type);
-      if (unreconciledRepositories == null) {
-        return map;
-      }
+    List<ListMultimap<String, ResourceItem>> sources = new ArrayList<>(repositoriesForNamespace.size());
+    for (SingleNamespaceResourceRepository repository : repositoriesForNamespace) {
+      sources.add(getLeafResources(repository, namespace, type));
+    }
+    AtomicReferenceArray<MergedMap> cachedMaps =
+        myCachedMaps.computeIfAbsent(namespace, k -> new AtomicReferenceArray<>(ResourceType.values().length));
+    MergedMap cached = cachedMaps.get(type.ordinal());
+    if (cached != null && cached.isMergedFrom(sources)) {
+      return cached.myMap;
     }
 
     // Merge all items of the given type.
     Stopwatch stopwatch = LOG.isDebugEnabled() ? Stopwatch.createStarted() : null;
 
-    if (map == null) {
-      for (SingleNamespaceResourceRepository repository : repositoriesForNamespace) {
-        ListMultimap<String, ResourceItem> items = getResourcesUnderLock(repository, namespace, type);
-        if (!items.isEmpty()) {
-          if (map == null) {
-            // Create a new map.
-            // We only add a duplicate item if there isn't an item with the same qualifiers, and it
-            // is not a styleable or an id. Styleables and ids are allowed to be defined in multiple
-            // places even with the same qualifiers.
-            map = type == ResourceType.STYLEABLE || type == ResourceType.ID ?
-                  ArrayListMultimap.create() : new PerConfigResourceMap(myResourceComparator);
-            myCachedMaps.put(namespace, type, map);
-          }
-          map.putAll(items);
-
-          if (repository instanceof LocalResourceRepository) {
-            myResourceNames.put(repository, type, ImmutableSet.copyOf(items.keySet()));
-          }
-        }
-      }
-    }
-    else {
-      // Update a partially out of date map.
-      for (SingleNamespaceResourceRepository unreconciledRepository : unreconciledRepositories) {
-        // Delete all resources that belonged to unreconciledRepository.
-        Predicate<ResourceItem> filter = item -> item.getRepository().equals(unreconciledRepository);
-        Set<String> names = myResourceNames.get(unreconciledRepository, type);
-        if (names != null) {
-          PerConfigResourceMap perConfigMap = map instanceof PerConfigResourceMap ? (PerConfigResourceMap)map : null;
-          for (String name : names) {
-            if (perConfigMap != null) {
-              perConfigMap.removeIf(name, filter);
-            }
-            else {
-              List<ResourceItem> items = map.get(name);
-              items.removeIf(filter);
-              if (items.isEmpty()) {
-                map.removeAll(name);
-              }
-            }
-          }
-        }
-        // Add all resources from unreconciledRepository.
-        ListMultimap<String, ResourceItem> unreconciledResources = getResourcesUnderLock(unreconciledRepository, namespace, type);
-        map.putAll(unreconciledResources);
-
-        assert unreconciledRepository instanceof LocalResourceRepository;
-        myResourceNames.put(unreconciledRepository, type, ImmutableSet.copyOf(unreconciledResources.keySet()));
-        if (map.isEmpty()) {
-          myCachedMaps.remove(namespace, type);
+    ListMultimap<String, ResourceItem> map = null;
+    for (ListMultimap<String, ResourceItem> items : sources) {
+      if (!items.isEmpty()) {
+        if (map == null) {
+          // Create a new map.
+          // We only add a duplicate item if there isn't an item with the same qualifiers, and it
+          // is not a styleable or an id. Styleables and ids are allowed to be defined in multiple
+          // places even with the same qualifiers.
+          map = type == ResourceType.STYLEABLE || type == ResourceType.ID ?
+                ArrayListMultimap.create() : new PerConfigResourceMap(comparator);
         }
+        map.putAll(items);
       }
-
-      myUnreconciledResources.remove(namespace, type);
     }
+    ListMultimap<String, ResourceItem> merged = map == null ? null : ImmutableListMultimap.copyOf(map);
+    // A concurrent reader may have merged newer maps in the meantime. Whichever entry is set last
+    // stays, if it is the older one it no longer matches the leafs and is merged again.
+    cachedMaps.set(type.ordinal(), new MergedMap(sources, merged));
 
     if (stopwatch != null) {
       LOG.debug(String.format(Locale.US,
                               "Merged %d resources of type %s in %s for %s.",
-                              map == null ? 0 : map.size(),
+                              merged == null ? 0 : merged.size(),
                               type,
                               stopwatch,
                               getClass().getSimpleName()));
     }
 
-    return map;
+    return merged;
   }
 
-  @GuardedBy("ITEM_MAP_LOCK")
   @NotNull
-  private static ListMultimap<String, ResourceItem> getResourcesUnderLock(@NotNull SingleNamespaceResourceRepository repository,
-                                                                          @NotNull ResourceNamespace namespace,
-                                                                          @NotNull ResourceType type) {
+  private static ListMultimap<String, ResourceItem> getLeafResources(@NotNull SingleNamespaceResourceRepository repository,
+                                                                     @NotNull ResourceNamespace namespace,
+                                                                     @NotNull ResourceType type) {
     ListMultimap<String, ResourceItem> map;
     if (repository instanceof LocalResourceRepository) {
       map = ((LocalResourceRepository)repository).getMapPackageAccessible(namespace, type);
@@ -397,17 +335,12 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
     invalidateParentCaches();
   }
 
-  @GuardedBy("ITEM_MAP_LOCK")
   private void clearCachedData() {
     myCachedMaps.clear();
-    myResourceNames.clear();
-    myUnreconciledResources.clear();
   }
 
   private void onLowMemory() {
-    synchronized (ITEM_MAP_LOCK) {
-      clearCachedData();
-    }
+    clearCachedData();
     LOG.warn(getDisplayName() + ": Cached data cleared due to low memory");
   }
 
@@ -422,21 +355,11 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
     // Since myLeafsByNamespace updates are not atomic with respect to grandchildren updates, it is
     // possible that the repository that triggered cache invalidation is not in myLeafsByNamespace.
     // In such a case we don't need to do anything.
+    // The merged maps of the namespace no longer match the maps of the repository, they are merged
+    // again when they are read.
     ImmutableList<SingleNamespaceResourceRepository> leafs = myLeafsByNamespace.get(namespace);
     if (leafs.contains(repository)) {
-      // Update myUnreconciledResources only if myCachedMaps is used for this namespace.
       if (leafs.size() != 1) {
-        for (ResourceType type : types) {
-          if (myCachedMaps.get(namespace, type) != null) {
-            Set<SingleNamespaceResourceRepository> repositories = myUnreconciledResources.get(namespace, type);
-            if (repositories == null) {
-              repositories = new HashSet<>();
-              myUnreconciledResources.put(namespace, type, repositories);
-            }
-            repositories.add(repository);
-          }
-        }
-
         setModificationCount(ourModificationCounter.incrementAndGet());
       }
 
@@ -460,32 +383,55 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
   @Override
   @NotNull
   protected Set<File> computeResourceDirs() {
-    synchronized (ITEM_MAP_LOCK) {
-      Set<File> result = new HashSet<>();
-      for (LocalResourceRepository resourceRepository : myLocalResources) {
-        result.addAll(resourceRepository.computeResourceDirs());
-      }
-      return result;
+    Set<File> result = new HashSet<>();
+    for (LocalResourceRepository resourceRepository : myLocalResources) {
+      result.addAll(resourceRepository.computeResourceDirs());
     }
+    return result;
   }
 
   @Override
   @NotNull
   public Collection<SingleNamespaceResourceRepository> getLeafResourceRepositories() {
-    synchronized (ITEM_MAP_LOCK) {
-      return myLeafsByNamespace.values();
-    }
+    return myLeafsByNamespace.values();
   }
 
   @VisibleForTesting
   @Override
   public int getFileRescans() {
-    synchronized (ITEM_MAP_LOCK) {
-      int count = 0;
-      for (LocalResourceRepository resourceRepository : myLocalResources) {
-        count += resourceRepository.getFileRescans();
+    int count = 0;
+    for (LocalResourceRepository resourceRepository : myLocalResources) {
+      count += resourceRepository.getFileRescans();
+    }
+    return count;
+  }
+
+  /**
+   * A merged map of one resource type and the maps of the leaf repositories it was merged from.
+   */
+  private static final class MergedMap {
+    @NotNull private final List<ListMultimap<String, ResourceItem>> mySources;
+    @Nullable private final ListMultimap<String, ResourceItem> myMap;
+
+    MergedMap(@NotNull List<ListMultimap<String, ResourceItem>> sources, @Nullable ListMultimap<String, ResourceItem> map) {
+      mySources = sources;
+      myMap = map;
+    }
+
+    /**
+     * Returns true if the leaf repositories still return the maps this map was merged from. Their
+     * maps never change once returned, a change of a leaf repository always returns a new map.
+     */
+    boolean isMergedFrom(@NotNull List<ListMultimap<String, ResourceItem>> sources) {
+      if (sources.size() != mySources.size()) {
+        return false;
       }
-      return count;
+      for (int i = 0; i < sources.size(); i++) {
+        if (sources.get(i) != mySources.get(i)) {
+          return false;
+        }
+      }
+      return true;
     }
   }
 
@@ -576,21 +522,6 @@ public abstract class MultiResourceRepository extends LocalResourceRepository im
       return removed == null ? ImmutableList.of() : removed;
     }
 
-    @SuppressWarnings("UnusedReturnValue")
-    boolean removeIf(@NotNull String key, @NotNull Predicate<? super ResourceItem> filter) {
-      List<ResourceItem> list = myMap.get(key);
-      if (list == null) {
-        return false;
-      }
-      int oldSize = list.size();
-      boolean removed = list.removeIf(filter);
-      mySize += list.size() - oldSize;
-      if (list.isEmpty()) {
-        myMap.remove(key);
-      }
-      return removed;
-    }
-
     @Override
     public void clear() {
       myMap.clear();
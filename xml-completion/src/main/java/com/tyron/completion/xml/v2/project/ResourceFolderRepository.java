@@ -14,6 +14,7 @@ import static com.tyron.completion.xml.v2.project.ResourceUpdateTracer.pathForLo
 import static org.jetbrains.kotlin.com.intellij.openapi.util.io.FileUtil.isAncestor;
 
 import androidx.annotation.GuardedBy;
+import androidx.annotation.VisibleForTesting;
 
 import com.android.ide.common.rendering.api.DensityBasedResourceValue;
 import com.android.ide.common.rendering.api.ResourceNamespace;
@@ -28,9 +29,14 @@ import com.android.resources.FolderTypeRelationship;
 import com.android.resources.ResourceFolderType;
 import com.android.resources.ResourceType;
 import com.android.resources.ResourceVisibility;
+import com.android.utils.Base128InputStream;
+import com.android.utils.Base128OutputStream;
 import com.android.utils.SdkUtils;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.completion.progress.ProcessCanceledException;
 import com.tyron.completion.progress.ProgressManager;
@@ -40,6 +46,7 @@ import com.tyron.completion.xml.v2.base.BasicValueResourceItemBase;
 import com.tyron.completion.xml.v2.base.LoadableResourceRepository;
 import com.tyron.completion.xml.v2.base.RepositoryConfiguration;
 import com.tyron.completion.xml.v2.base.RepositoryLoader;
+import com.tyron.completion.xml.v2.base.ResourceSerializationUtil;
 import com.tyron.completion.xml.v2.base.ResourceSourceFile;
 import com.tyron.completion.xml.v2.events.XmlReparsedEvent;
 import com.tyron.completion.xml.v2.events.XmlResourceChangeEvent;
@@ -60,21 +67,30 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import javax.lang.model.SourceVersion;
 
@@ -83,13 +99,33 @@ import kotlin.io.FilesKt;
 
 public final class ResourceFolderRepository extends LocalResourceRepository implements LoadableResourceRepository {
 
+    /**
+     * Increment when making changes that may affect content of repository cache files.
+     * Used together with {@link ResourceFolderRepositoryCachingData#getCodeVersion()}.
+     */
+    static final String CACHE_FILE_FORMAT_VERSION = "1";
+    private static final Logger LOG = Logger.getInstance(ResourceFolderRepository.class);
+    private static final byte[] CACHE_FILE_HEADER =
+            "Resource folder cache".getBytes(StandardCharsets.UTF_8);
+
     @NotNull
     private final ConcurrentMap<File, ResourceItemSource<?>> mySources = new ConcurrentHashMap<>();
+    /**
+     * The resources of the repository, changed in place while holding the lock. Readers never
+     * see this table, they read {@link #myResourceSnapshot}.
+     */
     @SuppressWarnings("InstanceGuardedByStatic")
     @GuardedBy("ITEM_MAP_LOCK")
     @NotNull
     private final Map<ResourceType, ListMultimap<String, ResourceItem>> myResourceTable =
             new EnumMap<>(ResourceType.class);
+    /**
+     * Immutable copy of {@link #myResourceTable}, read without holding the lock. Every change of
+     * the table publishes a new copy that shares the maps of the types that did not change.
+     */
+    @NotNull
+    private volatile ImmutableMap<ResourceType, ListMultimap<String, ResourceItem>>
+            myResourceSnapshot = ImmutableMap.of();
     private static final Comparator<ResourceItemSource<?>> SOURCE_COMPARATOR =
             Comparator.comparing(ResourceItemSource::getFolderConfiguration);
 
@@ -119,13 +155,27 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                                            @NotNull File dir,
                                            @NotNull ResourceNamespace namespace,
                                            @Nullable ResourceFolderRepositoryCachingData cachingData) {
-        return new ResourceFolderRepository(facet, dir, namespace, cachingData);
+        return new ResourceFolderRepository(facet, dir, namespace, cachingData, true);
+    }
+
+    /**
+     * @param parallelScan whether the files of the resource directory are parsed in parallel
+     *                     when the repository is created
+     */
+    @VisibleForTesting
+    static ResourceFolderRepository create(@NotNull AndroidModule facet,
+                                           @NotNull File dir,
+                                           @NotNull ResourceNamespace namespace,
+                                           @Nullable ResourceFolderRepositoryCachingData cachingData,
+                                           boolean parallelScan) {
+        return new ResourceFolderRepository(facet, dir, namespace, cachingData, parallelScan);
     }
 
     private ResourceFolderRepository(@NotNull AndroidModule facet,
                                      @NotNull File resourceDir,
                                      @NotNull ResourceNamespace namespace,
-                                     @Nullable ResourceFolderRepositoryCachingData cachingData) {
+                                     @Nullable ResourceFolderRepositoryCachingData cachingData,
+                                     boolean parallelScan) {
         super(facet.getName());
         myFacet = facet;
         myResourceDir = resourceDir;
@@ -133,9 +183,16 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         myResourcePathPrefix = RepositoryLoader.portableFileName(myResourceDir.getPath()) + '/';
         myResourcePathBase = new PathString(myResourcePathPrefix);
 
-        Loader loader = new Loader(this, cachingData);
+        Loader loader = new Loader(this, cachingData, parallelScan);
         loader.load();
 
+        if (cachingData != null && loader.isCacheStale()) {
+            Executor executor = cachingData.getCacheCreationExecutor();
+            if (executor != null) {
+                executor.execute(() -> createCacheFile(cachingData));
+            }
+        }
+
         facet.getProject()
                 .getEventManager()
                 .subscribeEvent(XmlResourceChangeEvent.class, (event, unsubscribe) -> {
@@ -176,6 +233,98 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
             ListMultimap<String, ResourceItem> map = getOrCreateMap(entry.getKey());
             map.putAll(entry.getValue());
         }
+        publishSnapshot(itemsByType.keySet());
+    }
+
+    /**
+     * Replaces the maps of the given types in {@link #myResourceSnapshot} with copies of their
+     * current contents. Safe to call only while holding {@link #ITEM_MAP_LOCK} or during
+     * construction of ResourceFolderRepository.
+     */
+    @SuppressWarnings("GuardedBy")
+    private void publishSnapshot(@NotNull Collection<ResourceType> types) {
+        Map<ResourceType, ListMultimap<String, ResourceItem>> snapshot =
+                new EnumMap<>(ResourceType.class);
+        snapshot.putAll(myResourceSnapshot);
+        for (ResourceType type : types) {
+            ListMultimap<String, ResourceItem> map = myResourceTable.get(type);
+            if (map == null || map.isEmpty()) {
+                snapshot.remove(type);
+            } else {
+                snapshot.put(type, ImmutableListMultimap.copyOf(map));
+            }
+        }
+        myResourceSnapshot = Maps.immutableEnumMap(snapshot);
+    }
+
+    /**
+     * Writes a snapshot of the resources to the cache file, it is loaded the next time the
+     * repository is created. Only the files whose time stamp and size have changed since then
+     * are parsed again.
+     */
+    private void createCacheFile(@NotNull ResourceFolderRepositoryCachingData cachingData) {
+        try {
+            Files.createDirectories(cachingData.getCacheFile().getParent());
+        } catch (IOException e) {
+            LOG.warn("Unable to create cache file " + cachingData.getCacheFile(), e);
+            return;
+        }
+        byte[] header = ResourceSerializationUtil.getCacheFileHeader(
+                stream -> writeCacheHeaderContent(cachingData, stream));
+        ResourceSerializationUtil.createPersistentCache(cachingData.getCacheFile(), header,
+                this::writeToStream);
+    }
+
+    private void writeCacheHeaderContent(@NotNull ResourceFolderRepositoryCachingData cachingData,
+                                         @NotNull Base128OutputStream stream) throws IOException {
+        stream.write(CACHE_FILE_HEADER);
+        stream.writeString(CACHE_FILE_FORMAT_VERSION);
+        stream.writeString(myResourceDir.getPath());
+        stream.writeString(cachingData.getCodeVersion());
+    }
+
+    /**
+     * Writes the resources loaded from the files on disk to the given stream. Resources of files
+     * that have been edited and non-XML file resources are left out, they are created again
+     * when the repository is loaded.
+     */
+    private void writeToStream(@NotNull Base128OutputStream stream) throws IOException {
+        Map<ResourceType, ListMultimap<String, ResourceItem>> resources =
+                new EnumMap<>(ResourceType.class);
+        for (Map.Entry<ResourceType, ListMultimap<String, ResourceItem>> entry :
+                myResourceSnapshot.entrySet()) {
+            ListMultimap<String, ResourceItem> items = LinkedListMultimap.create();
+            for (ResourceItem item : entry.getValue().values()) {
+                if (item instanceof BasicValueResourceItemBase ||
+                    item instanceof VfsFileResourceItem) {
+                    items.put(item.getName(), item);
+                }
+            }
+            if (!items.isEmpty()) {
+                resources.put(entry.getKey(), items);
+            }
+        }
+        ResourceSerializationUtil.writeResourcesToStream(resources, stream, config -> true);
+    }
+
+    @Override
+    @NotNull
+    public ResourceSourceFile deserializeResourceSourceFile(@NotNull Base128InputStream stream,
+                                                            @NotNull List<RepositoryConfiguration> configurations)
+            throws IOException {
+        return VfsResourceFile.deserialize(stream, configurations);
+    }
+
+    @Override
+    @NotNull
+    public BasicFileResourceItem deserializeFileResourceItem(@NotNull Base128InputStream stream,
+                                                             @NotNull ResourceType resourceType,
+                                                             @NotNull String name,
+                                                             @NotNull ResourceVisibility visibility,
+                                                             @NotNull List<RepositoryConfiguration> configurations)
+            throws IOException {
+        return VfsFileResourceItem.deserialize(stream, resourceType, name, visibility,
+                configurations);
     }
 
     @SuppressWarnings("InstanceGuardedByStatic")
@@ -190,6 +339,16 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         return myResourceDir;
     }
 
+    @VisibleForTesting
+    int getNumXmlFilesLoadedInitially() {
+        return myNumXmlFilesLoadedInitially;
+    }
+
+    @VisibleForTesting
+    int getNumXmlFilesLoadedInitiallyFromSources() {
+        return myNumXmlFilesLoadedInitiallyFromSources;
+    }
+
     @Override
     public @NotNull Path getOrigin() {
         return Paths.get(myResourceDir.getPath());
@@ -234,7 +393,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         if (!namespace.equals(myNamespace)) {
             return null;
         }
-        return myResourceTable.get(type);
+        return myResourceSnapshot.get(type);
     }
 
     @Override
@@ -245,11 +404,9 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
     @Override
     public ResourceVisitor.VisitResult accept(ResourceVisitor visitor) {
         if (visitor.shouldVisitNamespace(myNamespace)) {
-            synchronized (ITEM_MAP_LOCK) {
-                if (acceptByResources(myResourceTable, visitor) ==
-                    ResourceVisitor.VisitResult.ABORT) {
-                    return ResourceVisitor.VisitResult.ABORT;
-                }
+            if (acceptByResources(myResourceSnapshot, visitor) ==
+                ResourceVisitor.VisitResult.ABORT) {
+                return ResourceVisitor.VisitResult.ABORT;
             }
         }
 
@@ -352,7 +509,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
      * @return true if any resource items were removed from the repository
      */
     private boolean removeItemsFromSource(@NotNull ResourceItemSource<?> source) {
-        boolean changed = false;
+        Set<ResourceType> changedTypes = EnumSet.noneOf(ResourceType.class);
 
         synchronized (ITEM_MAP_LOCK) {
             for (ResourceItem item : source) {
@@ -365,7 +522,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                     ResourceItem candidate = iter.next();
                     if (candidate == item) {
                         iter.remove();
-                        changed = true;
+                        changedTypes.add(item.getType());
                         break;
                     }
                 }
@@ -373,8 +530,11 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                     map.removeAll(item.getName());
                 }
             }
+            if (!changedTypes.isEmpty()) {
+                publishSnapshot(changedTypes);
+            }
         }
-        return changed;
+        return !changedTypes.isEmpty();
     }
 
 
@@ -464,6 +624,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                             for (DomResourceItem item : idItems) {
                                 domResourceFile.removeItem(item);
                             }
+                            publishSnapshot(Collections.singleton(ResourceType.ID));
                         }
                     }
 
@@ -713,16 +874,31 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
      */
     private static class Loader extends RepositoryLoader<ResourceFolderRepository> {
 
+        /**
+         * The number of files parsed by each task of the parallel scan
+         */
+        private static final int FILES_PER_TASK = 16;
+
         private final ResourceFolderRepository myRepository;
         private final File myResourceDir;
+        @Nullable
+        private final ResourceFolderRepositoryCachingData myCachingData;
+        private final boolean myParallelScan;
+        /**
+         * Whether the resources differ from the ones in the cache file
+         */
+        private boolean myCacheStale = true;
 
         @NotNull
         private final Map<ResourceType, ListMultimap<String, ResourceItem>> myResources =
                 new EnumMap<>(ResourceType.class);
         @NotNull
-        private final Map<File, ResourceItemSource<BasicResourceItem>> mySources = new HashMap<>();
+        private final Map<File, ResourceItemSource<BasicResourceItem>> mySources =
+                new LinkedHashMap<>();
         @NotNull
-        private final Map<File, BasicFileResourceItem> myFileResources = new HashMap<>();
+        private final Map<File, BasicFileResourceItem> myFileResources = new LinkedHashMap<>();
+        private int myNumXmlFilesLoaded;
+        private int myNumXmlFilesLoadedFromSources;
 
         // The following two fields are used as a cache of size one for quick conversion from a
         // PathString to a VirtualFile.
@@ -731,14 +907,16 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         @Nullable
         private PathString myLastPathString;
 
-        @NotNull Set<File> myFilesToReparseAsPsi = new HashSet<>();
-        private static final Logger LOG = Logger.getInstance(ResourceFolderRepository.class);
+        @NotNull Set<File> myFilesToReparseAsPsi = new LinkedHashSet<>();
 
         Loader(@NotNull ResourceFolderRepository repository,
-               @Nullable ResourceFolderRepositoryCachingData cachingData) {
+               @Nullable ResourceFolderRepositoryCachingData cachingData,
+               boolean parallelScan) {
             super(repository.myResourceDir.toPath(), null, repository.getNamespace());
             myRepository = repository;
             myResourceDir = repository.myResourceDir;
+            myCachingData = cachingData;
+            myParallelScan = parallelScan;
             myDefaultVisibility = ResourceVisibility.UNDEFINED;
         }
 
@@ -747,6 +925,8 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                 return;
             }
 
+            loadFromPersistentCache();
+
             scanResFolder();
 
             populateRepository();
@@ -754,6 +934,50 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
             scanQueuedPsiResources();
         }
 
+        boolean isCacheStale() {
+            return myCacheStale || myNumXmlFilesLoadedFromSources > 0;
+        }
+
+        /**
+         * Loads the resources of the files that have not changed since the cache file was
+         * written, the other files are parsed by {@link #scanResFolder()}.
+         */
+        private void loadFromPersistentCache() {
+            if (myCachingData == null || myCachingData.getCacheIsInvalidated()) {
+                return;
+            }
+            byte[] header = ResourceSerializationUtil.getCacheFileHeader(
+                    stream -> myRepository.writeCacheHeaderContent(myCachingData, stream));
+            try (Base128InputStream stream = new Base128InputStream(myCachingData.getCacheFile())) {
+                if (!stream.validateContents(header)) {
+                    return; // Cache file header doesn't match.
+                }
+                myCacheStale = false;
+                ResourceSerializationUtil.readResourcesFromStream(stream,
+                        Maps.newHashMapWithExpectedSize(1000), null, myRepository, item -> {
+                            if (!addItem(item)) {
+                                // the file of the item has changed or has been deleted
+                                myCacheStale = true;
+                            }
+                        });
+            } catch (NoSuchFileException e) {
+                // Cache file does not exist.
+            } catch (ProcessCanceledException e) {
+                cleanupAfterFailedLoadingFromCache();
+                throw e;
+            } catch (Throwable e) {
+                cleanupAfterFailedLoadingFromCache();
+                LOG.warn("Failed to load resources from cache file " +
+                         myCachingData.getCacheFile(), e);
+            }
+        }
+
+        private void cleanupAfterFailedLoadingFromCache() {
+            mySources.clear();
+            myFileResources.clear();
+            myCacheStale = true;
+        }
+
         /**
          * For resource files that failed when scanning with a VirtualFile, retries with PsiFile.
          */
@@ -765,11 +989,12 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
 
         private void scanResFolder() {
             try {
-                File[] files = myResourceDir.listFiles();
-                if (files == null) {
+                File[] folders = myResourceDir.listFiles();
+                if (folders == null) {
                     return;
                 }
-                for (File subDir : files) {
+                List<ResourceFile> files = new ArrayList<>();
+                for (File subDir : folders) {
                     String folderName = subDir.getName();
                     FolderInfo folderInfo = FolderInfo.create(folderName, myFolderConfigCache);
                     if (folderInfo != null) {
@@ -788,25 +1013,16 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                                 }
                                 continue;
                             }
-
-                            PathString pathString = toPathString(file);
-                            myLastVirtualFile = file;
-                            myLastPathString = pathString;
-                            try {
-                                loadResourceFile(pathString, folderInfo, configuration);
-                                if (isParsableFile(file, folderInfo)) {
-                                    countCacheMiss();
-                                }
-                            } catch (ParsingException e) {
-                                // Reparse the file as PSI. The PSI parser is more forgiving than
-                                // KXmlParser because
-                                // it is designed to work with potentially malformed files in the
-                                // middle of editing.
-                                myFilesToReparseAsPsi.add(file);
-                            }
+                            files.add(new ResourceFile(file, folderInfo, configuration));
                         }
                     }
                 }
+
+                if (myParallelScan && files.size() > FILES_PER_TASK) {
+                    scanFilesInParallel(files);
+                } else {
+                    scanFiles(files);
+                }
             } catch (ProcessCanceledException e) {
                 throw e;
             } catch (Exception e) {
@@ -840,6 +1056,61 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         }
 
 
+        /**
+         * Parses the files on the common fork-join pool. Every task parses its part of the files
+         * with a loader of its own, the results of the tasks are added to this loader in the
+         * order of the files so the repository is the same as when they are parsed one by one.
+         */
+        private void scanFilesInParallel(@NotNull List<ResourceFile> files) {
+            List<ForkJoinTask<Loader>> tasks = new ArrayList<>();
+            for (int start = 0; start < files.size(); start += FILES_PER_TASK) {
+                List<ResourceFile> part =
+                        files.subList(start, Math.min(start + FILES_PER_TASK, files.size()));
+                tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                    Loader loader = new Loader(myRepository, null, false);
+                    loader.deferAttrsAndStyleables();
+                    loader.scanFiles(part);
+                    return loader;
+                }));
+            }
+            for (ForkJoinTask<Loader> task : tasks) {
+                addResults(task.join());
+            }
+        }
+
+        private void scanFiles(@NotNull List<ResourceFile> files) {
+            for (ResourceFile resourceFile : files) {
+                File file = resourceFile.file;
+                FolderInfo folderInfo = resourceFile.folderInfo;
+                PathString pathString = toPathString(file);
+                myLastVirtualFile = file;
+                myLastPathString = pathString;
+                try {
+                    loadResourceFile(pathString, folderInfo, resourceFile.configuration);
+                    if (isParsableFile(file, folderInfo)) {
+                        countCacheMiss();
+                    }
+                } catch (ParsingException e) {
+                    // Reparse the file as PSI. The PSI parser is more forgiving than KXmlParser
+                    // because it is designed to work with potentially malformed files in the
+                    // middle of editing.
+                    myFilesToReparseAsPsi.add(file);
+                }
+            }
+        }
+
+        /**
+         * Adds the resources parsed by a loader of the parallel scan
+         */
+        private void addResults(@NotNull Loader loader) {
+            mySources.putAll(loader.mySources);
+            myFileResources.putAll(loader.myFileResources);
+            myFilesToReparseAsPsi.addAll(loader.myFilesToReparseAsPsi);
+            myNumXmlFilesLoaded += loader.myNumXmlFilesLoaded;
+            myNumXmlFilesLoadedFromSources += loader.myNumXmlFilesLoadedFromSources;
+            addDeferredAttrsAndStyleables(loader);
+        }
+
         private void loadResourceFile(@NotNull PathString file,
                                       @NotNull FolderInfo folderInfo,
                                       @NotNull RepositoryConfiguration configuration) {
@@ -947,6 +1218,8 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         }
 
         private void populateRepository() {
+            myRepository.myNumXmlFilesLoadedInitially = myNumXmlFilesLoaded;
+            myRepository.myNumXmlFilesLoadedInitiallyFromSources = myNumXmlFilesLoadedFromSources;
             myRepository.mySources.putAll(mySources);
             myRepository.commitToRepositoryWithoutLock(myResources);
         }
@@ -954,6 +1227,13 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         @Override
         protected void addResourceItem(@NotNull BasicResourceItem item,
                                        @NotNull ResourceFolderRepository repository) {
+            addItem(item);
+        }
+
+        /**
+         * @return false if the item was left out because its file is no longer valid
+         */
+        private boolean addItem(@NotNull BasicResourceItem item) {
             if (item instanceof BasicValueResourceItemBase) {
                 VfsResourceFile sourceFile =
                         (VfsResourceFile) ((BasicValueResourceItemBase) item).getSourceFile();
@@ -961,31 +1241,50 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                 if (virtualFile != null && virtualFile.exists() && !virtualFile.isDirectory()) {
                     sourceFile.addItem(item);
                     mySources.put(virtualFile, sourceFile);
+                    return true;
                 }
             } else if (item instanceof VfsFileResourceItem) {
                 VfsFileResourceItem fileResourceItem = (VfsFileResourceItem) item;
                 File virtualFile = fileResourceItem.getVirtualFile();
                 if (virtualFile != null && virtualFile.exists() && !virtualFile.isDirectory()) {
                     myFileResources.put(virtualFile, fileResourceItem);
+                    return true;
                 }
             } else if (item instanceof BasicFileResourceItem) {
                 BasicFileResourceItem fileResourceItem = (BasicFileResourceItem) item;
                 File file = fileResourceItem.getSource().toFile();
                 if (file != null && file.exists() && !file.isDirectory()) {
                     myFileResources.put(file, fileResourceItem);
+                    return true;
                 }
             } else {
                 throw new IllegalArgumentException("Unexpected type: " + item.getClass().getName());
             }
+            return false;
         }
 
         private void countCacheHit() {
-            ++myRepository.myNumXmlFilesLoadedInitially;
+            ++myNumXmlFilesLoaded;
         }
 
         private void countCacheMiss() {
-            ++myRepository.myNumXmlFilesLoadedInitially;
-            ++myRepository.myNumXmlFilesLoadedInitiallyFromSources;
+            ++myNumXmlFilesLoaded;
+            ++myNumXmlFilesLoadedFromSources;
+        }
+
+        /**
+         * A file of the resource directory to be parsed by the initial scan
+         */
+        private static class ResourceFile {
+            final File file;
+            final FolderInfo folderInfo;
+            final RepositoryConfiguration configuration;
+
+            ResourceFile(File file, FolderInfo folderInfo, RepositoryConfiguration configuration) {
+                this.file = file;
+                this.folderInfo = folderInfo;
+                this.configuration = configuration;
+            }
         }
     }
 
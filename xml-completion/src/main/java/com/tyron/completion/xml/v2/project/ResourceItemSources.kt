@@ -4,6 +4,8 @@ import com.android.ide.common.resources.ResourceItem
 import com.android.ide.common.resources.configuration.FolderConfiguration
 import com.android.resources.ResourceFolderType
 import com.android.resources.ResourceFolderType.getFolderType
+import com.android.utils.Base128InputStream
+import com.android.utils.Base128InputStream.StreamFormatException
 import com.android.utils.Base128OutputStream
 import com.google.common.collect.ArrayListMultimap
 import com.tyron.completion.xml.v2.base.BasicResourceItem
@@ -68,6 +70,25 @@ internal class VfsResourceFile(
         stream.writeInt(configIndexes.getInt(configuration.folderConfiguration.qualifierString))
         stream.write(FileTimeStampLengthHasher.hash(virtualFile))
     }
+
+    companion object {
+        /**
+         * Creates a [VfsResourceFile] by reading its contents from the given stream. The virtual
+         * file is null if the file has changed since the stream was written.
+         */
+        @JvmStatic
+        @Throws(IOException::class)
+        fun deserialize(stream: Base128InputStream, configurations: List<RepositoryConfiguration>): VfsResourceFile {
+            val relativePath = stream.readString() ?: throw StreamFormatException.invalidFormat()
+            val configuration = configurations[stream.readInt()]
+            val repository = configuration.repository as ResourceFolderRepository
+            val file = File(repository.resourceDir, relativePath)
+            if (!stream.validateContents(FileTimeStampLengthHasher.hash(file))) {
+                return VfsResourceFile(null, configuration)
+            }
+            return VfsResourceFile(file, configuration)
+        }
+    }
 }
 
 /** The [ResourceItemSource] of [_root_ide_package_.com.tyron.completion.xml.v2.project.DomResourceItem]s. */
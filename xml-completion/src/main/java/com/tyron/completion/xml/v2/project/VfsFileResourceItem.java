@@ -1,8 +1,11 @@
 package com.tyron.completion.xml.v2.project;
 
 import com.android.ide.common.rendering.api.ResourceNamespace;
+import com.android.resources.Density;
 import com.android.resources.ResourceType;
 import com.android.resources.ResourceVisibility;
+import com.android.utils.Base128InputStream;
+import com.android.utils.Base128InputStream.StreamFormatException;
 import com.android.utils.Base128OutputStream;
 import com.tyron.completion.xml.v2.aar.AarResourceRepository;
 import com.tyron.completion.xml.v2.base.BasicFileResourceItem;
@@ -13,6 +16,7 @@ import it.unimi.dsi.fastutil.objects.Object2IntMap;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -68,6 +72,35 @@ public class VfsFileResourceItem extends BasicFileResourceItem {
     stream.write(FileTimeStampLengthHasher.hash(myVirtualFile));
   }
 
+  /**
+   * Creates a VfsFileResourceItem by reading its contents from the given stream. The virtual file of the item is null
+   * if the file has changed since the stream was written.
+   */
+  @NotNull
+  static VfsFileResourceItem deserialize(@NotNull Base128InputStream stream,
+                                         @NotNull ResourceType resourceType,
+                                         @NotNull String name,
+                                         @NotNull ResourceVisibility visibility,
+                                         @NotNull List<RepositoryConfiguration> configurations) throws IOException {
+    String relativePath = stream.readString();
+    if (relativePath == null) {
+      throw StreamFormatException.invalidFormat();
+    }
+    RepositoryConfiguration configuration = configurations.get(stream.readInt());
+    int encodedDensity = stream.readInt();
+    ResourceFolderRepository repository = (ResourceFolderRepository)configuration.getRepository();
+    File virtualFile = new File(repository.getResourceDir(), relativePath);
+    if (!stream.validateContents(FileTimeStampLengthHasher.hash(virtualFile))) {
+      virtualFile = null;
+    }
+    if (encodedDensity == 0) {
+      return new VfsFileResourceItem(resourceType, name, configuration, visibility, relativePath, virtualFile);
+    }
+
+    Density density = Density.values()[encodedDensity - 1];
+    return new VfsDensityBasedFileResourceItem(resourceType, name, configuration, visibility, relativePath, virtualFile, density);
+  }
+
   @Override
   public boolean equals(@Nullable Object obj) {
       if (this == obj) {
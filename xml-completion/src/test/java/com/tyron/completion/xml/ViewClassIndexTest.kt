@@ -0,0 +1,100 @@
+package com.tyron.completion.xml
+
+import com.tyron.common.util.FileHashCache
+import org.apache.bcel.Const
+import org.apache.bcel.generic.ClassGen
+import org.apache.bcel.generic.InstructionConst
+import org.apache.bcel.generic.InstructionList
+import org.apache.bcel.generic.MethodGen
+import org.apache.bcel.generic.ObjectType
+import org.apache.bcel.generic.Type
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.RandomAccessFile
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+
+class ViewClassIndexTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun `test unchanged jars are read from the index`() {
+        val jar = folder.newFile("library.jar")
+        writeJar(jar, mapOf(
+            "com.example.BaseView" to "java.lang.Object",
+            "com.example.CustomView" to "com.example.BaseView"
+        ))
+        val directory = File(folder.root, "index")
+        val hashes = File(folder.root, "hashes.bin")
+
+        val classes = ViewClassIndex(directory, FileHashCache(hashes)).getClasses(listOf(jar))[jar]!!
+        val byName = classes.associateBy { it.name }
+        assert(byName.keys == setOf("com.example.BaseView", "com.example.CustomView"))
+        val customView = byName["com.example.CustomView"]!!
+        assert(customView.superClassName == "com.example.BaseView")
+        assert(customView.hasInflationConstructor())
+        assert(ViewClassIndex.getSuperClassNames(customView, byName) == listOf("com.example.BaseView"))
+
+        // the jar looks unchanged, its classes must come from the index and not from the jar
+        val modified = jar.lastModified()
+        RandomAccessFile(jar, "rw").use { it.write(ByteArray(it.length().toInt())) }
+        assert(jar.setLastModified(modified))
+
+        val hashCache = FileHashCache(hashes)
+        hashCache.load()
+        val indexed = ViewClassIndex(directory, hashCache).getClasses(listOf(jar))[jar]!!
+        assert(indexed.map { it.name }.toSet() == byName.keys)
+    }
+
+    @Test
+    fun `test changed jars are scanned again`() {
+        val first = folder.newFile("first.jar")
+        val second = folder.newFile("second.jar")
+        writeJar(first, mapOf("com.example.First" to "java.lang.Object"))
+        writeJar(second, mapOf("com.example.Second" to "java.lang.Object"))
+        val index = ViewClassIndex(File(folder.root, "index"), FileHashCache(File(folder.root, "hashes.bin")))
+        index.getClasses(listOf(first, second))
+
+        writeJar(second, mapOf(
+            "com.example.Second" to "java.lang.Object",
+            "com.example.Third" to "com.example.Second"
+        ))
+        assert(second.setLastModified(second.lastModified() + 10_000))
+
+        val classes = index.getClasses(listOf(first, second))
+        assert(classes.keys.toList() == listOf(first, second))
+        assert(classes[first]!!.map { it.name } == listOf("com.example.First"))
+        assert(classes[second]!!.map { it.name }.toSet() == setOf("com.example.Second", "com.example.Third"))
+        assert(classes[second]!!.none { it.hasInflationConstructor() })
+    }
+
+    private fun writeJar(jar: File, classes: Map<String, String>) {
+        JarOutputStream(jar.outputStream()).use { out ->
+            for ((name, superName) in classes) {
+                out.putNextEntry(JarEntry(name.replace('.', '/') + ".class"))
+                out.write(classBytes(name, superName, name.endsWith("View")))
+                out.closeEntry()
+            }
+        }
+    }
+
+    private fun classBytes(name: String, superName: String, inflatable: Boolean): ByteArray {
+        val classGen = ClassGen(name, superName, "${name.substringAfterLast('.')}.java",
+            Const.ACC_PUBLIC, null)
+        if (inflatable) {
+            val instructions = InstructionList()
+            instructions.append(InstructionConst.RETURN)
+            val constructor = MethodGen(Const.ACC_PUBLIC, Type.VOID,
+                arrayOf(ObjectType("android.content.Context"), ObjectType("android.util.AttributeSet")),
+                arrayOf("context", "attrs"), "<init>", name, instructions, classGen.constantPool)
+            constructor.setMaxStack()
+            constructor.setMaxLocals()
+            classGen.addMethod(constructor.method)
+        }
+        return classGen.javaClass.bytes
+    }
+}
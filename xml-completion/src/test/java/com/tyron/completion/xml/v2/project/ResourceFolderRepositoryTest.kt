@@ -0,0 +1,210 @@
+package com.tyron.completion.xml.v2.project
+
+import com.android.ide.common.rendering.api.AttrResourceValue
+import com.android.ide.common.rendering.api.ResourceNamespace
+import com.android.ide.common.rendering.api.StyleableResourceValue
+import com.android.resources.ResourceType
+import com.tyron.builder.project.Project
+import com.tyron.builder.project.impl.AndroidModuleImpl
+import com.tyron.completion.xml.v2.events.XmlResourceChangeEvent
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.util.concurrent.Executor
+
+class ResourceFolderRepositoryTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun `test parallel scan loads the same resources as the sequential scan`() {
+        val root = folder.newFolder("project")
+        val res = File(root, "app/src/main/res")
+        for (i in 0 until 40) {
+            write(res, "layout/layout_$i.xml", """
+                <LinearLayout xmlns:android="http://schemas.android.com/apk/res/android"
+                    android:id="@+id/root_$i">
+                    <TextView android:id="@+id/title" />
+                    <TextView android:id="@+id/text_$i" />
+                </LinearLayout>
+                """.trimIndent())
+            write(res, "drawable/image_$i.png", "")
+        }
+        write(res, "layout-land/layout_0.xml", """
+            <FrameLayout xmlns:android="http://schemas.android.com/apk/res/android"
+                android:id="@+id/root_land" />
+            """.trimIndent())
+        write(res, "values/strings.xml", """
+            <resources>
+                <string name="app_name">App</string>
+                <string name="title">Title</string>
+                <color name="accent">#ff0000</color>
+            </resources>
+            """.trimIndent())
+        write(res, "values/attrs.xml", """
+            <resources>
+                <attr name="shared" />
+                <declare-styleable name="CustomView">
+                    <attr name="shared" />
+                    <attr name="size" format="dimension" />
+                </declare-styleable>
+            </resources>
+            """.trimIndent())
+        // definitions of the same attr in different files of a folder are merged
+        write(res, "values/attrs_more.xml", """
+            <resources>
+                <attr name="shared" format="color" />
+                <attr name="size" format="dimension|reference" />
+            </resources>
+            """.trimIndent())
+        write(res, "values-night/colors.xml", """
+            <resources>
+                <color name="accent">#00ff00</color>
+            </resources>
+            """.trimIndent())
+
+        val module = createModule(root)
+        val sequential = ResourceFolderRepository.create(
+            module, res, ResourceNamespace.RES_AUTO, null, false
+        )
+        val parallel = ResourceFolderRepository.create(
+            module, res, ResourceNamespace.RES_AUTO, null, true
+        )
+
+        val expected = describe(sequential)
+        assert(expected.isNotEmpty())
+        assert(expected == describe(parallel))
+    }
+
+    @Test
+    fun `test only changed files are parsed when loading from the cache`() {
+        val root = folder.newFolder("project")
+        val res = File(root, "app/src/main/res")
+        write(res, "layout/activity_main.xml", """
+            <LinearLayout xmlns:android="http://schemas.android.com/apk/res/android"
+                android:id="@+id/root" />
+            """.trimIndent())
+        write(res, "values/strings.xml", """
+            <resources>
+                <string name="app_name">App</string>
+            </resources>
+            """.trimIndent())
+        write(res, "values/attrs.xml", """
+            <resources>
+                <declare-styleable name="CustomView">
+                    <attr name="size" format="dimension" />
+                </declare-styleable>
+            </resources>
+            """.trimIndent())
+        write(res, "drawable/image.png", "")
+
+        val module = createModule(root)
+        val cachingData = ResourceFolderRepositoryCachingData(
+            File(folder.root, "caches/res.dat").toPath(), false, "test", Executor(Runnable::run)
+        )
+        val parsed = ResourceFolderRepository.create(
+            module, res, ResourceNamespace.RES_AUTO, cachingData
+        )
+        assert(parsed.numXmlFilesLoadedInitiallyFromSources == 3)
+
+        val cached = ResourceFolderRepository.create(
+            module, res, ResourceNamespace.RES_AUTO, cachingData
+        )
+        assert(cached.numXmlFilesLoadedInitially == 3)
+        assert(cached.numXmlFilesLoadedInitiallyFromSources == 0)
+        assert(describe(cached).sorted() == describe(parsed).sorted())
+
+        val strings = File(res, "values/strings.xml")
+        write(res, "values/strings.xml", """
+            <resources>
+                <string name="app_name">Renamed</string>
+                <string name="title">Title</string>
+            </resources>
+            """.trimIndent())
+        assert(strings.setLastModified(strings.lastModified() + 10_000))
+
+        val updated = ResourceFolderRepository.create(
+            module, res, ResourceNamespace.RES_AUTO, cachingData
+        )
+        assert(updated.numXmlFilesLoadedInitiallyFromSources == 1)
+        assert(updated.hasResources(ResourceNamespace.RES_AUTO, ResourceType.STRING, "title"))
+        assert(describe(updated).sorted() == describe(
+            ResourceFolderRepository.create(module, res, ResourceNamespace.RES_AUTO, null)
+        ).sorted())
+    }
+
+    @Test
+    fun `test maps read before a rescan are not changed by it`() {
+        val root = folder.newFolder("project")
+        val res = File(root, "app/src/main/res")
+        write(res, "values/strings.xml", """
+            <resources>
+                <string name="app_name">App</string>
+            </resources>
+            """.trimIndent())
+        write(res, "values/colors.xml", """
+            <resources>
+                <color name="accent">#ff0000</color>
+            </resources>
+            """.trimIndent())
+
+        val module = createModule(root)
+        val repository = ResourceFolderRepository.create(
+            module, res, ResourceNamespace.RES_AUTO, null
+        )
+        val strings = repository.getResources(ResourceNamespace.RES_AUTO, ResourceType.STRING)
+        val colors = repository.getResources(ResourceNamespace.RES_AUTO, ResourceType.COLOR)
+
+        write(res, "values/strings.xml", """
+            <resources>
+                <string name="app_name">App</string>
+                <string name="title">Title</string>
+            </resources>
+            """.trimIndent())
+        module.project.eventManager.dispatchEvent(
+            XmlResourceChangeEvent(File(res, "values/strings.xml"), null)
+        )
+
+        assert(strings.keySet() == setOf("app_name"))
+        assert(repository.getResources(ResourceNamespace.RES_AUTO, ResourceType.STRING)
+            .keySet() == setOf("app_name", "title"))
+        // the types that did not change keep their map
+        assert(repository.getResources(ResourceNamespace.RES_AUTO, ResourceType.COLOR) === colors)
+    }
+
+    private fun createModule(root: File): AndroidModuleImpl {
+        val project = Project(root)
+        val module = AndroidModuleImpl(File(root, "app"))
+        module.setName("app")
+        module.setPackageName("com.example.app")
+        project.addModule(module)
+        return module
+    }
+
+    private fun describe(repository: ResourceFolderRepository): List<String> {
+        val result = mutableListOf<String>()
+        for (type in ResourceType.values()) {
+            val items = repository.getResources(ResourceNamespace.RES_AUTO, type)
+            for (item in items.values()) {
+                val value = item.resourceValue
+                var description = "$item ${item.configuration.qualifierString} ${item.source}"
+                if (value is AttrResourceValue) {
+                    description += " ${value.formats}"
+                }
+                if (value is StyleableResourceValue) {
+                    description += " ${value.allAttributes.map { "${it.name} ${it.formats}" }}"
+                }
+                result += description
+            }
+        }
+        return result
+    }
+
+    private fun write(res: File, path: String, contents: String) {
+        val file = File(res, path)
+        file.parentFile!!.mkdirs()
+        file.writeText(contents)
+    }
+}